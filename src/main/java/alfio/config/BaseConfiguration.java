@@ -16,9 +16,12 @@
  */
 package alfio.config;
 
+import alfio.controller.api.v2.user.support.PublicEventCache;
+import alfio.manager.PaymentMethodMatrix;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.ExternalConfiguration;
 import alfio.manager.user.UserManager;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.system.ConfigurationKeys;
 import alfio.repository.EventRepository;
 import alfio.repository.system.ConfigurationRepository;
@@ -33,6 +36,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,12 +52,31 @@ public class BaseConfiguration {
         Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>> cache = Caffeine.newBuilder()
             .expireAfterWrite(Duration.ofMinutes(1))
             .build();
+        // configuration is cached by level. Entries are evicted when modified (see ConfigurationChangeListener),
+        // the expiration is only a safety net in case the notifications are not delivered
+        Cache<ConfigurationManager.ConfigurationCacheKey, List<ConfigurationKeyValuePathLevel>> levelCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(15))
+            .build();
         return new ConfigurationManager(configurationRepository,
             userManager,
             eventRepository,
             externalConfiguration,
             environment,
-            cache);
+            cache,
+            levelCache);
+    }
+
+    @Bean
+    PublicEventCache publicEventCache() {
+        // snapshots are evicted after each modification, the expiration covers the modifications made by other nodes
+        return new PublicEventCache(Duration.ofMinutes(1));
+    }
+
+    @Bean
+    PaymentMethodMatrix paymentMethodMatrix() {
+        // evicted when the configuration changes, see ConfigurationChangeListener
+        return new PaymentMethodMatrix(Duration.ofMinutes(15));
     }
 
     public static ObjectMapper buildObjectMapper() {
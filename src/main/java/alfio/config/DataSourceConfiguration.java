@@ -44,6 +44,7 @@ import ch.digitalfondue.npjt.EnableNpjt;
 import ch.digitalfondue.npjt.mapper.ColumnMapperFactory;
 import ch.digitalfondue.npjt.mapper.ParameterConverter;
 import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.MigrationVersion;
@@ -51,6 +52,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.*;
 import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -69,6 +71,7 @@ import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
@@ -112,6 +115,8 @@ public class DataSourceConfiguration {
             dataSource.setMaximumPoolSize(platform.getMaxActive(env));
             dataSource.setMinimumIdle(platform.getMinIdle(env));
             dataSource.setConnectionTimeout(1000L);
+            // exposes the pool saturation (active, idle and pending connections) as hikaricp.* meters
+            dataSource.setMetricRegistry(Metrics.globalRegistry);
 
             log.debug("Connection pool properties: max active {}, initial size {}", dataSource.getMaximumPoolSize(), dataSource.getMinimumIdle());
 
@@ -131,19 +136,28 @@ public class DataSourceConfiguration {
     }
 
     @Bean
-    public PlatformTransactionManager platformTransactionManager(DataSource dataSource) {
-        return new CustomDataSourceTransactionManager(dataSource);
+    public RoleAndOrganizationsTransactionPreparer roleAndOrganizationsTransactionPreparer() {
+        return new RoleAndOrganizationsTransactionPreparer(Duration.ofSeconds(30));
+    }
+
+    @Bean
+    public PlatformTransactionManager platformTransactionManager(DataSource dataSource, RoleAndOrganizationsTransactionPreparer transactionPreparer) {
+        return new CustomDataSourceTransactionManager(dataSource, transactionPreparer);
     }
 
     private static class CustomDataSourceTransactionManager extends DataSourceTransactionManager {
-        CustomDataSourceTransactionManager(DataSource dataSource) {
+
+        private final RoleAndOrganizationsTransactionPreparer transactionPreparer;
+
+        CustomDataSourceTransactionManager(DataSource dataSource, RoleAndOrganizationsTransactionPreparer transactionPreparer) {
             super(dataSource);
+            this.transactionPreparer = transactionPreparer;
         }
 
         @Override
         protected void prepareTransactionalConnection(Connection con, TransactionDefinition definition) throws SQLException {
             super.prepareTransactionalConnection(con, definition);
-            RoleAndOrganizationsTransactionPreparer.prepareTransactionalConnection(con);
+            transactionPreparer.prepareTransactionalConnection(con);
         }
     }
 
@@ -191,7 +205,7 @@ public class DataSourceConfiguration {
      }
 
     @Bean
-    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository) {
+    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository, Environment environment) {
 
         var source = new CustomResourceBundleMessageSource();
         source.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
@@ -201,7 +215,9 @@ public class DataSourceConfiguration {
         source.setFallbackToSystemLocale(false);
         source.setAlwaysUseMessageFormat(true);
 
-        return new MessageSourceManager(source, configurationRepository);
+        // overrides are evicted by ConfigurationChangeListener, which is not active during integration tests
+        boolean integrationTest = environment.acceptsProfiles(Profiles.of(Initializer.PROFILE_INTEGRATION_TEST));
+        return new MessageSourceManager(source, configurationRepository, integrationTest ? Duration.ZERO : Duration.ofMinutes(15));
     }
 
     @Bean
@@ -239,12 +255,14 @@ public class DataSourceConfiguration {
                      SpecialPriceTokenGenerator specialPriceTokenGenerator,
                      WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
                      TicketReservationManager ticketReservationManager,
-                     AdminJobManager adminJobManager
+                     AdminJobManager adminJobManager,
+                     EventStatisticsManager eventStatisticsManager
                      ) {
         return new Jobs(adminReservationRequestManager, fileUploadManager,
             notificationManager, specialPriceTokenGenerator, ticketReservationManager,
             waitingQueueSubscriptionProcessor,
-            adminJobManager);
+            adminJobManager,
+            eventStatisticsManager);
     }
 
     @Bean
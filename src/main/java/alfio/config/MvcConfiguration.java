@@ -16,6 +16,8 @@
  */
 package alfio.config;
 
+import alfio.controller.api.v2.user.support.PublicEventCache;
+import alfio.controller.api.v2.user.support.PublicEventCacheEvictionInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -35,6 +37,7 @@ import org.springframework.session.web.http.HttpSessionIdResolver;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.view.AbstractUrlBasedView;
@@ -47,6 +50,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static alfio.config.Initializer.API_V2_PUBLIC_PATH;
+import static alfio.config.authentication.support.AuthenticationConstants.ADMIN_API;
+import static alfio.config.authentication.support.AuthenticationConstants.ADMIN_PUBLIC_API;
 
 
 @Configuration(proxyBeanMethods = false)
@@ -59,15 +64,25 @@ public class MvcConfiguration implements WebMvcConfigurer {
     private final String frontendVersion;
     private final String alfioVersion;
     private final ObjectMapper objectMapper;
+    private final PublicEventCache publicEventCache;
 
     public MvcConfiguration(Environment environment,
                             @Value("${alfio.frontend.version}") String frontendVersion,
                             @Value("${alfio.version}") String alfioVersion,
-                            ObjectMapper objectMapper) {
+                            ObjectMapper objectMapper,
+                            PublicEventCache publicEventCache) {
         this.environment = environment;
         this.frontendVersion = frontendVersion;
         this.alfioVersion = alfioVersion;
         this.objectMapper = objectMapper;
+        this.publicEventCache = publicEventCache;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new PublicEventCacheEvictionInterceptor(publicEventCache))
+            .addPathPatterns(ADMIN_API + "/**", ADMIN_PUBLIC_API + "/**")
+            .excludePathPatterns(ADMIN_API + "/check-in/**");
     }
 
     @Override
@@ -17,6 +17,8 @@
 package alfio.config;
 
 import alfio.config.authentication.support.OpenIdAlfioAuthentication;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
@@ -24,18 +26,22 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
-class RoleAndOrganizationsTransactionPreparer {
+public class RoleAndOrganizationsTransactionPreparer {
 
     private static final Logger log = LoggerFactory.getLogger(RoleAndOrganizationsTransactionPreparer.class);
 
@@ -93,7 +99,24 @@ class RoleAndOrganizationsTransactionPreparer {
         " union " +
         "(select organization.id from organization where 'ROLE_ADMIN' in (select role from ba_user inner join authority on ba_user.username = authority.username where ba_user.username = ?))";
 
-    public static void prepareTransactionalConnection(Connection connection) throws SQLException {
+    // transaction-scoped equivalent of "set local", applied in a single round-trip
+    private static final String SET_ROW_ACCESS = "select set_config('alfio.checkRowAccess', ?, true), set_config('alfio.currentUserOrgs', ?, true)";
+
+    private final Cache<String, Set<Integer>> organizationsByUsername;
+
+    /**
+     * @param expiration how long the organizations of a user are kept in memory. Changes performed through
+     *                   {@link #evictUserOrganizations(String)} are visible immediately, other changes
+     *                   (e.g. performed by other nodes) are visible after the expiration.
+     */
+    public RoleAndOrganizationsTransactionPreparer(Duration expiration) {
+        this.organizationsByUsername = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(expiration)
+            .build();
+    }
+
+    void prepareTransactionalConnection(Connection connection) throws SQLException {
         if (!isInAHttpRequest()) {
             return;
         }
@@ -102,16 +125,51 @@ class RoleAndOrganizationsTransactionPreparer {
             return;
         }
 
-        try (var s = connection.createStatement()) {
-            s.execute("reset alfio.checkRowAccess");
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Set<Integer> orgIds = organizationsByUsername.getIfPresent(username);
+        if (orgIds == null) {
+            orgIds = loadOrganizations(connection, username);
+            organizationsByUsername.put(username, orgIds);
+        }
+
+        if (orgIds.isEmpty()) {
+            log.warn("orgIds is empty, was not able to apply currentUserOrgs");
         }
-        try (var s = connection.createStatement()) {
-            s.execute("reset alfio.currentUserOrgs");
+        try (var s = connection.prepareStatement(SET_ROW_ACCESS)) {
+            s.setString(1, Boolean.toString(!orgIds.isEmpty()));
+            s.setString(2, orgIds.stream().map(orgId -> Integer.toString(orgId)).collect(Collectors.joining(",")));
+            s.execute();
         }
+    }
 
+    /**
+     * Removes the cached organizations of the given user. Must be called every time the memberships of the user change.
+     * If a transaction is active, the entry is evicted again after completion, so that concurrent transactions cannot
+     * cache the memberships that are being modified.
+     */
+    public void evictUserOrganizations(String username) {
+        evict(() -> organizationsByUsername.invalidate(username));
+    }
+
+    public void evictAllUserOrganizations() {
+        evict(organizationsByUsername::invalidateAll);
+    }
+
+    private static void evict(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private static Set<Integer> loadOrganizations(Connection connection, String username) throws SQLException {
         Set<Integer> orgIds = new TreeSet<>();
         try (var s = connection.prepareStatement(QUERY_ORG_FOR_USER)) {
-            String username = SecurityContextHolder.getContext().getAuthentication().getName();
             s.setString(1, username);
             s.setString(2, username);
             try (var rs = s.executeQuery()) {
@@ -120,18 +178,6 @@ class RoleAndOrganizationsTransactionPreparer {
                 }
             }
         }
-
-        if (orgIds.isEmpty()) {
-            log.warn("orgIds is empty, was not able to apply currentUserOrgs");
-        } else {
-            try (var s = connection.createStatement()) {
-                s.execute("set local alfio.checkRowAccess = true");
-            }
-            try (var s = connection.createStatement()) {
-                String formattedOrgIds = orgIds.stream().map(orgId -> Integer.toString(orgId)).collect(Collectors.joining(","));
-                //can't use placeholder in a prepared statement when using 'set ...', but cannot be sql injected as the source is a set of integers
-                s.execute("set local alfio.currentUserOrgs = '" + formattedOrgIds + "'");
-            }
-        }
+        return Collections.unmodifiableSet(orgIds);
     }
 }
@@ -167,6 +167,8 @@ abstract class AbstractFormBasedWebSecurity extends WebSecurityConfigurerAdapter
             .antMatchers("/admin/**/export/**").hasAnyRole(ADMIN, OWNER)
             .antMatchers("/admin/**").hasAnyRole(ADMIN, OWNER, SUPERVISOR)
             .antMatchers("/api/attendees/**").denyAll()
+            // served only on the management port, which is bound to the loopback interface
+            .antMatchers(ACTUATOR + "/**").permitAll()
             .antMatchers("/callback").permitAll()
             .antMatchers("/**").permitAll()
             .and()
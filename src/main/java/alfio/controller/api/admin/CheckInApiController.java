@@ -19,6 +19,7 @@ package alfio.controller.api.admin;
 import alfio.manager.CheckInManager;
 import alfio.manager.EventManager;
 import alfio.manager.support.CheckInStatistics;
+import alfio.manager.support.OfflineCheckInChanges;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.EventAndOrganizationId;
@@ -32,7 +33,6 @@ import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -42,7 +42,6 @@ import org.springframework.web.bind.annotation.*;
 import javax.servlet.http.HttpServletResponse;
 import java.security.Principal;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static alfio.util.Wrappers.optionally;
 
@@ -113,15 +112,10 @@ public class CheckInApiController {
                                                            Principal principal) {
         String username = principal.getName();
         String auditUser = StringUtils.defaultIfBlank(offlineUser, username);
-        return ticketIdentifierCodes.stream()
-            .distinct()
-            .map(t -> {
-                TicketAndCheckInResult res = checkInManager.checkIn(eventName, t.getIdentifier(),
-                    Optional.ofNullable(t.getCode()),
-                    username, auditUser, forceCheckInPaymentOnSite);
-                return Pair.of(t.identifier, res);
-            })
-            .collect(Collectors.toMap(Pair::getKey, Pair::getValue));
+        // if the same ticket has been scanned more than once, we consider only the first scan
+        Map<String, String> codesByIdentifier = new LinkedHashMap<>();
+        ticketIdentifierCodes.forEach(t -> codesByIdentifier.putIfAbsent(t.getIdentifier(), t.getCode()));
+        return checkInManager.bulkCheckIn(eventName, codesByIdentifier, username, auditUser, forceCheckInPaymentOnSite);
     }
 
     @PostMapping("/check-in/{eventId}/ticket/{ticketIdentifier}/manual-check-in")
@@ -210,25 +204,43 @@ public class CheckInApiController {
 
         validateIdList(ids);
         return eventManager.getOptionalByName(eventName, principal.getName())
-            .map(event -> {
-                Set<String> addFields = loadLabelLayout(event)
-                    .map(layout -> {
-                        Set<String> union = new HashSet<>(layout.content.thirdRow);
-                        union.addAll(layout.content.additionalRows);
-                        union.addAll(layout.qrCode.additionalInfo);
-                        if(additionalFields != null && !additionalFields.isEmpty()) {
-                            union.addAll(additionalFields);
-                        }
-                        return union;
-                    })
-                    .orElseGet(() -> {
-                        if(additionalFields != null && !additionalFields.isEmpty()) {
-                            return new HashSet<>(additionalFields);
-                        }
-                        return Collections.singleton("company");
-                    });
-                return checkInManager.getEncryptedAttendeesInformation(event, addFields, ids);
-            }).orElse(Collections.emptyMap());
+            .map(event -> checkInManager.getEncryptedAttendeesInformation(event, resolveAdditionalFields(event, additionalFields), ids))
+            .orElse(Collections.emptyMap());
+    }
+
+    /**
+     * Incremental alternative to offline-identifiers + offline: returns the encrypted entries changed since the
+     * given cursor, and the keys of the entries to be removed.
+     * Omit the cursor for the initial (full) synchronization.
+     */
+    @GetMapping("/check-in/{eventName}/offline-changes")
+    public ResponseEntity<OfflineCheckInChanges> getOfflineChanges(@PathVariable("eventName") String eventName,
+                                                                   @RequestParam(value = "since", required = false) Long since,
+                                                                   @RequestParam(value = "additionalField", required = false) List<String> additionalFields,
+                                                                   Principal principal) {
+        return eventManager.getOptionalByName(eventName, principal.getName())
+            .flatMap(event -> checkInManager.getOfflineCheckInChanges(event, resolveAdditionalFields(event, additionalFields), since))
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED));
+    }
+
+    private Set<String> resolveAdditionalFields(EventAndOrganizationId event, List<String> additionalFields) {
+        return loadLabelLayout(event)
+            .map(layout -> {
+                Set<String> union = new HashSet<>(layout.content.thirdRow);
+                union.addAll(layout.content.additionalRows);
+                union.addAll(layout.qrCode.additionalInfo);
+                if(additionalFields != null && !additionalFields.isEmpty()) {
+                    union.addAll(additionalFields);
+                }
+                return union;
+            })
+            .orElseGet(() -> {
+                if(additionalFields != null && !additionalFields.isEmpty()) {
+                    return new HashSet<>(additionalFields);
+                }
+                return Collections.singleton("company");
+            });
     }
 
     private static void validateIdList(@RequestBody List<Integer> ids) {
@@ -48,6 +48,7 @@ import com.opencsv.exceptions.CsvException;
 import lombok.Data;
 import lombok.Getter;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
@@ -96,6 +97,7 @@ public class EventApiController {
 
     private static final String OK = "OK";
     private static final String CUSTOM_FIELDS_PREFIX = "custom:";
+    private static final int DOCUMENTS_PDF_CHUNK_SIZE = 50;
     private final EventManager eventManager;
     private final EventStatisticsManager eventStatisticsManager;
     private final I18nManager i18nManager;
@@ -395,7 +397,8 @@ public class EventApiController {
         var username = principal.getName();
         var eInvoicingEnabled = configurationManager.isItalianEInvoicingEnabled(eventManager.getEventAndOrganizationId(eventName, username));
 
-        return eventManager.findAllConfirmedTicketsForCSV(eventName, username).stream().map(trs -> {
+        return eventManager.streamAllConfirmedTicketsForCSV(eventName, username).map(p -> {
+            var trs = p.getLeft();
             Ticket t = trs.getTicket();
             var currencyCode = t.getCurrencyCode();
             TicketReservation reservation = trs.getTicketReservation();
@@ -435,8 +438,7 @@ public class EventApiController {
                 if(fields.contains("PEC")) {line.add(optionalInvoicingData.map(ItalianEInvoicing::getPec).orElse(""));}
             }
 
-            //obviously not optimized
-            Map<String, String> additionalValues = ticketFieldRepository.findAllValuesForTicketId(t.getId());
+            Map<String, String> additionalValues = p.getRight();
 
             Predicate<String> contains = FIXED_FIELDS::contains;
 
@@ -670,40 +672,28 @@ public class EventApiController {
         response.setHeader("Content-Disposition", "attachment; filename=" + event.getShortName() + "-invoices.zip");
 
         try(OutputStream os = response.getOutputStream(); ZipOutputStream zipOS = new ZipOutputStream(os)) {
-            ticketReservationManager.streamAllDocumentsFor(event.getId())
-                .forEach(pair -> {
-                    var reservation = pair.getLeft().getTicketReservation();
-                    for (BillingDocument document : pair.getRight()) {
-                        addPdfToZip(event, zipOS, reservation, document);
-                    }
-                });
+            var documents = ticketReservationManager.streamAllDocumentsFor(event.getId())
+                .flatMap(pair -> pair.getRight().stream().map(document -> Pair.of(pair.getLeft().getTicketReservation(), document)))
+                .collect(Collectors.toList());
+            // documents are rendered in chunks, to limit the amount of PDFs kept in memory
+            for (var chunk : ListUtils.partition(documents, DOCUMENTS_PDF_CHUNK_SIZE)) {
+                addPdfsToZip(event, zipOS, chunk);
+            }
         }
     }
 
-    private void addPdfToZip(Event event, ZipOutputStream zipOS, TicketReservation reservation, BillingDocument document) {
-        Map<String, Object> reservationModel = document.getModel();
-        Optional<byte[]> pdf;
-        var language = LocaleUtil.forLanguageTag(reservation.getUserLanguage());
-
-        pdf = switch (document.getType()) {
-            case CREDIT_NOTE ->
-                TemplateProcessor.buildCreditNotePdf(event, fileUploadManager, language, templateManager, reservationModel, extensionManager);
-            case RECEIPT ->
-                TemplateProcessor.buildReceiptPdf(event, fileUploadManager, language, templateManager, reservationModel, extensionManager);
-            default ->
-                TemplateProcessor.buildInvoicePdf(event, fileUploadManager, language, templateManager, reservationModel, extensionManager);
-        };
-
-        if (pdf.isPresent()) {
+    private void addPdfsToZip(Event event, ZipOutputStream zipOS, List<Pair<TicketReservation, BillingDocument>> documents) throws IOException {
+        var pdfs = TemplateProcessor.renderBillingDocumentsPdf(event, documents.stream()
+            .map(pair -> new TemplateProcessor.BillingDocumentPDF(pair.getRight().getType(), LocaleUtil.forLanguageTag(pair.getLeft().getUserLanguage()), pair.getRight().getModel()))
+            .collect(Collectors.toList()), fileUploadManager, templateManager, extensionManager);
+        for (int i = 0; i < documents.size(); i++) {
+            var reservation = documents.get(i).getLeft();
+            var document = documents.get(i).getRight();
             String fileName = FileUtil.getBillingDocumentFileName(event.getShortName(), reservation.getId(), document);
             var entry = new ZipEntry(fileName);
             entry.setTimeLocal(document.getGenerationTimestamp().withZoneSameInstant(event.getZoneId()).toLocalDateTime());
-            try {
-                zipOS.putNextEntry(entry);
-                StreamUtils.copy(pdf.get(), zipOS);
-            } catch (IOException e) {
-                throw new IllegalStateException(e);
-            }
+            zipOS.putNextEntry(entry);
+            StreamUtils.copy(pdfs.get(i), zipOS);
         }
     }
 
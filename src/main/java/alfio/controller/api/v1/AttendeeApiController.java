@@ -18,16 +18,13 @@ package alfio.controller.api.v1;
 
 import alfio.manager.AttendeeManager;
 import alfio.manager.support.SponsorAttendeeData;
+import alfio.manager.support.SponsorScanRequest;
 import alfio.manager.support.TicketAndCheckInResult;
-import alfio.model.SponsorScan;
 import alfio.model.result.Result;
 import alfio.model.support.TicketWithAdditionalFields;
 import alfio.repository.SponsorScanRepository;
 import alfio.util.EventUtil;
 import alfio.util.Wrappers;
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,9 +40,6 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-
-import static alfio.util.Wrappers.optionally;
 
 @RestController
 @RequestMapping("/api/attendees")
@@ -75,15 +69,12 @@ public class AttendeeApiController {
 
     @PostMapping("/sponsor-scan")
     public ResponseEntity<TicketAndCheckInResult> scanBadge(@RequestBody SponsorScanRequest request, Principal principal) {
-        return ResponseEntity.ok(attendeeManager.registerSponsorScan(request.eventName, request.ticketIdentifier, request.notes, request.leadStatus, principal.getName()));
+        return ResponseEntity.ok(attendeeManager.registerSponsorScan(request.getEventName(), request.getTicketIdentifier(), request.getNotes(), request.getLeadStatus(), principal.getName()));
     }
 
     @PostMapping("/sponsor-scan/bulk")
     public ResponseEntity<List<TicketAndCheckInResult>> scanBadges(@RequestBody List<SponsorScanRequest> requests, Principal principal) {
-        String username = principal.getName();
-        return ResponseEntity.ok(requests.stream()
-            .map(request -> attendeeManager.registerSponsorScan(request.eventName, request.ticketIdentifier, request.notes, request.leadStatus, username))
-            .collect(Collectors.toList()));
+        return ResponseEntity.ok(attendeeManager.registerSponsorScans(requests, principal.getName()));
     }
 
     @GetMapping("/{eventKey}/sponsor-scan/mine")
@@ -121,25 +112,4 @@ public class AttendeeApiController {
         return new ResponseEntity<>(HttpStatus.NOT_FOUND);
     }
 
-    @Getter
-    public static class SponsorScanRequest {
-        private final String eventName;
-        private final String ticketIdentifier;
-        private final String notes;
-        private final SponsorScan.LeadStatus leadStatus;
-
-        @JsonCreator
-        public SponsorScanRequest(@JsonProperty("eventName") String eventName,
-                                  @JsonProperty("ticketIdentifier") String ticketIdentifier,
-                                  @JsonProperty("notes") String notes,
-                                  @JsonProperty("leadStatus") String leadStatus) {
-            this.eventName = eventName;
-            this.ticketIdentifier = ticketIdentifier;
-            this.notes = notes;
-            this.leadStatus = Optional.ofNullable(leadStatus)
-                .flatMap(l -> optionally(() -> SponsorScan.LeadStatus.valueOf(l)))
-                .orElse(SponsorScan.LeadStatus.WARM);
-        }
-    }
-
 }
@@ -42,11 +42,26 @@ public class AnalyticsConfiguration {
 
 
     public static AnalyticsConfiguration build(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf, HttpSession session) {
+        return build(conf).withSession(session);
+    }
+
+    /**
+     * @param conf the configuration
+     * @return an {@link AnalyticsConfiguration} which is not bound to any session
+     */
+    public static AnalyticsConfiguration build(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf) {
         var googAnalyticsKey = StringUtils.trimToNull(conf.get(GOOGLE_ANALYTICS_KEY).getValueOrNull());
         var googAnalyticsScrambled = conf.get(GOOGLE_ANALYTICS_ANONYMOUS_MODE).getValueAsBooleanOrDefault();
+        return new AnalyticsConfiguration(googAnalyticsKey, googAnalyticsScrambled, null);
+    }
 
+    /**
+     * @param session the current session
+     * @return a copy of this configuration, with the clientId bound to the given session
+     */
+    public AnalyticsConfiguration withSession(HttpSession session) {
         var sessionId = session.getId();
-        var clientId = googAnalyticsKey != null && googAnalyticsScrambled && sessionId != null ? DigestUtils.sha256Hex(sessionId) : null;
-        return new AnalyticsConfiguration(googAnalyticsKey, googAnalyticsScrambled, clientId);
+        var clientId = googleAnalyticsKey != null && googleAnalyticsScrambledInfo && sessionId != null ? DigestUtils.sha256Hex(sessionId) : null;
+        return new AnalyticsConfiguration(googleAnalyticsKey, googleAnalyticsScrambledInfo, clientId);
     }
 }
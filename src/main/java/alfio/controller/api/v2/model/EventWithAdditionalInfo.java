@@ -114,6 +114,18 @@ public class EventWithAdditionalInfo implements DateValidity, ApiPurchaseContext
         this.canApplySubscriptions = canApplySubscriptions;
     }
 
+    /**
+     * @param analyticsConfiguration the analytics configuration for the current session
+     * @param availableTicketsCount the current availability
+     * @return a copy of this object, bound to the current request
+     */
+    public EventWithAdditionalInfo withRequestData(AnalyticsConfiguration analyticsConfiguration, Integer availableTicketsCount) {
+        return new EventWithAdditionalInfo(event, mapUrl, organization, description, bankAccount, bankAccountOwner,
+            formattedBeginDate, formattedBeginTime, formattedEndDate, formattedEndTime,
+            invoicingConfiguration, captchaConfiguration, assignmentConfiguration, promotionsConfiguration, analyticsConfiguration,
+            offlinePaymentConfiguration, i18nOverride, availableTicketsCount, customCss, canApplySubscriptions);
+    }
+
     public String getShortName() {
         return event.getShortName();
     }
@@ -21,6 +21,7 @@ import alfio.controller.api.v2.model.EventWithAdditionalInfo;
 import alfio.controller.api.v2.model.TicketCategory;
 import alfio.controller.api.v2.model.*;
 import alfio.controller.api.v2.user.support.EventLoader;
+import alfio.controller.api.v2.user.support.PublicEventCache;
 import alfio.controller.decorator.SaleableAdditionalService;
 import alfio.controller.decorator.SaleableTicketCategory;
 import alfio.controller.form.ReservationForm;
@@ -91,6 +92,7 @@ public class EventApiV2Controller {
     private final EventLoader eventLoader;
     private final ExtensionManager extensionManager;
     private final ClockProvider clockProvider;
+    private final PublicEventCache publicEventCache;
 
     public EventApiV2Controller(EventManager eventManager,
                                 EventRepository eventRepository,
@@ -111,7 +113,8 @@ public class EventApiV2Controller {
                                 PromoCodeRequestManager promoCodeRequestManager,
                                 EventLoader eventLoader,
                                 ExtensionManager extensionManager,
-                                ClockProvider clockProvider) {
+                                ClockProvider clockProvider,
+                                PublicEventCache publicEventCache) {
         this.eventManager = eventManager;
         this.eventRepository = eventRepository;
         this.configurationManager = configurationManager;
@@ -132,15 +135,22 @@ public class EventApiV2Controller {
         this.eventLoader = eventLoader;
         this.extensionManager = extensionManager;
         this.clockProvider = clockProvider;
+        this.publicEventCache = publicEventCache;
     }
 
 
     @GetMapping("events")
     public ResponseEntity<List<BasicEventInfo>> listEvents(SearchOptions searchOptions) {
+        var listing = publicEventCache.getListing(searchOptions, this::loadPublishedEvents);
+        var headers = getCorsHeaders();
+        headers.setETag(listing.eTag());
+        return new ResponseEntity<>(listing.events(), headers, HttpStatus.OK);
+    }
 
+    private List<BasicEventInfo> loadPublishedEvents(SearchOptions searchOptions) {
         var contentLanguages = i18nManager.getAvailableLanguages();
 
-        var events = eventManager.getPublishedEvents(searchOptions)
+        return eventManager.getPublishedEvents(searchOptions)
             .stream()
             .map(e -> {
                 var messageSource = messageSourceManager.getMessageSourceFor(e);
@@ -151,12 +161,15 @@ public class EventApiV2Controller {
                     e.getContentLanguages().stream().map(cl -> new Language(cl.getLocale().getLanguage(), cl.getDisplayLanguage())).toList());
             })
             .toList();
-        return new ResponseEntity<>(events, getCorsHeaders(), HttpStatus.OK);
     }
 
     @GetMapping("event/{eventName}")
     public ResponseEntity<EventWithAdditionalInfo> getEvent(@PathVariable("eventName") String eventName, HttpSession session) {
-        return eventLoader.loadEventInfo(eventName, session).map(eventWithAdditionalInfo -> new ResponseEntity<>(eventWithAdditionalInfo, getCorsHeaders(), HttpStatus.OK))
+        return eventLoader.loadEventInfoWithETag(eventName, session).map(eventInfoAndETag -> {
+                var headers = getCorsHeaders();
+                headers.setETag(eventInfoAndETag.getRight());
+                return new ResponseEntity<>(eventInfoAndETag.getLeft(), headers, HttpStatus.OK);
+            })
             .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
     }
 
@@ -196,6 +209,12 @@ public class EventApiV2Controller {
             final ZonedDateTime now = event.now(clockProvider);
             //hide access restricted ticket categories
             var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId());
+            var availableTickets = ticketReservationManager.availableTicketsSnapshot(event);
+            // the usage of the promo code does not depend on the category, so we count it only once
+            int confirmedPromoCodeUsage = promoCodeDiscount
+                .filter(promoCode -> specialCode.isEmpty() && promoCode.getMaxUsage() != null)
+                .map(promoCode -> promoCodeRepository.countConfirmedPromoCode(promoCode.getId(), categoriesOrNull(promoCode), null, categoriesOrNull(promoCode) != null ? "X" : null))
+                .orElse(0);
 
             List<SaleableTicketCategory> saleableTicketCategories = ticketCategories.stream()
                 .filter(c -> !c.isAccessRestricted() || shouldDisplayRestrictedCategory(specialCode, c, promoCodeDiscount))
@@ -205,10 +224,10 @@ public class EventApiV2Controller {
                     if (specialCode.isPresent()) {
                         maxTickets = Math.min(1, maxTickets);
                     } else if (filteredPromoCode != null && filteredPromoCode.getMaxUsage() != null) {
-                        maxTickets = filteredPromoCode.getMaxUsage() - promoCodeRepository.countConfirmedPromoCode(filteredPromoCode.getId(), categoriesOrNull(filteredPromoCode), null, categoriesOrNull(filteredPromoCode) != null ? "X" : null);
+                        maxTickets = filteredPromoCode.getMaxUsage() - confirmedPromoCodeUsage;
                     }
                     return new SaleableTicketCategory(category,
-                        now, event, ticketReservationManager.countAvailableTickets(event, category), maxTickets,
+                        now, event, availableTickets.applyAsInt(category), maxTickets,
                         filteredPromoCode);
                 })
                 .toList();
@@ -27,6 +27,8 @@ import alfio.model.modification.support.LocationDescriptor;
 import alfio.model.system.ConfigurationKeys;
 import alfio.repository.*;
 import alfio.repository.user.OrganizationRepository;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpSession;
@@ -46,6 +48,7 @@ public class EventLoader {
     private final TicketRepository ticketRepository;
     private final PromoCodeDiscountRepository promoCodeRepository;
     private final SubscriptionRepository subscriptionRepository;
+    private final PublicEventCache publicEventCache;
 
     public EventLoader(EventRepository eventRepository,
                        MessageSourceManager messageSourceManager,
@@ -55,7 +58,8 @@ public class EventLoader {
                        TicketCategoryRepository ticketCategoryRepository,
                        TicketRepository ticketRepository,
                        PromoCodeDiscountRepository promoCodeRepository,
-                       SubscriptionRepository subscriptionRepository) {
+                       SubscriptionRepository subscriptionRepository,
+                       PublicEventCache publicEventCache) {
         this.eventRepository = eventRepository;
         this.messageSourceManager = messageSourceManager;
         this.eventDescriptionRepository = eventDescriptionRepository;
@@ -65,15 +69,41 @@ public class EventLoader {
         this.ticketRepository = ticketRepository;
         this.promoCodeRepository = promoCodeRepository;
         this.subscriptionRepository = subscriptionRepository;
+        this.publicEventCache = publicEventCache;
     }
 
     public Optional<EventWithAdditionalInfo> loadEventInfo(String eventName, HttpSession session) {
+        return loadEventInfoWithETag(eventName, session).map(Pair::getLeft);
+    }
+
+    /**
+     * Loads the public information of an event, starting from a cached snapshot.
+     * Only the data bound to the current request (availability, analytics client id) is computed on each call.
+     *
+     * @param eventName the event short name
+     * @param session the current session
+     * @return the event information and its ETag
+     */
+    public Optional<Pair<EventWithAdditionalInfo, String>> loadEventInfoWithETag(String eventName, HttpSession session) {
+        return publicEventCache.getEvent(eventName, this::buildSnapshot)
+            .map(snapshot -> {
+                Integer availableTicketsCount = null;
+                if (snapshot.displayTicketsLeft()) {
+                    availableTicketsCount = ticketRepository.countFreeTicketsForPublicStatistics(snapshot.eventId());
+                }
+                var eventInfo = snapshot.eventInfo();
+                var analyticsConf = eventInfo.getAnalyticsConfiguration().withSession(session);
+                var eTag = DigestUtils.sha256Hex(snapshot.version() + ":" + availableTicketsCount + ":" + analyticsConf.getClientId());
+                return Pair.of(eventInfo.withRequestData(analyticsConf, availableTicketsCount), "\"" + eTag + "\"");
+            });
+    }
+
+    private Optional<PublicEventCache.EventSnapshot> buildSnapshot(String eventName) {
         return eventRepository.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED)//
             .map(event -> {
                 //
-                var messageSourceAndOverride = messageSourceManager.getMessageSourceForPurchaseContextAndOverride(event);
-                var messageSource = messageSourceAndOverride.getLeft();
-                var i18nOverride = messageSourceAndOverride.getRight();
+                var overrides = messageSourceManager.getOverridesFor(event);
+                var messageSource = overrides.messageSource();
 
                 var descriptions = Formatters.applyCommonMark(eventDescriptionRepository.findDescriptionByEventIdAsMap(event.getId()), messageSource);
 
@@ -114,14 +144,11 @@ public class EventLoader {
                 var promoConf = new EventWithAdditionalInfo.PromotionsConfiguration(hasAccessPromotions, usePartnerCode);
                 //
 
-                //analytics configuration
-                var analyticsConf = AnalyticsConfiguration.build(configurationsValues, session);
+                //analytics configuration, the client id is bound to the session
+                var analyticsConf = AnalyticsConfiguration.build(configurationsValues);
                 //
 
-                Integer availableTicketsCount = null;
-                if (configurationsValues.get(DISPLAY_TICKETS_LEFT_INDICATOR).getValueAsBooleanOrDefault()) {
-                    availableTicketsCount = ticketRepository.countFreeTicketsForPublicStatistics(event.getId());
-                }
+                boolean displayTicketsLeft = configurationsValues.get(DISPLAY_TICKETS_LEFT_INDICATOR).getValueAsBooleanOrDefault();
 
                 var customCss = configurationsValues.get(EVENT_CUSTOM_CSS).getValueOrNull();
 
@@ -129,12 +156,13 @@ public class EventLoader {
 
                 var offlinePaymentConfiguration = new OfflinePaymentConfiguration(configurationsValues.get(SHOW_ONLY_BASIC_INSTRUCTIONS).getValueAsBooleanOrDefault());
 
-                return new EventWithAdditionalInfo(event, locationDescriptor.getMapUrl(), organization, descriptions,
+                var eventInfo = new EventWithAdditionalInfo(event, locationDescriptor.getMapUrl(), organization, descriptions,
                     bankAccount, bankAccountOwner,
                     formattedDates.beginDate, formattedDates.beginTime,
                     formattedDates.endDate, formattedDates.endTime,
                     invoicingConf, captchaConf, assignmentConf, promoConf, analyticsConf, offlinePaymentConfiguration,
-                    MessageSourceManager.convertPlaceholdersForEachLanguage(i18nOverride), availableTicketsCount, customCss, hasLinkedSubscription);
+                    overrides.frontendMessages(), null, customCss, hasLinkedSubscription);
+                return new PublicEventCache.EventSnapshot(event.getId(), eventInfo, displayTicketsLeft, UUID.randomUUID().toString());
             });
     }
 
@@ -0,0 +1,86 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.controller.api.v2.model.BasicEventInfo;
+import alfio.controller.api.v2.model.EventWithAdditionalInfo;
+import alfio.controller.form.SearchOptions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Keeps an immutable snapshot of the public information of the events, and of the event listing, so that
+ * the public pages can be served without hitting the database.
+ * Snapshots are evicted after every modification performed through the admin APIs
+ * (see {@link PublicEventCacheEvictionInterceptor}) and when the configuration changes. The expiration
+ * covers the modifications performed by other nodes and the events being published / archived over time.
+ */
+public class PublicEventCache {
+
+    private final Cache<String, EventSnapshot> events;
+    private final Cache<SearchOptions, EventListing> listings;
+
+    public PublicEventCache(Duration expiration) {
+        this.events = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(expiration)
+            .build();
+        this.listings = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(expiration)
+            .build();
+    }
+
+    Optional<EventSnapshot> getEvent(String eventName, Function<String, Optional<EventSnapshot>> loader) {
+        return Optional.ofNullable(events.get(eventName, name -> loader.apply(name).orElse(null)));
+    }
+
+    public EventListing getListing(SearchOptions searchOptions, Function<SearchOptions, List<BasicEventInfo>> loader) {
+        return listings.get(searchOptions, options -> new EventListing(loader.apply(options), "\"" + UUID.randomUUID() + "\""));
+    }
+
+    public void evictAll() {
+        events.invalidateAll();
+        listings.invalidateAll();
+    }
+
+    /**
+     * Public information of an event.
+     *
+     * @param eventId the event id
+     * @param eventInfo event information, without the data bound to the current request
+     * @param displayTicketsLeft whether the available tickets count must be added to the response
+     * @param version unique identifier of this snapshot, used to build the ETag
+     */
+    record EventSnapshot(int eventId, EventWithAdditionalInfo eventInfo, boolean displayTicketsLeft, String version) {
+    }
+
+    /**
+     * Published events matching a search.
+     *
+     * @param events the events
+     * @param eTag the ETag of this listing
+     */
+    public record EventListing(List<BasicEventInfo> events, String eTag) {
+    }
+}
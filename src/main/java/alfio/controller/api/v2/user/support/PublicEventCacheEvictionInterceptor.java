@@ -0,0 +1,45 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * Evicts the {@link PublicEventCache} after each modification performed through the admin APIs.
+ * Eviction is performed after the request has been completed, so the changes are already committed.
+ */
+public class PublicEventCacheEvictionInterceptor implements HandlerInterceptor {
+
+    private static final Set<String> READ_ONLY_METHODS = Set.of(HttpMethod.GET.name(), HttpMethod.HEAD.name(), HttpMethod.OPTIONS.name());
+    private final PublicEventCache publicEventCache;
+
+    public PublicEventCacheEvictionInterceptor(PublicEventCache publicEventCache) {
+        this.publicEventCache = publicEventCache;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if(!READ_ONLY_METHODS.contains(request.getMethod())) {
+            publicEventCache.evictAll();
+        }
+    }
+}
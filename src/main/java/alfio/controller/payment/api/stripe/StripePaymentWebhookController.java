@@ -16,7 +16,7 @@
  */
 package alfio.controller.payment.api.stripe;
 
-import alfio.manager.TicketReservationManager;
+import alfio.manager.PaymentWebhookInboxManager;
 import alfio.model.transaction.PaymentProxy;
 import alfio.util.RequestUtils;
 import org.springframework.http.HttpStatus;
@@ -31,10 +31,10 @@ import java.util.Map;
 @RestController
 public class StripePaymentWebhookController {
 
-    private final TicketReservationManager ticketReservationManager;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
 
-    public StripePaymentWebhookController(TicketReservationManager ticketReservationManager) {
-        this.ticketReservationManager = ticketReservationManager;
+    public StripePaymentWebhookController(PaymentWebhookInboxManager paymentWebhookInboxManager) {
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
     }
 
     @PostMapping("/api/payment/webhook/stripe/payment")
@@ -42,7 +42,7 @@ public class StripePaymentWebhookController {
                                                            HttpServletRequest request) {
         return RequestUtils.readRequest(request)
             .map(content -> {
-                var result = ticketReservationManager.processTransactionWebhook(content, stripeSignature, PaymentProxy.STRIPE, Map.of());
+                var result = paymentWebhookInboxManager.receiveTransactionWebhook(content, stripeSignature, PaymentProxy.STRIPE, Map.of());
                 if(result.isSuccessful()) {
                     return ResponseEntity.ok("OK");
                 } else if(result.isError()) {
@@ -0,0 +1,226 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import ch.digitalfondue.jfiveparse.Parser;
+import ch.digitalfondue.jfiveparse.W3CDom;
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSStreamFactory;
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder;
+import com.openhtmltopdf.pdfboxout.PDFontSupplier;
+import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Renders HTML pages to PDF.
+ * Rendering is CPU-bound, so it's performed by a bounded pool of workers, shared by the whole application.
+ * Each worker keeps its own parsed copy of the default font, since fontbox's {@link TrueTypeFont} is not thread safe,
+ * while the font files referenced by the templates ({@code alfio-internal:/...}) are read once and shared.
+ * Documents are built in memory and spill over to a temp file only if they exceed {@link #IN_MEMORY_THRESHOLD}.
+ */
+final class PdfRenderer {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfRenderer.class);
+    private static final String DEFAULT_FONT = "DejaVuSansMono.ttf";
+    private static final String DEFAULT_FONT_FAMILY = "DejaVu Sans Mono";
+    private static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_SIZE = 1000;
+    // batches are submitted in chunks, so that concurrent callers get a fair share of the workers
+    private static final int BATCH_CHUNK_SIZE = WORKERS * 4;
+    private static final long IN_MEMORY_THRESHOLD = 16L * 1024 * 1024;
+    private static final Map<String, byte[]> FONT_RESOURCES = new ConcurrentHashMap<>();
+    private static final FSStreamFactory INTERNAL_STREAM_FACTORY = new AlfioInternalFSStreamFactory();
+    private static final FSStreamFactory INVALID_PROTOCOL_STREAM_FACTORY = new InvalidProtocolFSStreamFactory();
+    private static final ThreadLocal<RenderContext> WORKER_CONTEXT = ThreadLocal.withInitial(RenderContext::new);
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(WORKERS, WORKERS,
+        60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE),
+        new BasicThreadFactory.Builder().namingPattern("pdf-renderer-%d").daemon(true).build());
+
+    private PdfRenderer() {}
+
+    static void render(String page, OutputStream os) throws IOException {
+        os.write(await(submit(page)));
+    }
+
+    /**
+     * Renders all the given pages, preserving their order.
+     */
+    static List<byte[]> renderAll(List<String> pages) throws IOException {
+        var result = new ArrayList<byte[]>(pages.size());
+        for (int i = 0; i < pages.size(); i += BATCH_CHUNK_SIZE) {
+            var futures = pages.subList(i, Math.min(i + BATCH_CHUNK_SIZE, pages.size())).stream()
+                .map(PdfRenderer::submit)
+                .collect(Collectors.toList());
+            try {
+                for (Future<byte[]> future : futures) {
+                    result.add(await(future));
+                }
+            } catch (IOException | RuntimeException e) {
+                futures.forEach(f -> f.cancel(false));
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    private static Future<byte[]> submit(String page) {
+        try {
+            return EXECUTOR.submit(() -> WORKER_CONTEXT.get().render(page));
+        } catch (RejectedExecutionException e) {
+            // all the workers are busy and the queue is full: render on the caller thread, with a one-off context
+            log.debug("PDF rendering queue is full, rendering on the current thread");
+            var task = new FutureTask<>(() -> new RenderContext().render(page));
+            task.run();
+            return task;
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for PDF rendering");
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static byte[] fontResource(String name) {
+        return FONT_RESOURCES.computeIfAbsent(name, n -> {
+            try (var is = new ClassPathResource("/alfio/font/" + n).getInputStream()) {
+                return is.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static final class RenderContext {
+        private final Parser parser = new Parser();
+        private final TrueTypeFont defaultFont = loadDefaultFont();
+
+        private byte[] render(String page) throws IOException {
+            var os = new ByteArrayOutputStream();
+            PdfRendererBuilder builder = new PdfRendererBuilder();
+            PDDocument doc = new PDDocument(MemoryUsageSetting.setupMixed(IN_MEMORY_THRESHOLD));
+            builder.usePDDocument(doc);
+            builder.toStream(os);
+            builder.useProtocolsStreamImplementation(INTERNAL_STREAM_FACTORY, "alfio-internal");
+            builder.useProtocolsStreamImplementation(INVALID_PROTOCOL_STREAM_FACTORY, "http", "https", "file", "jar");
+            builder.useFastMode();
+            builder.usePdfUaAccessbility(true);
+            builder.usePdfAConformance(PdfRendererBuilder.PdfAConformance.PDFA_3_U);
+            if (defaultFont != null) {
+                builder.useFont(new LazyFontSupplier(doc, defaultFont), DEFAULT_FONT_FAMILY, 400, BaseRendererBuilder.FontStyle.NORMAL, false);
+            }
+            builder.withW3cDocument(W3CDom.toW3CDocument(parser.parse(page)), "");
+            try (PdfBoxRenderer renderer = builder.buildPdfRenderer()) {
+                renderer.layout();
+                renderer.createPDF();
+            }
+            return os.toByteArray();
+        }
+
+        private static TrueTypeFont loadDefaultFont() {
+            try {
+                return new TTFParser().parse(new ByteArrayInputStream(fontResource(DEFAULT_FONT)));
+            } catch (IOException | IllegalStateException e) {
+                log.warn("error while loading {} font", DEFAULT_FONT, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Embeds the shared font only if the document actually uses it.
+     */
+    private static final class LazyFontSupplier extends PDFontSupplier {
+        private final PDDocument document;
+        private final TrueTypeFont font;
+        private PDFont loaded;
+
+        private LazyFontSupplier(PDDocument document, TrueTypeFont font) {
+            super(null);
+            this.document = document;
+            this.font = font;
+        }
+
+        @Override
+        public PDFont supply() {
+            if (loaded == null) {
+                try {
+                    loaded = PDType0Font.load(document, font, false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return loaded;
+        }
+    }
+
+    private static class AlfioInternalFSStreamFactory implements FSStreamFactory {
+
+        @Override
+        public FSStream getUrl(String url) {
+            return new FSStream() {
+                @Override
+                public InputStream getStream() {
+                    String urlWithoutProtocol = url.substring("alfio-internal:/".length());
+                    return new ByteArrayInputStream(fontResource(urlWithoutProtocol));
+                }
+
+                @Override
+                public Reader getReader() {
+                    return new InputStreamReader(getStream(), StandardCharsets.UTF_8);
+                }
+            };
+        }
+    }
+
+    private static class InvalidProtocolFSStreamFactory implements FSStreamFactory {
+
+        @Override
+        public FSStream getUrl(String url) {
+            throw new IllegalStateException(new TemplateProcessor.TemplateAccessException("Protocol for resource '" + url + "' is not supported"));
+        }
+    }
+}
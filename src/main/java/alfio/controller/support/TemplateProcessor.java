@@ -22,22 +22,12 @@ import alfio.manager.support.PartialTicketTextGenerator;
 import alfio.model.*;
 import alfio.model.user.Organization;
 import alfio.util.EventUtil;
-import alfio.util.ImageUtil;
 import alfio.util.TemplateManager;
 import alfio.util.TemplateResource;
-import ch.digitalfondue.jfiveparse.Parser;
-import ch.digitalfondue.jfiveparse.W3CDom;
-import com.openhtmltopdf.extend.FSStream;
-import com.openhtmltopdf.extend.FSStreamFactory;
-import com.openhtmltopdf.pdfboxout.PdfBoxFontResolver;
-import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
-import org.apache.pdfbox.io.MemoryUsageSetting;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.springframework.core.io.ClassPathResource;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -91,12 +81,40 @@ public final class TemplateProcessor {
                                        Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues,
                                        ExtensionManager extensionManager) throws IOException {
         Optional<TemplateResource.ImageData> imageData = extractImageModel(event, fileUploadManager);
-        List<TicketFieldConfigurationDescriptionAndValue> fields = retrieveFieldValues.apply(ticketWithMetadata.getTicket());
-        Map<String, Object> model = TemplateResource.buildModelForTicketPDF(organization, event, ticketReservation, ticketCategory, ticketWithMetadata, imageData, reservationID,
+        var ticket = new PDFTicket(language, ticketReservation, ticketWithMetadata, ticketCategory, reservationID);
+        renderToPdf(renderTicketPage(event, organization, ticket, imageData, templateManager, retrieveFieldValues), os, extensionManager, event);
+    }
+
+    /**
+     * Renders the PDF of many tickets of the same event in one pass. The event assets are loaded only once.
+     *
+     * @return the PDFs, in the same order as the given tickets
+     */
+    public static List<byte[]> renderPDFTickets(Event event,
+                                                Organization organization,
+                                                List<PDFTicket> tickets,
+                                                TemplateManager templateManager,
+                                                FileUploadManager fileUploadManager,
+                                                Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues,
+                                                ExtensionManager extensionManager) throws IOException {
+        Optional<TemplateResource.ImageData> imageData = extractImageModel(event, fileUploadManager);
+        var pages = tickets.stream()
+            .map(ticket -> renderTicketPage(event, organization, ticket, imageData, templateManager, retrieveFieldValues))
+            .collect(Collectors.toList());
+        return renderAllToPdf(pages, extensionManager, event);
+    }
+
+    private static String renderTicketPage(Event event,
+                                           Organization organization,
+                                           PDFTicket ticket,
+                                           Optional<TemplateResource.ImageData> imageData,
+                                           TemplateManager templateManager,
+                                           Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues) {
+        List<TicketFieldConfigurationDescriptionAndValue> fields = retrieveFieldValues.apply(ticket.ticketWithMetadata().getTicket());
+        Map<String, Object> model = TemplateResource.buildModelForTicketPDF(organization, event, ticket.reservation(), ticket.category(), ticket.ticketWithMetadata(), imageData, ticket.reservationID(),
             fields.stream().collect(Collectors.toMap(TicketFieldConfigurationDescriptionAndValue::getName, TicketFieldConfigurationDescriptionAndValue::getValueDescription)));
 
-        String page = templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, model, language).getTextPart();
-        renderToPdf(page, os, extensionManager, event);
+        return templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, model, ticket.language()).getTextPart();
     }
 
     public static void renderToPdf(String page, OutputStream os, ExtensionManager extensionManager, PurchaseContext purchaseContext) throws IOException {
@@ -104,58 +122,35 @@ public final class TemplateProcessor {
         if(extensionManager.handlePdfTransformation(page, purchaseContext, os)) {
             return;
         }
-        PdfRendererBuilder builder = new PdfRendererBuilder();
-        PDDocument doc = new PDDocument(MemoryUsageSetting.setupTempFileOnly());
-        builder.usePDDocument(doc);
-        builder.toStream(os);
-        builder.useProtocolsStreamImplementation(new AlfioInternalFSStreamFactory(), "alfio-internal");
-        builder.useProtocolsStreamImplementation(new InvalidProtocolFSStreamFactory(), "http", "https", "file", "jar");
-        builder.useFastMode();
-        builder.usePdfUaAccessbility(true);
-        builder.usePdfAConformance(PdfRendererBuilder.PdfAConformance.PDFA_3_U);
-
-        var parser = new Parser();
-
-        builder.withW3cDocument(W3CDom.toW3CDocument(parser.parse(page)), "");
-        try (PdfBoxRenderer renderer = builder.buildPdfRenderer()) {
-            File defaultFont = ImageUtil.getDejaVuSansMonoFont();
-            if (defaultFont != null) {
-                renderer.getFontResolver().addFont(defaultFont, "DejaVu Sans Mono", null, null, false, PdfBoxFontResolver.FontGroup.MAIN);
-            }
-            renderer.layout();
-            renderer.createPDF();
-        }
+        PdfRenderer.render(page, os);
     }
 
-    private static class AlfioInternalFSStreamFactory implements FSStreamFactory {
-
-        @Override
-        public FSStream getUrl(String url) {
-            return new FSStream() {
-                @Override
-                public InputStream getStream() {
-                    String urlWithoutProtocol = url.substring("alfio-internal:/".length());
-                    try {
-                        return new ClassPathResource("/alfio/font/" + urlWithoutProtocol).getInputStream();
-                    } catch (IOException e) {
-                        throw new IllegalStateException(e);
-                    }
-                }
-
-                @Override
-                public Reader getReader() {
-                    return new InputStreamReader(getStream(), StandardCharsets.UTF_8);
-                }
-            };
+    /**
+     * Renders the given pages, preserving their order. Pages are rendered in parallel, see {@link PdfRenderer}.
+     */
+    public static List<byte[]> renderAllToPdf(List<String> pages, ExtensionManager extensionManager, PurchaseContext purchaseContext) throws IOException {
+        var result = new ArrayList<byte[]>(Collections.nCopies(pages.size(), null));
+        var toBeRendered = new ArrayList<Integer>();
+        for (int i = 0; i < pages.size(); i++) {
+            var os = new ByteArrayOutputStream();
+            if(extensionManager.handlePdfTransformation(pages.get(i), purchaseContext, os)) {
+                result.set(i, os.toByteArray());
+            } else {
+                toBeRendered.add(i);
+            }
         }
+        var rendered = PdfRenderer.renderAll(toBeRendered.stream().map(pages::get).collect(Collectors.toList()));
+        for (int i = 0; i < rendered.size(); i++) {
+            result.set(toBeRendered.get(i), rendered.get(i));
+        }
+        return result;
     }
 
-    private static class InvalidProtocolFSStreamFactory implements FSStreamFactory {
-
-        @Override
-        public FSStream getUrl(String url) {
-            throw new IllegalStateException(new TemplateAccessException("Protocol for resource '" + url + "' is not supported"));
-        }
+    public record PDFTicket(Locale language,
+                            TicketReservation reservation,
+                            TicketWithMetadataAttributes ticketWithMetadata,
+                            TicketCategory category,
+                            String reservationID) {
     }
 
     public static class TemplateAccessException  extends IllegalStateException {
@@ -202,6 +197,41 @@ public final class TemplateProcessor {
         return templateManager.renderTemplate(purchaseContext, templateResource, model, language).getTextPart();
     }
 
+    /**
+     * Renders many billing documents of the same purchase context in one pass. The purchase context assets are loaded only once.
+     *
+     * @return the PDFs, in the same order as the given documents
+     */
+    public static List<byte[]> renderBillingDocumentsPdf(PurchaseContext purchaseContext,
+                                                         List<BillingDocumentPDF> documents,
+                                                         FileUploadManager fileUploadManager,
+                                                         TemplateManager templateManager,
+                                                         ExtensionManager extensionManager) throws IOException {
+        Optional<TemplateResource.ImageData> imageData = extractImageModel(purchaseContext, fileUploadManager);
+        var pages = documents.stream()
+            .map(document -> {
+                var model = document.model();
+                imageData.ifPresent(data -> {
+                    model.put("eventImage", data.getEventImage());
+                    model.put("imageWidth", data.getImageWidth());
+                    model.put("imageHeight", data.getImageHeight());
+                });
+                var templateResource = switch (document.type()) {
+                    case CREDIT_NOTE -> TemplateResource.CREDIT_NOTE_PDF;
+                    case RECEIPT -> TemplateResource.RECEIPT_PDF;
+                    default -> TemplateResource.INVOICE_PDF;
+                };
+                return templateManager.renderTemplate(purchaseContext, templateResource, model, document.language()).getTextPart();
+            })
+            .collect(Collectors.toList());
+        return renderAllToPdf(pages, extensionManager, purchaseContext);
+    }
+
+    public record BillingDocumentPDF(BillingDocument.Type type,
+                                     Locale language,
+                                     Map<String, Object> model) {
+    }
+
     public static Optional<byte[]> buildBillingDocumentPdf(BillingDocument.Type documentType, PurchaseContext purchaseContext, FileUploadManager fileUploadManager, Locale language, TemplateManager templateManager, Map<String, Object> model, ExtensionManager extensionManager) {
         return switch (documentType) {
             case INVOICE ->
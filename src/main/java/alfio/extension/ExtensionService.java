@@ -165,6 +165,11 @@ public class ExtensionService {
             extensionRepository.update(script.getPath(), script.getName(), extensionMetadata.getDisplayName(), hash, script.isEnabled(), extensionMetadata.isAsync(), script.getScript(), extensionMetadata);
         }
 
+        if(previousPath != null && previousName != null) {
+            scriptingExecutionService.invalidateCompiledScript(previousPath, previousName);
+        }
+        scriptingExecutionService.invalidateCompiledScript(script.getPath(), script.getName());
+
         int extensionId = extensionRepository.getExtensionIdFor(script.getPath(), script.getName());
 
         for (String event : extensionMetadata.getEvents()) {
@@ -250,12 +255,14 @@ public class ExtensionService {
     @Transactional
     public void toggle(String path, String name, boolean status) {
         extensionRepository.toggle(path, name, status);
+        scriptingExecutionService.invalidateCompiledScript(path, name);
     }
 
     @Transactional
     public void delete(String path, String name) {
         extensionRepository.deleteEventsForPath(path, name);
         extensionRepository.deleteScriptForPath(path, name);
+        scriptingExecutionService.invalidateCompiledScript(path, name);
     }
 
     @Transactional(readOnly = true)
@@ -378,10 +385,12 @@ public class ExtensionService {
 
         if(params.getLeft().isEmpty()) {
             Supplier<String> scriptGetter = () -> getScript(path, name)+"\n;"+executeInstruction;
+            // the same script can be compiled with different execute instructions, so they must be part of the cache key
+            String hash = DigestUtils.sha256Hex(activePath.getHash() + executeInstruction);
             if(async) {
-                scriptingExecutionService.executeScriptAsync(path, name, activePath.getHash(), scriptGetter, context, extLogger);
+                scriptingExecutionService.executeScriptAsync(path, name, hash, scriptGetter, context, extLogger);
             } else {
-                Object res = scriptingExecutionService.executeScript(name, activePath.getHash(), scriptGetter, context, expectedResult, extLogger);
+                Object res = scriptingExecutionService.executeScript(path, name, hash, scriptGetter, context, expectedResult, extLogger);
                 context.put(OUTPUT, res);
             }
         } else {
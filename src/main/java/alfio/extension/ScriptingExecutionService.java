@@ -26,6 +26,7 @@ import alfio.manager.system.AdminJobManager;
 import alfio.repository.system.AdminJobQueueRepository;
 import alfio.util.ClockProvider;
 import alfio.util.Json;
+import alfio.util.MetricsUtil;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
@@ -41,6 +42,7 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -79,6 +81,13 @@ public class ScriptingExecutionService {
         })
         .build();
 
+    // compiled scripts are keyed by (path, name, hash): as the hash is derived from the script source,
+    // a stale entry can never be returned after an update, invalidation only frees up memory sooner
+    private final Cache<CompiledScriptKey, Script> compiledScripts = Caffeine.newBuilder()
+        .maximumSize(500)
+        .expireAfterAccess(Duration.ofHours(12))
+        .build();
+
     static {
         ContextFactory.initGlobal(new SandboxContextFactory());
     }
@@ -104,8 +113,19 @@ public class ScriptingExecutionService {
         }
     }
 
-    public <T> T executeScript(String name, String hash, Supplier<String> scriptFetcher, Map<String, Object> params, Class<T> clazz, ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, scriptFetcher.get(), params, clazz, extensionLogger);
+    public <T> T executeScript(String path, String name, String hash, Supplier<String> scriptFetcher, Map<String, Object> params, Class<T> clazz, ExtensionLogger extensionLogger) {
+        var key = new CompiledScriptKey(path, name, hash);
+        return executeScriptFinally(name, cx -> compiledScripts.get(key, k -> cx.compileString(scriptFetcher.get(), name, 1, null)), params, clazz, extensionLogger);
+    }
+
+    /**
+     * Removes all the compiled versions of the given script from the cache.
+     *
+     * @param path the script path
+     * @param name the script name
+     */
+    public void invalidateCompiledScript(String path, String name) {
+        compiledScripts.asMap().keySet().removeIf(key -> key.path().equals(path) && key.name().equals(name));
     }
 
     public void executeScriptAsync(String path,
@@ -117,7 +137,7 @@ public class ScriptingExecutionService {
         Optional.ofNullable(asyncExecutors.get(path, key -> executorSupplier.get()))
             .ifPresent(it -> it.execute(() -> {
                 try {
-                    executeScript(name, hash, scriptFetcher, params, Object.class, extensionLogger);
+                    executeScript(path, name, hash, scriptFetcher, params, Object.class, extensionLogger);
                 } catch (AlfioScriptingException | IllegalStateException ex) {
                     // we got an error while executing the script. We must now re-schedule the script to be executed again
                     // at a later time
@@ -146,7 +166,10 @@ public class ScriptingExecutionService {
     }
 
     public <T> T executeScript(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
-        return executeScriptFinally(name, script, params, clazz, extensionLogger);
+        return executeScriptFinally(name, cx -> cx.compileString(script, name, 1, null), params, clazz, extensionLogger);
+    }
+
+    private record CompiledScriptKey(String path, String name, String hash) {
     }
 
     public static class JavaClassInterop {
@@ -169,7 +192,9 @@ public class ScriptingExecutionService {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T executeScriptFinally(String name, String script, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
+    private <T> T executeScriptFinally(String name, Function<Context, Script> scriptProvider, Map<String, Object> params, Class<T> clazz,  ExtensionLogger extensionLogger) {
+        var sample = MetricsUtil.startTimer();
+        String outcome = MetricsUtil.FAILURE;
         Context cx = Context.enter();
         try {
             if(params == null) {
@@ -196,8 +221,9 @@ public class ScriptingExecutionService {
                 }
             }
             Object res;
-            res = cx.evaluateString(scope, script, name, 1, null);
+            res = scriptProvider.apply(cx).exec(cx, scope);
             extensionLogger.logSuccess("Script executed successfully.");
+            outcome = MetricsUtil.SUCCESS;
             if (res instanceof NativeJavaObject nativeRes) {
                 return (T) nativeRes.unwrap();
             } else if(clazz.isInstance(res)) {
@@ -230,6 +256,7 @@ public class ScriptingExecutionService {
             throw new IllegalStateException(ex);
         } finally {
             Context.exit();
+            MetricsUtil.stopTimer(sample, MetricsUtil.EXTENSION_EXECUTION, "extension", name, MetricsUtil.OUTCOME, outcome);
         }
     }
 
@@ -29,6 +29,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.Map;
 
@@ -59,6 +60,9 @@ public class Jobs {
     private final TicketReservationManager ticketReservationManager;
     private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
     private final AdminJobManager adminJobManager;
+    private final EventStatisticsManager eventStatisticsManager;
+    private final PaymentWebhookInboxManager paymentWebhookInboxManager;
+    private final CheckInManager checkInManager;
 
     public Jobs(AdminReservationRequestManager adminReservationRequestManager,
                 FileUploadManager fileUploadManager,
@@ -66,7 +70,10 @@ public class Jobs {
                 SpecialPriceTokenGenerator specialPriceTokenGenerator,
                 TicketReservationManager ticketReservationManager,
                 WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
-                AdminJobManager adminJobManager) {
+                AdminJobManager adminJobManager,
+                EventStatisticsManager eventStatisticsManager,
+                PaymentWebhookInboxManager paymentWebhookInboxManager,
+                CheckInManager checkInManager) {
         this.adminReservationRequestManager = adminReservationRequestManager;
         this.fileUploadManager = fileUploadManager;
         this.notificationManager = notificationManager;
@@ -74,6 +81,9 @@ public class Jobs {
         this.ticketReservationManager = ticketReservationManager;
         this.waitingQueueSubscriptionProcessor = waitingQueueSubscriptionProcessor;
         this.adminJobManager = adminJobManager;
+        this.eventStatisticsManager = eventStatisticsManager;
+        this.paymentWebhookInboxManager = paymentWebhookInboxManager;
+        this.checkInManager = checkInManager;
     }
 
 
@@ -148,6 +158,55 @@ public class Jobs {
     }
 
 
+    @Scheduled(fixedRate = FIVE_SECONDS)
+    public void processPaymentWebhooks() {
+        log.trace("running job processPaymentWebhooks");
+        try {
+            long start = System.currentTimeMillis();
+            int processed = paymentWebhookInboxManager.processPendingWebhooks();
+            if(processed > 0) {
+                log.info("ProcessPaymentWebhooks: processed {} notifications. Elapsed {} ms", processed, System.currentTimeMillis() - start);
+            }
+        } finally {
+            log.trace("end job processPaymentWebhooks");
+        }
+    }
+
+    @Scheduled(fixedRate = ONE_MINUTE)
+    public void completeDeferredConfirmations() {
+        log.trace("running job completeDeferredConfirmations");
+        try {
+            int processed = ticketReservationManager.completeDeferredConfirmations();
+            if(processed > 0) {
+                log.info("CompleteDeferredConfirmations: processed {} confirmations", processed);
+            }
+        } finally {
+            log.trace("end job completeDeferredConfirmations");
+        }
+    }
+
+    @Scheduled(cron = EVERY_HOUR)
+    public void cleanupProcessedPaymentWebhooks() {
+        log.trace("running job cleanupProcessedPaymentWebhooks");
+        try {
+            // providers might retry a notification for a few days
+            paymentWebhookInboxManager.cleanupProcessedWebhooks(ZonedDateTime.now().minusDays(7));
+        } finally {
+            log.trace("end job cleanupProcessedPaymentWebhooks");
+        }
+    }
+
+    @Scheduled(cron = EVERY_HOUR)
+    public void cleanupOfflineCheckInChanges() {
+        log.trace("running job cleanupOfflineCheckInChanges");
+        try {
+            // check-in apps might still be syncing for a few days after the end of the event
+            checkInManager.cleanupOfflineCheckInChanges(ZonedDateTime.now().minusDays(7));
+        } finally {
+            log.trace("end job cleanupOfflineCheckInChanges");
+        }
+    }
+
     @Scheduled(fixedRate = THIRTY_MINUTES)
     public void sendOfflinePaymentReminder() {
         log.trace("running job sendOfflinePaymentReminder");
@@ -175,7 +234,11 @@ public class Jobs {
         try {
             //cleanup reservation that have a expiration older than "now minus 10 minutes": this give some additional slack.
             final Date expirationDate = DateUtils.addMinutes(new Date(), -10);
-            ticketReservationManager.cleanupExpiredReservations(expirationDate);
+            long start = System.currentTimeMillis();
+            int released = ticketReservationManager.cleanupExpiredReservations(expirationDate);
+            if(released > 0) {
+                log.info("CleanupExpiredPendingReservation: released {} reservations. Elapsed {} ms", released, System.currentTimeMillis() - start);
+            }
             ticketReservationManager.cleanupExpiredOfflineReservations(expirationDate);
             ticketReservationManager.markExpiredInPaymentReservationAsStuck(expirationDate);
         } finally {
@@ -184,6 +247,17 @@ public class Jobs {
     }
 
 
+    @Scheduled(fixedRate = THIRTY_SECONDS)
+    public void compactTicketCount() {
+        log.trace("running job compactTicketCount");
+        try {
+            eventStatisticsManager.compactTicketCount();
+        } finally {
+            log.trace("end job compactTicketCount");
+        }
+    }
+
+
     @Scheduled(fixedRate = THIRTY_SECONDS)
     public void processReleasedTickets() {
         log.trace("running job processReleasedTickets");
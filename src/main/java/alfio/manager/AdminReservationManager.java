@@ -51,7 +51,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -75,7 +74,6 @@ import static alfio.model.Audit.EntityType.TICKET;
 import static alfio.model.Audit.EventType.CANCEL_TICKET;
 import static alfio.model.Audit.EventType.UPDATE_TICKET;
 import static alfio.model.modification.DateTimeModification.fromZonedDateTime;
-import static alfio.util.EventUtil.generateEmptyTickets;
 import static alfio.util.MonetaryUtil.unitToCents;
 import static alfio.util.Wrappers.optionally;
 import static java.util.Collections.singletonList;
@@ -256,6 +254,79 @@ public class AdminReservationManager {
         });
     }
 
+    /**
+     * Makes sure that the given category has enough free tickets for all the attendees, adding seats / tickets in a single step
+     * if needed. Used by the bulk import in order to avoid growing the category once per reservation.
+     * The capacity which is not used by the subsequent reservations must be given back using {@link #releaseUnusedTickets(Event, TicketPreAllocation, int, String)}
+     *
+     * @param event the event
+     * @param categoryId an existing category
+     * @param attendees the attendees that will be imported
+     * @param addSeatsIfNotAvailable whether the event capacity can be increased
+     * @param username the user requesting the import
+     * @return the tickets which have been added to the category and to the event
+     */
+    public Result<TicketPreAllocation> preAllocateTickets(Event event, int categoryId, List<Attendee> attendees, boolean addSeatsIfNotAvailable, String username) {
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED);
+        TransactionTemplate template = new TransactionTemplate(transactionManager, definition);
+        return template.execute(status -> {
+            var savepoint = status.createSavepoint();
+            try {
+                var ticketsInfo = new TicketsInfo(new Category(categoryId, null, null, null), attendees, addSeatsIfNotAvailable, false);
+                Result<TicketPreAllocation> result = eventRepository.findOptionalByShortNameForUpdate(event.getShortName())
+                    .map(e -> {
+                        eventManager.checkOwnership(e, username, e.getOrganizationId());
+                        int maxTicketsBefore = ticketCategoryRepository.getByIdAndActive(categoryId, e.getId()).getMaxTickets();
+                        int seatsBefore = eventRepository.countExistingTickets(e.getId());
+                        return checkExistingCategory(ticketsInfo, e, username)
+                            .map(tc -> new TicketPreAllocation(tc.getId(),
+                                tc.isBounded() ? Math.max(tc.getMaxTickets() - maxTicketsBefore, 0) : 0,
+                                Math.max(eventRepository.countExistingTickets(e.getId()) - seatsBefore, 0)));
+                    })
+                    .orElse(Result.error(ErrorCode.EventError.NOT_FOUND));
+                if (!result.isSuccess()) {
+                    status.rollbackToSavepoint(savepoint);
+                }
+                return result;
+            } catch (Exception e) {
+                log.warn("Cannot pre-allocate {} tickets for category {}", attendees.size(), categoryId, e);
+                status.rollbackToSavepoint(savepoint);
+                return Result.error(singletonList(ErrorCode.custom("", e.getMessage())));
+            }
+        });
+    }
+
+    /**
+     * Gives back the capacity added by {@link #preAllocateTickets(Event, int, List, boolean, String)} which has not been
+     * used, so that the category and the event end up with the same size they would have had if they were grown for each
+     * successful reservation.
+     *
+     * @param event the event
+     * @param preAllocation the result of the pre-allocation
+     * @param unusedTickets the number of attendees whose reservation could not be created
+     * @param username the user requesting the import
+     */
+    public void releaseUnusedTickets(Event event, TicketPreAllocation preAllocation, int unusedTickets, String username) {
+        int eventId = event.getId();
+        int categoryRelease = Math.min(unusedTickets, preAllocation.addedToCategory());
+        if(categoryRelease > 0) {
+            TicketCategory existing = ticketCategoryRepository.getByIdAndActive(preAllocation.categoryId(), eventId);
+            var result = resizeCategory(existing, existing.getMaxTickets() - categoryRelease, event, username);
+            Validate.isTrue(result.isSuccess(), "cannot release %d tickets from category %d", categoryRelease, preAllocation.categoryId());
+        }
+        int eventRelease = Math.min(unusedTickets, preAllocation.addedToEvent());
+        if(eventRelease > 0) {
+            log.debug("removing {} extra seats from the event", eventRelease);
+            List<Integer> ids = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, eventRelease, List.of(Ticket.TicketStatus.FREE.name(), Ticket.TicketStatus.RELEASED.name()));
+            Validate.isTrue(ids.size() == eventRelease, "cannot lock enough tickets for deletion.");
+            ticketRepository.invalidateTickets(ids);
+            eventRepository.updateAvailableSeats(eventId, eventRepository.countExistingTickets(eventId));
+        }
+    }
+
+    public record TicketPreAllocation(int categoryId, int addedToCategory, int addedToEvent) {
+    }
+
     //end - the public / package protected methods below must be annotated with @Transactional
 
     @Transactional
@@ -546,7 +617,7 @@ public class AdminReservationManager {
         TicketsInfo ticketsInfo = pair.getRight();
         int categoryId = category.getId();
         List<Attendee> attendees = ticketsInfo.getAttendees();
-        List<Integer> reservedForUpdate = ticketReservationManager.reserveTickets(event.getId(), categoryId, attendees.size(), singletonList(Ticket.TicketStatus.FREE));
+        List<Integer> reservedForUpdate = ticketReservationManager.reserveTickets(event, reservationId, categoryId, attendees.size(), singletonList(Ticket.TicketStatus.FREE));
         if (reservedForUpdate.isEmpty()|| reservedForUpdate.size() != attendees.size()) {
             return Result.error(ErrorCode.CategoryError.NOT_ENOUGH_SEATS);
         }
@@ -707,22 +778,25 @@ public class AdminReservationManager {
         Event modified = increaseSeatsIfNeeded(ti, event, missingTickets, event);
         if(freeTicketsInCategory < tickets && existing.isBounded()) {
             int maxTickets = existing.getMaxTickets() + (tickets - freeTicketsInCategory);
-            TicketCategoryModification tcm = new TicketCategoryModification(existingCategoryId, existing.getName(), existing.getTicketAccessType(), maxTickets,
-                fromZonedDateTime(existing.getInception(modified.getZoneId())), fromZonedDateTime(existing.getExpiration(event.getZoneId())),
-                Collections.emptyMap(), existing.getPrice(), existing.isAccessRestricted(), "", true, existing.getCode(),
-                fromZonedDateTime(existing.getValidCheckInFrom(modified.getZoneId())),
-                fromZonedDateTime(existing.getValidCheckInTo(modified.getZoneId())),
-                fromZonedDateTime(existing.getTicketValidityStart(modified.getZoneId())),
-                fromZonedDateTime(existing.getTicketValidityEnd(modified.getZoneId())), 0,
-                existing.getTicketCheckInStrategy(), null, AlfioMetadata.empty());
-            return eventManager.updateCategory(existingCategoryId, modified, tcm, username, true);
+            return resizeCategory(existing, maxTickets, modified, username);
         }
         return Result.success(existing);
     }
 
+    private Result<TicketCategory> resizeCategory(TicketCategory existing, int maxTickets, Event event, String username) {
+        TicketCategoryModification tcm = new TicketCategoryModification(existing.getId(), existing.getName(), existing.getTicketAccessType(), maxTickets,
+            fromZonedDateTime(existing.getInception(event.getZoneId())), fromZonedDateTime(existing.getExpiration(event.getZoneId())),
+            Collections.emptyMap(), existing.getPrice(), existing.isAccessRestricted(), "", true, existing.getCode(),
+            fromZonedDateTime(existing.getValidCheckInFrom(event.getZoneId())),
+            fromZonedDateTime(existing.getValidCheckInTo(event.getZoneId())),
+            fromZonedDateTime(existing.getTicketValidityStart(event.getZoneId())),
+            fromZonedDateTime(existing.getTicketValidityEnd(event.getZoneId())), 0,
+            existing.getTicketCheckInStrategy(), null, AlfioMetadata.empty());
+        return eventManager.updateCategory(existing.getId(), event, tcm, username, true);
+    }
+
     private void createMissingTickets(Event event, int tickets) {
-        final MapSqlParameterSource[] params = generateEmptyTickets(event, Date.from(event.now(clockProvider).toInstant()), tickets, Ticket.TicketStatus.FREE).toArray(MapSqlParameterSource[]::new);
-        ticketRepository.bulkTicketInitialization(params);
+        ticketRepository.bulkTicketInitialization(event.getId(), null, 0, Date.from(event.now(clockProvider).toInstant()), Ticket.TicketStatus.FREE, tickets);
     }
 
     @Transactional
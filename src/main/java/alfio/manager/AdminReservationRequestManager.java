@@ -26,35 +26,44 @@ import alfio.repository.AdminReservationRequestRepository;
 import alfio.repository.EventRepository;
 import alfio.repository.user.UserRepository;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static alfio.model.modification.AdminReservationModification.Notification.orEmpty;
 import static java.util.Collections.singletonList;
+import static java.util.Objects.requireNonNullElseGet;
 import static java.util.Optional.ofNullable;
 
 @Component
 @Transactional
-public class AdminReservationRequestManager {
+public class AdminReservationRequestManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(AdminReservationRequestManager.class);
+    private static final int CHUNK_SIZE = 50;
+    private static final int MAX_REQUESTS_PER_CYCLE = 1000;
 
     private final AdminReservationManager adminReservationManager;
     private final EventManager eventManager;
@@ -62,19 +71,30 @@ public class AdminReservationRequestManager {
     private final AdminReservationRequestRepository adminReservationRequestRepository;
     private final EventRepository eventRepository;
     private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolExecutor importExecutor;
 
     public AdminReservationRequestManager(AdminReservationManager adminReservationManager,
                                           EventManager eventManager,
                                           UserRepository userRepository,
                                           AdminReservationRequestRepository adminReservationRequestRepository,
                                           EventRepository eventRepository,
-                                          PlatformTransactionManager transactionManager) {
+                                          PlatformTransactionManager transactionManager,
+                                          @Value("${alfio.reservation-import.workers:4}") int importWorkers) {
         this.adminReservationManager = adminReservationManager;
         this.eventManager = eventManager;
         this.userRepository = userRepository;
         this.adminReservationRequestRepository = adminReservationRequestRepository;
         this.eventRepository = eventRepository;
         this.transactionManager = transactionManager;
+        int workers = Math.max(1, importWorkers);
+        this.importExecutor = new ThreadPoolExecutor(workers, workers,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new BasicThreadFactory.Builder().namingPattern("reservation-import-%d").daemon(true).build());
+    }
+
+    @Override
+    public void destroy() {
+        importExecutor.shutdownNow();
     }
 
     public Result<AdminReservationRequestStats> getRequestStatus(String requestId, String eventName, String username) {
@@ -116,29 +136,135 @@ public class AdminReservationRequestManager {
             .orElseGet(() -> Result.error(ErrorCode.ReservationError.UPDATE_FAILED));
     }
 
-    //TODO: rewrite, and add test!
+    /**
+     * Processes the pending requests. Requests are partitioned by event and each partition is handled by a worker.
+     * Reservations lock the event row until their transaction is committed, therefore requests for the same event
+     * cannot be processed concurrently: workers are used to process different events in parallel.
+     * Within an event, requests are grouped by category and processed in chunks of {@value #CHUNK_SIZE} requests.
+     * Every chunk is committed on its own, so that the progress is visible through
+     * {@link #getRequestStatus(String, String, String)} and locks are held only for a short time.
+     *
+     * @return a Pair containing the number of successful and failed requests
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Pair<Integer, Integer> processPendingReservations() {
-        Map<Boolean, List<MapSqlParameterSource>> result = adminReservationRequestRepository.findPendingForUpdate(1000)
-            .stream()
-            .map(id -> {
-                AdminReservationRequest request = adminReservationRequestRepository.fetchCompleteById(id);
+        var partitions = adminReservationRequestRepository.findPending(MAX_REQUESTS_PER_CYCLE).stream()
+            .collect(Collectors.groupingBy(AdminReservationRequest::getEventId, LinkedHashMap::new, Collectors.toList()));
+        if(partitions.isEmpty()) {
+            return Pair.of(0, 0);
+        }
+        var executor = getImportExecutor();
+        var futures = partitions.values().stream()
+            .map(requests -> CompletableFuture.supplyAsync(() -> processEvent(requests), executor))
+            .toList();
+        return futures.stream()
+            .map(CompletableFuture::join)
+            .reduce((p1, p2) -> Pair.of(p1.getLeft() + p2.getLeft(), p1.getRight() + p2.getRight()))
+            .orElseGet(() -> Pair.of(0, 0));
+    }
+
+    private Pair<Integer, Integer> processEvent(List<AdminReservationRequest> requests) {
+        int successful = 0;
+        int failed = 0;
+        var template = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        var partitions = requests.stream().collect(Collectors.groupingBy(ImportPartition::of, LinkedHashMap::new, Collectors.toList()));
+        for (var entry : partitions.entrySet()) {
+            var partition = entry.getKey();
+            for (List<AdminReservationRequest> chunk : ListUtils.partition(entry.getValue(), CHUNK_SIZE)) {
+                Map<Boolean, List<MapSqlParameterSource>> result;
+                try {
+                    result = Objects.requireNonNull(template.execute(status -> processChunk(partition, chunk, true)));
+                } catch(Exception e) {
+                    log.warn("cannot process a chunk of " + chunk.size() + " requests for event " + partition.eventId() + ". Will retry each request without pre-allocating tickets.", e);
+                    result = processChunkWithoutPreAllocation(template, partition, chunk);
+                }
+                successful += CollectionUtils.size(result.get(true));
+                failed += CollectionUtils.size(result.get(false));
+            }
+        }
+        return Pair.of(successful, failed);
+    }
+
+    /**
+     * Fallback for chunks which could not be processed. If this fails as well, the requests are marked as failed,
+     * so that they won't be picked up again on the next run.
+     */
+    private Map<Boolean, List<MapSqlParameterSource>> processChunkWithoutPreAllocation(TransactionTemplate template,
+                                                                                       ImportPartition partition,
+                                                                                       List<AdminReservationRequest> chunk) {
+        try {
+            return Objects.requireNonNull(template.execute(status -> processChunk(partition, chunk, false)));
+        } catch(Exception e) {
+            log.error("cannot process a chunk of " + chunk.size() + " requests for event " + partition.eventId() + ". Requests will be marked as failed.", e);
+            return requireNonNullElseGet(template.execute(status -> {
+                var locked = adminReservationRequestRepository.lockPendingByIds(chunk.stream().map(AdminReservationRequest::getId).toList());
+                var params = locked.stream()
+                    .map(id -> new MapSqlParameterSource("id", id)
+                        .addValue("status", AdminReservationRequest.Status.ERROR.name())
+                        .addValue("reservationId", null)
+                        .addValue("failureCode", "internal_server_error"))
+                    .toList();
+                adminReservationRequestRepository.updateStatus(params);
+                return Map.of(true, List.<MapSqlParameterSource>of(), false, params);
+            }), Map::of);
+        }
+    }
 
-                Result<Triple<TicketReservation, List<Ticket>, Event>> reservationResult = Result.fromNullable(eventRepository.findOptionalById((int) request.getEventId()).orElse(null), ErrorCode.EventError.NOT_FOUND)
-                    .flatMap(e -> Result.fromNullable(userRepository.findOptionalById((int) request.getUserId()).map(u -> Pair.of(e, u)).orElse(null), ErrorCode.EventError.ACCESS_DENIED))
+    private Map<Boolean, List<MapSqlParameterSource>> processChunk(ImportPartition partition, List<AdminReservationRequest> chunk, boolean preAllocate) {
+        var locked = Set.copyOf(adminReservationRequestRepository.lockPendingByIds(chunk.stream().map(AdminReservationRequest::getId).toList()));
+        var requests = chunk.stream().filter(r -> locked.contains(r.getId())).toList();
+        if(requests.isEmpty()) {
+            return Map.of(true, List.of(), false, List.of());
+        }
+        var event = eventRepository.findOptionalById((int) partition.eventId());
+        var users = new HashMap<Long, Optional<User>>();
+        Function<AdminReservationRequest, Optional<User>> userLoader = r -> users.computeIfAbsent(r.getUserId(), id -> userRepository.findOptionalById(id.intValue()));
+
+        Optional<Pair<User, AdminReservationManager.TicketPreAllocation>> preAllocation = Optional.empty();
+        if(preAllocate && event.isPresent() && partition.categoryId() != null) {
+            var attendees = requests.stream().flatMap(r -> getAttendees(r).stream()).toList();
+            preAllocation = userLoader.apply(requests.get(0)).flatMap(user -> {
+                var preAllocationResult = adminReservationManager.preAllocateTickets(event.get(), partition.categoryId(), attendees, partition.addSeatsIfNotAvailable(), user.getUsername());
+                if(!preAllocationResult.isSuccess()) {
+                    log.debug("cannot pre-allocate tickets for category {}. Capacity will be checked for each request.", partition.categoryId());
+                    return Optional.empty();
+                }
+                return Optional.of(Pair.of(user, preAllocationResult.getData()));
+            });
+        }
+
+        var result = requests.stream()
+            .map(request -> {
+                Result<Triple<TicketReservation, List<Ticket>, Event>> reservationResult = Result.fromNullable(event.orElse(null), ErrorCode.EventError.NOT_FOUND)
+                    .flatMap(e -> Result.fromNullable(userLoader.apply(request).map(u -> Pair.of(e, u)).orElse(null), ErrorCode.EventError.ACCESS_DENIED))
                     .flatMap(p -> processReservation(request, p.getLeft(), p.getRight()));
-                return buildParameterSource(id, reservationResult);
+                return buildParameterSource(request.getId(), reservationResult);
             }).collect(Collectors.partitioningBy(ps -> AdminReservationRequest.Status.SUCCESS.name().equals(ps.getValue("status"))));
 
-        result.values().forEach(list -> {
-            try {
-                adminReservationRequestRepository.updateStatus(list);
-            } catch(Exception e) {
-                log.warn("cannot update the status of "+list.size()+" reservations", e);
+        // failed requests have been rolled back to their savepoint, but the pre-allocated capacity would still be committed
+        // together with the chunk. Therefore we give back what has not been used.
+        preAllocation.ifPresent(p -> {
+            var failedIds = result.get(false).stream().map(ps -> (Long) ps.getValue("id")).collect(Collectors.toSet());
+            int unusedTickets = requests.stream().filter(r -> failedIds.contains(r.getId())).mapToInt(r -> getAttendees(r).size()).sum();
+            if(unusedTickets > 0) {
+                adminReservationManager.releaseUnusedTickets(event.get(), p.getRight(), unusedTickets, p.getLeft().getUsername());
             }
         });
+        adminReservationRequestRepository.updateStatus(result.values().stream().flatMap(List::stream).toList());
+        return result;
+    }
 
-        return Pair.of(CollectionUtils.size(result.get(true)), CollectionUtils.size(result.get(false)));
+    private static List<AdminReservationModification.Attendee> getAttendees(AdminReservationRequest request) {
+        return request.getBody().getTicketsInfo().get(0).getAttendees();
+    }
 
+    private Executor getImportExecutor() {
+        // workers would not be able to see uncommitted data, so if we're already in a transaction we run everything
+        // on the current thread
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Runnable::run;
+        }
+        return importExecutor;
     }
 
     private Result<Triple<TicketReservation, List<Ticket>, Event>> processReservation(AdminReservationRequest request, Event event, User user) {
@@ -243,4 +369,18 @@ public class AdminReservationRequestManager {
             });
     }
 
+    /**
+     * Requests for the same category are processed together, in order to pre-allocate tickets once per chunk.
+     * Requests for new categories, or for more than one category, are grouped only by event.
+     */
+    record ImportPartition(long eventId, Integer categoryId, boolean addSeatsIfNotAvailable) {
+        static ImportPartition of(AdminReservationRequest request) {
+            var ticketsInfo = request.getBody().getTicketsInfo();
+            if(ticketsInfo.size() == 1 && ticketsInfo.get(0).getCategory().isExisting()) {
+                var ti = ticketsInfo.get(0);
+                return new ImportPartition(request.getEventId(), ti.getCategory().getExistingCategoryId(), ti.isAddSeatsIfNotAvailable());
+            }
+            return new ImportPartition(request.getEventId(), null, false);
+        }
+    }
 }
@@ -19,6 +19,7 @@ package alfio.manager;
 import alfio.manager.support.CheckInStatus;
 import alfio.manager.support.DefaultCheckInResult;
 import alfio.manager.support.SponsorAttendeeData;
+import alfio.manager.support.SponsorScanRequest;
 import alfio.manager.support.TicketAndCheckInResult;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -33,9 +34,10 @@ import org.springframework.stereotype.Component;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Component
 public class AttendeeManager {
@@ -92,6 +94,50 @@ public class AttendeeManager {
         return new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.SUCCESS, "success"));
     }
 
+    /**
+     * Registers the given scans. The user and the events are resolved once, and all the scans are written
+     * with a single batch.
+     *
+     * @param requests the scans
+     * @param username the current user
+     * @return the result for each scan, in the same order as the requests
+     */
+    public List<TicketAndCheckInResult> registerSponsorScans(List<SponsorScanRequest> requests, String username) {
+        int userId = userRepository.getByUsername(username).getId();
+        var results = new TicketAndCheckInResult[requests.size()];
+        var scans = new ArrayList<SponsorScan>();
+        IntStream.range(0, requests.size()).boxed()
+            .collect(Collectors.groupingBy(i -> requests.get(i).getEventName(), LinkedHashMap::new, Collectors.toList()))
+            .forEach((eventShortName, indexes) -> {
+                Optional<EventAndOrganizationId> maybeEvent = eventRepository.findOptionalEventAndOrganizationIdByShortName(eventShortName);
+                if(maybeEvent.isEmpty()) {
+                    indexes.forEach(i -> results[i] = new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found")));
+                    return;
+                }
+                int eventId = maybeEvent.get().getId();
+                var uuids = indexes.stream().map(i -> requests.get(i).getTicketIdentifier()).collect(Collectors.toSet());
+                Map<String, Ticket> ticketsByUuid = ticketRepository.findByUUIDs(uuids).stream()
+                    .collect(Collectors.toMap(Ticket::getUuid, Function.identity()));
+                var now = ZonedDateTime.now(clockProvider.withZone(eventRepository.getZoneIdByEventId(eventId)));
+                indexes.forEach(i -> {
+                    var request = requests.get(i);
+                    var ticket = ticketsByUuid.get(request.getTicketIdentifier());
+                    if(ticket == null) {
+                        results[i] = new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.TICKET_NOT_FOUND, "ticket not found"));
+                    } else if(ticket.getStatus() != Ticket.TicketStatus.CHECKED_IN) {
+                        results[i] = new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.INVALID_TICKET_STATE, "not checked-in"));
+                    } else {
+                        scans.add(new SponsorScan(userId, now, eventId, ticket.getId(), request.getNotes(), request.getLeadStatus()));
+                        results[i] = new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(CheckInStatus.SUCCESS, "success"));
+                    }
+                });
+            });
+        if(!scans.isEmpty()) {
+            sponsorScanRepository.bulkUpsert(scans);
+        }
+        return Arrays.asList(results);
+    }
+
     public Result<TicketWithAdditionalFields> retrieveTicket(String eventShortName, String ticketUid, String username) {
         Optional<Event> maybeEvent = eventRepository.findOptionalByShortName(eventShortName)
             .filter(e -> userManager.findUserOrganizations(username).stream().anyMatch(o -> o.getId() == e.getOrganizationId()));
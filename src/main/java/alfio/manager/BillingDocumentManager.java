@@ -177,6 +177,22 @@ public class BillingDocumentManager {
         return billingDocumentRepository.findById(id);
     }
 
+    /**
+     * Whether the invoice number must be assigned after the reservation confirmation has been committed.
+     * The lock on the invoice sequence is held until the transaction that allocates the number is committed, so
+     * allocating it in a short transaction of its own keeps the numbering gap-free while shortening the time spent
+     * by concurrent confirmations waiting for the lock. Not available if the invoice number is used as public
+     * reference, because the tickets are generated (and sent) before the number is known.
+     *
+     * @param purchaseContext the purchase context
+     * @return {@code true} if the allocation must be deferred
+     */
+    public boolean isInvoiceNumberAllocationDeferred(PurchaseContext purchaseContext) {
+        var conf = configurationManager.getFor(Set.of(DEFER_INVOICE_NUMBER_ALLOCATION, USE_INVOICE_NUMBER_AS_ID), purchaseContext.getConfigurationLevel());
+        return conf.get(DEFER_INVOICE_NUMBER_ALLOCATION).getValueAsBooleanOrDefault()
+            && !conf.get(USE_INVOICE_NUMBER_AS_ID).getValueAsBooleanOrDefault();
+    }
+
     @Transactional
     public Optional<String> generateInvoiceNumber(PaymentSpecification spec, TotalPrice reservationCost) {
         if(!reservationCost.requiresPayment() || !spec.isInvoiceRequested() || !configurationManager.hasAllConfigurationsForInvoice(spec.getPurchaseContext())) {
@@ -21,6 +21,7 @@ import alfio.manager.system.ConfigurationManager;
 import alfio.model.*;
 import alfio.model.Ticket.TicketStatus;
 import alfio.model.audit.ScanAudit;
+import alfio.model.poll.Poll;
 import alfio.model.support.CheckInOutputColorConfiguration;
 import alfio.model.transaction.PaymentProxy;
 import alfio.repository.*;
@@ -28,15 +29,21 @@ import alfio.repository.audit.ScanAuditRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.repository.user.UserRepository;
 import alfio.util.*;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.gson.reflect.TypeToken;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -47,11 +54,17 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -65,11 +78,21 @@ import static org.apache.commons.lang3.StringUtils.trimToEmpty;
 
 @Component
 @Transactional
-public class CheckInManager {
+public class CheckInManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(CheckInManager.class);
 
     static final Pattern CYPHER_SPLITTER = Pattern.compile("\\|");
+    // the offline check-in feed is polled by many apps at the same time, mostly before doors open.
+    // Encrypted payloads are kept by ticket version, so that each of them is built only once
+    private static final Cache<OfflinePayloadKey, OfflinePayload> OFFLINE_PAYLOADS_CACHE = Caffeine.newBuilder()
+        .maximumWeight(64L * 1024 * 1024)
+        .<OfflinePayloadKey, OfflinePayload>weigher((k, v) -> v.encrypted().length() + v.entryKey().length())
+        .expireAfterAccess(Duration.ofHours(6))
+        .build();
+    private static final int OFFLINE_FEED_CHUNK_SIZE = 1000;
+    private static final int ENCRYPTION_CHUNK_SIZE = 100;
+    private static final int ENCRYPTION_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     private final TicketRepository ticketRepository;
     private final EventRepository eventRepository;
     private final TicketReservationRepository ticketReservationRepository;
@@ -84,7 +107,22 @@ public class CheckInManager {
     private final ExtensionManager extensionManager;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
     private final PollRepository pollRepository;
+    private final CheckInFeedRepository checkInFeedRepository;
     private final ClockProvider clockProvider;
+    // PBKDF2 key derivation is expensive by design, and the same tickets are encrypted over and over
+    // while the check-in apps synchronize. Keys are cached by the SHA-256 digest of the ticket code, so that
+    // the codes (which are the QR secrets) are never kept in memory as cache keys.
+    // Only the encryption path populates the cache: decryption input is not trusted.
+    final Cache<String, SecretKeySpec> derivedKeysCache = Caffeine.newBuilder()
+        .maximumSize(100_000)
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
+    // encryption is CPU-bound: it runs on a dedicated, bounded pool instead of the common ForkJoinPool.
+    // When the queue is full, the calling thread encrypts the chunk itself.
+    private final ThreadPoolExecutor encryptionExecutor = new ThreadPoolExecutor(ENCRYPTION_WORKERS, ENCRYPTION_WORKERS,
+        60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(ENCRYPTION_WORKERS * 4),
+        new BasicThreadFactory.Builder().namingPattern("offline-check-in-encryption-%d").daemon(true).build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
 
     public CheckInManager(TicketRepository ticketRepository,
                           EventRepository eventRepository,
@@ -100,6 +138,7 @@ public class CheckInManager {
                           ExtensionManager extensionManager,
                           AdditionalServiceItemRepository additionalServiceItemRepository,
                           PollRepository pollRepository,
+                          CheckInFeedRepository checkInFeedRepository,
                           ClockProvider clockProvider) {
         this.ticketRepository = ticketRepository;
         this.eventRepository = eventRepository;
@@ -115,7 +154,14 @@ public class CheckInManager {
         this.extensionManager = extensionManager;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
         this.pollRepository = pollRepository;
+        this.checkInFeedRepository = checkInFeedRepository;
         this.clockProvider = clockProvider;
+        this.encryptionExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void destroy() {
+        encryptionExecutor.shutdownNow();
     }
 
 
@@ -201,8 +247,7 @@ public class CheckInManager {
         if(checkInStatus == OK_READY_TO_BE_CHECKED_IN) {
             checkIn(ticketIdentifier);
             TicketWithCategory ticket = descriptor.getTicket();
-            scanAuditRepository.insert(ticketIdentifier, eventId, ZonedDateTime.now(clockProvider.getClock()), user, SUCCESS, ScanAudit.Operation.SCAN);
-            auditingRepository.insert(ticket.getTicketsReservationId(), userRepository.findIdByUserName(user).orElse(null), eventId, CHECK_IN, new Date(), Audit.EntityType.TICKET, Integer.toString(descriptor.getTicket().getId()));
+            auditCheckIn(List.of(ticket), eventId, user);
             // return also additional items, if any
             return new SuccessfulCheckIn(ticket, getAdditionalServicesForTicket(ticket), loadBoxColor(ticket));
         } else if(checkInStatus == BADGE_SCAN_ALREADY_DONE || checkInStatus == OK_READY_FOR_BADGE_SCAN) {
@@ -214,6 +259,73 @@ public class CheckInManager {
         return descriptor;
     }
 
+    /**
+     * Checks in multiple tickets at once, e.g. when a scanner uploads the scans performed while offline.
+     * Tickets and categories are loaded upfront and validated in memory. Successful check-ins and their
+     * audit records are then written with batch statements.
+     * Tickets which need further processing (on-site payment, badge scan) are handed to {@link #checkIn(String, String, Optional, String, String, boolean)}.
+     *
+     * @param eventShortName the event short name
+     * @param codesByIdentifier the ticket codes, by ticket identifier (UUID)
+     * @param username the current user
+     * @param auditUser the user to be recorded in the audit
+     * @param automaticallyConfirmOnSitePayment whether to confirm on-site payments automatically
+     * @return the check-in result, by ticket identifier
+     */
+    public Map<String, TicketAndCheckInResult> bulkCheckIn(String eventShortName,
+                                                           Map<String, String> codesByIdentifier,
+                                                           String username,
+                                                           String auditUser,
+                                                           boolean automaticallyConfirmOnSitePayment) {
+        var maybeEvent = eventRepository.findOptionalByShortName(eventShortName)
+            .filter(EventManager.checkOwnership(username, organizationRepository));
+        if(maybeEvent.isEmpty()) {
+            return codesByIdentifier.keySet().stream()
+                .collect(toMap(Function.identity(), k -> new TicketAndCheckInResult(null, new DefaultCheckInResult(CheckInStatus.EVENT_NOT_FOUND, "event not found"))));
+        }
+        var event = maybeEvent.get();
+        var ticketsByUuid = codesByIdentifier.isEmpty() ? Map.<String, Ticket>of() : ticketRepository.findByUUIDsForUpdate(codesByIdentifier.keySet()).stream()
+            .collect(toMap(Ticket::getUuid, Function.identity()));
+        var categoryIds = ticketsByUuid.values().stream().map(Ticket::getCategoryId).filter(Objects::nonNull).collect(Collectors.toSet());
+        var categoriesById = categoryIds.isEmpty() ? Map.<Integer, TicketCategory>of() : ticketCategoryRepository.findByIds(categoryIds).stream()
+            .collect(toMap(TicketCategory::getId, Function.identity()));
+
+        Map<String, TicketAndCheckInResult> results = new HashMap<>();
+        List<TicketWithCategory> readyToBeCheckedIn = new ArrayList<>();
+        codesByIdentifier.forEach((identifier, code) -> {
+            var descriptor = extractStatus(Optional.of(event), Optional.ofNullable(ticketsByUuid.get(identifier)), identifier, Optional.ofNullable(code), categoriesById::get);
+            var checkInStatus = descriptor.getResult().getStatus();
+            if(checkInStatus == OK_READY_TO_BE_CHECKED_IN) {
+                readyToBeCheckedIn.add(descriptor.getTicket());
+            } else if(checkInStatus == OK_READY_FOR_BADGE_SCAN || checkInStatus == BADGE_SCAN_ALREADY_DONE || (checkInStatus == MUST_PAY && automaticallyConfirmOnSitePayment)) {
+                results.put(identifier, checkIn(eventShortName, identifier, Optional.ofNullable(code), username, auditUser, automaticallyConfirmOnSitePayment));
+            } else {
+                results.put(identifier, descriptor);
+            }
+        });
+
+        if(!readyToBeCheckedIn.isEmpty()) {
+            var ticketIds = readyToBeCheckedIn.stream().map(TicketWithCategory::getId).toList();
+            // tickets have been locked and validated, so we expect all of them to be updated
+            Validate.isTrue(ticketRepository.bulkPerformCheckIn(ticketIds) == ticketIds.size(), "Unexpected ticket status");
+            auditCheckIn(readyToBeCheckedIn, event.getId(), auditUser);
+            ticketRepository.findByIds(ticketIds).forEach(t -> extensionManager.handleTicketCheckedIn(t, event));
+            var outputColorConfiguration = getOutputColorConfiguration(event, configurationManager);
+            readyToBeCheckedIn.forEach(ticket -> results.put(ticket.getUuid(),
+                new SuccessfulCheckIn(ticket, getAdditionalServicesForTicket(ticket), detectBoxColor(outputColorConfiguration, ticket.getCategoryId()))));
+        }
+        return results;
+    }
+
+    /**
+     * Writes the audit trail of a successful check-in: a scan audit and a {@link Audit.EventType#CHECK_IN} auditing
+     * record for each ticket. Shared by the single and the bulk check-in, so that both leave the same records.
+     */
+    private void auditCheckIn(List<TicketWithCategory> tickets, int eventId, String user) {
+        scanAuditRepository.bulkInsert(tickets.stream().map(TicketWithCategory::getUuid).toList(), eventId, ZonedDateTime.now(clockProvider.getClock()), user, SUCCESS, ScanAudit.Operation.SCAN);
+        auditingRepository.insertTicketAudits(tickets, userRepository.findIdByUserName(user).orElse(null), eventId, CHECK_IN, new Date());
+    }
+
     public boolean manualCheckIn(int eventId, String ticketIdentifier, String user) {
         Optional<Ticket> ticket = findAndLockTicket(ticketIdentifier);
         return ticket.map(t -> {
@@ -261,6 +373,14 @@ public class CheckInManager {
     }
 
     private TicketAndCheckInResult extractStatus(Optional<? extends EventCheckInInfo> maybeEvent, Optional<Ticket> maybeTicket, String ticketIdentifier, Optional<String> ticketCode) {
+        return extractStatus(maybeEvent, maybeTicket, ticketIdentifier, ticketCode, ticketCategoryRepository::getById);
+    }
+
+    private TicketAndCheckInResult extractStatus(Optional<? extends EventCheckInInfo> maybeEvent,
+                                                 Optional<Ticket> maybeTicket,
+                                                 String ticketIdentifier,
+                                                 Optional<String> ticketCode,
+                                                 IntFunction<TicketCategory> categoryLoader) {
 
         if (maybeEvent.isEmpty()) {
             return new TicketAndCheckInResult(null, new DefaultCheckInResult(EVENT_NOT_FOUND, "Event not found"));
@@ -275,7 +395,7 @@ public class CheckInManager {
             return new TicketAndCheckInResult(new TicketWithCategory(ticket, null), new DefaultCheckInResult(INVALID_TICKET_STATE, "Invalid ticket state"));
         }
 
-        TicketCategory tc = ticketCategoryRepository.getById(ticket.getCategoryId());
+        TicketCategory tc = categoryLoader.apply(ticket.getCategoryId());
 
         EventCheckInInfo event = maybeEvent.get();
         if(ticketCode.filter(StringUtils::isNotBlank).isEmpty()) {
@@ -341,23 +461,45 @@ public class CheckInManager {
     }
 
     static Pair<Cipher, SecretKeySpec>  getCypher(String key) {
+        return getCypher(deriveKey(key));
+    }
+
+    private static Pair<Cipher, SecretKeySpec> getCypher(SecretKeySpec secret) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            return Pair.of(cipher, secret);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SecretKeySpec deriveKey(String key) {
         try {
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
             int iterations = 1000;
             int keyLength = 256;
             PBEKeySpec spec = new PBEKeySpec(key.toCharArray(), key.getBytes(StandardCharsets.UTF_8), iterations, keyLength);
             SecretKey secretKey = factory.generateSecret(spec);
-            SecretKeySpec secret = new SecretKeySpec(secretKey.getEncoded(), "AES");
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            return Pair.of(cipher, secret);
+            return new SecretKeySpec(secretKey.getEncoded(), "AES");
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException(e);
         }
     }
 
     public static String encrypt(String key, String payload)  {
+        return encrypt(deriveKey(key), payload);
+    }
+
+    /**
+     * Encrypts the payload with the key derived from the given ticket code, reusing the derived key if available.
+     */
+    String encryptWithCachedKey(String ticketCode, String payload) {
+        return encrypt(derivedKeysCache.get(DigestUtils.sha256Hex(ticketCode), k -> deriveKey(ticketCode)), payload);
+    }
+
+    private static String encrypt(SecretKeySpec secret, String payload) {
         try {
-            Pair<Cipher, SecretKeySpec> cipherAndSecret = getCypher(key);
+            Pair<Cipher, SecretKeySpec> cipherAndSecret = getCypher(secret);
             Cipher cipher = cipherAndSecret.getKey();
             cipher.init(Cipher.ENCRYPT_MODE, cipherAndSecret.getRight());
             byte[] data = cipher.doFinal(payload.getBytes(StandardCharsets.UTF_8));
@@ -402,86 +544,207 @@ public class CheckInManager {
 
 
         return Optional.ofNullable(ev).filter(isOfflineCheckInEnabled()).map(event -> {
-            Map<Integer, TicketCategory> categories = ticketCategoryRepository.findByEventIdAsMap(event.getId());
             String eventKey = event.getPrivateKey();
+            var attendeeInfo = attendeeInfoBuilder(event, additionalFields, getOutputColorConfiguration(event, configurationManager), pollRepository.findAllForEvent(event.getId()));
+            // building the payload requires database access, so it must be done on the current (transactional) thread.
+            // Encryption is CPU-bound and can be safely performed in parallel
+            var payloads = ticketRepository.findAllFullTicketInfoAssignedByEventId(event.getId(), ids)
+                .stream()
+                .map(ticket -> Triple.of(offlineEntryKey(ticket, eventKey), ticket.ticketCode(eventKey), attendeeInfo.apply(ticket)))
+                .collect(Collectors.toList());
+            return encryptAll(payloads, Triple::getLeft, t -> encryptWithCachedKey(t.getMiddle(), t.getRight()));
 
-            Function<FullTicketInfo, String> hashedHMAC = ticket -> DigestUtils.sha256Hex(ticket.hmacTicketInfo(eventKey));
-            var outputColorConfiguration = getOutputColorConfiguration(event, configurationManager);
+        }).orElseGet(Collections::emptyMap);
+    }
 
-            // fetch polls for event, in order to determine if we have to print PIN or not
-            var polls = pollRepository.findAllForEvent(event.getId());
-            boolean hasPolls = !polls.isEmpty();
-            var allowedTags = hasPolls ? polls.stream().flatMap(p -> p.getAllowedTags().stream()).collect(Collectors.toList()) : List.<String>of();
-
-            Function<FullTicketInfo, String> encryptedBody = ticket -> {
-                Map<String, String> info = new HashMap<>();
-                info.put("firstName", ticket.getFirstName());
-                info.put("lastName", ticket.getLastName());
-                info.put("fullName", ticket.getFullName());
-                info.put("email", ticket.getEmail());
-                info.put("status", ticket.getStatus().toString());
-                info.put("uuid", ticket.getUuid());
-                if(hasPolls && (allowedTags.isEmpty() || CollectionUtils.containsAny(allowedTags, ticket.getTags()))) {
-                    info.put("pin", PinGenerator.uuidToPin(ticket.getUuid()));
-                }
-                info.put("category", ticket.getTicketCategory().getName());
-                if(outputColorConfiguration != null) {
-                    info.put("boxColor", detectBoxColor(outputColorConfiguration, ticket.getCategoryId()));
-                }
+    /**
+     * Returns the offline check-in entries modified since the given cursor, already encrypted, along with the
+     * keys of the entries that the apps must remove (tombstones).
+     * If the cursor is {@code null}, all the entries are returned and the apps must discard the data they have.
+     * Encrypted payloads are cached by ticket version, so that polling apps don't cause re-encryption.
+     *
+     * @param ev the event
+     * @param additionalFields the additional fields to be included in the payload
+     * @param since the cursor returned by the previous call, or {@code null}
+     * @return the changes, or empty if the offline check-in is not enabled
+     */
+    public Optional<OfflineCheckInChanges> getOfflineCheckInChanges(Event ev, Set<String> additionalFields, Long since) {
+        return Optional.ofNullable(ev).filter(isOfflineCheckInEnabled()).map(event -> {
+            // must be retrieved before looking for changes, see V205_2.0.0.53__CHECK_IN_CHANGE_FEED.sql
+            long cursor = checkInFeedRepository.currentCursor();
+            boolean full = since == null;
+            List<Integer> changedIds = full ? List.of() : checkInFeedRepository.findChangedTicketIds(event.getId(), since);
+            List<CheckInTicketVersion> versions;
+            if(full) {
+                versions = checkInFeedRepository.findAllTicketVersions(event.getId());
+            } else {
+                versions = ListUtils.partition(changedIds, OFFLINE_FEED_CHUNK_SIZE).stream()
+                    .flatMap(ids -> checkInFeedRepository.findTicketVersions(event.getId(), ids).stream())
+                    .collect(Collectors.toList());
+            }
+            var entries = loadOfflinePayloads(event, additionalFields, versions);
+            // on a full sync the apps discard their data, therefore no tombstone is needed
+            List<CheckInPublishedKey> published = full ? checkInFeedRepository.findAllPublishedKeys(event.getId())
+                : ListUtils.partition(changedIds, OFFLINE_FEED_CHUNK_SIZE).stream()
+                    .flatMap(ids -> checkInFeedRepository.findPublishedKeys(event.getId(), ids).stream())
+                    .collect(Collectors.toList());
+            List<String> tombstones = full ? List.of() : published.stream()
+                .filter(pk -> {
+                    var current = entries.get(pk.getTicketId());
+                    return current == null || !current.entryKey().equals(pk.getEntryKey());
+                })
+                .map(CheckInPublishedKey::getEntryKey)
+                .distinct()
+                .collect(Collectors.toList());
+            // register only the keys which have never been published, to avoid writing on every poll
+            var publishedKeys = published.stream().map(CheckInPublishedKey::getEntryKey).collect(Collectors.toSet());
+            var newKeys = entries.entrySet().stream()
+                .filter(e -> !publishedKeys.contains(e.getValue().entryKey()))
+                .map(e -> new CheckInPublishedKey(e.getKey(), e.getValue().entryKey()))
+                .collect(Collectors.toList());
+            if(!newKeys.isEmpty()) {
+                checkInFeedRepository.registerPublishedKeys(event.getId(), newKeys);
+            }
+            var encryptedEntries = entries.values().stream()
+                .collect(toMap(OfflinePayload::entryKey, OfflinePayload::encrypted));
+            return new OfflineCheckInChanges(cursor, full, encryptedEntries, tombstones);
+        });
+    }
+
+    /**
+     * Removes the offline check-in change feed of the events ended before the given date.
+     *
+     * @param endedBefore the threshold date
+     * @return the number of deleted rows
+     */
+    public int cleanupOfflineCheckInChanges(ZonedDateTime endedBefore) {
+        return checkInFeedRepository.deletePublishedKeysForEventsEndedBefore(endedBefore)
+            + checkInFeedRepository.deleteDeletedTicketsForEventsEndedBefore(endedBefore);
+    }
+
+    private Map<Integer, OfflinePayload> loadOfflinePayloads(Event event, Set<String> additionalFields, List<CheckInTicketVersion> versions) {
+        String eventKey = event.getPrivateKey();
+        var outputColorConfiguration = getOutputColorConfiguration(event, configurationManager);
+        var polls = pollRepository.findAllForEvent(event.getId());
+        // identifies everything but the ticket which affects the payload
+        String context = DigestUtils.sha256Hex(String.join("|",
+            eventKey,
+            String.join(",", new TreeSet<>(additionalFields)),
+            Json.toJson(outputColorConfiguration),
+            polls.stream().map(p -> p.getId() + ":" + p.getAllowedTags()).collect(Collectors.joining(","))));
+
+        Map<Integer, OfflinePayload> result = new HashMap<>();
+        Map<Integer, OfflinePayloadKey> missing = new HashMap<>();
+        for (CheckInTicketVersion version : versions) {
+            var key = new OfflinePayloadKey(version.getTicketId(), version.getVersion(), context);
+            var cached = OFFLINE_PAYLOADS_CACHE.getIfPresent(key);
+            if(cached != null) {
+                result.put(version.getTicketId(), cached);
+            } else {
+                missing.put(version.getTicketId(), key);
+            }
+        }
+        if(!missing.isEmpty()) {
+            var attendeeInfo = attendeeInfoBuilder(event, additionalFields, outputColorConfiguration, polls);
+            // building the payload requires database access, so it must be done on the current (transactional) thread.
+            // Encryption is CPU-bound and can be safely performed in parallel
+            record PlainPayload(int ticketId, String entryKey, String ticketCode, String info) {}
+            var payloads = ListUtils.partition(new ArrayList<>(missing.keySet()), OFFLINE_FEED_CHUNK_SIZE).stream()
+                .flatMap(ids -> ticketRepository.findAllFullTicketInfoAssignedByEventId(event.getId(), ids).stream())
+                .map(ticket -> new PlainPayload(ticket.getId(), offlineEntryKey(ticket, eventKey), ticket.ticketCode(eventKey), attendeeInfo.apply(ticket)))
+                .collect(Collectors.toList());
+            var encrypted = encryptAll(payloads, PlainPayload::ticketId, p -> new OfflinePayload(p.entryKey(), encryptWithCachedKey(p.ticketCode(), p.info())));
+            encrypted.forEach((ticketId, payload) -> OFFLINE_PAYLOADS_CACHE.put(missing.get(ticketId), payload));
+            result.putAll(encrypted);
+        }
+        return result;
+    }
+
+    private <T, K, V> Map<K, V> encryptAll(List<T> payloads, Function<T, K> keyMapper, Function<T, V> encryptor) {
+        var futures = ListUtils.partition(payloads, ENCRYPTION_CHUNK_SIZE).stream()
+            .map(chunk -> CompletableFuture.supplyAsync(() -> chunk.stream().collect(toMap(keyMapper, encryptor)), encryptionExecutor))
+            .collect(Collectors.toList());
+        var result = new HashMap<K, V>();
+        futures.forEach(f -> result.putAll(f.join()));
+        return result;
+    }
+
+    private static String offlineEntryKey(FullTicketInfo ticket, String eventKey) {
+        return DigestUtils.sha256Hex(ticket.hmacTicketInfo(eventKey));
+    }
+
+    private Function<FullTicketInfo, String> attendeeInfoBuilder(Event event,
+                                                                 Set<String> additionalFields,
+                                                                 CheckInOutputColorConfiguration outputColorConfiguration,
+                                                                 List<Poll> polls) {
+        Map<Integer, TicketCategory> categories = ticketCategoryRepository.findByEventIdAsMap(event.getId());
+        // polls determine whether we have to print the PIN or not
+        boolean hasPolls = !polls.isEmpty();
+        var allowedTags = hasPolls ? polls.stream().flatMap(p -> p.getAllowedTags().stream()).collect(Collectors.toList()) : List.<String>of();
+
+        return ticket -> {
+            Map<String, String> info = new HashMap<>();
+            info.put("firstName", ticket.getFirstName());
+            info.put("lastName", ticket.getLastName());
+            info.put("fullName", ticket.getFullName());
+            info.put("email", ticket.getEmail());
+            info.put("status", ticket.getStatus().toString());
+            info.put("uuid", ticket.getUuid());
+            if(hasPolls && (allowedTags.isEmpty() || CollectionUtils.containsAny(allowedTags, ticket.getTags()))) {
+                info.put("pin", PinGenerator.uuidToPin(ticket.getUuid()));
+            }
+            info.put("category", ticket.getTicketCategory().getName());
+            if(outputColorConfiguration != null) {
+                info.put("boxColor", detectBoxColor(outputColorConfiguration, ticket.getCategoryId()));
+            }
 
-                if (!additionalFields.isEmpty()) {
-                    Map<String, String> fields = new HashMap<>();
-                    fields.put("company", trimToEmpty(ticket.getBillingDetails().getCompanyName()));
-                    fields.putAll(ticketFieldRepository.findValueForTicketId(ticket.getId(), additionalFields).stream()
-                        .map(vd -> {
-                            try {
-                                if(StringUtils.isNotBlank(vd.getDescription())) {
-                                    Map<String, Object> description = Json.GSON.fromJson(vd.getDescription(), new TypeToken<Map<String, Object>>(){}.getType());
-                                    Object rv = description.get("restrictedValues");
-                                    if(rv instanceof Map) {
-                                        @SuppressWarnings("unchecked")
-                                        Map<String, String> restrictedValues = (Map<String, String>) rv;
-                                        return Pair.of(vd.getName(), restrictedValues.getOrDefault(vd.getValue(), vd.getValue()));
-                                    }
+            if (!additionalFields.isEmpty()) {
+                Map<String, String> fields = new HashMap<>();
+                fields.put("company", trimToEmpty(ticket.getBillingDetails().getCompanyName()));
+                fields.putAll(ticketFieldRepository.findValueForTicketId(ticket.getId(), additionalFields).stream()
+                    .map(vd -> {
+                        try {
+                            if(StringUtils.isNotBlank(vd.getDescription())) {
+                                Map<String, Object> description = Json.GSON.fromJson(vd.getDescription(), new TypeToken<Map<String, Object>>(){}.getType());
+                                Object rv = description.get("restrictedValues");
+                                if(rv instanceof Map) {
+                                    @SuppressWarnings("unchecked")
+                                    Map<String, String> restrictedValues = (Map<String, String>) rv;
+                                    return Pair.of(vd.getName(), restrictedValues.getOrDefault(vd.getValue(), vd.getValue()));
                                 }
-                            } catch (Exception e) {
-                                log.error("cannot deserialize restricted values", e);
                             }
-                            return Pair.of(vd.getName(), vd.getValue());
-                        })
-                        .collect(toMap(Pair::getLeft, Pair::getRight)));
-                    info.put("additionalInfoJson", Json.toJson(fields));
-                }
-
-                //
-                TicketCategory tc = categories.get(ticket.getCategoryId());
-                if (tc.getValidCheckInFrom() != null) {
-                    info.put("validCheckInFrom", Long.toString(tc.getValidCheckInFrom(event.getZoneId()).toEpochSecond()));
-                }
-                if (tc.getValidCheckInTo() != null) {
-                    info.put("validCheckInTo", Long.toString(tc.getValidCheckInTo(event.getZoneId()).toEpochSecond()));
-                }
-                if (tc.getTicketValidityStart() != null) {
-                    info.put("ticketValidityStart", Long.toString(tc.getTicketValidityStart(event.getZoneId()).toEpochSecond()));
-                }
-                if (tc.getTicketValidityEnd() != null) {
-                    info.put("ticketValidityEnd", Long.toString(tc.getTicketValidityEnd(event.getZoneId()).toEpochSecond()));
-                }
-                info.put("categoryCheckInStrategy", tc.getTicketCheckInStrategy().name());
-                //
+                        } catch (Exception e) {
+                            log.error("cannot deserialize restricted values", e);
+                        }
+                        return Pair.of(vd.getName(), vd.getValue());
+                    })
+                    .collect(toMap(Pair::getLeft, Pair::getRight)));
+                info.put("additionalInfoJson", Json.toJson(fields));
+            }
 
-                var additionalServicesInfo = getAdditionalServicesForTicket(ticket);
-                if(!additionalServicesInfo.isEmpty()) {
-                    info.put("additionalServicesInfoJson", Json.toJson(additionalServicesInfo));
-                }
-                String key = ticket.ticketCode(eventKey);
-                return encrypt(key, Json.toJson(info));
-            };
-            return ticketRepository.findAllFullTicketInfoAssignedByEventId(event.getId(), ids)
-                .stream()
-                .collect(toMap(hashedHMAC, encryptedBody));
+            //
+            TicketCategory tc = categories.get(ticket.getCategoryId());
+            if (tc.getValidCheckInFrom() != null) {
+                info.put("validCheckInFrom", Long.toString(tc.getValidCheckInFrom(event.getZoneId()).toEpochSecond()));
+            }
+            if (tc.getValidCheckInTo() != null) {
+                info.put("validCheckInTo", Long.toString(tc.getValidCheckInTo(event.getZoneId()).toEpochSecond()));
+            }
+            if (tc.getTicketValidityStart() != null) {
+                info.put("ticketValidityStart", Long.toString(tc.getTicketValidityStart(event.getZoneId()).toEpochSecond()));
+            }
+            if (tc.getTicketValidityEnd() != null) {
+                info.put("ticketValidityEnd", Long.toString(tc.getTicketValidityEnd(event.getZoneId()).toEpochSecond()));
+            }
+            info.put("categoryCheckInStrategy", tc.getTicketCheckInStrategy().name());
+            //
 
-        }).orElseGet(Collections::emptyMap);
+            var additionalServicesInfo = getAdditionalServicesForTicket(ticket);
+            if(!additionalServicesInfo.isEmpty()) {
+                info.put("additionalServicesInfoJson", Json.toJson(additionalServicesInfo));
+            }
+            return Json.toJson(info);
+        };
     }
 
     static CheckInOutputColorConfiguration getOutputColorConfiguration(EventAndOrganizationId event, ConfigurationManager configurationManager) {
@@ -541,4 +804,10 @@ public class CheckInManager {
         return configurationManager.getFor(CHECK_IN_STATS, event.getConfigurationLevel()).getValueAsBooleanOrDefault();
     }
 
+    private record OfflinePayloadKey(int ticketId, long version, String context) {
+    }
+
+    private record OfflinePayload(String entryKey, String encrypted) {
+    }
+
 }
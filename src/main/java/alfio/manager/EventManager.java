@@ -49,9 +49,11 @@ import alfio.util.RequestUtils;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.IterableUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.flywaydb.core.Flyway;
 import org.slf4j.Logger;
@@ -98,6 +100,7 @@ public class EventManager {
 
     private static final Predicate<TicketCategory> IS_CATEGORY_BOUNDED = TicketCategory::isBounded;
     static final String ERROR_ONLINE_ON_SITE_NOT_COMPATIBLE = "Cannot switch to Online. Please remove On-Site payment method first.";
+    private static final int CSV_EXPORT_CHUNK_SIZE = 500;
     private final UserManager userManager;
     private final EventRepository eventRepository;
     private final EventDescriptionRepository eventDescriptionRepository;
@@ -450,8 +453,8 @@ public class EventManager {
         if(seatsDifference != 0) {
             Event modified = eventRepository.findById(eventId);
             if(seatsDifference > 0) {
-                final MapSqlParameterSource[] params = generateEmptyTickets(modified, Date.from(ZonedDateTime.now(clockProvider.withZone(modified.getZoneId())).toInstant()), seatsDifference, TicketStatus.RELEASED).toArray(MapSqlParameterSource[]::new);
-                ticketRepository.bulkTicketInitialization(params);
+                Date creationDate = Date.from(ZonedDateTime.now(clockProvider.withZone(modified.getZoneId())).toInstant());
+                ticketRepository.bulkTicketInitialization(modified.getId(), null, 0, creationDate, TicketStatus.RELEASED, seatsDifference);
             } else {
                 List<Integer> ids = ticketRepository.selectNotAllocatedTicketsForUpdate(eventId, Math.abs(seatsDifference), singletonList(TicketStatus.FREE.name()));
                 Validate.isTrue(ids.size() == Math.abs(seatsDifference), "cannot lock enough tickets for deletion.");
@@ -654,35 +657,24 @@ public class EventManager {
         reallocateTickets(ticketCategory, Optional.empty(), event);
     }
 
-    MapSqlParameterSource[] prepareTicketsBulkInsertParameters(ZonedDateTime creation,
-                                                               Event event, int requestedTickets, TicketStatus ticketStatus) {
-
-        //FIXME: the date should be inserted as ZonedDateTime !
-        Date creationDate = Date.from(creation.toInstant());
-
+    /**
+     * Computes the tickets to be created for a new event: one group for each bounded category, plus one
+     * group of unbounded tickets for the remaining seats.
+     */
+    List<TicketsToCreate> prepareTicketsBulkInsert(Event event, int requestedTickets, TicketStatus ticketStatus) {
         List<TicketCategory> categories = ticketCategoryRepository.findAllTicketCategories(event.getId());
-        Stream<MapSqlParameterSource> boundedTickets = categories.stream()
-                .filter(IS_CATEGORY_BOUNDED)
-                .flatMap(tc -> generateTicketsForCategory(tc, event, creationDate, 0));
-        int generatedTickets = categories.stream()
+        List<TicketsToCreate> result = categories.stream()
                 .filter(IS_CATEGORY_BOUNDED)
-                .mapToInt(TicketCategory::getMaxTickets)
-                .sum();
-        if(generatedTickets >= requestedTickets) {
-            return boundedTickets.toArray(MapSqlParameterSource[]::new);
+                .map(tc -> new TicketsToCreate(tc.getId(), tc.getSrcPriceCts(), TicketStatus.FREE, tc.getMaxTickets()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        int generatedTickets = result.stream().mapToInt(TicketsToCreate::count).sum();
+        if(generatedTickets < requestedTickets) {
+            result.add(new TicketsToCreate(null, 0, ticketStatus, requestedTickets - generatedTickets));
         }
-
-        return Stream.concat(boundedTickets, generateEmptyTickets(event, creationDate, requestedTickets - generatedTickets, ticketStatus)).toArray(MapSqlParameterSource[]::new);
+        return result;
     }
 
-    private Stream<MapSqlParameterSource> generateTicketsForCategory(TicketCategory tc,
-                                                                     Event event,
-                                                                     Date creationDate,
-                                                                     int existing) {
-        Optional<TicketCategory> filteredTC = Optional.of(tc).filter(TicketCategory::isBounded);
-        int missingTickets = filteredTC.map(c -> Math.abs(c.getMaxTickets() - existing)).orElseGet(() -> eventRepository.countExistingTickets(event.getId()) - existing);
-        return generateStreamForTicketCreation(missingTickets)
-                    .map(ps -> buildTicketParams(event.getId(), creationDate, filteredTC, tc.getSrcPriceCts(), ps));
+    record TicketsToCreate(Integer categoryId, int srcPriceCts, TicketStatus status, int count) {
     }
 
     private void createCategoriesForEvent(EventModification em, Event event) {
@@ -922,15 +914,16 @@ public class EventManager {
                 throw new IllegalStateException("Cannot invalidate "+absDifference+" tickets. There are only "+actualDifference+" free tickets");
             }
             ticketRepository.invalidateTickets(ids);
-            final MapSqlParameterSource[] params = generateEmptyTickets(event, Date.from(event.now(clockProvider).toInstant()), absDifference, TicketStatus.RELEASED).toArray(MapSqlParameterSource[]::new);
-            ticketRepository.bulkTicketInitialization(params);
+            ticketRepository.bulkTicketInitialization(event.getId(), null, 0, Date.from(event.now(clockProvider).toInstant()), TicketStatus.RELEASED, absDifference);
         }
     }
 
     private void createAllTicketsForEvent(Event event, EventModification em) {
         Validate.notNull(em.getAvailableSeats());
-        final MapSqlParameterSource[] params = prepareTicketsBulkInsertParameters(event.now(clockProvider), event, em.getAvailableSeats(), TicketStatus.FREE);
-        ticketRepository.bulkTicketInitialization(params);
+        //FIXME: the date should be inserted as ZonedDateTime !
+        Date creationDate = Date.from(event.now(clockProvider).toInstant());
+        prepareTicketsBulkInsert(event, em.getAvailableSeats(), TicketStatus.FREE)
+            .forEach(t -> ticketRepository.bulkTicketInitialization(event.getId(), t.categoryId(), t.srcPriceCts(), creationDate, t.status(), t.count()));
     }
 
     private int insertEvent(EventModification em) {
@@ -1054,10 +1047,27 @@ public class EventManager {
         return StringUtils.removeEnd(baseUrl, "/") + "/event/" + event.getShortName() + "/";
     }
 
-    public List<TicketWithReservationAndTransaction> findAllConfirmedTicketsForCSV(String eventName, String username) {
+    /**
+     * Streams the confirmed tickets of the given event, together with their additional fields values.
+     * Only the IDs are loaded upfront; tickets and values are then fetched lazily, one chunk at a time,
+     * so that the export can be written to the output while the stream is being consumed.
+     *
+     * @param eventName the event short name
+     * @param username the current user
+     * @return a lazy stream of confirmed tickets and their additional field values, by field name
+     */
+    public Stream<Pair<TicketWithReservationAndTransaction, Map<String, String>>> streamAllConfirmedTicketsForCSV(String eventName, String username) {
         EventAndOrganizationId event = getEventAndOrganizationId(eventName, username);
         checkOwnership(event, username, event.getOrganizationId());
-        return ticketRepository.findAllConfirmedForCSV(event.getId());
+        var ticketIds = ticketRepository.findAllConfirmedIdsForCSV(event.getId()).stream().distinct().toList();
+        return ListUtils.partition(ticketIds, CSV_EXPORT_CHUNK_SIZE).stream()
+            .flatMap(ids -> {
+                var valuesByTicketId = ticketFieldRepository.findAllValuesByTicketIds(ids).stream()
+                    .filter(v -> v.getName() != null && v.getValue() != null)
+                    .collect(Collectors.groupingBy(TicketFieldValue::getTicketId, Collectors.toMap(TicketFieldValue::getName, TicketFieldValue::getValue)));
+                return ticketRepository.findConfirmedForCSV(event.getId(), ids).stream()
+                    .map(trs -> Pair.of(trs, valuesByTicketId.getOrDefault(trs.getTicket().getId(), Map.of())));
+            });
     }
 
     public List<Event> getPublishedEvents(SearchOptions searchOptions) {
@@ -56,6 +56,7 @@ public class EventStatisticsManager {
     private final UserManager userManager;
     private final SubscriptionRepository subscriptionRepository;
     private final ExtensionManager extensionManager;
+    private final TicketRepository ticketRepository;
 
     public EventStatisticsManager(EventRepository eventRepository,
                                   EventDescriptionRepository eventDescriptionRepository,
@@ -67,7 +68,8 @@ public class EventStatisticsManager {
                                   ConfigurationManager configurationManager,
                                   UserManager userManager,
                                   SubscriptionRepository subscriptionRepository,
-                                  ExtensionManager extensionManager) {
+                                  ExtensionManager extensionManager,
+                                  TicketRepository ticketRepository) {
         this.eventRepository = eventRepository;
         this.eventDescriptionRepository = eventDescriptionRepository;
         this.ticketSearchRepository = ticketSearchRepository;
@@ -79,6 +81,16 @@ public class EventStatisticsManager {
         this.userManager = userManager;
         this.subscriptionRepository = subscriptionRepository;
         this.extensionManager = extensionManager;
+        this.ticketRepository = ticketRepository;
+    }
+
+    /**
+     * Folds the pending ticket count deltas into the ticket_count table, so that reading the statistics
+     * views stays cheap.
+     */
+    @Transactional
+    public void compactTicketCount() {
+        ticketRepository.compactTicketCount();
     }
 
     private List<Event> getAllEvents(String username) {
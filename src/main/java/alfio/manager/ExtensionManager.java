@@ -309,8 +309,11 @@ public class ExtensionManager {
     }
 
     void handleTicketCheckedIn(Ticket ticket) {
+        handleTicketCheckedIn(ticket, eventRepository.findById(ticket.getEventId()));
+    }
+
+    void handleTicketCheckedIn(Ticket ticket, Event event) {
         Map<String, Object> payload = new HashMap<>();
-        Event event = eventRepository.findById(ticket.getEventId());
         payload.put(TICKET, ticket);
         asyncCall(ExtensionEvent.TICKET_CHECKED_IN, event, payload);
     }
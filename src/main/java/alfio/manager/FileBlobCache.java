@@ -0,0 +1,227 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.function.BiPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache for the content of file_blob.
+ * Since a blob is identified by the SHA-256 digest of its content, cached entries never need to be invalidated:
+ * <ul>
+ *     <li>small blobs (e.g. event logos) are kept in memory</li>
+ *     <li>all blobs are stored in a size-bounded directory, named after their digest, which survives restarts</li>
+ * </ul>
+ */
+class FileBlobCache {
+
+    private static final Logger log = LoggerFactory.getLogger(FileBlobCache.class);
+    private static final Pattern DIGEST = Pattern.compile("^[a-f0-9]{64}$");
+    private static final String TMP_SUFFIX = ".tmp";
+    static final int MAX_IN_MEMORY_BLOB_SIZE = 1024 * 64;
+
+    private final Path directory;
+    private final Cache<String, CachedFile> onDisk;
+    private final Cache<String, byte[]> inMemory;
+
+    FileBlobCache(Path directory, long maxDiskSize, long maxMemorySize) {
+        this.inMemory = Caffeine.newBuilder()
+            .maximumWeight(maxMemorySize)
+            .weigher((String key, byte[] value) -> value.length)
+            .build();
+        this.onDisk = Caffeine.newBuilder()
+            .maximumWeight(maxDiskSize)
+            .weigher((String key, CachedFile value) -> value.size())
+            .executor(Runnable::run)
+            .removalListener((String key, CachedFile value, RemovalCause cause) -> {
+                // on replace the path is the same, so we must not delete the file
+                if(value != null && cause != RemovalCause.REPLACED) {
+                    deleteQuietly(value.path());
+                }
+            })
+            .build();
+        this.directory = initDirectory(directory);
+    }
+
+    /**
+     * Writes the content of the blob to the given {@link OutputStream}, loading it if needed.
+     *
+     * @param digest the blob id
+     * @param loader writes the blob content to the given stream. Returns {@code false} if the blob does not exist
+     * @param out the destination
+     * @throws IOException in case of errors while writing to {@code out}
+     */
+    void output(String digest, BiPredicate<String, OutputStream> loader, OutputStream out) throws IOException {
+        if(!DIGEST.matcher(digest).matches()) {
+            // not content-addressed, we won't cache it
+            loader.test(digest, out);
+            return;
+        }
+
+        var content = inMemory.getIfPresent(digest);
+        if(content != null) {
+            out.write(content);
+            return;
+        }
+
+        if(directory == null) {
+            var baos = new ByteArrayOutputStream();
+            if(loader.test(digest, baos)) {
+                content = baos.toByteArray();
+                if(content.length <= MAX_IN_MEMORY_BLOB_SIZE) {
+                    inMemory.put(digest, content);
+                }
+                out.write(content);
+            }
+            return;
+        }
+
+        var cachedFile = onDisk.get(digest, d -> store(d, loader));
+        if(cachedFile == null) {
+            return;
+        }
+        if(cachedFile.size() <= MAX_IN_MEMORY_BLOB_SIZE) {
+            content = readFully(digest, cachedFile);
+            if(content != null) {
+                inMemory.put(digest, content);
+                out.write(content);
+                return;
+            }
+        } else if(transfer(digest, cachedFile, out)) {
+            return;
+        }
+        // the file has been removed from the file system, we serve it directly from the source
+        onDisk.invalidate(digest);
+        loader.test(digest, out);
+    }
+
+    private boolean transfer(String digest, CachedFile cachedFile, OutputStream out) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(cachedFile.path(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            log.trace("cannot open cached file for {}", digest, e);
+            return false;
+        }
+        try (channel) {
+            var target = Channels.newChannel(out);
+            long position = 0;
+            long size = channel.size();
+            while(position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+            return true;
+        }
+    }
+
+    private byte[] readFully(String digest, CachedFile cachedFile) {
+        try {
+            return Files.readAllBytes(cachedFile.path());
+        } catch (IOException e) {
+            log.trace("cannot read cached file for {}", digest, e);
+            return null;
+        }
+    }
+
+    private CachedFile store(String digest, BiPredicate<String, OutputStream> loader) {
+        var tmp = directory.resolve(digest + "." + UUID.randomUUID() + TMP_SUFFIX);
+        try {
+            boolean found;
+            try (var os = Files.newOutputStream(tmp)) {
+                found = loader.test(digest, os);
+            }
+            if(!found) {
+                Files.deleteIfExists(tmp);
+                return null;
+            }
+            var target = directory.resolve(digest);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new CachedFile(target, (int) Files.size(target));
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path initDirectory(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(FileBlobCache::lastModified))
+                    .forEach(this::restore);
+            }
+            log.debug("file cache initialized in {}, found {} files", directory, onDisk.estimatedSize());
+            return directory;
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("cannot use {} as file cache. Files will be cached only in memory.", directory, e);
+            return null;
+        }
+    }
+
+    private void restore(Path file) {
+        var name = file.getFileName().toString();
+        if(name.endsWith(TMP_SUFFIX)) {
+            // leftover from an interrupted copy
+            deleteQuietly(file);
+        } else if(DIGEST.matcher(name).matches()) {
+            try {
+                onDisk.put(name, new CachedFile(file, (int) Files.size(file)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.trace("cannot delete {}", path, e);
+        }
+    }
+
+    record CachedFile(Path path, int size) {
+    }
+}
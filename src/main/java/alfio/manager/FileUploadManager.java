@@ -19,21 +19,19 @@ package alfio.manager;
 import alfio.model.FileBlobMetadata;
 import alfio.model.modification.UploadBase64FileModification;
 import alfio.repository.FileUploadRepository;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalCause;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.time.Duration;
+import java.nio.file.Path;
 import java.util.*;
 
 @Component
@@ -47,19 +45,15 @@ public class FileUploadManager {
      */
     static final int MAXIMUM_ALLOWED_SIZE = 1024 * 200;
     private final FileUploadRepository repository;
-    private final Cache<String, File> cache = Caffeine.newBuilder()
-        .maximumSize(20)
-        .expireAfterWrite(Duration.ofMinutes(20))
-        .removalListener((String key, File value, RemovalCause cause) -> {
-            if(value != null) {
-                boolean result = value.delete();
-                log.trace("deleted {}: {}", key, result);
-            }
-        })
-        .build();
+    private final FileBlobCache blobCache;
 
-    public FileUploadManager(FileUploadRepository repository) {
+    public FileUploadManager(FileUploadRepository repository,
+                             @Value("${alfio.file-cache.directory:}") String cacheDirectory,
+                             @Value("${alfio.file-cache.max-disk-size-mb:256}") long maxDiskSizeMb,
+                             @Value("${alfio.file-cache.max-memory-size-mb:16}") long maxMemorySizeMb) {
         this.repository = repository;
+        var directory = StringUtils.isNotBlank(cacheDirectory) ? Path.of(cacheDirectory) : Path.of(System.getProperty("java.io.tmpdir"), "alfio-file-cache");
+        this.blobCache = new FileBlobCache(directory, maxDiskSizeMb * 1024 * 1024, maxMemorySizeMb * 1024 * 1024);
     }
 
     public Optional<FileBlobMetadata> findMetadata(String id) {
@@ -67,14 +61,8 @@ public class FileUploadManager {
     }
 
     public void outputFile(String id, OutputStream out) {
-        var file = cache.get(id, identifier -> repository.file(id));
-        if(file == null || !file.exists()) { //fallback, the file will not be cached though
-            cache.invalidate(id);
-            file = repository.file(id);
-        }
-
-        try (var fis = new FileInputStream(file)){
-            fis.transferTo(out);
+        try {
+            blobCache.output(id, repository::writeContent, out);
         } catch(EOFException ex){
             // this happens when the browser closes the stream on its end.
             log.trace("got EOFException", ex);
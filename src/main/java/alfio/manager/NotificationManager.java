@@ -34,22 +34,26 @@ import alfio.repository.user.OrganizationRepository;
 import alfio.util.*;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.gson.*;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
@@ -57,10 +61,13 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static alfio.model.EmailMessage.Status.*;
@@ -70,15 +77,23 @@ import static java.util.Objects.requireNonNullElse;
 import static java.util.Objects.requireNonNullElseGet;
 
 @Component
-public class NotificationManager {
+public class NotificationManager implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationManager.class);
 
     private static final String EVENT_ID = "eventId";
+    private static final int DEFAULT_MAX_EMAIL_PER_CYCLE = 100;
+    private static final int DEFAULT_DISPATCH_WORKERS = 4;
+    private static final int DISPATCH_BATCH_SIZE = 20;
     private final Mailer mailer;
     private final MessageSourceManager messageSourceManager;
     private final EmailMessageRepository emailMessageRepository;
     private final TransactionTemplate tx;
+    private final TransactionTemplate requiredTx;
+    private final ThreadPoolExecutor dispatchExecutor = new ThreadPoolExecutor(DEFAULT_DISPATCH_WORKERS, DEFAULT_DISPATCH_WORKERS,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new BasicThreadFactory.Builder().namingPattern("email-dispatcher-%d").daemon(true).build());
+    private final AtomicInteger emailQueueDepth = new AtomicInteger();
     private final OrganizationRepository organizationRepository;
     private final ConfigurationManager configurationManager;
     private final Gson gson;
@@ -86,6 +101,7 @@ public class NotificationManager {
     private final PurchaseContextManager purchaseContextManager;
 
     private final EnumMap<Mailer.AttachmentIdentifier, Function<Map<String, String>, byte[]>> attachmentTransformer;
+    private final Function<List<Map<String, String>>, List<byte[]>> ticketPdfGenerator;
 
     @Autowired
     public NotificationManager(Mailer mailer,
@@ -113,12 +129,16 @@ public class NotificationManager {
         this.organizationRepository = organizationRepository;
         DefaultTransactionDefinition definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED);
         this.tx = new TransactionTemplate(transactionManager, definition);
+        this.requiredTx = new TransactionTemplate(transactionManager);
         this.configurationManager = configurationManager;
         GsonBuilder builder = new GsonBuilder();
         builder.registerTypeAdapter(Mailer.Attachment.class, new AttachmentConverter());
         this.gson = builder.create();
         this.clockProvider = clockProvider;
         this.purchaseContextManager = purchaseContextManager;
+        Gauge.builder(MetricsUtil.EMAIL_QUEUE_DEPTH, emailQueueDepth, AtomicInteger::get)
+            .description("messages waiting to be sent, as of the last dispatch cycle")
+            .register(Metrics.globalRegistry);
         attachmentTransformer = new EnumMap<>(Mailer.AttachmentIdentifier.class);
         attachmentTransformer.put(Mailer.AttachmentIdentifier.CALENDAR_ICS, generateICS(eventRepository, eventDescriptionRepository, ticketCategoryRepository, organizationRepository, messageSourceManager, configurationManager));
         attachmentTransformer.put(Mailer.AttachmentIdentifier.RECEIPT_PDF, receiptOrInvoiceFactory(purchaseContextManager, eventRepository,
@@ -129,34 +149,56 @@ public class NotificationManager {
             payload -> TemplateProcessor.buildCreditNotePdf(payload.getLeft(), fileUploadManager, payload.getMiddle(), templateManager, payload.getRight(), extensionManager)));
         attachmentTransformer.put(Mailer.AttachmentIdentifier.PASSBOOK, passKitManager::getPass);
         Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues = EventUtil.retrieveFieldValues(ticketRepository, ticketFieldRepository, additionalServiceItemRepository);
-        attachmentTransformer.put(Mailer.AttachmentIdentifier.TICKET_PDF, generateTicketPDF(eventRepository, organizationRepository, configurationManager, fileUploadManager, templateManager, ticketReservationRepository, retrieveFieldValues, extensionManager, ticketRepository));
+        ticketPdfGenerator = generateTicketPDFs(eventRepository, organizationRepository, configurationManager, fileUploadManager, templateManager, ticketReservationRepository, retrieveFieldValues, extensionManager, ticketRepository);
+        attachmentTransformer.put(Mailer.AttachmentIdentifier.TICKET_PDF, model -> ticketPdfGenerator.apply(List.of(model)).get(0));
     }
 
-    private static Function<Map<String, String>, byte[]> generateTicketPDF(EventRepository eventRepository,
-                                                                           OrganizationRepository organizationRepository,
-                                                                           ConfigurationManager configurationManager,
-                                                                           FileUploadManager fileUploadManager,
-                                                                           TemplateManager templateManager,
-                                                                           TicketReservationRepository ticketReservationRepository,
-                                                                           Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues,
-                                                                           ExtensionManager extensionManager,
-                                                                           TicketRepository ticketRepository) {
-        return model -> {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            Ticket ticket = Json.fromJson(model.get("ticket"), Ticket.class);
-            try {
-                TicketReservation reservation = ticketReservationRepository.findReservationById(ticket.getTicketsReservationId());
-                TicketCategory ticketCategory = Json.fromJson(model.get("ticketCategory"), TicketCategory.class);
-                Event event = eventRepository.findById(ticket.getEventId());
-                Organization organization = organizationRepository.getById(Integer.valueOf(model.get("organizationId"), 10));
-                var ticketWithMetadata = TicketWithMetadataAttributes.build(ticket, ticketRepository.getTicketMetadata(ticket.getId()));
-                TemplateProcessor.renderPDFTicket(LocaleUtil.forLanguageTag(ticket.getUserLanguage()), event, reservation,
-                    ticketWithMetadata, ticketCategory, organization, templateManager, fileUploadManager,
-                    configurationManager.getShortReservationID(event, reservation), baos, retrieveFieldValues, extensionManager);
-            } catch (IOException e) {
-                log.warn("was not able to generate ticket pdf for ticket with id {}", ticket.getId(), e);
-            }
-            return baos.toByteArray();
+    @Override
+    public void destroy() {
+        dispatchExecutor.shutdownNow();
+    }
+
+    /**
+     * Renders the ticket PDFs for the given attachment models. Tickets of the same event are rendered in one pass,
+     * see {@link TemplateProcessor#renderPDFTickets}.
+     *
+     * @return the PDFs, in the same order as the given models. Empty if the PDF could not be generated
+     */
+    private static Function<List<Map<String, String>>, List<byte[]>> generateTicketPDFs(EventRepository eventRepository,
+                                                                                       OrganizationRepository organizationRepository,
+                                                                                       ConfigurationManager configurationManager,
+                                                                                       FileUploadManager fileUploadManager,
+                                                                                       TemplateManager templateManager,
+                                                                                       TicketReservationRepository ticketReservationRepository,
+                                                                                       Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues,
+                                                                                       ExtensionManager extensionManager,
+                                                                                       TicketRepository ticketRepository) {
+        return models -> {
+            var result = new ArrayList<byte[]>(Collections.nCopies(models.size(), new byte[0]));
+            var tickets = models.stream().map(model -> Json.fromJson(model.get("ticket"), Ticket.class)).toList();
+            var indexesByEvent = IntStream.range(0, models.size()).boxed()
+                .collect(Collectors.groupingBy(i -> Pair.of(tickets.get(i).getEventId(), models.get(i).get("organizationId")), LinkedHashMap::new, Collectors.toList()));
+            indexesByEvent.forEach((key, indexes) -> {
+                try {
+                    Event event = eventRepository.findById(key.getLeft());
+                    Organization organization = organizationRepository.getById(Integer.valueOf(key.getRight(), 10));
+                    var pdfTickets = indexes.stream().map(i -> {
+                        var ticket = tickets.get(i);
+                        TicketReservation reservation = ticketReservationRepository.findReservationById(ticket.getTicketsReservationId());
+                        TicketCategory ticketCategory = Json.fromJson(models.get(i).get("ticketCategory"), TicketCategory.class);
+                        var ticketWithMetadata = TicketWithMetadataAttributes.build(ticket, ticketRepository.getTicketMetadata(ticket.getId()));
+                        return new TemplateProcessor.PDFTicket(LocaleUtil.forLanguageTag(ticket.getUserLanguage()), reservation, ticketWithMetadata,
+                            ticketCategory, configurationManager.getShortReservationID(event, reservation));
+                    }).toList();
+                    var pdfs = TemplateProcessor.renderPDFTickets(event, organization, pdfTickets, templateManager, fileUploadManager, retrieveFieldValues, extensionManager);
+                    for (int i = 0; i < indexes.size(); i++) {
+                        result.set(indexes.get(i), pdfs.get(i));
+                    }
+                } catch (IOException e) {
+                    log.warn("was not able to generate ticket pdf for tickets with id {}", indexes.stream().map(i -> tickets.get(i).getId()).toList(), e);
+                }
+            });
+            return result;
         };
     }
 
@@ -370,57 +412,163 @@ public class NotificationManager {
         }
     }
 
-    @Transactional
+    /**
+     * Sends the messages waiting in the queue.
+     * <p>Messages are claimed in a short transaction by setting their status to IN_PROCESS, then attachments are generated
+     * and messages are sent in batches by a pool of workers, so that the generation of the attachments for a batch
+     * overlaps with the sending of the previous one. Finally, the outcome is persisted using bulk updates.</p>
+     *
+     * @return the number of messages successfully sent
+     */
     public int sendWaitingMessages() {
-        emailMessageRepository.setToRetryOldInProcess(ZonedDateTime.now(clockProvider.getClock()).minusHours(1));
-        return emailMessageRepository.loadAllWaitingForProcessing().stream()
-            .collect(Collectors.groupingBy(NotificationManager::purchaseContextCacheKey))
-            .entrySet().stream()
-            .flatMapToInt(entry -> {
-                var splitKey = entry.getKey().split("//");
-                PurchaseContext purchaseContext = purchaseContextManager.findById(PurchaseContextType.from(splitKey[0]), splitKey[1]).orElseThrow();
-                // TODO we can try to send emails in batches, if the provider supports it.
-                return entry.getValue().stream().mapToInt(message -> processMessage(message, purchaseContext));
-            }).sum();
-    }
-
-    private int processMessage(EmailMessage message, PurchaseContext purchaseContext) {
-        int messageId = message.getId();
-        ConfigurationLevel configurationLevel = ConfigurationLevel.purchaseContext(purchaseContext);
-        if(message.getAttempts() >= configurationManager.getFor(ConfigurationKeys.MAIL_ATTEMPTS_COUNT, configurationLevel).getValueAsIntOrDefault(10)) {
-            tx.execute(status -> emailMessageRepository.updateStatusAndAttempts(messageId, ERROR.name(), message.getAttempts(), Arrays.asList(IN_PROCESS.name(), WAITING.name(), RETRY.name())));
-            log.warn("Message with id {} will be discarded", messageId);
+        var systemConfiguration = configurationManager.getFor(EnumSet.of(ConfigurationKeys.MAX_EMAIL_PER_CYCLE, ConfigurationKeys.MAIL_DISPATCH_WORKERS), ConfigurationLevel.system());
+        int maxEmailPerCycle = systemConfiguration.get(ConfigurationKeys.MAX_EMAIL_PER_CYCLE).getValueAsIntOrDefault(DEFAULT_MAX_EMAIL_PER_CYCLE);
+        emailQueueDepth.set(emailMessageRepository.countWaitingForProcessing());
+        var claimed = requireNonNullElseGet(requiredTx.execute(status -> claimWaitingMessages(maxEmailPerCycle)), Map::<PurchaseContext, List<EmailMessage>>of);
+        if(claimed.isEmpty()) {
             return 0;
         }
 
-        try {
-            int result = Optional.ofNullable(tx.execute(status -> emailMessageRepository.updateStatus(messageId, message.getChecksum(), IN_PROCESS.name(), Arrays.asList(WAITING.name(), RETRY.name())))).orElse(0);
-            if(result > 0) {
-                return Optional.ofNullable(tx.execute(status -> {
-                    sendMessage(purchaseContext, message);
-                    return 1;
-                })).orElse(0);
-            } else {
-                log.debug("no messages have been updated on DB for the following criteria: id: {}, checksum: {}", messageId, message.getChecksum());
+        var executor = getDispatchExecutor(systemConfiguration.get(ConfigurationKeys.MAIL_DISPATCH_WORKERS).getValueAsIntOrDefault(DEFAULT_DISPATCH_WORKERS));
+        var batches = claimed.entrySet().stream()
+            .flatMap(entry -> ListUtils.partition(entry.getValue(), DISPATCH_BATCH_SIZE).stream()
+                .map(messages -> dispatchBatch(entry.getKey(), messages, executor)))
+            .toList();
+
+        Set<Integer> sent = new HashSet<>();
+        Set<Integer> failed = new HashSet<>();
+        for (var batch : batches) {
+            var result = batch.join();
+            sent.addAll(result.getLeft());
+            failed.addAll(result.getRight());
+        }
+
+        requiredTx.execute(status -> {
+            var now = ZonedDateTime.now(clockProvider.getClock());
+            if(!sent.isEmpty()) {
+                emailMessageRepository.bulkUpdateStatusToSent(sent, now);
             }
-        } catch(Exception e) {
-            tx.execute(status -> emailMessageRepository.updateStatusAndAttempts(message.getId(), RETRY.name(), ZonedDateTime.now(clockProvider.getClock()).plusMinutes(message.getAttempts() + 1L), message.getAttempts() + 1, Arrays.asList(IN_PROCESS.name(), WAITING.name(), RETRY.name())));
-            log.warn("could not send message: ",e);
+            if(!failed.isEmpty()) {
+                emailMessageRepository.bulkUpdateStatusToRetry(failed, now);
+            }
+            return null;
+        });
+        MetricsUtil.counter(MetricsUtil.EMAIL_DISPATCHED, MetricsUtil.OUTCOME, MetricsUtil.SUCCESS).increment(sent.size());
+        MetricsUtil.counter(MetricsUtil.EMAIL_DISPATCHED, MetricsUtil.OUTCOME, MetricsUtil.FAILURE).increment(failed.size());
+        return sent.size();
+    }
+
+    private Map<PurchaseContext, List<EmailMessage>> claimWaitingMessages(int maxEmailPerCycle) {
+        emailMessageRepository.setToRetryOldInProcess(ZonedDateTime.now(clockProvider.getClock()).minusHours(1));
+        var waitingStatuses = List.of(WAITING.name(), RETRY.name());
+        Map<PurchaseContext, List<EmailMessage>> result = new HashMap<>();
+        var byPurchaseContext = emailMessageRepository.loadAllWaitingForProcessing(maxEmailPerCycle).stream()
+            .collect(Collectors.groupingBy(NotificationManager::purchaseContextCacheKey));
+        for (var entry : byPurchaseContext.entrySet()) {
+            var splitKey = entry.getKey().split("//");
+            PurchaseContext purchaseContext = purchaseContextManager.findById(PurchaseContextType.from(splitKey[0]), splitKey[1]).orElseThrow();
+            int maxAttempts = configurationManager.getFor(ConfigurationKeys.MAIL_ATTEMPTS_COUNT, ConfigurationLevel.purchaseContext(purchaseContext)).getValueAsIntOrDefault(10);
+            var partitioned = entry.getValue().stream().collect(Collectors.partitioningBy(m -> m.getAttempts() >= maxAttempts));
+            var discarded = partitioned.get(true).stream().map(EmailMessage::getId).toList();
+            if(!discarded.isEmpty()) {
+                emailMessageRepository.bulkUpdateStatus(discarded, ERROR.name(), waitingStatuses);
+                log.warn("Messages with id {} will be discarded", discarded);
+            }
+            var toBeSent = partitioned.get(false);
+            if(!toBeSent.isEmpty()) {
+                emailMessageRepository.bulkUpdateStatus(toBeSent.stream().map(EmailMessage::getId).toList(), IN_PROCESS.name(), waitingStatuses);
+                result.put(purchaseContext, toBeSent);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generates the attachments for each message and then sends the batch.
+     * The ticket PDFs of the whole batch are rendered in one pass before generating the other attachments.
+     *
+     * @return a future containing the ids of the messages sent (left) and of the messages that could not be sent (right)
+     */
+    private CompletableFuture<Pair<Set<Integer>, Set<Integer>>> dispatchBatch(PurchaseContext purchaseContext, List<EmailMessage> messages, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> renderTicketPDFs(messages), executor)
+            .exceptionally(e -> {
+                log.warn("could not pre-render ticket PDFs, will fall back to rendering them one by one", e);
+                return Map.of();
+            })
+            .thenCompose(ticketPDFs -> {
+                var prepared = messages.stream()
+                    .map(message -> CompletableFuture.supplyAsync(() -> toMailerMessage(message, ticketPDFs), executor)
+                        .exceptionally(e -> {
+                            log.warn("could not generate attachments for message " + message.getId(), e);
+                            return null;
+                        }))
+                    .toList();
+                return CompletableFuture.allOf(prepared.toArray(CompletableFuture[]::new))
+                    .thenApplyAsync(v -> prepared.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList(), executor);
+            })
+            .thenApplyAsync(toBeSent -> {
+                var sentIds = toBeSent.isEmpty() ? Set.<String>of() : mailer.sendBatch(purchaseContext, purchaseContext.getDisplayName(), toBeSent);
+                var result = messages.stream().map(EmailMessage::getId)
+                    .collect(Collectors.partitioningBy(id -> sentIds.contains(String.valueOf(id)), Collectors.toSet()));
+                return Pair.of(result.get(true), result.get(false));
+            }, executor)
+            .exceptionally(e -> {
+                log.warn("could not send messages: ", e);
+                return Pair.of(Set.of(), messages.stream().map(EmailMessage::getId).collect(Collectors.toSet()));
+            });
+    }
+
+    /**
+     * @return the rendered PDFs, by attachment model
+     */
+    private Map<Map<String, String>, byte[]> renderTicketPDFs(List<EmailMessage> messages) {
+        var models = messages.stream()
+            .filter(m -> StringUtils.isNotBlank(m.getAttachments()))
+            .flatMap(m -> Arrays.stream(gson.fromJson(m.getAttachments(), Mailer.Attachment[].class)))
+            .filter(a -> a.getIdentifier() == Mailer.AttachmentIdentifier.TICKET_PDF)
+            .map(Mailer.Attachment::getModel)
+            .distinct()
+            .toList();
+        if(models.size() < 2) {
+            return Map.of();
+        }
+        var pdfs = ticketPdfGenerator.apply(models);
+        Map<Map<String, String>, byte[]> result = new HashMap<>();
+        for (int i = 0; i < models.size(); i++) {
+            result.put(models.get(i), pdfs.get(i));
         }
-        return 0;
+        return result;
     }
 
-    private void sendMessage(PurchaseContext purchaseContext, EmailMessage message) {
+    private Mailer.Message toMailerMessage(EmailMessage message, Map<Map<String, String>, byte[]> ticketPDFs) {
         // FIXME save the locale of the message, so that we can retrieve its title
-        mailer.send(purchaseContext, purchaseContext.getDisplayName(), message.getRecipient(), message.getCc(), message.getSubject(), message.getMessage(), Optional.ofNullable(message.getHtmlMessage()), decodeAttachments(message.getAttachments()));
-        emailMessageRepository.updateStatusToSent(message.getId(), message.getChecksum(), ZonedDateTime.now(clockProvider.getClock()), Collections.singletonList(IN_PROCESS.name()));
+        return new Mailer.Message(String.valueOf(message.getId()), message.getRecipient(), message.getCc(), message.getSubject(),
+            message.getMessage(), Optional.ofNullable(message.getHtmlMessage()), Arrays.asList(decodeAttachments(message.getAttachments(), ticketPDFs)));
+    }
+
+    private Executor getDispatchExecutor(int workers) {
+        // workers would not be able to see uncommitted data, so if we're already in a transaction we run everything
+        // on the current thread
+        if(workers <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Runnable::run;
+        }
+        if(dispatchExecutor.getMaximumPoolSize() != workers) {
+            if(workers > dispatchExecutor.getMaximumPoolSize()) {
+                dispatchExecutor.setMaximumPoolSize(workers);
+                dispatchExecutor.setCorePoolSize(workers);
+            } else {
+                dispatchExecutor.setCorePoolSize(workers);
+                dispatchExecutor.setMaximumPoolSize(workers);
+            }
+        }
+        return dispatchExecutor;
     }
 
     private String encodeAttachments(Mailer.Attachment... files) {
         return gson.toJson(files);
     }
 
-    private Mailer.Attachment[] decodeAttachments(String input) {
+    private Mailer.Attachment[] decodeAttachments(String input, Map<Map<String, String>, byte[]> ticketPDFs) {
         if(StringUtils.isBlank(input)) {
             return new Mailer.Attachment[0];
         }
@@ -432,7 +580,7 @@ public class NotificationManager {
             .filter(attachment -> attachment.getIdentifier() != null && !attachment.getIdentifier().reinterpretAs().isEmpty()).toList();
 
         List<Mailer.Attachment> generated = Arrays.stream(attachments)
-            .map(attachment -> this.transformAttachment(attachment, attachment.getIdentifier()))
+            .map(attachment -> this.transformAttachment(attachment, attachment.getIdentifier(), ticketPDFs))
             .filter(Objects::nonNull)
             .collect(Collectors.toList());
 
@@ -440,7 +588,7 @@ public class NotificationManager {
         toReinterpret.forEach(attachment ->
             attachment.getIdentifier().reinterpretAs().stream()
                 .filter(identifier -> !alreadyPresents.contains(identifier))
-                .forEach(identifier -> reinterpreted.add(this.transformAttachment(attachment, identifier))
+                .forEach(identifier -> reinterpreted.add(this.transformAttachment(attachment, identifier, ticketPDFs))
             )
         );
 
@@ -448,9 +596,11 @@ public class NotificationManager {
         return generated.toArray(new Mailer.Attachment[0]);
     }
 
-    private Mailer.Attachment transformAttachment(Mailer.Attachment attachment, Mailer.AttachmentIdentifier identifier) {
+    private Mailer.Attachment transformAttachment(Mailer.Attachment attachment, Mailer.AttachmentIdentifier identifier, Map<Map<String, String>, byte[]> ticketPDFs) {
         if(identifier != null) {
-            byte[] result = attachmentTransformer.get(identifier).apply(attachment.getModel());
+            byte[] result = identifier == Mailer.AttachmentIdentifier.TICKET_PDF && ticketPDFs.containsKey(attachment.getModel())
+                ? ticketPDFs.get(attachment.getModel())
+                : attachmentTransformer.get(identifier).apply(attachment.getModel());
             return result == null ? null : new Mailer.Attachment(identifier.fileName(attachment.getFilename()), result, identifier.contentType(attachment.getContentType()), null, null);
         } else {
             return attachment;
@@ -16,6 +16,7 @@
  */
 package alfio.manager;
 
+import alfio.config.RoleAndOrganizationsTransactionPreparer;
 import alfio.repository.EventDeleterRepository;
 import alfio.repository.EventRepository;
 import alfio.repository.OrganizationDeleterRepository;
@@ -41,17 +42,20 @@ public class OrganizationDeleter {
     private final EventRepository eventRepository;
     private final EventDeleterRepository eventDeleterRepository;
     private final OrganizationDeleterRepository organizationDeleterRepository;
+    private final RoleAndOrganizationsTransactionPreparer transactionPreparer;
 
     public OrganizationDeleter(UserOrganizationRepository userOrganizationRepository,
                                OrganizationRepository organizationRepository,
                                EventRepository eventRepository,
                                EventDeleterRepository eventDeleterRepository,
-                               OrganizationDeleterRepository organizationDeleterRepository) {
+                               OrganizationDeleterRepository organizationDeleterRepository,
+                               RoleAndOrganizationsTransactionPreparer transactionPreparer) {
         this.userOrganizationRepository = userOrganizationRepository;
         this.organizationRepository = organizationRepository;
         this.eventRepository = eventRepository;
         this.eventDeleterRepository = eventDeleterRepository;
         this.organizationDeleterRepository = organizationDeleterRepository;
+        this.transactionPreparer = transactionPreparer;
     }
 
 
@@ -67,6 +71,7 @@ public class OrganizationDeleter {
             }
             int users = userOrganizationRepository.cleanupOrganization(organizationId);
             log.warn("removed {} user(s) from organization {}", users, organizationId);
+            transactionPreparer.evictAllUserOrganizations();
             organizationDeleterRepository.deleteEmptyOrganizations(List.of(organizationId));
             return true;
         }
@@ -53,20 +53,29 @@ public class PaymentManager {
     private final UserRepository userRepository;
     private final ExtensionManager extensionManager;
 
+    private final PaymentMethodMatrix paymentMethodMatrix;
+
     private final List<PaymentProvider> paymentProviders; // injected by Spring
+    private final Set<PaymentProxy> requestDependentProxies;
 
     public PaymentManager(TransactionRepository transactionRepository,
                           ConfigurationManager configurationManager,
                           AuditingRepository auditingRepository,
                           UserRepository userRepository,
                           ExtensionManager extensionManager,
+                          PaymentMethodMatrix paymentMethodMatrix,
                           List<PaymentProvider> paymentProviders) {
         this.transactionRepository = transactionRepository;
         this.configurationManager = configurationManager;
         this.auditingRepository = auditingRepository;
         this.userRepository = userRepository;
         this.extensionManager = extensionManager;
+        this.paymentMethodMatrix = paymentMethodMatrix;
         this.paymentProviders = paymentProviders;
+        this.requestDependentProxies = paymentProviders.stream()
+            .filter(PaymentProvider::dependsOnTransactionRequest)
+            .map(PaymentProvider::getPaymentProxy)
+            .collect(Collectors.toUnmodifiableSet());
     }
 
     public Optional<PaymentProvider> lookupProviderByTransactionAndCapabilities(Transaction transaction, List<Class<? extends Capability>> capabilities) {
@@ -143,8 +152,17 @@ public class PaymentManager {
             .collect(Collectors.toSet());
     }
 
+    /**
+     * Returns the payment methods available for the given purchase context, reading them from the {@link PaymentMethodMatrix}
+     *
+     * @param purchaseContext the purchase context
+     * @param transactionRequest the amount and billing details of the transaction
+     * @return the available payment methods
+     */
     public List<PaymentMethodDTO> getPaymentMethods(PurchaseContext purchaseContext, TransactionRequest transactionRequest) {
-        return getPaymentMethods(new PaymentContext(purchaseContext), transactionRequest);
+        boolean requestDependent = purchaseContext.getAllowedPaymentProxies().stream().anyMatch(requestDependentProxies::contains);
+        return paymentMethodMatrix.getPaymentMethods(purchaseContext, transactionRequest, requestDependent,
+            () -> getPaymentMethods(new PaymentContext(purchaseContext), transactionRequest));
     }
 
     public List<PaymentMethodDTO> getPaymentMethods(int organizationId) {
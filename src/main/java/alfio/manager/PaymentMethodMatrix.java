@@ -0,0 +1,91 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.PaymentManager.PaymentMethodDTO;
+import alfio.model.PurchaseContext;
+import alfio.model.PurchaseContext.PurchaseContextType;
+import alfio.model.TotalPrice;
+import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.TransactionRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the payment methods available for each purchase context and currency, so that the reservation pages
+ * don't have to ask every payment provider (and load its configuration) on each request.
+ * The amount and the billing country are part of the key only if the purchase context allows a provider
+ * whose methods depend on the transaction (see {@link alfio.model.transaction.PaymentProvider#dependsOnTransactionRequest()}),
+ * otherwise a single entry covers every amount.
+ * Entries are evicted when the configuration changes (see {@link alfio.manager.system.ConfigurationChangeListener}).
+ * Since the allowed proxies are part of the key, modifications to the purchase context itself don't require eviction.
+ */
+public class PaymentMethodMatrix {
+
+    private final Cache<MatrixKey, List<PaymentMethodDTO>> matrix;
+
+    public PaymentMethodMatrix(Duration expiration) {
+        this.matrix = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(expiration)
+            .build();
+    }
+
+    List<PaymentMethodDTO> getPaymentMethods(PurchaseContext purchaseContext,
+                                             TransactionRequest transactionRequest,
+                                             boolean requestDependent,
+                                             Supplier<List<PaymentMethodDTO>> loader) {
+        return matrix.get(MatrixKey.from(purchaseContext, transactionRequest, requestDependent), k -> List.copyOf(loader.get()));
+    }
+
+    public void evictAll() {
+        matrix.invalidateAll();
+    }
+
+    private record MatrixKey(PurchaseContextType type,
+                             String publicIdentifier,
+                             List<PaymentProxy> allowedProxies,
+                             String currency,
+                             Integer amount,
+                             String billingCountry) {
+
+        private static MatrixKey from(PurchaseContext purchaseContext, TransactionRequest transactionRequest, boolean requestDependent) {
+            var price = Optional.ofNullable(transactionRequest.getPrice());
+            var currency = price.map(TotalPrice::getCurrencyCode).orElse(purchaseContext.getCurrency());
+            Integer amount = null;
+            String billingCountry = null;
+            if(requestDependent) {
+                amount = price.map(TotalPrice::getPriceWithVAT).orElse(null);
+                billingCountry = Optional.ofNullable(transactionRequest.getBillingDetails())
+                    .map(b -> StringUtils.trimToNull(b.getCountry()))
+                    .orElse(null);
+            }
+            return new MatrixKey(purchaseContext.getType(),
+                purchaseContext.getPublicIdentifier(),
+                List.copyOf(purchaseContext.getAllowedPaymentProxies()),
+                currency,
+                amount,
+                billingCountry);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.support.PaymentWebhookResult;
+import alfio.model.transaction.PaymentContext;
+import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.WebhookInboxEntry;
+import alfio.model.transaction.capabilities.WebhookHandler;
+import alfio.repository.WebhookInboxRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Receives the notifications sent by the payment providers. Notifications are verified and stored in the
+ * webhook_inbox table, so that we can reply immediately, and then processed by a pool of workers.
+ * Notifications that have already been received are discarded, see {@link WebhookHandler#getWebhookEventId(String)},
+ * unless their processing has failed.
+ * Pending notifications are also processed periodically by {@link alfio.job.Jobs}, in case they have been stored by
+ * another node or a worker has failed.
+ */
+@Component
+public class PaymentWebhookInboxManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentWebhookInboxManager.class);
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int WORKERS = 4;
+
+    // if all workers are busy and the queue is full, there's already a pending drain which will pick up the new notifications
+    private final ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKERS, WORKERS,
+        60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(WORKERS),
+        new BasicThreadFactory.Builder().namingPattern("payment-webhook-worker-%d").daemon(true).build(),
+        new ThreadPoolExecutor.DiscardPolicy());
+    private final PaymentManager paymentManager;
+    private final TicketReservationManager ticketReservationManager;
+    private final WebhookInboxRepository webhookInboxRepository;
+    private final TransactionTemplate requiredTransactionTemplate;
+    private final TransactionTemplate nestedTransactionTemplate;
+
+    public PaymentWebhookInboxManager(PaymentManager paymentManager,
+                                      TicketReservationManager ticketReservationManager,
+                                      WebhookInboxRepository webhookInboxRepository,
+                                      PlatformTransactionManager transactionManager) {
+        this.paymentManager = paymentManager;
+        this.ticketReservationManager = ticketReservationManager;
+        this.webhookInboxRepository = webhookInboxRepository;
+        this.requiredTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+    }
+
+    public PaymentWebhookResult receiveTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo) {
+        return receiveTransactionWebhook(body, signature, paymentProxy, additionalInfo, new PaymentContext());
+    }
+
+    /**
+     * Verifies the notification and stores it for asynchronous processing.
+     *
+     * @param body the payload
+     * @param signature the signature of the payload, if any
+     * @param paymentProxy the payment provider
+     * @param additionalInfo additional info received along with the payload
+     * @param pc the {@link PaymentContext}, if known
+     * @return an error if the notification cannot be verified, {@link PaymentWebhookResult.Type#NOT_RELEVANT} otherwise
+     */
+    public PaymentWebhookResult receiveTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo, PaymentContext pc) {
+        //load the payment provider using given configuration
+        var paymentProviderOptional = paymentManager.streamActiveProvidersByProxyAndCapabilities(paymentProxy, pc, List.of(WebhookHandler.class)).findFirst();
+        if(paymentProviderOptional.isEmpty()) {
+            return PaymentWebhookResult.error("payment provider not found");
+        }
+
+        var webhookHandler = (WebhookHandler) paymentProviderOptional.get();
+        if(webhookHandler.requiresSignedBody() && StringUtils.isBlank(signature)) {
+            return PaymentWebhookResult.error("signature is missing");
+        }
+
+        PaymentContext paymentContext;
+        if(pc.getConfigurationLevel().isSystem()) {
+            // https://github.com/alfio-event/alf.io/issues/1019
+            // if the current PaymentContext is System, and if the provider supports it,
+            // we try to narrow the payment context by pre-parsing the JSON body
+            paymentContext = webhookHandler.detectPaymentContext(body).orElse(pc);
+        } else {
+            paymentContext = pc;
+        }
+
+        var optionalTransactionWebhookPayload = webhookHandler.parseTransactionPayload(body, signature, additionalInfo, paymentContext);
+        if(optionalTransactionWebhookPayload.isEmpty()) {
+            return PaymentWebhookResult.error("payload not recognized");
+        }
+        var reservationId = optionalTransactionWebhookPayload.get().getReservationId();
+        if(reservationId == null) {
+            return PaymentWebhookResult.notRelevant("reservation not found");
+        }
+
+        var eventId = webhookHandler.getWebhookEventId(body);
+        int stored = eventId
+            .map(id -> webhookInboxRepository.insert(paymentProxy.name(), id, reservationId, body, additionalInfo))
+            // the notification doesn't carry the status and might refer to a newer payment, so it replaces the stored one
+            .orElseGet(() -> webhookInboxRepository.insertOrReschedule(paymentProxy.name(), reservationId, reservationId, body, additionalInfo));
+        if(stored == 0) {
+            log.trace("discarding duplicate {} notification for reservation {}", paymentProxy, reservationId);
+            return PaymentWebhookResult.notRelevant("duplicate");
+        }
+        scheduleProcessing();
+        return PaymentWebhookResult.notRelevant("queued");
+    }
+
+    /**
+     * Processes the pending notifications, in batches of {@value #BATCH_SIZE}. Each batch is processed in its own transaction.
+     *
+     * @return the number of processed notifications
+     */
+    public int processPendingWebhooks() {
+        int processed = 0;
+        int batchSize;
+        do {
+            batchSize = requireNonNullElse(requiredTransactionTemplate.execute(status -> processBatch()), 0);
+            processed += batchSize;
+        } while(batchSize == BATCH_SIZE);
+        return processed;
+    }
+
+    public int cleanupProcessedWebhooks(ZonedDateTime date) {
+        return webhookInboxRepository.deleteProcessedBefore(date);
+    }
+
+    private int processBatch() {
+        var entries = webhookInboxRepository.lockPending(BATCH_SIZE);
+        entries.forEach(this::process);
+        return entries.size();
+    }
+
+    private void process(WebhookInboxEntry entry) {
+        try {
+            var result = nestedTransactionTemplate.execute(status -> ticketReservationManager.processTransactionWebhook(entry));
+            if(result != null && result.isError()) {
+                log.warn("cannot process {} notification {} for reservation {}: {}", entry.getPaymentProxy(), entry.getId(), entry.getReservationId(), result.getReason());
+                webhookInboxRepository.registerFailure(entry.getId(), result.getReason(), MAX_ATTEMPTS);
+            } else {
+                webhookInboxRepository.markAsProcessed(entry.getId());
+            }
+        } catch (Exception e) {
+            log.warn("error while processing {} notification {} for reservation {}", entry.getPaymentProxy(), entry.getId(), entry.getReservationId(), e);
+            webhookInboxRepository.registerFailure(entry.getId(), e.getMessage(), MAX_ATTEMPTS);
+        }
+    }
+
+    private void scheduleProcessing() {
+        // workers would not be able to see uncommitted data, so we wait for the transaction to complete, if any
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    workers.execute(PaymentWebhookInboxManager.this::drain);
+                }
+            });
+        } else {
+            workers.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            processPendingWebhooks();
+        } catch (Exception e) {
+            log.warn("error while processing payment notifications. Will retry later.", e);
+        }
+    }
+}
@@ -25,16 +25,30 @@ import alfio.model.system.ConfigurationKeys;
 import alfio.repository.EventRepository;
 import alfio.repository.SpecialPriceRepository;
 import alfio.repository.TicketCategoryRepository;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.commons.text.RandomStringGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
 
 /**
  * Class SpecialPriceTokenGenerator.
@@ -46,6 +60,7 @@ import java.security.SecureRandom;
 public class SpecialPriceTokenGenerator {
 
     private static final Logger log = LoggerFactory.getLogger(SpecialPriceTokenGenerator.class);
+    private static final int BATCH_SIZE = 500;
 
     private static final SecureRandom RANDOM = new SecureRandom();
     private static final char[] ADMITTED_CHARACTERS = new char[]{
@@ -64,56 +79,76 @@ public class SpecialPriceTokenGenerator {
     private final TicketCategoryRepository ticketCategoryRepository;
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
+    private final TransactionTemplate nestedTransactionTemplate;
 
     @Autowired
     public SpecialPriceTokenGenerator(ConfigurationManager configurationManager,
                                       SpecialPriceRepository specialPriceRepository,
                                       TicketCategoryRepository ticketCategoryRepository,
-                                      EventRepository eventRepository) {
+                                      EventRepository eventRepository,
+                                      PlatformTransactionManager transactionManager) {
         this.specialPriceRepository = specialPriceRepository;
         this.configurationManager = configurationManager;
         this.ticketCategoryRepository = ticketCategoryRepository;
         this.eventRepository = eventRepository;
+        this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
     }
 
     public void generatePendingCodes() {
         StopWatch stopWatch = new StopWatch();
         log.trace("start pending codes generation");
         stopWatch.start();
-        specialPriceRepository.findWaitingElements().forEach(this::generateCode);
+        generateCodes(specialPriceRepository.findWaitingElements());
         stopWatch.stop();
         log.trace("end. Took {} ms", stopWatch.getTime());
     }
 
     public void generatePendingCodesForCategory(int categoryId) {
-        specialPriceRepository.findWaitingElementsForCategory(categoryId).forEach(this::generateCode);
+        generateCodes(specialPriceRepository.findWaitingElementsForCategory(categoryId));
+    }
+
+    private void generateCodes(List<SpecialPrice.SpecialPriceTicketCategoryId> pending) {
+        pending.stream()
+            .collect(groupingBy(SpecialPrice.SpecialPriceTicketCategoryId::getTicketCategoryId, LinkedHashMap::new,
+                mapping(SpecialPrice.SpecialPriceTicketCategoryId::getId, toList())))
+            .forEach(this::generateCodesForCategory);
     }
 
-    private void generateCode(SpecialPrice.SpecialPriceTicketCategoryId specialPrice) {
+    private void generateCodesForCategory(int categoryId, List<Integer> specialPriceIds) {
 
-        TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(specialPrice.getTicketCategoryId()).orElseThrow(IllegalStateException::new);
+        TicketCategory ticketCategory = ticketCategoryRepository.getByIdAndActive(categoryId).orElseThrow(IllegalStateException::new);
         EventAndOrganizationId event = eventRepository.findEventAndOrganizationIdById(ticketCategory.getEventId());
         int maxLength = configurationManager.getFor(ConfigurationKeys.SPECIAL_PRICE_CODE_LENGTH, ConfigurationLevel.ticketCategory(event, ticketCategory.getId())).getValueAsIntOrDefault(6);
 
-        while (true) {
-            try {
-                log.trace("generate code for special price with id {}", specialPrice.getId());
-                specialPriceRepository.updateCode(nextValidCode(maxLength), specialPrice.getId());
-                log.trace("done.");
-                return;
-            } catch (DataAccessException e) {
-                log.warn("got a duplicate. Retrying...", e);
+        log.trace("generate {} codes for category {}", specialPriceIds.size(), categoryId);
+        for (List<Integer> ids : ListUtils.partition(specialPriceIds, BATCH_SIZE)) {
+            while (!tryUpdateCodes(ids, maxLength)) {
+                log.warn("got a duplicate. Retrying...");
             }
         }
+        log.trace("done.");
+    }
+
+    private boolean tryUpdateCodes(List<Integer> ids, int maxLength) {
+        try {
+            // codes might have been taken by a concurrent transaction in the meantime. In that case we roll back
+            // to the savepoint and retry with a new set of codes
+            nestedTransactionTemplate.executeWithoutResult(status -> specialPriceRepository.bulkUpdateCode(ids, nextValidCodes(ids.size(), maxLength)));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
     }
 
-    private String nextValidCode(int maxLength) {
-        while (true) {
-            String code = generateRandomCode(maxLength);
-            if (specialPriceRepository.countByCode(code) == 0) {
-                return code;
+    private List<String> nextValidCodes(int count, int maxLength) {
+        Set<String> codes = new LinkedHashSet<>(count);
+        while (codes.size() < count) {
+            while (codes.size() < count) {
+                codes.add(generateRandomCode(maxLength));
             }
+            specialPriceRepository.findExistingCodes(codes).forEach(codes::remove);
         }
+        return new ArrayList<>(codes);
     }
 
     private String generateRandomCode(int maxLength) {
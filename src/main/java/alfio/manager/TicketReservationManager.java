@@ -68,10 +68,13 @@ import alfio.repository.user.OrganizationRepository;
 import alfio.repository.user.UserRepository;
 import alfio.util.*;
 import alfio.util.checkin.TicketCheckInUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
@@ -85,8 +88,10 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
@@ -96,15 +101,24 @@ import org.springframework.web.util.UriComponentsBuilder;
 import java.math.BigDecimal;
 import java.security.Principal;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -141,7 +155,19 @@ public class TicketReservationManager {
     private static final String STUCK_TICKETS_SUBJECT = "warning: stuck tickets found";
     private static final String ORGANIZATION = "organization";
     private static final String RESERVATION_ID = "reservationId";
-
+    private static final Duration AVAILABILITY_SNAPSHOT_TTL = Duration.ofSeconds(2);
+    private static final int EXPIRED_RESERVATIONS_CHUNK_SIZE = 500;
+    private static final int MAX_EXPIRED_RESERVATIONS_CHUNKS = 100;
+    private static final int TRANSACTION_CHECK_WORKERS = 8;
+    private static final long TRANSACTION_CHECK_TIMEOUT_SECONDS = 20;
+
+    private final Cache<Integer, Map<Integer, Integer>> availabilitySnapshots = Caffeine.newBuilder()
+        .expireAfterWrite(AVAILABILITY_SNAPSHOT_TTL)
+        .maximumSize(1000)
+        .build();
+    private final ThreadPoolExecutor transactionCheckExecutor = new ThreadPoolExecutor(TRANSACTION_CHECK_WORKERS, TRANSACTION_CHECK_WORKERS,
+        60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(EXPIRED_RESERVATIONS_CHUNK_SIZE),
+        new BasicThreadFactory.Builder().namingPattern("expired-reservation-check-%d").daemon(true).build());
     private final EventRepository eventRepository;
     private final OrganizationRepository organizationRepository;
     private final TicketRepository ticketRepository;
@@ -159,6 +185,7 @@ public class TicketReservationManager {
     private final TransactionTemplate requiresNewTransactionTemplate;
     private final TransactionTemplate serializedTransactionTemplate;
     private final TransactionTemplate nestedTransactionTemplate;
+    private final TransactionTemplate requiredTransactionTemplate;
     private final WaitingQueueManager waitingQueueManager;
     private final TicketFieldRepository ticketFieldRepository;
     private final AdditionalServiceRepository additionalServiceRepository;
@@ -175,6 +202,7 @@ public class TicketReservationManager {
     private final BillingDocumentManager billingDocumentManager;
     private final ClockProvider clockProvider;
     private final PurchaseContextManager purchaseContextManager;
+    private final DeferredInvoiceNumberRepository deferredInvoiceNumberRepository;
     private final SubscriptionRepository subscriptionRepository;
     private final UserManager userManager;
 
@@ -229,7 +257,8 @@ public class TicketReservationManager {
                                     ClockProvider clockProvider,
                                     PurchaseContextManager purchaseContextManager,
                                     SubscriptionRepository subscriptionRepository,
-                                    UserManager userManager) {
+                                    UserManager userManager,
+                                    DeferredInvoiceNumberRepository deferredInvoiceNumberRepository) {
         this.eventRepository = eventRepository;
         this.organizationRepository = organizationRepository;
         this.ticketRepository = ticketRepository;
@@ -250,6 +279,7 @@ public class TicketReservationManager {
         serialized.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
         this.serializedTransactionTemplate = new TransactionTemplate(transactionManager, serialized);
         this.nestedTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+        this.requiredTransactionTemplate = new TransactionTemplate(transactionManager);
         this.ticketFieldRepository = ticketFieldRepository;
         this.additionalServiceRepository = additionalServiceRepository;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
@@ -267,6 +297,7 @@ public class TicketReservationManager {
         this.purchaseContextManager = purchaseContextManager;
         this.subscriptionRepository = subscriptionRepository;
         this.userManager = userManager;
+        this.deferredInvoiceNumberRepository = deferredInvoiceNumberRepository;
     }
 
     private String createSubscriptionReservation(SubscriptionDescriptor subscriptionDescriptor,
@@ -323,6 +354,25 @@ public class TicketReservationManager {
                                           Locale locale,
                                           boolean forWaitingQueue,
                                           Principal principal) throws NotEnoughTicketsException, MissingSpecialPriceTokenException, InvalidSpecialPriceTokenException {
+        var sample = MetricsUtil.startTimer();
+        String outcome = MetricsUtil.FAILURE;
+        try {
+            var reservationId = internalCreateTicketReservation(event, list, additionalServices, reservationExpiration, promotionCodeDiscount, locale, forWaitingQueue, principal);
+            outcome = MetricsUtil.SUCCESS;
+            return reservationId;
+        } finally {
+            MetricsUtil.stopTimer(sample, MetricsUtil.RESERVATION_CREATE, MetricsUtil.OUTCOME, outcome);
+        }
+    }
+
+    private String internalCreateTicketReservation(Event event,
+                                                   List<TicketReservationWithOptionalCodeModification> list,
+                                                   List<ASReservationWithOptionalCodeModification> additionalServices,
+                                                   Date reservationExpiration,
+                                                   Optional<String> promotionCodeDiscount,
+                                                   Locale locale,
+                                                   boolean forWaitingQueue,
+                                                   Principal principal) {
         String reservationId = UUID.randomUUID().toString();
 
         Optional<PromoCodeDiscount> discount = promotionCodeDiscount
@@ -429,7 +479,7 @@ public class TicketReservationManager {
             specialPrices = specialPrice.stream().toList();
         }
 
-        List<Integer> reservedForUpdate = reserveTickets(event.getId(), ticketReservation, forWaitingQueue ? asList(TicketStatus.RELEASED, TicketStatus.PRE_RESERVED) : singletonList(TicketStatus.FREE));
+        List<Integer> reservedForUpdate = reserveTickets(event, reservationId, ticketReservation, forWaitingQueue ? asList(TicketStatus.RELEASED, TicketStatus.PRE_RESERVED) : singletonList(TicketStatus.FREE));
         int requested = ticketReservation.getQuantity();
         if (reservedForUpdate.size() != requested) {
             throw new NotEnoughTicketsException();
@@ -568,17 +618,38 @@ public class TicketReservationManager {
 
     }
 
-    List<Integer> reserveTickets(int eventId, TicketReservationWithOptionalCodeModification ticketReservation, List<TicketStatus> requiredStatuses) {
-        return reserveTickets(eventId, ticketReservation.getTicketCategoryId(), ticketReservation.getQuantity(), requiredStatuses);
+    List<Integer> reserveTickets(EventAndOrganizationId event, String reservationId, TicketReservationWithOptionalCodeModification ticketReservation, List<TicketStatus> requiredStatuses) {
+        return reserveTickets(event, reservationId, ticketReservation.getTicketCategoryId(), ticketReservation.getQuantity(), requiredStatuses);
     }
 
-    List<Integer> reserveTickets(int eventId , int categoryId, int qty, List<TicketStatus> requiredStatuses) {
+    /**
+     * Locks the tickets to be reserved. If {@link ConfigurationKeys#TICKET_ALLOCATION_SHARDS} is greater than 1, the available
+     * tickets are partitioned by id and each reservation starts from the partition selected by its id, moving to the next ones
+     * only if there are not enough tickets left. This way concurrent buyers don't compete for the same leading rows.
+     */
+    List<Integer> reserveTickets(EventAndOrganizationId event, String reservationId, int categoryId, int qty, List<TicketStatus> requiredStatuses) {
+        int eventId = event.getId();
         TicketCategory category = ticketCategoryRepository.getByIdAndActive(categoryId, eventId);
         List<String> statusesAsString = requiredStatuses.stream().map(TicketStatus::name).toList();
-        if(category.isBounded()) {
-            return ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+        int shards = configurationManager.getFor(TICKET_ALLOCATION_SHARDS, ConfigurationLevel.event(event)).getValueAsIntOrDefault(1);
+        if(shards <= 1) {
+            if(category.isBounded()) {
+                return ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eventId, categoryId, qty, statusesAsString);
+            }
+            return ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eventId, qty, statusesAsString);
+        }
+        int firstShard = Math.floorMod(reservationId.hashCode(), shards);
+        List<Integer> result = new ArrayList<>(qty);
+        for(int i = 0; i < shards && result.size() < qty; i++) {
+            int shard = (firstShard + i) % shards;
+            int missing = qty - result.size();
+            if(category.isBounded()) {
+                result.addAll(ticketRepository.selectTicketInCategoryShardForUpdateSkipLocked(eventId, categoryId, missing, statusesAsString, shards, shard));
+            } else {
+                result.addAll(ticketRepository.selectNotAllocatedTicketsShardForUpdateSkipLocked(eventId, missing, statusesAsString, shards, shard));
+            }
         }
-        return ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eventId, qty, statusesAsString);
+        return result;
     }
 
     Optional<SpecialPrice> fixToken(Optional<SpecialPrice> token, int ticketCategoryId, int eventId, TicketReservationWithOptionalCodeModification ticketReservation) {
@@ -617,6 +688,30 @@ public class TicketReservationManager {
                                         PaymentMethod paymentMethod,
                                         Principal principal) {
         PaymentProxy paymentProxy = evaluatePaymentProxy(proxy, reservationCost);
+        var sample = MetricsUtil.startTimer();
+        String outcome = MetricsUtil.FAILURE;
+        try {
+            var paymentResult = internalPerformPayment(spec, reservationCost, paymentProxy, paymentMethod, principal);
+            outcome = paymentOutcome(paymentResult.getType());
+            return paymentResult;
+        } finally {
+            MetricsUtil.stopTimer(sample, MetricsUtil.PAYMENT_PERFORM, "proxy", String.valueOf(paymentProxy), MetricsUtil.OUTCOME, outcome);
+        }
+    }
+
+    private static String paymentOutcome(PaymentResult.Type type) {
+        return switch (type) {
+            case SUCCESSFUL -> MetricsUtil.SUCCESS;
+            case FAILED -> MetricsUtil.FAILURE;
+            case INITIALIZED, PENDING, REDIRECT -> MetricsUtil.PENDING;
+        };
+    }
+
+    private PaymentResult internalPerformPayment(PaymentSpecification spec,
+                                                 TotalPrice reservationCost,
+                                                 PaymentProxy paymentProxy,
+                                                 PaymentMethod paymentMethod,
+                                                 Principal principal) {
 
         if(!acquireGroupMembers(spec.getReservationId(), spec.getPurchaseContext())) {
             groupManager.deleteWhitelistedTicketsForReservation(spec.getReservationId());
@@ -716,9 +811,76 @@ public class TicketReservationManager {
     private void transitionToComplete(PaymentSpecification spec, TotalPrice reservationCost, PaymentProxy paymentProxy, String username) {
         var status = ticketReservationRepository.findOptionalStatusAndValidationById(spec.getReservationId()).orElseThrow().getStatus();
         if(status != COMPLETE) {
-            billingDocumentManager.generateInvoiceNumber(spec, reservationCost)
-                .ifPresent(invoiceNumber -> ticketReservationRepository.setInvoiceNumber(spec.getReservationId(), invoiceNumber));
-            completeReservation(spec, paymentProxy, true, true, username);
+            if(billingDocumentManager.isInvoiceNumberAllocationDeferred(spec.getPurchaseContext())) {
+                // the invoice sequence stays locked until commit, so the number is allocated once the confirmation
+                // has been committed, in a transaction of its own. Extensions and e-mails need the number, so they follow.
+                completeReservation(spec, paymentProxy, true, true, username, false);
+                deferredInvoiceNumberRepository.insert(spec.getReservationId(), paymentProxy.name());
+                afterCommit(() -> completeDeferredConfirmation(spec, reservationCost));
+            } else {
+                billingDocumentManager.generateInvoiceNumber(spec, reservationCost)
+                    .ifPresent(invoiceNumber -> ticketReservationRepository.setInvoiceNumber(spec.getReservationId(), invoiceNumber));
+                completeReservation(spec, paymentProxy, true, true, username);
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable task) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Completes the confirmations whose invoice number allocation has been interrupted, e.g. by a restart.
+     *
+     * @return the number of processed confirmations
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public int completeDeferredConfirmations() {
+        var reservationIds = deferredInvoiceNumberRepository.findStale(EXPIRED_RESERVATIONS_CHUNK_SIZE);
+        reservationIds.forEach(reservationId -> {
+            var reservation = ticketReservationRepository.findReservationById(reservationId);
+            var purchaseContext = purchaseContextManager.findByReservationId(reservationId).orElseThrow();
+            var totalPrice = totalReservationCostWithVAT(reservation).getLeft();
+            var spec = new PaymentSpecification(reservation, totalPrice, purchaseContext, null,
+                orderSummaryForReservation(reservation, purchaseContext), false, false);
+            completeDeferredConfirmation(spec, totalPrice);
+        });
+        return reservationIds.size();
+    }
+
+    /**
+     * Allocates the invoice number of a reservation confirmed with {@code DEFER_INVOICE_NUMBER_ALLOCATION}, then
+     * notifies extensions and sends the confirmation e-mails.
+     * Each step runs in a short transaction of its own, so that the invoice sequence is locked only for the
+     * time needed to assign the number. Numbers are therefore assigned in the order the confirmations are committed,
+     * and only to committed confirmations.
+     */
+    private void completeDeferredConfirmation(PaymentSpecification spec, TotalPrice reservationCost) {
+        String reservationId = spec.getReservationId();
+        try {
+            requiresNewTransactionTemplate.executeWithoutResult(status -> deferredInvoiceNumberRepository.lockForAllocation(reservationId).ifPresent(paymentProxy -> {
+                billingDocumentManager.generateInvoiceNumber(spec, reservationCost)
+                    .ifPresent(invoiceNumber -> ticketReservationRepository.setInvoiceNumber(reservationId, invoiceNumber));
+                deferredInvoiceNumberRepository.markAsAllocated(reservationId);
+            }));
+            requiresNewTransactionTemplate.executeWithoutResult(status -> deferredInvoiceNumberRepository.lockForConfirmation(reservationId).ifPresent(paymentProxy -> {
+                var reservation = ticketReservationRepository.findReservationById(reservationId);
+                var proxy = PaymentProxy.valueOf(paymentProxy);
+                var tickets = proxy != PaymentProxy.OFFLINE ? findTicketsInReservation(reservationId) : null;
+                notifyReservationConfirmed(reservation, spec.getPurchaseContext(), proxy, tickets, LocaleUtil.forLanguageTag(reservation.getUserLanguage()), true, null);
+                deferredInvoiceNumberRepository.delete(reservationId);
+            }));
+        } catch (Exception e) {
+            log.warn("cannot complete the confirmation of reservation {}. Will retry later.", reservationId, e);
         }
     }
 
@@ -1188,6 +1350,19 @@ public class TicketReservationManager {
      * Set the tickets attached to the reservation to the ACQUIRED state and the ticket reservation to the COMPLETE state. Additionally it will save email/fullName/billingaddress/userLanguage.
      */
     void completeReservation(PaymentSpecification spec, PaymentProxy paymentProxy, boolean sendReservationConfirmationEmail, boolean sendTickets, String username) {
+        completeReservation(spec, paymentProxy, sendReservationConfirmationEmail, sendTickets, username, true);
+    }
+
+    /**
+     * Same as {@link #completeReservation(PaymentSpecification, PaymentProxy, boolean, boolean, String)}. If
+     * {@code notifyConfirmation} is {@code false}, extensions are not notified and the confirmation e-mails are not sent.
+     */
+    private void completeReservation(PaymentSpecification spec,
+                                     PaymentProxy paymentProxy,
+                                     boolean sendReservationConfirmationEmail,
+                                     boolean sendTickets,
+                                     String username,
+                                     boolean notifyConfirmation) {
         String reservationId = spec.getReservationId();
         var purchaseContext = spec.getPurchaseContext();
         final TicketReservation reservation = ticketReservationRepository.findReservationById(reservationId);
@@ -1204,7 +1379,6 @@ public class TicketReservationManager {
         List<Ticket> tickets = null;
         if(paymentProxy != PaymentProxy.OFFLINE) {
             tickets = acquireItems(paymentProxy, reservationId, spec.getEmail(), spec.getCustomerName(), spec.getLocale().getLanguage(), spec.getBillingAddress(), spec.getCustomerReference(), spec.getPurchaseContext(), sendTickets);
-            extensionManager.handleReservationConfirmation(reservation, ticketReservationRepository.getBillingDetailsForReservation(reservationId), spec.getPurchaseContext());
         }
 
         Date eventTime = new Date();
@@ -1218,10 +1392,26 @@ public class TicketReservationManager {
             auditingRepository.insert(reservationId, userId, purchaseContext, Audit.EventType.PRIVACY_POLICY_ACCEPTED, eventTime, Audit.EntityType.RESERVATION, reservationId, singletonList(singletonMap("privacyPolicyUrl", spec.getPurchaseContext().getPrivacyPolicyUrl())));
         }
 
-        if(sendReservationConfirmationEmail) {
+        if(notifyConfirmation) {
             TicketReservation updatedReservation = ticketReservationRepository.findReservationById(reservationId);
-            sendConfirmationEmailIfNecessary(updatedReservation, tickets, purchaseContext, locale, username);
-            sendReservationCompleteEmailToOrganizer(spec.getPurchaseContext(), updatedReservation, locale, username);
+            notifyReservationConfirmed(updatedReservation, purchaseContext, paymentProxy, tickets, locale, sendReservationConfirmationEmail, username);
+        }
+    }
+
+    private void notifyReservationConfirmed(TicketReservation reservation,
+                                            PurchaseContext purchaseContext,
+                                            PaymentProxy paymentProxy,
+                                            List<Ticket> tickets,
+                                            Locale locale,
+                                            boolean sendReservationConfirmationEmail,
+                                            String username) {
+        if(paymentProxy != PaymentProxy.OFFLINE) {
+            extensionManager.handleReservationConfirmation(reservation, ticketReservationRepository.getBillingDetailsForReservation(reservation.getId()), purchaseContext);
+        }
+
+        if(sendReservationConfirmationEmail) {
+            sendConfirmationEmailIfNecessary(reservation, tickets, purchaseContext, locale, username);
+            sendReservationCompleteEmailToOrganizer(purchaseContext, reservation, locale, username);
         }
     }
 
@@ -1383,46 +1573,143 @@ public class TicketReservationManager {
         };
     }
 
-    @Transactional
-    public void cleanupExpiredReservations(Date expirationDate) {
-        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservationForUpdate(expirationDate);
-        if(expiredReservationIds.isEmpty()) {
-            return;
+    /**
+     * Releases the reservations expired before the given date. Reservations are processed in chunks of
+     * {@value #EXPIRED_RESERVATIONS_CHUNK_SIZE}, each one in its own transaction.
+     *
+     * @param expirationDate the expiration date
+     * @return the number of released reservations
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public int cleanupExpiredReservations(Date expirationDate) {
+        int released = 0;
+        String lastId = "";
+        for (int i = 0; i < MAX_EXPIRED_RESERVATIONS_CHUNKS; i++) {
+            List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservationIds(expirationDate, lastId, EXPIRED_RESERVATIONS_CHUNK_SIZE);
+            if(expiredReservationIds.isEmpty()) {
+                break;
+            }
+            var checkedReservations = checkPendingTransactions(expiredReservationIds);
+            released += requireNonNullElse(requiredTransactionTemplate.execute(status -> releaseExpiredReservations(expiredReservationIds, expirationDate, checkedReservations)), 0);
+            if(expiredReservationIds.size() < EXPIRED_RESERVATIONS_CHUNK_SIZE) {
+                break;
+            }
+            lastId = expiredReservationIds.get(expiredReservationIds.size() - 1);
         }
+        return released;
+    }
 
-        List<String> reservationsToIgnore = new ArrayList<>();
-        // check if any of the above reservation has a pending transaction with a webhook-capable payment provider.
-        // if so, we'll force the remote status check in order to prevent deletion of paid (or pending) reservations
-        ticketReservationRepository.findReservationsWithPendingTransaction(expiredReservationIds)
-            .forEach(reservation -> {
-                var purchaseContextOptional = purchaseContextManager.findByReservationId(reservation.getId());
-                if (purchaseContextOptional.isPresent()) {
-                    var purchaseContext = purchaseContextOptional.get();
-                    var resultOptional = forceTransactionCheck(purchaseContext, reservation);
-                    var reservationId = reservation.getId();
-                    if (resultOptional.isPresent()) {
-                        var result = resultOptional.get();
-                        if (result.isSuccessful()) {
-                            // payment is successful, so reservation must not be deleted
-                            log.debug("Force check for expired reservation ID {} revealed a completed transaction. Will not delete.", reservationId);
-                            reservationsToIgnore.add(reservationId);
-                        } else {
-                            // we need to cancel the pending payment, otherwise we could end up with a mismatch
-                            boolean cancelPendingPaymentResult = cancelPendingPayment(reservationId, purchaseContext);
-                            log.warn("Trying to force pending payment cancellation for reservation ID {}. Successful: {}", reservationId, cancelPendingPaymentResult);
-                        }
-                    } else {
-                        log.trace("No result from forceTransactionCheck for reservation ID {}", reservationId);
-                    }
+    /**
+     * Checks if any of the given reservations has a pending transaction with a webhook-capable payment provider.
+     * If so, we'll force the remote status check in order to prevent deletion of paid (or pending) reservations.
+     * Checks are performed concurrently, each one in its own transaction, since the payment providers update both
+     * the reservation and the transaction.
+     * All the checks must complete within {@value #TRANSACTION_CHECK_TIMEOUT_SECONDS} seconds. Checks which are still
+     * running are then cancelled, and those which haven't started yet skip themselves. In both cases the reservation
+     * is not released and will be checked again during the next run.
+     *
+     * @param reservationIds the expired reservations
+     * @return for each checked reservation, whether it can be released
+     */
+    private Map<String, Boolean> checkPendingTransactions(List<String> reservationIds) {
+        var reservations = ticketReservationRepository.findReservationsWithPendingTransaction(reservationIds);
+        if(reservations.isEmpty()) {
+            return Map.of();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TRANSACTION_CHECK_TIMEOUT_SECONDS);
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            // workers would not be able to see uncommitted data, so if we're already in a transaction we run everything
+            // on the current thread
+            return reservations.stream().collect(toMap(TicketReservation::getId, reservation -> checkExpiredReservation(reservation, deadline)));
+        }
+        Map<String, Boolean> result = new HashMap<>();
+        Map<String, Future<Boolean>> checks = new LinkedHashMap<>();
+        for (TicketReservation reservation : reservations) {
+            try {
+                checks.put(reservation.getId(), transactionCheckExecutor.submit(() -> checkExpiredReservation(reservation, deadline)));
+            } catch (RejectedExecutionException e) {
+                log.warn("Cannot schedule the transaction check for expired reservation ID {}. Will not delete.", reservation.getId());
+                result.put(reservation.getId(), false);
+            }
+        }
+        for (var entry : checks.entrySet()) {
+            var future = entry.getValue();
+            boolean canBeReleased = false;
+            try {
+                canBeReleased = Boolean.TRUE.equals(future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                log.warn("Timeout while checking the transaction for expired reservation ID {}. Will not delete.", entry.getKey());
+            } catch (ExecutionException e) {
+                log.warn("Error while checking the transaction for expired reservation ID {}. Will not delete.", entry.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            }
+            result.put(entry.getKey(), canBeReleased);
+        }
+        return result;
+    }
 
-                } else {
-                    log.warn("PurchaseContext not found for reservation ID {}", reservation.getId());
-                }
-            });
+    private boolean checkExpiredReservation(TicketReservation reservation, long deadline) {
+        if(System.nanoTime() - deadline > 0) {
+            log.debug("Deadline exceeded before checking the transaction for expired reservation ID {}. Will check during the next run.", reservation.getId());
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(nestedTransactionTemplate.execute(status -> canReleaseExpiredReservation(reservation, deadline)));
+        } catch (Exception e) {
+            log.warn("Error while checking the transaction for expired reservation ID {}. Will not delete.", reservation.getId(), e);
+            return false;
+        }
+    }
 
-        var toDelete = expiredReservationIds.stream()
-            .filter(id -> !reservationsToIgnore.contains(id))
+    private boolean canReleaseExpiredReservation(TicketReservation reservation, long deadline) {
+        var reservationId = reservation.getId();
+        var purchaseContextOptional = purchaseContextManager.findByReservationId(reservationId);
+        if (purchaseContextOptional.isEmpty()) {
+            log.warn("PurchaseContext not found for reservation ID {}", reservationId);
+            return true;
+        }
+        var purchaseContext = purchaseContextOptional.get();
+        var resultOptional = forceTransactionCheck(purchaseContext, reservation);
+        if (resultOptional.isEmpty()) {
+            log.trace("No result from forceTransactionCheck for reservation ID {}", reservationId);
+            return true;
+        }
+        if (resultOptional.get().isSuccessful()) {
+            // payment is successful, so reservation must not be deleted
+            log.debug("Force check for expired reservation ID {} revealed a completed transaction. Will not delete.", reservationId);
+            return false;
+        }
+        if (Thread.currentThread().isInterrupted() || System.nanoTime() - deadline > 0) {
+            // the outcome has already been decided without this check, so we must not cancel the payment
+            log.debug("Deadline exceeded while checking the transaction for expired reservation ID {}. Will check during the next run.", reservationId);
+            return false;
+        }
+        // we need to cancel the pending payment, otherwise we could end up with a mismatch
+        boolean cancelPendingPaymentResult = cancelPendingPayment(reservationId, purchaseContext);
+        log.warn("Trying to force pending payment cancellation for reservation ID {}. Successful: {}", reservationId, cancelPendingPaymentResult);
+        return true;
+    }
+
+    private int releaseExpiredReservations(List<String> expiredReservationIds, Date expirationDate, Map<String, Boolean> checkedReservations) {
+        List<String> lockedReservationIds = ticketReservationRepository.lockExpiredReservations(expiredReservationIds, expirationDate);
+        if(lockedReservationIds.isEmpty()) {
+            return 0;
+        }
+        // a transaction might have been started in the meantime. In that case we'll check it during the next run
+        var notChecked = lockedReservationIds.stream().filter(id -> !checkedReservations.containsKey(id)).toList();
+        Set<String> startedTransaction = notChecked.isEmpty() ? Set.of() : ticketReservationRepository.findReservationsWithPendingTransaction(notChecked).stream()
+            .map(TicketReservation::getId)
+            .collect(toSet());
+
+        var toDelete = lockedReservationIds.stream()
+            .filter(id -> checkedReservations.getOrDefault(id, !startedTransaction.contains(id)))
             .toList();
+        if(toDelete.isEmpty()) {
+            return 0;
+        }
 
         subscriptionRepository.deleteSubscriptionWithReservationId(toDelete);
         specialPriceRepository.resetToFreeAndCleanupForReservation(toDelete);
@@ -1436,15 +1723,19 @@ public class TicketReservationManager {
             .getReservationIdAndEventId(toDelete)
             .stream()
             .collect(Collectors.groupingBy(ReservationIdAndEventId::getEventId));
-        reservationIdsByEvent.forEach((eventId, reservations) -> {
-            Event event = eventRepository.findById(eventId);
-            List<String> reservationIds = reservations.stream().map(ReservationIdAndEventId::getId).toList();
-            extensionManager.handleReservationsExpiredForEvent(event, reservationIds);
-            billingDocumentRepository.deleteForReservations(reservationIds, eventId);
-            transactionRepository.deleteForReservations(reservationIds);
-        });
+        if(!reservationIdsByEvent.isEmpty()) {
+            Map<Integer, Event> eventsById = eventRepository.findByIds(reservationIdsByEvent.keySet()).stream()
+                .collect(toMap(Event::getId, Function.identity()));
+            reservationIdsByEvent.forEach((eventId, reservations) -> {
+                List<String> reservationIds = reservations.stream().map(ReservationIdAndEventId::getId).toList();
+                extensionManager.handleReservationsExpiredForEvent(eventsById.get(eventId), reservationIds);
+                billingDocumentRepository.deleteForReservations(reservationIds, eventId);
+                transactionRepository.deleteForReservations(reservationIds);
+            });
+        }
         //
         ticketReservationRepository.remove(toDelete);
+        return toDelete.size();
     }
 
     public void cleanupExpiredOfflineReservations(Date expirationDate) {
@@ -2272,6 +2563,23 @@ public class TicketReservationManager {
         return ticketRepository.countFreeTicketsForUnbounded(event.getId());
     }
 
+    /**
+     * Returns a function which computes the available tickets for the categories of the given event.
+     * Free tickets of all categories are counted with a single query, and the result is shared between
+     * concurrent callers for a couple of seconds. The snapshot is bypassed if there is an active
+     * transaction, in order to always reflect uncommitted changes.
+     *
+     * @param event the event
+     * @return a function which returns the available tickets for a given category
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ToIntFunction<TicketCategory> availableTicketsSnapshot(EventAndOrganizationId event) {
+        Map<Integer, Integer> freeTickets = TransactionSynchronizationManager.isActualTransactionActive()
+            ? ticketRepository.countFreeTicketsByCategory(event.getId())
+            : availabilitySnapshots.get(event.getId(), ticketRepository::countFreeTicketsByCategory);
+        return category -> freeTickets.getOrDefault(category.isBounded() ? category.getId() : null, 0);
+    }
+
     public void releaseTicket(Event event, TicketReservation ticketReservation, final Ticket ticket) {
         var messageSource = messageSourceManager.getMessageSourceFor(event);
         var category = ticketCategoryRepository.getByIdAndActive(ticket.getCategoryId(), event.getId());
@@ -2495,43 +2803,56 @@ public class TicketReservationManager {
         return StringUtils.isEmpty(reservation.getUserLanguage()) ? Locale.ENGLISH : LocaleUtil.forLanguageTag(reservation.getUserLanguage());
     }
 
-    public PaymentWebhookResult processTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo) {
-        return processTransactionWebhook(body, signature, paymentProxy, additionalInfo, new PaymentContext());
+    /**
+     * Processes a notification received from a payment provider. Notifications are verified and stored upon reception,
+     * see {@link PaymentWebhookInboxManager}.
+     *
+     * @param entry the notification
+     * @return the result
+     */
+    public PaymentWebhookResult processTransactionWebhook(WebhookInboxEntry entry) {
+        var sample = MetricsUtil.startTimer();
+        String outcome = MetricsUtil.FAILURE;
+        try {
+            var result = internalProcessTransactionWebhook(entry);
+            outcome = webhookOutcome(result.getType());
+            return result;
+        } finally {
+            MetricsUtil.stopTimer(sample, MetricsUtil.PAYMENT_WEBHOOK_PROCESS, "proxy", String.valueOf(entry.getPaymentProxy()), MetricsUtil.OUTCOME, outcome);
+        }
     }
 
-    public PaymentWebhookResult processTransactionWebhook(String body, String signature, PaymentProxy paymentProxy, Map<String, String> additionalInfo, PaymentContext pc) {
-        //load the payment provider using given configuration
-        var paymentProviderOptional = paymentManager.streamActiveProvidersByProxyAndCapabilities(paymentProxy, pc, List.of(WebhookHandler.class)).findFirst();
-        if(paymentProviderOptional.isEmpty()) {
-            return PaymentWebhookResult.error("payment provider not found");
-        }
+    private static String webhookOutcome(PaymentWebhookResult.Type type) {
+        return switch (type) {
+            case SUCCESSFUL -> MetricsUtil.SUCCESS;
+            case REJECTED, FAILED, CANCELLED, ERROR -> MetricsUtil.FAILURE;
+            case TRANSACTION_INITIATED -> MetricsUtil.PENDING;
+            case NOT_RELEVANT -> MetricsUtil.IGNORED;
+        };
+    }
 
-        var paymentProvider = paymentProviderOptional.get();
-        if(((WebhookHandler)paymentProvider).requiresSignedBody() && StringUtils.isBlank(signature)) {
-            return PaymentWebhookResult.error("signature is missing");
+    private PaymentWebhookResult internalProcessTransactionWebhook(WebhookInboxEntry entry) {
+        var optionalReservation = ticketReservationRepository.findOptionalReservationById(entry.getReservationId());
+        if(optionalReservation.isEmpty()) {
+            return PaymentWebhookResult.notRelevant("reservation not found");
         }
+        var reservation = optionalReservation.get();
+        var purchaseContext = purchaseContextManager.findByReservationId(reservation.getId()).orElseThrow();
+        var paymentContext = new PaymentContext(purchaseContext);
 
-        PaymentContext paymentContext;
-        if(pc.getConfigurationLevel().isSystem()) {
-            // https://github.com/alfio-event/alf.io/issues/1019
-            // if the current PaymentContext is System, and if the provider supports it,
-            // we try to narrow the payment context by pre-parsing the JSON body
-            paymentContext = ((WebhookHandler) paymentProvider).detectPaymentContext(body).orElse(pc);
-        } else {
-            paymentContext = pc;
+        //load the payment provider using the configuration of the purchase context
+        var paymentProviderOptional = paymentManager.streamActiveProvidersByProxyAndCapabilities(entry.getPaymentProxy(), paymentContext, List.of(WebhookHandler.class)).findFirst();
+        if(paymentProviderOptional.isEmpty()) {
+            return PaymentWebhookResult.error("payment provider not found");
         }
+        var paymentProvider = paymentProviderOptional.get();
 
-        var optionalTransactionWebhookPayload = ((WebhookHandler)paymentProvider).parseTransactionPayload(body, signature, additionalInfo, paymentContext);
+        var optionalTransactionWebhookPayload = ((WebhookHandler)paymentProvider).parseVerifiedTransactionPayload(entry.getBody(), entry.getAdditionalInfo(), new PaymentContext(purchaseContext, reservation.getId()));
         if(optionalTransactionWebhookPayload.isEmpty()) {
             return PaymentWebhookResult.error("payload not recognized");
         }
         var transactionPayload = optionalTransactionWebhookPayload.get();
 
-        var optionalReservation = ticketReservationRepository.findOptionalReservationById(transactionPayload.getReservationId());
-        if(optionalReservation.isEmpty()) {
-            return PaymentWebhookResult.notRelevant("reservation not found");
-        }
-        var reservation = optionalReservation.get();
         var optionalTransaction = transactionRepository.lockLatestForUpdate(reservation.getId());
         if(optionalTransaction.isEmpty()) {
             return PaymentWebhookResult.notRelevant("transaction not found");
@@ -2543,15 +2864,11 @@ public class TicketReservationManager {
             return PaymentWebhookResult.notRelevant("reservation status is not compatible");
         }
 
-
-        //reload the payment provider, this time within a more sensible context
-        var purchaseContext = purchaseContextManager.findByReservationId(reservation.getId()).orElseThrow();
-        var paymentContextReloaded = new PaymentContext(purchaseContext);
         return paymentManager.lookupProviderByTransactionAndCapabilities(transaction, List.of(WebhookHandler.class))
             .map(provider -> {
-                var paymentWebhookResult = ((WebhookHandler)provider).processWebhook(transactionPayload, transaction, paymentContextReloaded);
+                var paymentWebhookResult = ((WebhookHandler)provider).processWebhook(transactionPayload, transaction, paymentContext);
                 String operationType = transactionPayload.getType();
-                return handlePaymentWebhookResult(purchaseContext, paymentProvider, paymentWebhookResult, reservation, transaction, paymentContextReloaded, operationType, true);
+                return handlePaymentWebhookResult(purchaseContext, paymentProvider, paymentWebhookResult, reservation, transaction, paymentContext, operationType, true);
             })
             .orElseGet(() -> PaymentWebhookResult.error("payment provider not found"));
     }
@@ -19,6 +19,8 @@ package alfio.manager;
 import alfio.model.UploadedResource;
 import alfio.model.modification.UploadBase64FileModification;
 import alfio.repository.UploadedResourceRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,10 +34,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
 
 @Component
 @Transactional
@@ -48,6 +48,12 @@ public class UploadedResourceManager {
 
     private final UploadedResourceRepository uploadedResourceRepository;
 
+    // the creation time is part of the key, so that a new version of the resource will never hit a stale entry
+    private final Cache<CascadingResourceKey, byte[]> cascadingResourcesCache = Caffeine.newBuilder()
+        .maximumSize(500)
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
+
     @Autowired
     public UploadedResourceManager(UploadedResourceRepository uploadedResourceRepository) {
         this.uploadedResourceRepository = uploadedResourceRepository;
@@ -91,6 +97,7 @@ public class UploadedResourceManager {
     }
 
     public Optional<Integer> saveResource(UploadBase64FileModification file) {
+        evictCascadingCache(file.getName());
         if (hasResource(file.getName())) {
             uploadedResourceRepository.delete(file.getName());
         }
@@ -99,6 +106,7 @@ public class UploadedResourceManager {
     }
 
     public Optional<Integer> saveResource(int organizationId, UploadBase64FileModification file) {
+        evictCascadingCache(file.getName());
         if (hasResource(organizationId, file.getName())) {
             uploadedResourceRepository.delete(organizationId, file.getName());
         }
@@ -107,6 +115,7 @@ public class UploadedResourceManager {
     }
 
     public Optional<Integer> saveResource(int organizationId, int eventId, UploadBase64FileModification file) {
+        evictCascadingCache(file.getName());
         if (hasResource(organizationId, eventId, file.getName())) {
             uploadedResourceRepository.delete(organizationId, eventId, file.getName());
         }
@@ -115,14 +124,17 @@ public class UploadedResourceManager {
     }
 
     public void deleteResource(String name) {
+        evictCascadingCache(name);
         uploadedResourceRepository.delete(name);
     }
 
     public void deleteResource(int organizationId, String name) {
+        evictCascadingCache(name);
         uploadedResourceRepository.delete(organizationId, name);
     }
 
     public void deleteResource(int organizationId, int eventId, String name) {
+        evictCascadingCache(name);
         uploadedResourceRepository.delete(organizationId, eventId, name);
     }
 
@@ -155,19 +167,40 @@ public class UploadedResourceManager {
         }
     }
 
+    /**
+     * Returns the content of the most specific resource with the given name, looking up the event first,
+     * then the organization and finally the global resources.
+     * The metadata are always loaded from the database, while the content is served from a local cache if possible.
+     *
+     * @param organizationId the organization id
+     * @param eventId the event id, can be null
+     * @param savedName the name of the resource
+     * @return the content of the resource, if found
+     */
     public Optional<byte[]> findCascading(int organizationId, Integer eventId, String savedName) {
+        return uploadedResourceRepository.findCascading(organizationId, eventId, savedName)
+            .map(resource -> cascadingResourcesCache.get(CascadingResourceKey.from(resource), key -> loadContent(resource)));
+    }
+
+    private byte[] loadContent(UploadedResource resource) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        if(eventId != null && hasResource(organizationId, eventId, savedName)) {
-            outputResource(organizationId, eventId, savedName, baos);
-            return Optional.of(baos.toByteArray());
-        } else if (hasResource(organizationId, savedName)) {
-            outputResource(organizationId, savedName, baos);
-            return Optional.of(baos.toByteArray());
-        } else if (hasResource(savedName)) {
-            outputResource(savedName, baos);
-            return Optional.of(baos.toByteArray());
+        if(resource.getEventId() != null) {
+            outputResource(resource.getOrganizationId(), resource.getEventId(), resource.getName(), baos);
+        } else if (resource.getOrganizationId() != null) {
+            outputResource(resource.getOrganizationId(), resource.getName(), baos);
         } else {
-            return Optional.empty();
+            outputResource(resource.getName(), baos);
+        }
+        return baos.toByteArray();
+    }
+
+    private void evictCascadingCache(String name) {
+        cascadingResourcesCache.asMap().keySet().removeIf(key -> key.name().equals(name));
+    }
+
+    private record CascadingResourceKey(Integer organizationId, Integer eventId, String name, Date creationTime, int contentSize) {
+        private static CascadingResourceKey from(UploadedResource resource) {
+            return new CascadingResourceKey(resource.getOrganizationId(), resource.getEventId(), resource.getName(), resource.getCreationTime(), resource.getContentSize());
         }
     }
 }
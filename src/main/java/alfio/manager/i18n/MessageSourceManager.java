@@ -18,14 +18,18 @@ package alfio.manager.i18n;
 
 import alfio.model.Event;
 import alfio.model.PurchaseContext;
+import alfio.model.system.ConfigurationPathLevel;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.util.CustomResourceBundleMessageSource;
 import alfio.util.LocaleUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.MessageSource;
 import org.springframework.context.support.AbstractMessageSource;
 
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -39,31 +43,49 @@ public class MessageSourceManager {
     private static final Pattern ARGUMENT_FINDER = Pattern.compile("\\{+(\\d+)}+");
     private final CustomResourceBundleMessageSource messageSource;
     private final ConfigurationRepository configurationRepository;
-
+    private final Cache<OverrideKey, MessageOverrides> overrideCache;
+
+    /**
+     * @param messageSource the default message source
+     * @param configurationRepository the configuration repository
+     * @param overrideExpiration how long the merged translation overrides are kept in memory.
+     *                           Entries are evicted when modified (see {@link #invalidateOverrides(ConfigurationPathLevel, int)}).
+     */
     public MessageSourceManager(CustomResourceBundleMessageSource messageSource,
-                                ConfigurationRepository configurationRepository) {
+                                ConfigurationRepository configurationRepository,
+                                Duration overrideExpiration) {
         this.messageSource = messageSource;
         this.configurationRepository = configurationRepository;
+        this.overrideCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(overrideExpiration)
+            .build();
     }
 
     public Set<String> getKeys(String basename, Locale locale) {
         return messageSource.getKeys(basename, locale);
     }
 
-    public Pair<MessageSource, Map<String, Map<String, String>>> getMessageSourceForPurchaseContextAndOverride(PurchaseContext purchaseContext) {
-        Map<String, Map<String, String>> override = purchaseContext.event()
-            .map(event -> configurationRepository.getEventOverrideMessages(event.getOrganizationId(), event.getId()))
-            .orElseGet(() -> configurationRepository.getOrganizationOverrideMessages(purchaseContext.getOrganizationId()));
-        return Pair.of(new MessageSourceWithOverride(messageSource, override), override);
+    /**
+     * Returns the translation overrides for the given {@link PurchaseContext}, already merged with the organization
+     * and system ones.
+     *
+     * @param purchaseContext the purchase context
+     * @return the overrides
+     */
+    public MessageOverrides getOverridesFor(PurchaseContext purchaseContext) {
+        var key = purchaseContext.event()
+            .map(event -> new OverrideKey(ConfigurationPathLevel.EVENT, event.getOrganizationId(), event.getId()))
+            .orElseGet(() -> new OverrideKey(ConfigurationPathLevel.ORGANIZATION, purchaseContext.getOrganizationId(), -1));
+        return getOverrides(key);
     }
 
     public MessageSource getMessageSourceFor(PurchaseContext purchaseContext) {
-        return getMessageSourceForPurchaseContextAndOverride(purchaseContext).getLeft();
+        return getOverridesFor(purchaseContext).messageSource();
     }
 
     public MessageSource getMessageSourceFor(int orgId, int eventId) {
-        var override = configurationRepository.getEventOverrideMessages(orgId, eventId);
-        return new MessageSourceWithOverride(messageSource, override);
+        return getOverrides(new OverrideKey(ConfigurationPathLevel.EVENT, orgId, eventId)).messageSource();
     }
 
     public MessageSource getRootMessageSource() {
@@ -72,12 +94,46 @@ public class MessageSourceManager {
 
     public MessageSource getRootMessageSource(boolean withSystemOverride) {
         if (withSystemOverride) {
-            return new MessageSourceWithOverride(messageSource, configurationRepository.getSystemOverrideMessages());
+            return getOverrides(OverrideKey.SYSTEM).messageSource();
         } else {
             return messageSource;
         }
     }
 
+    /**
+     * Evicts the translation overrides affected by a modification of the configuration at the given level.
+     *
+     * @param level the level of the modified configuration
+     * @param id the id of the organization / event
+     */
+    public void invalidateOverrides(ConfigurationPathLevel level, int id) {
+        switch (level) {
+            case SYSTEM -> overrideCache.invalidateAll();
+            case ORGANIZATION -> overrideCache.asMap().keySet().removeIf(k -> k.organizationId() == id);
+            case EVENT -> overrideCache.asMap().keySet().removeIf(k -> k.level() == ConfigurationPathLevel.EVENT && k.eventId() == id);
+            default -> {
+                // overrides cannot be defined at this level
+            }
+        }
+    }
+
+    public void invalidateOverrides() {
+        overrideCache.invalidateAll();
+    }
+
+    private MessageOverrides getOverrides(OverrideKey key) {
+        return overrideCache.get(key, this::loadOverrides);
+    }
+
+    private MessageOverrides loadOverrides(OverrideKey key) {
+        Map<String, Map<String, String>> override = switch (key.level()) {
+            case EVENT -> configurationRepository.getEventOverrideMessages(key.organizationId(), key.eventId());
+            case ORGANIZATION -> configurationRepository.getOrganizationOverrideMessages(key.organizationId());
+            default -> configurationRepository.getSystemOverrideMessages();
+        };
+        return new MessageOverrides(new MessageSourceWithOverride(messageSource, override), override, convertPlaceholdersForEachLanguage(override));
+    }
+
     private static final String[] EMPTY_ARRAY = new String[]{};
 
     private static final Pattern PLACEHOLDER_TO_REPLACE = Pattern.compile("\\{(\\d+)\\}");
@@ -106,6 +162,22 @@ public class MessageSourceManager {
             .collect(Collectors.toMap(Function.identity(), k -> convertPlaceholder(messageSource.getMessage(k, EMPTY_ARRAY, locale))));
     }
 
+    /**
+     * Translation overrides, merged across the configuration levels.
+     *
+     * @param messageSource a {@link MessageSource} which applies the overrides
+     * @param messages the overrides, by language
+     * @param frontendMessages the overrides, by language, with the placeholders converted for the frontend
+     */
+    public record MessageOverrides(MessageSource messageSource,
+                                   Map<String, Map<String, String>> messages,
+                                   Map<String, Map<String, String>> frontendMessages) {
+    }
+
+    private record OverrideKey(ConfigurationPathLevel level, int organizationId, int eventId) {
+        private static final OverrideKey SYSTEM = new OverrideKey(ConfigurationPathLevel.SYSTEM, -1, -1);
+    }
+
     private static class MessageSourceWithOverride extends AbstractMessageSource {
 
         private final CustomResourceBundleMessageSource messageSource;
@@ -168,6 +168,7 @@ abstract class BaseOpenIdAuthenticationManager implements OpenIdAuthenticationMa
 
     private void updateOrganizations(OpenIdAlfioUser alfioUser) {
         int userId = userRepository.findIdByUserName(alfioUser.getEmail()).orElseThrow();
+        userManager.evictUserOrganizations(alfioUser.getEmail());
         var databaseOrganizationIds = organizationRepository.findAllForUser(alfioUser.getEmail()).stream()
             .map(Organization::getId).collect(Collectors.toSet());
 
@@ -169,6 +169,12 @@ public class MollieWebhookPaymentManager implements PaymentProvider, WebhookHand
         }
     }
 
+    @Override
+    public boolean dependsOnTransactionRequest() {
+        // available methods depend on the amount and on the billing country
+        return true;
+    }
+
     @Override
     public PaymentProxy getPaymentProxy() {
         return PaymentProxy.MOLLIE;
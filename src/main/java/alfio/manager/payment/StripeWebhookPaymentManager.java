@@ -33,6 +33,7 @@ import alfio.model.transaction.webhook.StripePaymentIntentWebhookPayload;
 import alfio.repository.*;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.util.ClockProvider;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
@@ -40,6 +41,7 @@ import com.stripe.model.BalanceTransaction;
 import com.stripe.model.Charge;
 import com.stripe.model.PaymentIntent;
 import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
 import com.stripe.net.Webhook;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
@@ -223,20 +225,47 @@ public class StripeWebhookPaymentManager implements PaymentProvider, RefundReque
                                                                        Map<String, String> additionalInfo,
                                                                        PaymentContext paymentContext) {
         try {
-            var stripeEvent = Webhook.constructEvent(body, signature, getWebhookSignatureKey(paymentContext.getConfigurationLevel()));
-            String eventType = stripeEvent.getType();
-            if(eventType.startsWith("charge.")) {
-                return deserializeObject(stripeEvent).map(obj -> new StripeChargeTransactionWebhookPayload(eventType, (Charge)obj));
-            } else if(eventType.startsWith("payment_intent.")) {
-                return deserializeObject(stripeEvent).map(obj -> new StripePaymentIntentWebhookPayload(eventType, (PaymentIntent)obj));
-            }
-            return Optional.empty();
+            return toTransactionPayload(Webhook.constructEvent(body, signature, getWebhookSignatureKey(paymentContext.getConfigurationLevel())));
         } catch (Exception e) {
             log.error("got exception while handling stripe webhook", e);
             return Optional.empty();
         }
     }
 
+    @Override
+    public Optional<TransactionWebhookPayload> parseVerifiedTransactionPayload(String body,
+                                                                               Map<String, String> additionalInfo,
+                                                                               PaymentContext paymentContext) {
+        // the signature has been verified upon reception. We cannot check it again, since it is valid only for a few minutes
+        try {
+            return toTransactionPayload(ApiResource.GSON.fromJson(body, com.stripe.model.Event.class));
+        } catch (Exception e) {
+            log.error("got exception while parsing stripe webhook", e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<String> getWebhookEventId(String body) {
+        try (var stringReader = new StringReader(body)) {
+            return Optional.ofNullable(JsonParser.parseReader(stringReader).getAsJsonObject().get("id"))
+                .map(JsonElement::getAsString);
+        } catch (Exception e) {
+            log.warn("Cannot extract the event ID from the webhook body", e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<TransactionWebhookPayload> toTransactionPayload(com.stripe.model.Event stripeEvent) {
+        String eventType = stripeEvent.getType();
+        if(eventType.startsWith("charge.")) {
+            return deserializeObject(stripeEvent).map(obj -> new StripeChargeTransactionWebhookPayload(eventType, (Charge)obj));
+        } else if(eventType.startsWith("payment_intent.")) {
+            return deserializeObject(stripeEvent).map(obj -> new StripePaymentIntentWebhookPayload(eventType, (PaymentIntent)obj));
+        }
+        return Optional.empty();
+    }
+
     private Optional<StripeObject> deserializeObject(com.stripe.model.Event stripeEvent) {
         var dataObjectDeserializer = stripeEvent.getDataObjectDeserializer();
         var cleanDeserialization = dataObjectDeserializer.getObject();
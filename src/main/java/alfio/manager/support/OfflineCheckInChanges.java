@@ -0,0 +1,53 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes in the offline check-in data since the last synchronization.
+ */
+@Getter
+public class OfflineCheckInChanges {
+
+    /**
+     * to be sent back on the next synchronization
+     */
+    private final long cursor;
+    /**
+     * {@code true} if the entries contain the whole dataset, i.e. the data already present on the client must be discarded
+     */
+    private final boolean full;
+    /**
+     * added or modified entries: key to encrypted payload
+     */
+    private final Map<String, String> entries;
+    /**
+     * keys of the entries that are not valid anymore
+     */
+    private final List<String> tombstones;
+
+    public OfflineCheckInChanges(long cursor, boolean full, Map<String, String> entries, List<String> tombstones) {
+        this.cursor = cursor;
+        this.full = full;
+        this.entries = entries;
+        this.tombstones = tombstones;
+    }
+}
@@ -37,6 +37,11 @@ public final class PaymentResult {
         this.type = type;
     }
 
+    @JsonIgnore
+    public Type getType() {
+        return type;
+    }
+
     public boolean isSuccessful() {
         return type == Type.SUCCESSFUL;
     }
@@ -0,0 +1,47 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.model.SponsorScan;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.Optional;
+
+import static alfio.util.Wrappers.optionally;
+
+@Getter
+public class SponsorScanRequest {
+    private final String eventName;
+    private final String ticketIdentifier;
+    private final String notes;
+    private final SponsorScan.LeadStatus leadStatus;
+
+    @JsonCreator
+    public SponsorScanRequest(@JsonProperty("eventName") String eventName,
+                              @JsonProperty("ticketIdentifier") String ticketIdentifier,
+                              @JsonProperty("notes") String notes,
+                              @JsonProperty("leadStatus") String leadStatus) {
+        this.eventName = eventName;
+        this.ticketIdentifier = ticketIdentifier;
+        this.notes = notes;
+        this.leadStatus = Optional.ofNullable(leadStatus)
+            .flatMap(l -> optionally(() -> SponsorScan.LeadStatus.valueOf(l)))
+            .orElse(SponsorScan.LeadStatus.WARM);
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.config.Initializer;
+import alfio.controller.api.v2.user.support.PublicEventCache;
+import alfio.manager.PaymentMethodMatrix;
+import alfio.manager.i18n.MessageSourceManager;
+import alfio.model.system.ConfigurationPathLevel;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listens for the notifications sent by the database when a configuration entry is modified
+ * (see V205_2.0.0.50__NOTIFY_CONFIGURATION_CHANGES.sql) and evicts the affected level from the
+ * {@link ConfigurationManager} cache, together with the {@link PublicEventCache}, the {@link PaymentMethodMatrix} and
+ * the translation overrides cached by {@link MessageSourceManager}. This keeps all the nodes of a cluster consistent.
+ * The listener uses a dedicated connection, opened outside the connection pool if possible.
+ */
+@Component
+@Profile("!" + Initializer.PROFILE_INTEGRATION_TEST)
+public class ConfigurationChangeListener implements ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationChangeListener.class);
+    static final String CHANNEL = "alfio_configuration_change";
+    private static final int POLL_TIMEOUT_MILLIS = 10_000;
+    private static final long RECONNECT_DELAY_MILLIS = 5_000;
+
+    private final DataSource dataSource;
+    private final ConfigurationManager configurationManager;
+    private final PublicEventCache publicEventCache;
+    private final MessageSourceManager messageSourceManager;
+    private final PaymentMethodMatrix paymentMethodMatrix;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+        .namingPattern("configuration-change-listener-%d")
+        .daemon(true)
+        .build());
+
+    public ConfigurationChangeListener(DataSource dataSource,
+                                       ConfigurationManager configurationManager,
+                                       PublicEventCache publicEventCache,
+                                       MessageSourceManager messageSourceManager,
+                                       PaymentMethodMatrix paymentMethodMatrix) {
+        this.dataSource = dataSource;
+        this.configurationManager = configurationManager;
+        this.publicEventCache = publicEventCache;
+        this.messageSourceManager = messageSourceManager;
+        this.paymentMethodMatrix = paymentMethodMatrix;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if(running.compareAndSet(false, true)) {
+            executor.submit(this::listen);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running.set(false);
+        executor.shutdownNow();
+    }
+
+    private void listen() {
+        while(running.get()) {
+            try (var connection = openConnection()) {
+                if(!connection.isWrapperFor(PGConnection.class)) {
+                    log.warn("cannot listen for configuration changes. Configuration cache will rely only on expiration.");
+                    running.set(false);
+                    return;
+                }
+                var pgConnection = connection.unwrap(PGConnection.class);
+                try (var statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // we might have missed some notifications while we were not listening
+                invalidateAll();
+                log.debug("listening for configuration changes");
+                while(running.get()) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if(notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handleNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if(running.get()) {
+                    log.warn("error while listening for configuration changes. Will retry in {} ms", RECONNECT_DELAY_MILLIS, e);
+                    invalidateAll();
+                    sleepBeforeReconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * The listening connection stays open as long as the application is running. When the pool configuration is
+     * available we open it outside the pool, so that it does not permanently take one of the slots reserved for
+     * serving requests. Otherwise one slot of the pool (see PlatformProvider#getMaxActive) is used by the listener.
+     */
+    private Connection openConnection() throws SQLException {
+        if(dataSource instanceof HikariDataSource hikariDataSource && hikariDataSource.getJdbcUrl() != null) {
+            return DriverManager.getConnection(hikariDataSource.getJdbcUrl(), hikariDataSource.getUsername(), hikariDataSource.getPassword());
+        }
+        log.info("listening for configuration changes using a pooled connection. One connection of the pool will be permanently in use.");
+        return dataSource.getConnection();
+    }
+
+    void handleNotification(String payload) {
+        var level = ConfigurationPathLevel.valueOf(StringUtils.substringBefore(payload, ":"));
+        int id = level == ConfigurationPathLevel.SYSTEM ? 0 : Integer.parseInt(StringUtils.substringAfter(payload, ":"));
+        log.trace("evicting configuration cache for {} {}", level, id);
+        configurationManager.invalidateCache(level, id);
+        messageSourceManager.invalidateOverrides(level, id);
+        // public snapshots and payment methods depend on configuration at all levels
+        publicEventCache.evictAll();
+        paymentMethodMatrix.evictAll();
+    }
+
+    private void invalidateAll() {
+        configurationManager.invalidateCache();
+        messageSourceManager.invalidateOverrides();
+        publicEventCache.evictAll();
+        paymentMethodMatrix.evictAll();
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running.set(false);
+        }
+    }
+}
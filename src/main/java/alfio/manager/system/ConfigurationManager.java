@@ -49,12 +49,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.servlet.http.HttpSession;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -80,6 +86,10 @@ public class ConfigurationManager {
     private final ExternalConfiguration externalConfiguration;
     private final Environment environment;
     private final Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache;
+    private final Cache<ConfigurationCacheKey, List<ConfigurationKeyValuePathLevel>> levelCache;
+    // incremented on every eviction. A level is cached only if no eviction happened while it was being loaded
+    private final AtomicLong levelCacheGeneration = new AtomicLong();
+    private final ReadWriteLock levelCacheLock = new ReentrantReadWriteLock();
     private final SecureRandom secureRandom = new SecureRandom();
 
     public ConfigurationManager(ConfigurationRepository configurationRepository,
@@ -88,13 +98,15 @@ public class ConfigurationManager {
                                 ExternalConfiguration externalConfiguration,
                                 Environment environment,
                                 Cache<Set<ConfigurationKeys>,
-                                Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache) {
+                                Map<ConfigurationKeys, MaybeConfiguration>> oneMinuteCache,
+                                Cache<ConfigurationCacheKey, List<ConfigurationKeyValuePathLevel>> levelCache) {
         this.configurationRepository = configurationRepository;
         this.userManager = userManager;
         this.eventRepository = eventRepository;
         this.externalConfiguration = externalConfiguration;
         this.environment = environment;
         this.oneMinuteCache = oneMinuteCache;
+        this.levelCache = levelCache;
     }
 
     //TODO: refactor, not the most beautiful code, find a better solution...
@@ -169,6 +181,7 @@ public class ConfigurationManager {
         } else {
             configurationRepository.insertOrganizationLevel(organizationId, key, value.get(), ConfigurationKeys.fromString(key).getDescription());
         }
+        invalidateCache(ORGANIZATION, organizationId);
     }
 
     public void saveAllOrganizationConfiguration(int organizationId, List<ConfigurationModification> list, String username) {
@@ -188,6 +201,7 @@ public class ConfigurationManager {
         } else {
             configurationRepository.insertEventLevel(organizationId, eventId, key, value.get(), ConfigurationKeys.fromString(key).getDescription());
         }
+        invalidateCache(EVENT, eventId);
     }
 
     public void saveAllEventConfiguration(int eventId, int organizationId, List<ConfigurationModification> list, String username) {
@@ -221,6 +235,7 @@ public class ConfigurationManager {
                     configurationRepository.insertTicketCategoryLevel(event.getOrganizationId(), eventId, categoryId, c.getKey(), value.get(), ConfigurationKeys.fromString(c.getKey()).getDescription());
                 }
             });
+        invalidateCache(TICKET_CATEGORY, categoryId);
     }
 
     private Optional<String> evaluateValue(String key, String value) {
@@ -255,6 +270,7 @@ public class ConfigurationManager {
                 configurationRepository.update(key.getValue(), value);
             }
         }
+        invalidateCache(SYSTEM, 0);
     }
 
     /**
@@ -425,11 +441,13 @@ public class ConfigurationManager {
 
     public void deleteKey(String key) {
         configurationRepository.deleteByKey(key);
+        invalidateCache(SYSTEM, 0);
     }
 
     public void deleteOrganizationLevelByKey(String key, int organizationId, String username) {
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), organizationId), DELETE_ERROR);
         configurationRepository.deleteOrganizationLevelByKey(key, organizationId);
+        invalidateCache(ORGANIZATION, organizationId);
     }
 
     public void deleteEventLevelByKey(String key, int eventId, String username) {
@@ -437,6 +455,7 @@ public class ConfigurationManager {
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), DELETE_ERROR);
         configurationRepository.deleteEventLevelByKey(key, eventId);
+        invalidateCache(EVENT, eventId);
     }
 
     public void deleteCategoryLevelByKey(String key, int eventId, int categoryId, String username) {
@@ -444,6 +463,7 @@ public class ConfigurationManager {
         Validate.notNull(event, "Wrong event id");
         Validate.isTrue(userManager.isOwnerOfOrganization(userManager.findUserByUsername(username), event.getOrganizationId()), DELETE_ERROR);
         configurationRepository.deleteCategoryLevelByKey(key, eventId, categoryId);
+        invalidateCache(TICKET_CATEGORY, categoryId);
     }
 
     private static Map<ConfigurationKeys.SettingCategory, List<Configuration>> collectConfigurationKeysByCategory(ConfigurationPathLevel pathLevel) {
@@ -544,25 +564,87 @@ public class ConfigurationManager {
     public Map<ConfigurationKeys, MaybeConfiguration> getFor(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
         var keysAsString = keys.stream().map(ConfigurationKeys::getValue).collect(Collectors.toSet());
         List<ConfigurationKeyValuePathLevel> found = new ArrayList<>(externalConfiguration.getAll(keysAsString));
-        switch (configurationLevel.getPathLevel()) {
-            case SYSTEM -> found.addAll(configurationRepository.findByKeysAtSystemLevel(keysAsString));
-            case ORGANIZATION ->
-                found.addAll(configurationRepository.findByOrganizationAndKeys(((OrganizationLevel) configurationLevel).organizationId, keysAsString));
-            case EVENT -> {
-                var eventLevel = (EventLevel) configurationLevel;
-                found.addAll(configurationRepository.findByEventAndKeys(eventLevel.organizationId, eventLevel.eventId, keysAsString));
-            }
-            case TICKET_CATEGORY -> {
-                var categoryLevel = (CategoryLevel) configurationLevel;
-                found.addAll(configurationRepository.findByTicketCategoryAndKeys(categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId, keysAsString));
-            }
-            default -> {
-                // ignore EXTERNAL
-            }
+        // each level of the hierarchy is loaded (and cached) as a whole, then filtered
+        for (var cacheKey : ConfigurationCacheKey.hierarchyOf(configurationLevel)) {
+            getLevel(cacheKey).stream()
+                .filter(c -> keysAsString.contains(c.getConfigurationKey().getValue()))
+                .forEach(found::add);
         }
         return buildKeyConfigurationMapResult(keys, found);
     }
 
+    private List<ConfigurationKeyValuePathLevel> getLevel(ConfigurationCacheKey key) {
+        var cached = levelCache.getIfPresent(key);
+        if(cached != null) {
+            return cached;
+        }
+        long generation = levelCacheGeneration.get();
+        var loaded = loadLevel(key);
+        // the loaded value could be stale if an eviction has been requested in the meantime. In this case we don't cache it.
+        // The check and the insertion must not interleave with an eviction, hence the (shared) read lock.
+        var lock = levelCacheLock.readLock();
+        lock.lock();
+        try {
+            if(levelCacheGeneration.get() == generation) {
+                levelCache.put(key, loaded);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return loaded;
+    }
+
+    private List<ConfigurationKeyValuePathLevel> loadLevel(ConfigurationCacheKey key) {
+        return switch (key.pathLevel()) {
+            case SYSTEM -> configurationRepository.findAllAtSystemLevel();
+            case ORGANIZATION -> configurationRepository.findAllAtOrganizationLevel(key.organizationId());
+            case EVENT -> configurationRepository.findAllAtEventLevel(key.organizationId(), key.eventId());
+            case TICKET_CATEGORY -> configurationRepository.findAllAtTicketCategoryLevel(key.organizationId(), key.eventId(), key.categoryId());
+            default -> throw new IllegalStateException("Can't reach here");
+        };
+    }
+
+    /**
+     * Removes the cached configuration for the given level and id.
+     * Eviction is repeated when the current transaction completes, so that values loaded
+     * in the meantime (which could include uncommitted or rolled back modifications) are discarded as well.
+     *
+     * @param pathLevel the level
+     * @param id the ID of the organization, event or ticket category. Ignored for SYSTEM
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void invalidateCache(ConfigurationPathLevel pathLevel, int id) {
+        evict(pathLevel, id);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(pathLevel, id);
+                }
+            });
+        }
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void invalidateCache() {
+        evict(k -> true);
+    }
+
+    private void evict(ConfigurationPathLevel pathLevel, int id) {
+        evict(k -> k.matches(pathLevel, id));
+    }
+
+    private void evict(Predicate<ConfigurationCacheKey> filter) {
+        var lock = levelCacheLock.writeLock();
+        lock.lock();
+        try {
+            levelCacheGeneration.incrementAndGet();
+            levelCache.asMap().keySet().removeIf(filter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private Map<ConfigurationKeys, MaybeConfiguration> buildKeyConfigurationMapResult(Collection<ConfigurationKeys> keys, List<ConfigurationKeyValuePathLevel> found) {
         var res = new EnumMap<ConfigurationKeys, MaybeConfiguration>(ConfigurationKeys.class);
 
@@ -605,6 +687,57 @@ public class ConfigurationManager {
         return Optional.ofNullable(c.getId()).orElse(-1) > -1 || !StringUtils.isBlank(c.getValue());
     }
 
+    /**
+     * Identifies a single level of the configuration hierarchy.
+     * IDs which are not relevant for the given level are set to -1.
+     */
+    public record ConfigurationCacheKey(ConfigurationPathLevel pathLevel, int organizationId, int eventId, int categoryId) {
+
+        private static final ConfigurationCacheKey SYSTEM_KEY = new ConfigurationCacheKey(SYSTEM, -1, -1, -1);
+
+        static List<ConfigurationCacheKey> hierarchyOf(ConfigurationLevel configurationLevel) {
+            return switch (configurationLevel.getPathLevel()) {
+                case SYSTEM -> List.of(SYSTEM_KEY);
+                case ORGANIZATION -> {
+                    var organizationLevel = (OrganizationLevel) configurationLevel;
+                    yield List.of(SYSTEM_KEY, organization(organizationLevel.organizationId));
+                }
+                case EVENT -> {
+                    var eventLevel = (EventLevel) configurationLevel;
+                    yield List.of(SYSTEM_KEY, organization(eventLevel.organizationId), event(eventLevel.organizationId, eventLevel.eventId));
+                }
+                case TICKET_CATEGORY -> {
+                    var categoryLevel = (CategoryLevel) configurationLevel;
+                    yield List.of(SYSTEM_KEY,
+                        organization(categoryLevel.organizationId),
+                        event(categoryLevel.organizationId, categoryLevel.eventId),
+                        new ConfigurationCacheKey(TICKET_CATEGORY, categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId));
+                }
+                default -> List.of(); // ignore EXTERNAL
+            };
+        }
+
+        private static ConfigurationCacheKey organization(int organizationId) {
+            return new ConfigurationCacheKey(ORGANIZATION, organizationId, -1, -1);
+        }
+
+        private static ConfigurationCacheKey event(int organizationId, int eventId) {
+            return new ConfigurationCacheKey(EVENT, organizationId, eventId, -1);
+        }
+
+        boolean matches(ConfigurationPathLevel level, int id) {
+            if(level != pathLevel) {
+                return false;
+            }
+            return switch (level) {
+                case ORGANIZATION -> organizationId == id;
+                case EVENT -> eventId == id;
+                case TICKET_CATEGORY -> categoryId == id;
+                default -> true;
+            };
+        }
+    }
+
     public static class MaybeConfiguration {
         @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
         private final Optional<ConfigurationKeyValuePathLevel> configuration;
@@ -742,6 +875,9 @@ public class ConfigurationManager {
             apiKeyValue = generateApiKey();
             configurationRepository.insert(SYSTEM_API_KEY.name(), apiKeyValue, SYSTEM_API_KEY.getDescription());
         }
+        if(rotate || existing.isEmpty()) {
+            invalidateCache(SYSTEM, 0);
+        }
         return apiKeyValue;
     }
 
@@ -53,11 +53,21 @@ public class DefaultMailer implements Mailer {
 
         subject = decorateSubjectIfDemo(subject, environment);
 
+        getMailer(configurable).send(configurable, fromName, to, cc, subject, text, html, attachments);
+    }
+
+    @Override
+    public Set<String> sendBatch(Configurable configurable, String fromName, List<Message> messages) {
+        var decorated = messages.stream()
+            .map(m -> m.withSubject(decorateSubjectIfDemo(m.getSubject(), environment)))
+            .toList();
+        return getMailer(configurable).sendBatch(configurable, fromName, decorated);
+    }
+
+    private Mailer getMailer(Configurable configurable) {
         String mailerType = configurationManager.getFor(MAILER_TYPE, configurable.getConfigurationLevel())
             .getValueOrDefault("disabled").toLowerCase(Locale.ENGLISH);
-
-        mailers.getOrDefault(mailerType, defaultMailer)
-                .send(configurable, fromName, to, cc, subject, text, html, attachments);
+        return mailers.getOrDefault(mailerType, defaultMailer);
     }
 
 }
\ No newline at end of file
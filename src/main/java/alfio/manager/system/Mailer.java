@@ -19,6 +19,7 @@ package alfio.manager.system;
 import alfio.config.Initializer;
 import alfio.model.Configurable;
 import lombok.Data;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 
@@ -28,6 +29,48 @@ public interface Mailer {
 
     void send(Configurable configurable, String fromName, String to, List<String> cc, String subject, String text, Optional<String> html, Attachment... attachment);
 
+    /**
+     * Sends a batch of messages on behalf of the same {@link Configurable}.
+     * The default implementation sends them one by one; implementations should override it if the provider
+     * offers a more efficient way to deliver multiple messages.
+     *
+     * @param configurable the configurable
+     * @param fromName the sender name
+     * @param messages the messages to be sent
+     * @return the ids of the messages which have been successfully sent
+     */
+    default Set<String> sendBatch(Configurable configurable, String fromName, List<Message> messages) {
+        Set<String> sent = new HashSet<>();
+        for (Message message : messages) {
+            try {
+                send(configurable, fromName, message.getTo(), message.getCc(), message.getSubject(), message.getText(), message.getHtml(), message.getAttachmentsAsArray());
+                sent.add(message.getId());
+            } catch (Exception e) {
+                LoggerFactory.getLogger(getClass()).warn("could not send message " + message.getId(), e);
+            }
+        }
+        return sent;
+    }
+
+    @Data
+    class Message {
+        private final String id;
+        private final String to;
+        private final List<String> cc;
+        private final String subject;
+        private final String text;
+        private final Optional<String> html;
+        private final List<Attachment> attachments;
+
+        public Attachment[] getAttachmentsAsArray() {
+            return attachments.toArray(new Attachment[0]);
+        }
+
+        public Message withSubject(String subject) {
+            return new Message(id, to, cc, subject, text, html, attachments);
+        }
+    }
+
     @Data
     class Attachment {
         private final String filename;
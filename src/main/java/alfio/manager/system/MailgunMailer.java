@@ -17,6 +17,7 @@
 package alfio.manager.system;
 
 import alfio.model.Configurable;
+import alfio.model.system.ConfigurationKeys;
 import alfio.util.HttpUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -30,6 +31,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
 import static alfio.model.system.ConfigurationKeys.*;
@@ -69,37 +71,9 @@ class MailgunMailer implements Mailer {
     public void send(Configurable configurable, String fromName, String to, List<String> cc, String subject, String text,
                      Optional<String> html, Attachment... attachment) {
 
-        var conf = configurationManager.getFor(Set.of(MAILGUN_KEY, MAILGUN_DOMAIN, MAILGUN_EU, MAILGUN_FROM, MAIL_REPLY_TO), configurable.getConfigurationLevel());
-
-        String apiKey = conf.get(MAILGUN_KEY).getRequiredValue();
-        String domain = conf.get(MAILGUN_DOMAIN).getRequiredValue();
-        boolean useEU = conf.get(MAILGUN_EU).getValueAsBooleanOrDefault();
-
-        String baseUrl = useEU ? "https://api.eu.mailgun.net/v3/" : "https://api.mailgun.net/v3/";
+        var conf = getConfiguration(configurable);
         try {
-
-            var from = fromName + " <" + conf.get(MAILGUN_FROM).getRequiredValue() +">";
-
-            var replyTo = conf.get(MAIL_REPLY_TO).getValueOrDefault("");
-
-            var emailData = getEmailData(from, to, replyTo, cc, subject, text, html);
-
-            var requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + domain + "/messages"))
-                .header(HttpUtils.AUTHORIZATION, HttpUtils.basicAuth("api", apiKey));
-
-            if (ArrayUtils.isEmpty(attachment)) {
-                requestBuilder.header(HttpUtils.CONTENT_TYPE, HttpUtils.APPLICATION_FORM_URLENCODED);
-                requestBuilder.POST(HttpUtils.ofFormUrlEncodedBody(emailData));
-            } else {
-                var mpb = new HttpUtils.MultiPartBodyPublisher();
-                requestBuilder.header(HttpUtils.CONTENT_TYPE, HttpUtils.MULTIPART_FORM_DATA+";boundary=\""+mpb.getBoundary()+"\"");
-                emailData.forEach(mpb::addPart);
-                Stream.of(attachment).forEach(a -> mpb.addPart("attachment", () -> new ByteArrayInputStream(a.getSource()), a.getFilename(), a.getContentType()));
-                requestBuilder.POST(mpb.build());
-            }
-
-            HttpRequest request = requestBuilder.build();
+            HttpRequest request = buildRequest(conf, fromName, to, cc, subject, text, html, attachment);
 
             HttpResponse<?> response = client.send(request, HttpResponse.BodyHandlers.discarding());
             if(!HttpUtils.callSuccessful(response)) {
@@ -115,4 +89,70 @@ class MailgunMailer implements Mailer {
             throw new IllegalStateException(e);
         }
     }
+
+    /**
+     * Mailgun's batch sending requires all the messages to share the same content, which is not our case.
+     * Therefore, we load the configuration once and then we send the messages concurrently.
+     */
+    @Override
+    public Set<String> sendBatch(Configurable configurable, String fromName, List<Message> messages) {
+        var conf = getConfiguration(configurable);
+        var responses = messages.stream()
+            .map(m -> {
+                var request = buildRequest(conf, fromName, m.getTo(), m.getCc(), m.getSubject(), m.getText(), m.getHtml(), m.getAttachmentsAsArray());
+                return Map.entry(m.getId(), client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+            })
+            .toList();
+        var sent = new HashSet<String>();
+        for (var entry : responses) {
+            try {
+                var response = entry.getValue().join();
+                if(HttpUtils.callSuccessful(response)) {
+                    sent.add(entry.getKey());
+                } else {
+                    log.warn("sending email was not successful:" + response);
+                }
+            } catch (CompletionException e) {
+                log.warn("error while sending email", e);
+            }
+        }
+        return sent;
+    }
+
+    private Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> getConfiguration(Configurable configurable) {
+        return configurationManager.getFor(Set.of(MAILGUN_KEY, MAILGUN_DOMAIN, MAILGUN_EU, MAILGUN_FROM, MAIL_REPLY_TO), configurable.getConfigurationLevel());
+    }
+
+    private static HttpRequest buildRequest(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf,
+                                            String fromName, String to, List<String> cc, String subject, String text,
+                                            Optional<String> html, Attachment... attachment) {
+        String apiKey = conf.get(MAILGUN_KEY).getRequiredValue();
+        String domain = conf.get(MAILGUN_DOMAIN).getRequiredValue();
+        boolean useEU = conf.get(MAILGUN_EU).getValueAsBooleanOrDefault();
+
+        String baseUrl = useEU ? "https://api.eu.mailgun.net/v3/" : "https://api.mailgun.net/v3/";
+
+        var from = fromName + " <" + conf.get(MAILGUN_FROM).getRequiredValue() +">";
+
+        var replyTo = conf.get(MAIL_REPLY_TO).getValueOrDefault("");
+
+        var emailData = getEmailData(from, to, replyTo, cc, subject, text, html);
+
+        var requestBuilder = HttpRequest.newBuilder()
+            .uri(URI.create(baseUrl + domain + "/messages"))
+            .header(HttpUtils.AUTHORIZATION, HttpUtils.basicAuth("api", apiKey));
+
+        if (ArrayUtils.isEmpty(attachment)) {
+            requestBuilder.header(HttpUtils.CONTENT_TYPE, HttpUtils.APPLICATION_FORM_URLENCODED);
+            requestBuilder.POST(HttpUtils.ofFormUrlEncodedBody(emailData));
+        } else {
+            var mpb = new HttpUtils.MultiPartBodyPublisher();
+            requestBuilder.header(HttpUtils.CONTENT_TYPE, HttpUtils.MULTIPART_FORM_DATA+";boundary=\""+mpb.getBoundary()+"\"");
+            emailData.forEach(mpb::addPart);
+            Stream.of(attachment).forEach(a -> mpb.addPart("attachment", () -> new ByteArrayInputStream(a.getSource()), a.getFilename(), a.getContentType()));
+            requestBuilder.POST(mpb.build());
+        }
+
+        return requestBuilder.build();
+    }
 }
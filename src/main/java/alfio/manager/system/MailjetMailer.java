@@ -17,8 +17,10 @@
 package alfio.manager.system;
 
 import alfio.model.Configurable;
+import alfio.model.system.ConfigurationKeys;
 import alfio.util.HttpUtils;
 import alfio.util.Json;
+import com.google.gson.JsonParser;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -45,17 +47,102 @@ public class MailjetMailer implements Mailer  {
         this.configurationManager = configurationManager;
     }
 
+    private static final int MAX_MESSAGES_PER_REQUEST = 50;
+    private static final String SEND_URL = "https://api.mailjet.com/v3/send";
+    private static final String BATCH_SEND_URL = "https://api.mailjet.com/v3.1/send";
+    private static final String SUCCESS = "success";
+
     @Override
     public void send(Configurable configurable, String fromName, String to, List<String> cc, String subject, String text, Optional<String> html, Attachment... attachment) {
 
-        var conf = configurationManager.getFor(EnumSet.of(MAILJET_APIKEY_PUBLIC, MAILJET_APIKEY_PRIVATE, MAILJET_FROM, MAIL_REPLY_TO), configurable.getConfigurationLevel());
+        var conf = getConfiguration(configurable);
 
+        //https://dev.mailjet.com/guides/?shell#sending-with-attached-files
+        var mailPayload = buildMessage(conf, fromName, to, cc, subject, text, html, attachment);
 
-        String apiKeyPublic = conf.get(MAILJET_APIKEY_PUBLIC).getRequiredValue();
-        String apiKeyPrivate = conf.get(MAILJET_APIKEY_PRIVATE).getRequiredValue();
+        try {
+            HttpResponse<Void> response = client.send(buildRequest(conf, SEND_URL, mailPayload), HttpResponse.BodyHandlers.discarding());
+            if(!HttpUtils.callSuccessful(response)) {
+                log.warn("sending email was not successful: {}", response);
+                throw new IllegalStateException("Attempt to send a message failed. Result is: "+response.statusCode());
+            }
+        } catch (IOException e) {
+            log.warn("error while sending email", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("error while sending email", e);
+        }
+    }
+
+    @Override
+    public Set<String> sendBatch(Configurable configurable, String fromName, List<Message> messages) {
+        var conf = getConfiguration(configurable);
+        Set<String> sent = new HashSet<>();
+        //https://dev.mailjet.com/email/guides/send-api-v31/#send-in-bulk
+        //v3.1 reports a status for each message, so that only the failed ones are left for the next retry
+        for (int i = 0; i < messages.size(); i += MAX_MESSAGES_PER_REQUEST) {
+            var chunk = messages.subList(i, Math.min(i + MAX_MESSAGES_PER_REQUEST, messages.size()));
+            var payload = chunk.stream()
+                .map(m -> buildBatchMessage(conf, fromName, m))
+                .toList();
+            try {
+                HttpResponse<String> response = client.send(buildRequest(conf, BATCH_SEND_URL, Map.of("Messages", payload)), HttpResponse.BodyHandlers.ofString());
+                var statuses = parseMessageStatuses(response.body());
+                if(statuses.size() == chunk.size()) {
+                    for (int j = 0; j < chunk.size(); j++) {
+                        if(SUCCESS.equals(statuses.get(j))) {
+                            sent.add(chunk.get(j).getId());
+                        }
+                    }
+                    if(!HttpUtils.callSuccessful(response)) {
+                        log.warn("sending {} out of {} emails was not successful: {}", chunk.size() - statuses.stream().filter(SUCCESS::equals).count(), chunk.size(), response.body());
+                    }
+                } else if(HttpUtils.callSuccessful(response)) {
+                    chunk.forEach(m -> sent.add(m.getId()));
+                } else {
+                    log.warn("sending {} emails was not successful: {}", chunk.size(), response);
+                }
+            } catch (IOException e) {
+                log.warn("error while sending emails", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("error while sending emails", e);
+                break;
+            }
+        }
+        return sent;
+    }
+
+    private static List<String> parseMessageStatuses(String body) {
+        try {
+            var json = JsonParser.parseString(StringUtils.defaultString(body));
+            if(!json.isJsonObject() || !json.getAsJsonObject().has("Messages")) {
+                return List.of();
+            }
+            List<String> statuses = new ArrayList<>();
+            json.getAsJsonObject().getAsJsonArray("Messages")
+                .forEach(m -> statuses.add(m.getAsJsonObject().has("Status") ? m.getAsJsonObject().get("Status").getAsString() : null));
+            return statuses;
+        } catch (RuntimeException e) {
+            log.warn("cannot parse Mailjet response {}", body, e);
+            return List.of();
+        }
+    }
+
+    private Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> getConfiguration(Configurable configurable) {
+        return configurationManager.getFor(EnumSet.of(MAILJET_APIKEY_PUBLIC, MAILJET_APIKEY_PRIVATE, MAILJET_FROM, MAIL_REPLY_TO), configurable.getConfigurationLevel());
+    }
+
+    private static Map<String, Object> buildMessage(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf,
+                                                    String fromName,
+                                                    String to,
+                                                    List<String> cc,
+                                                    String subject,
+                                                    String text,
+                                                    Optional<String> html,
+                                                    Attachment... attachment) {
         String fromEmail = conf.get(MAILJET_FROM).getRequiredValue();
 
-        //https://dev.mailjet.com/guides/?shell#sending-with-attached-files
         Map<String, Object> mailPayload = new HashMap<>();
 
         List<Map<String, String>> recipients = new ArrayList<>();
@@ -79,28 +166,46 @@ public class MailjetMailer implements Mailer  {
         if(attachment != null && attachment.length > 0) {
             mailPayload.put("Attachments", Arrays.stream(attachment).map(MailjetMailer::fromAttachment).toList());
         }
+        return mailPayload;
+    }
+
+    private static Map<String, Object> buildBatchMessage(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf,
+                                                         String fromName,
+                                                         Message message) {
+        Map<String, Object> mailPayload = new HashMap<>();
+        Map<String, String> from = new HashMap<>();
+        from.put("Email", conf.get(MAILJET_FROM).getRequiredValue());
+        from.put("Name", fromName);
+        mailPayload.put("From", from);
+        mailPayload.put("To", List.of(Collections.singletonMap("Email", message.getTo())));
+        if(message.getCc() != null && !message.getCc().isEmpty()) {
+            mailPayload.put("Cc", message.getCc().stream().map(email -> Collections.singletonMap("Email", email)).toList());
+        }
+        mailPayload.put("Subject", message.getSubject());
+        mailPayload.put("TextPart", message.getText());
+        message.getHtml().ifPresent(h -> mailPayload.put("HTMLPart", h));
 
-        HttpRequest request = HttpRequest.newBuilder(URI.create("https://api.mailjet.com/v3/send"))
-            .header(HttpUtils.AUTHORIZATION, HttpUtils.basicAuth(apiKeyPublic, apiKeyPrivate))
-            .header(HttpUtils.CONTENT_TYPE, HttpUtils.APPLICATION_JSON)
-            .POST(HttpRequest.BodyPublishers.ofString(Json.GSON.toJson(mailPayload)))
-            .build();
+        String replyTo = conf.get(MAIL_REPLY_TO).getValueOrDefault("");
+        if(StringUtils.isNotBlank(replyTo)) {
+            mailPayload.put("ReplyTo", Collections.singletonMap("Email", replyTo));
+        }
 
-        try {
-            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
-            if(!HttpUtils.callSuccessful(response)) {
-                log.warn("sending email was not successful: {}", response);
-                throw new IllegalStateException("Attempt to send a message failed. Result is: "+response.statusCode());
-            }
-        } catch (IOException e) {
-            log.warn("error while sending email", e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("error while sending email", e);
+        var attachments = message.getAttachmentsAsArray();
+        if(attachments != null && attachments.length > 0) {
+            mailPayload.put("Attachments", Arrays.stream(attachments).map(MailjetMailer::fromBatchAttachment).toList());
         }
+        return mailPayload;
     }
 
-
+    private static HttpRequest buildRequest(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf, String url, Map<String, Object> payload) {
+        String apiKeyPublic = conf.get(MAILJET_APIKEY_PUBLIC).getRequiredValue();
+        String apiKeyPrivate = conf.get(MAILJET_APIKEY_PRIVATE).getRequiredValue();
+        return HttpRequest.newBuilder(URI.create(url))
+            .header(HttpUtils.AUTHORIZATION, HttpUtils.basicAuth(apiKeyPublic, apiKeyPrivate))
+            .header(HttpUtils.CONTENT_TYPE, HttpUtils.APPLICATION_JSON)
+            .POST(HttpRequest.BodyPublishers.ofString(Json.GSON.toJson(payload)))
+            .build();
+    }
 
     private static Map<String, String> fromAttachment(Attachment a) {
         Map<String, String> m = new HashMap<>();
@@ -109,4 +214,12 @@ public class MailjetMailer implements Mailer  {
         m.put("content", Base64.encodeBase64String(a.getSource()));
         return m;
     }
+
+    private static Map<String, String> fromBatchAttachment(Attachment a) {
+        Map<String, String> m = new HashMap<>();
+        m.put("ContentType", a.getContentType());
+        m.put("Filename", a.getFilename());
+        m.put("Base64Content", Base64.encodeBase64String(a.getSource()));
+        return m;
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.util.MetricsUtil;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.CronTask;
+import org.springframework.scheduling.config.IntervalTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Records duration and overruns of every {@code @Scheduled} method (see {@link alfio.job.Jobs} and {@link AdminJobManager}).
+ * An execution overruns when it lasts longer than the configured period, i.e. it delays the next one.
+ */
+@Component
+public class ScheduledJobsInstrumentation implements SchedulingConfigurer {
+
+    private static final String JOB = "job";
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.setCronTasksList(registrar.getCronTaskList().stream()
+            .map(ScheduledJobsInstrumentation::instrument)
+            .collect(Collectors.toList()));
+        registrar.setFixedRateTasksList(instrument(registrar.getFixedRateTaskList()));
+        registrar.setFixedDelayTasksList(instrument(registrar.getFixedDelayTaskList()));
+    }
+
+    private static CronTask instrument(CronTask task) {
+        var expression = CronExpression.parse(task.getExpression());
+        UnaryOperator<Instant> nextExecution = start -> Optional.ofNullable(expression.next(start.atZone(ZoneId.systemDefault())))
+            .map(ZonedDateTime::toInstant)
+            .orElse(Instant.MAX);
+        return new CronTask(instrument(task.getRunnable(), nextExecution), (CronTrigger) task.getTrigger());
+    }
+
+    private static List<IntervalTask> instrument(List<IntervalTask> tasks) {
+        return tasks.stream()
+            .map(task -> new IntervalTask(instrument(task.getRunnable(), start -> start.plusMillis(task.getInterval())), task.getInterval(), task.getInitialDelay()))
+            .collect(Collectors.toList());
+    }
+
+    private static Runnable instrument(Runnable task, UnaryOperator<Instant> nextExecution) {
+        String job = jobName(task);
+        Counter overrun = MetricsUtil.counter(MetricsUtil.JOB_OVERRUN, JOB, job);
+        return () -> {
+            var start = Instant.now();
+            var sample = MetricsUtil.startTimer();
+            String outcome = MetricsUtil.FAILURE;
+            try {
+                task.run();
+                outcome = MetricsUtil.SUCCESS;
+            } finally {
+                MetricsUtil.stopTimer(sample, MetricsUtil.JOB_DURATION, JOB, job, MetricsUtil.OUTCOME, outcome);
+                if (Instant.now().isAfter(nextExecution.apply(start))) {
+                    overrun.increment();
+                }
+            }
+        };
+    }
+
+    static String jobName(Runnable task) {
+        if (task instanceof ScheduledMethodRunnable scheduledMethod) {
+            var method = scheduledMethod.getMethod();
+            return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        }
+        return task.getClass().getSimpleName();
+    }
+}
@@ -32,6 +32,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
 public class SendGridMailer implements Mailer {
@@ -50,7 +51,55 @@ public class SendGridMailer implements Mailer {
 
     @Override
     public void send(Configurable configurable, final String fromName, final String to, final List<String> cc, final String subject, final String text, final Optional<String> html, final Attachment... attachment) {
-        final var config = configurationManager.getFor(Set.of(ConfigurationKeys.SENDGRID_API_KEY, ConfigurationKeys.SENDGRID_FROM, ConfigurationKeys.MAIL_REPLY_TO), configurable.getConfigurationLevel());
+        final var request = buildRequest(getConfiguration(configurable), fromName, to, cc, subject, text, html, attachment);
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (!HttpUtils.callSuccessful(response)) {
+                log.warn("sending email was not successful: {} ", response);
+                throw new IllegalStateException("Attempt to send a message failed. Result is: " + response.statusCode());
+            }
+        } catch (IOException e) {
+            log.warn("error while sending email", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("error while sending email", e);
+        }
+    }
+
+    /**
+     * SendGrid's multi-recipient API requires all the messages to share the same content, which is not our case.
+     * Therefore, we load the configuration once and then we send the messages concurrently.
+     */
+    @Override
+    public Set<String> sendBatch(Configurable configurable, String fromName, List<Message> messages) {
+        final var config = getConfiguration(configurable);
+        final var responses = messages.stream()
+            .map(m -> {
+                var request = buildRequest(config, fromName, m.getTo(), m.getCc(), m.getSubject(), m.getText(), m.getHtml(), m.getAttachmentsAsArray());
+                return Map.entry(m.getId(), client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+            })
+            .toList();
+        final var sent = new HashSet<String>();
+        for (var entry : responses) {
+            try {
+                var response = entry.getValue().join();
+                if (HttpUtils.callSuccessful(response)) {
+                    sent.add(entry.getKey());
+                } else {
+                    log.warn("sending email was not successful: {} ", response);
+                }
+            } catch (CompletionException e) {
+                log.warn("error while sending email", e);
+            }
+        }
+        return sent;
+    }
+
+    private Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> getConfiguration(Configurable configurable) {
+        return configurationManager.getFor(Set.of(ConfigurationKeys.SENDGRID_API_KEY, ConfigurationKeys.SENDGRID_FROM, ConfigurationKeys.MAIL_REPLY_TO), configurable.getConfigurationLevel());
+    }
+
+    private HttpRequest buildRequest(final Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> config, final String fromName, final String to, final List<String> cc, final String subject, final String text, final Optional<String> html, final Attachment... attachment) {
         final var from = config.get(ConfigurationKeys.SENDGRID_FROM).getRequiredValue();
         final var personalizations = createPersonalizations(to, cc, subject);
         final var contents = createContents(text, html);
@@ -63,22 +112,10 @@ public class SendGridMailer implements Mailer {
         payload.put("content", contents);
         //prepare request
         final var body = Json.GSON.toJson(payload);
-        final var request = HttpRequest.newBuilder(URI.create("https://api.sendgrid.com/v3/mail/send"))
+        return HttpRequest.newBuilder(URI.create("https://api.sendgrid.com/v3/mail/send"))
             .header(HttpUtils.AUTHORIZATION, String.format("Bearer %s", config.get(ConfigurationKeys.SENDGRID_API_KEY).getRequiredValue()))
             .header(HttpUtils.CONTENT_TYPE, HttpUtils.APPLICATION_JSON)
             .POST(HttpRequest.BodyPublishers.ofString(body)).build();
-        try {
-            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
-            if (!HttpUtils.callSuccessful(response)) {
-                log.warn("sending email was not successful: {} ", response);
-                throw new IllegalStateException("Attempt to send a message failed. Result is: " + response.statusCode());
-            }
-        } catch (IOException e) {
-            log.warn("error while sending email", e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("error while sending email", e);
-        }
     }
 
     private List<Map<String, Object>> createPersonalizations(final String to, final List<String> cc, final String subject) {
@@ -16,6 +16,7 @@
  */
 package alfio.manager.user;
 
+import alfio.config.RoleAndOrganizationsTransactionPreparer;
 import alfio.model.modification.OrganizationModification;
 import alfio.model.result.ValidationResult;
 import alfio.model.user.*;
@@ -63,19 +64,22 @@ public class UserManager {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final InvoiceSequencesRepository invoiceSequencesRepository;
+    private final RoleAndOrganizationsTransactionPreparer transactionPreparer;
 
     public UserManager(AuthorityRepository authorityRepository,
                        OrganizationRepository organizationRepository,
                        UserOrganizationRepository userOrganizationRepository,
                        UserRepository userRepository,
                        PasswordEncoder passwordEncoder,
-                       InvoiceSequencesRepository invoiceSequencesRepository) {
+                       InvoiceSequencesRepository invoiceSequencesRepository,
+                       RoleAndOrganizationsTransactionPreparer transactionPreparer) {
         this.authorityRepository = authorityRepository;
         this.organizationRepository = organizationRepository;
         this.userOrganizationRepository = userOrganizationRepository;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.invoiceSequencesRepository = invoiceSequencesRepository;
+        this.transactionPreparer = transactionPreparer;
     }
 
     private List<Authority> getUserAuthorities(User user) {
@@ -238,6 +242,8 @@ public class UserManager {
         if(!admin) {
             int userOrganizationResult = userOrganizationRepository.updateUserOrganization(id, organizationId);
             Assert.isTrue(userOrganizationResult == 1, "unexpected error during organization update");
+            // the username could have been modified as well
+            transactionPreparer.evictAllUserOrganizations();
         }
         int userResult = userRepository.update(id, username, firstName, lastName, emailAddress, description);
         Assert.isTrue(userResult == 1, "unexpected error during user update");
@@ -281,6 +287,7 @@ public class UserManager {
         AffectedRowCountAndKey<Integer> result = userRepository.create(username, passwordEncoder.encode(userPassword), firstName, lastName, emailAddress, true, userType, validTo, description);
         userOrganizationRepository.create(result.getKey(), organization.getId());
         authorityRepository.create(username, role.getRoleName());
+        transactionPreparer.evictUserOrganizations(username);
         return new UserWithPassword(userRepository.findById(result.getKey()), userType != User.Type.API_KEY ? userPassword : "", UUID.randomUUID().toString());
     }
 
@@ -304,6 +311,14 @@ public class UserManager {
         User currentUser = userRepository.findEnabledByUsername(currentUsername).orElseThrow(IllegalArgumentException::new);
         Assert.isTrue(userId != currentUser.getId(), "sorry but you cannot delete your own account.");
         userRepository.deleteUserAndReferences(userId);
+        transactionPreparer.evictAllUserOrganizations();
+    }
+
+    /**
+     * Must be called every time the organizations linked to the given user are modified
+     */
+    public void evictUserOrganizations(String username) {
+        transactionPreparer.evictUserOrganizations(username);
     }
 
     public void enable(int userId, String currentUsername, boolean status) {
@@ -0,0 +1,37 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model;
+
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import lombok.Getter;
+
+/**
+ * Identifier and version of a ticket available for the offline check-in.
+ * The version is the id of the last transaction that modified the data sent to the check-in apps.
+ */
+@Getter
+public class CheckInTicketVersion {
+
+    private final int ticketId;
+    private final long version;
+
+    public CheckInTicketVersion(@Column("ticket_id") int ticketId,
+                                @Column("version") long version) {
+        this.ticketId = ticketId;
+        this.version = version;
+    }
+}
@@ -38,6 +38,16 @@ public interface PaymentProvider {
 
     boolean isActive(PaymentContext paymentContext);
 
+    /**
+     * Whether the result of {@link #getSupportedPaymentMethods(PaymentContext, TransactionRequest)} depends on
+     * the amount or on the billing details of the transaction, and not only on the configuration.
+     *
+     * @return {@code true} if the supported methods depend on the transaction
+     */
+    default boolean dependsOnTransactionRequest() {
+        return false;
+    }
+
     default PaymentResult getToken(PaymentSpecification spec) {
         return PaymentResult.initialized(UUID.randomUUID().toString());
     }
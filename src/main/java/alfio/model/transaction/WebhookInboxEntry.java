@@ -0,0 +1,58 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.model.transaction;
+
+import alfio.model.support.JSONData;
+import ch.digitalfondue.npjt.ConstructorAnnotationRowMapper.Column;
+import lombok.Getter;
+
+import java.util.Map;
+
+@Getter
+public class WebhookInboxEntry {
+
+    public enum Status {
+        PENDING, PROCESSED, FAILED
+    }
+
+    private final long id;
+    private final PaymentProxy paymentProxy;
+    private final String eventKey;
+    private final String reservationId;
+    private final String body;
+    private final Map<String, String> additionalInfo;
+    private final Status status;
+    private final int attempts;
+
+    public WebhookInboxEntry(@Column("id") long id,
+                             @Column("payment_proxy") PaymentProxy paymentProxy,
+                             @Column("event_key") String eventKey,
+                             @Column("reservation_id") String reservationId,
+                             @Column("body") String body,
+                             @Column("additional_info") @JSONData Map<String, String> additionalInfo,
+                             @Column("status") Status status,
+                             @Column("attempts") int attempts) {
+        this.id = id;
+        this.paymentProxy = paymentProxy;
+        this.eventKey = eventKey;
+        this.reservationId = reservationId;
+        this.body = body;
+        this.additionalInfo = additionalInfo;
+        this.status = status;
+        this.attempts = attempts;
+    }
+}
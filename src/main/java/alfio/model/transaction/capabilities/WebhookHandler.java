@@ -35,6 +35,30 @@ public interface WebhookHandler extends Capability {
 
     Optional<TransactionWebhookPayload> parseTransactionPayload(String body, String signature, Map<String, String> additionalInfo, PaymentContext paymentContext);
 
+    /**
+     * Parses a payload that has already been verified by {@link #parseTransactionPayload(String, String, Map, PaymentContext)}
+     * when it was received. Providers must override this method if the verification cannot be repeated later.
+     *
+     * @param body the payload
+     * @param additionalInfo additional info received along with the payload
+     * @param paymentContext the {@link PaymentContext} of the reservation
+     * @return the parsed payload
+     */
+    default Optional<TransactionWebhookPayload> parseVerifiedTransactionPayload(String body, Map<String, String> additionalInfo, PaymentContext paymentContext) {
+        return parseTransactionPayload(body, null, additionalInfo, paymentContext);
+    }
+
+    /**
+     * Returns the ID assigned by the provider to the notification, which is used to discard the notifications that have
+     * already been received. If the provider does not assign one, notifications are deduplicated by reservation.
+     *
+     * @param body the payload
+     * @return the notification ID, if any
+     */
+    default Optional<String> getWebhookEventId(String body) {
+        return Optional.empty();
+    }
+
     PaymentWebhookResult processWebhook(TransactionWebhookPayload payload, Transaction transaction, PaymentContext paymentContext);
 
     PaymentWebhookResult forceTransactionCheck(TicketReservation reservation, Transaction transaction, PaymentContext paymentContext);
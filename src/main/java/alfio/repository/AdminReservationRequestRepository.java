@@ -46,8 +46,11 @@ public interface AdminReservationRequestRepository {
         getNamedParameterJdbcTemplate().batchUpdate("insert into admin_reservation_request(user_id, request_id, event_id, request_type, status, body) values(:userId, :requestId, :eventId, :requestType, :status, :body)", requests);
     }
 
-    @Query("select id from admin_reservation_request where status = 'PENDING' order by request_id limit :limit for update skip locked")
-    List<Long> findPendingForUpdate(@Bind("limit") int limit);
+    @Query("select * from admin_reservation_request where status = 'PENDING' order by request_id, id limit :limit")
+    List<AdminReservationRequest> findPending(@Bind("limit") int limit);
+
+    @Query("select id from admin_reservation_request where id in (:ids) and status = 'PENDING' for update skip locked")
+    List<Long> lockPendingByIds(@Bind("ids") List<Long> ids);
 
     @Query("select count(*) from admin_reservation_request where status = 'PENDING'")
     Integer countPending();
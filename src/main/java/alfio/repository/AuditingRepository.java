@@ -20,11 +20,14 @@ package alfio.repository;
 import alfio.model.Audit;
 import alfio.model.Event;
 import alfio.model.PurchaseContext;
+import alfio.model.TicketInfoContainer;
 import alfio.model.support.JSONData;
 import alfio.util.Json;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
 import java.util.Collection;
@@ -55,6 +58,22 @@ public interface AuditingRepository {
         return this.insert(reservationId, userId, eventId, eventType, eventTime, entityType, entityId, modificationJson);
     }
 
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default void insertTicketAudits(Collection<? extends TicketInfoContainer> tickets, Integer userId, int eventId, Audit.EventType eventType, Date eventTime) {
+        var params = tickets.stream()
+            .map(t -> new MapSqlParameterSource("reservationId", t.getTicketsReservationId())
+                .addValue("userId", userId)
+                .addValue("eventId", eventId)
+                .addValue("eventType", eventType.name())
+                .addValue("eventTime", eventTime)
+                .addValue("entityType", Audit.EntityType.TICKET.name())
+                .addValue("entityId", Integer.toString(t.getId())))
+            .toArray(MapSqlParameterSource[]::new);
+        getNamedParameterJdbcTemplate().batchUpdate("insert into auditing(reservation_id, user_id, event_id, event_type, event_time, entity_type, entity_id) " +
+            " values (:reservationId, :userId, :eventId, :eventType, :eventTime, :entityType, :entityId)", params);
+    }
+
     default int insert(String reservationId, Integer userId, PurchaseContext p, Audit.EventType eventType, Date eventTime, Audit.EntityType entityType,
                        String entityId) {
         var eventId = p.event().map(Event::getId).orElse(null);
@@ -0,0 +1,82 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.CheckInPublishedKey;
+import alfio.model.CheckInTicketVersion;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Change feed for the offline check-in. See V205_2.0.0.53__CHECK_IN_CHANGE_FEED.sql for the triggers
+ * maintaining the data.
+ */
+@QueryRepository
+public interface CheckInFeedRepository {
+
+    String FIND_TICKET_VERSIONS = "select t.id ticket_id, coalesce(t.check_in_txid, 0) as version from ticket t" +
+        " join ticket_category tc on t.category_id = tc.id" +
+        " where t.event_id = :eventId and tc.ticket_access_type <> 'ONLINE'" +
+        " and t.full_name is not null and t.email_address is not null";
+
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    /**
+     * Every transaction with an id lower than the returned value is already visible.
+     */
+    @Query("select txid_snapshot_xmin(txid_current_snapshot())")
+    long currentCursor();
+
+    @Query("select id from ticket where event_id = :eventId and check_in_txid >= :cursor" +
+        " union select ticket_id from check_in_deleted_ticket where event_id = :eventId and txid >= :cursor")
+    List<Integer> findChangedTicketIds(@Bind("eventId") int eventId, @Bind("cursor") long cursor);
+
+    @Query(FIND_TICKET_VERSIONS + " order by t.id")
+    List<CheckInTicketVersion> findAllTicketVersions(@Bind("eventId") int eventId);
+
+    @Query(FIND_TICKET_VERSIONS + " and t.id in (:ids) order by t.id")
+    List<CheckInTicketVersion> findTicketVersions(@Bind("eventId") int eventId, @Bind("ids") Collection<Integer> ids);
+
+    @Query("select ticket_id, entry_key from check_in_published_key where event_id = :eventId and ticket_id in (:ids)")
+    List<CheckInPublishedKey> findPublishedKeys(@Bind("eventId") int eventId, @Bind("ids") Collection<Integer> ids);
+
+    @Query("select ticket_id, entry_key from check_in_published_key where event_id = :eventId")
+    List<CheckInPublishedKey> findAllPublishedKeys(@Bind("eventId") int eventId);
+
+    @Query("delete from check_in_published_key where event_id in (select id from event where end_ts < :date)")
+    int deletePublishedKeysForEventsEndedBefore(@Bind("date") ZonedDateTime date);
+
+    @Query("delete from check_in_deleted_ticket where event_id in (select id from event where end_ts < :date)")
+    int deleteDeletedTicketsForEventsEndedBefore(@Bind("date") ZonedDateTime date);
+
+    default void registerPublishedKeys(int eventId, Collection<CheckInPublishedKey> keys) {
+        var params = keys.stream()
+            .map(key -> new MapSqlParameterSource("eventId", eventId)
+                .addValue("ticketId", key.getTicketId())
+                .addValue("entryKey", key.getEntryKey()))
+            .toArray(MapSqlParameterSource[]::new);
+        getNamedParameterJdbcTemplate().batchUpdate("insert into check_in_published_key(event_id, ticket_id, entry_key) values(:eventId, :ticketId, :entryKey)" +
+            " on conflict (event_id, entry_key) do nothing", params);
+    }
+}
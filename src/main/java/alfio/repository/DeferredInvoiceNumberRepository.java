@@ -0,0 +1,56 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+@QueryRepository
+public interface DeferredInvoiceNumberRepository {
+
+    @Query("insert into deferred_invoice_number(reservation_id_fk, payment_proxy) values(:reservationId, :paymentProxy)")
+    int insert(@Bind("reservationId") String reservationId, @Bind("paymentProxy") String paymentProxy);
+
+    /**
+     * Locks the entry if its invoice number has yet to be allocated.
+     *
+     * @return the payment proxy of the confirmation, or empty if there's nothing to do or the entry is being processed elsewhere
+     */
+    @Query("select payment_proxy from deferred_invoice_number where reservation_id_fk = :reservationId and status = 'ALLOCATION_PENDING' for update skip locked")
+    Optional<String> lockForAllocation(@Bind("reservationId") String reservationId);
+
+    /**
+     * Locks the entry if its invoice number has been allocated and the confirmation e-mails have yet to be sent.
+     *
+     * @return the payment proxy of the confirmation, or empty if there's nothing to do or the entry is being processed elsewhere
+     */
+    @Query("select payment_proxy from deferred_invoice_number where reservation_id_fk = :reservationId and status = 'CONFIRMATION_PENDING' for update skip locked")
+    Optional<String> lockForConfirmation(@Bind("reservationId") String reservationId);
+
+    @Query("update deferred_invoice_number set status = 'CONFIRMATION_PENDING' where reservation_id_fk = :reservationId")
+    int markAsAllocated(@Bind("reservationId") String reservationId);
+
+    @Query("delete from deferred_invoice_number where reservation_id_fk = :reservationId")
+    int delete(@Bind("reservationId") String reservationId);
+
+    @Query("select reservation_id_fk from deferred_invoice_number where creation < now() - interval '1 minute' order by creation limit :limit")
+    List<String> findStale(@Bind("limit") int limit);
+}
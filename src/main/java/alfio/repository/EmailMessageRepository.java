@@ -27,6 +27,7 @@ import ch.digitalfondue.npjt.QueryRepository;
 import ch.digitalfondue.npjt.QueryType;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -82,8 +83,22 @@ public interface EmailMessageRepository {
                 " where (" +
                 " (event_id is not null and event_id in (select id from event where end_ts > now())) or " +
                 " (subscription_descriptor_id_fk is not null and subscription_descriptor_id_fk in (select id from subscription_descriptor where validity_to is null or validity_to > now())) " +
-                ") and (status = 'WAITING' or status = 'RETRY') limit 100 for update skip locked")
-    List<EmailMessage> loadAllWaitingForProcessing();
+                ") and (status = 'WAITING' or status = 'RETRY') limit :max for update skip locked")
+    List<EmailMessage> loadAllWaitingForProcessing(@Bind("max") int max);
+
+    @Query("select count(*) from email_message where status = 'WAITING' or status = 'RETRY'")
+    int countWaitingForProcessing();
+
+    @Query("update email_message set status = :status where id in (:ids) and status in (:expectedStatuses)")
+    int bulkUpdateStatus(@Bind("ids") Collection<Integer> ids, @Bind("status") String status, @Bind("expectedStatuses") List<String> expectedStatuses);
+
+    @Query("update email_message set status = 'SENT', sent_ts = :sentTimestamp, html_message = null where id in (:ids) and status = 'IN_PROCESS'")
+    int bulkUpdateStatusToSent(@Bind("ids") Collection<Integer> ids, @Bind("sentTimestamp") ZonedDateTime sentTimestamp);
+
+    @Query("update email_message set status = 'RETRY', attempts = coalesce(attempts, 0) + 1," +
+        " request_ts = cast(:now as timestamp with time zone) + (coalesce(attempts, 0) + 1) * interval '1 minute'" +
+        " where id in (:ids) and status = 'IN_PROCESS'")
+    int bulkUpdateStatusToRetry(@Bind("ids") Collection<Integer> ids, @Bind("now") ZonedDateTime now);
 
     @Query("update email_message set status = 'SENT', sent_ts = :sentTimestamp, html_message = null where id = :id and checksum = :checksum and status in (:expectedStatuses)")
     int updateStatusToSent(@Bind("id") int id, @Bind("checksum") String checksum, @Bind("sentTimestamp") ZonedDateTime sentTimestamp, @Bind("expectedStatuses") List<String> expectedStatuses);
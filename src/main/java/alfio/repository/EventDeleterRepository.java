@@ -110,6 +110,12 @@ public interface EventDeleterRepository {
     @Query("delete from subscription_event where event_id_fk = :eventId")
     int deleteSubscriptionLinks(@Bind("eventId") int eventId);
 
+    @Query("delete from check_in_deleted_ticket where event_id = :eventId")
+    int deleteCheckInDeletedTickets(@Bind("eventId") int eventId);
+
+    @Query("delete from check_in_published_key where event_id = :eventId")
+    int deleteCheckInPublishedKeys(@Bind("eventId") int eventId);
+
     default void deleteAllForEvent(int eventId) {
         deletePolls(eventId);
         deleteWaitingQueue(eventId);
@@ -128,6 +134,8 @@ public interface EventDeleterRepository {
         deleteEventMigration(eventId);
         deleteSponsorScan(eventId);
         deleteTicket(eventId);
+        deleteCheckInDeletedTickets(eventId);
+        deleteCheckInPublishedKeys(eventId);
         deleteTransactions(eventId);
         deleteBillingDocuments(eventId);
         deleteReservation(eventId);
@@ -74,22 +74,27 @@ public interface FileUploadRepository {
 
     NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
 
-    default File file(String id) {
-        try {
-            File cachedFile = File.createTempFile("fileupload-cache", ".tmp");
-            cachedFile.deleteOnExit();
-            SqlParameterSource param = new MapSqlParameterSource("id", id);
-            getNamedParameterJdbcTemplate().query("select content from file_blob where id = :id", param, rs -> {
-                try (InputStream is = rs.getBinaryStream("content"); OutputStream os = new FileOutputStream(cachedFile)) {
-                    is.transferTo(os);
-                } catch (IOException e) {
-                    throw new IllegalStateException("Error while copying data", e);
-                }
-            });
-            return cachedFile;
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
+    /**
+     * Writes the content of the given file_blob to the provided {@link OutputStream}
+     *
+     * @param id the blob id
+     * @param os the destination. It won't be closed
+     * @return {@code true} if the blob exists
+     */
+    default boolean writeContent(String id, OutputStream os) {
+        SqlParameterSource param = new MapSqlParameterSource("id", id);
+        Boolean found = getNamedParameterJdbcTemplate().query("select content from file_blob where id = :id", param, rs -> {
+            if(!rs.next()) {
+                return false;
+            }
+            try (InputStream is = rs.getBinaryStream("content")) {
+                is.transferTo(os);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error while copying data", e);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(found);
     }
 
 }
@@ -18,6 +18,7 @@ package alfio.repository;
 
 import alfio.model.SpecialPrice;
 import alfio.model.TicketCategory;
+import alfio.model.support.Array;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
@@ -92,23 +93,42 @@ public interface SpecialPriceRepository {
     @Query("update special_price set code = :code, status = 'FREE', sent_ts = null where id = :id")
     int updateCode(@Bind("code") String code, @Bind("id") int id);
 
+    @Query("select code from special_price where code in (:codes)")
+    List<String> findExistingCodes(@Bind("codes") Collection<String> codes);
+
     NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
 
-    default void bulkInsert(TicketCategory ticketCategory, int requiredTokens) {
+    int BULK_INSERT_SIZE = 10_000;
 
-        MapSqlParameterSource[] params = Stream.generate(MapSqlParameterSource::new)
-            .limit(requiredTokens)
-            .peek(ps -> {
-                ps.addValue("code", UUID.randomUUID().toString());
-                ps.addValue("priceInCents", ticketCategory.getSrcPriceCts());
-                ps.addValue("ticketCategoryId", ticketCategory.getId());
-                ps.addValue("status", SpecialPrice.Status.WAITING.name());
-            }).toArray(MapSqlParameterSource[]::new);
+    @Query("insert into special_price (code, price_cts, ticket_category_id, status)" +
+        " select code, :priceInCents, :ticketCategoryId, :status from unnest(:codes) as code")
+    int insertTokens(@Bind("codes") @Array List<String> codes,
+                     @Bind("priceInCents") int priceInCents,
+                     @Bind("ticketCategoryId") int ticketCategoryId,
+                     @Bind("status") String status);
 
-        getNamedParameterJdbcTemplate()
-            .batchUpdate("insert into special_price (code, price_cts, ticket_category_id, status, sent_ts) values(:code, :priceInCents, :ticketCategoryId, :status, null)", params);
+    /**
+     * Creates the given number of tokens, waiting for the code generation (see SpecialPriceTokenGenerator).
+     * Tokens are inserted {@value #BULK_INSERT_SIZE} at a time, each batch with a single statement.
+     */
+    default void bulkInsert(TicketCategory ticketCategory, int requiredTokens) {
+        for (int remaining = requiredTokens; remaining > 0; remaining -= BULK_INSERT_SIZE) {
+            // temporary codes, must be unique
+            var codes = Stream.generate(() -> UUID.randomUUID().toString())
+                .limit(Math.min(remaining, BULK_INSERT_SIZE))
+                .toList();
+            insertTokens(codes, ticketCategory.getSrcPriceCts(), ticketCategory.getId(), SpecialPrice.Status.WAITING.name());
+        }
     }
 
+    default void bulkUpdateCode(List<Integer> ids, List<String> codes) {
+        MapSqlParameterSource[] params = new MapSqlParameterSource[ids.size()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = new MapSqlParameterSource("id", ids.get(i)).addValue("code", codes.get(i));
+        }
+        getNamedParameterJdbcTemplate()
+            .batchUpdate("update special_price set code = :code, status = 'FREE', sent_ts = null where id = :id", params);
+    }
 
     @Query("update special_price set status = 'CANCELLED' where ticket_category_id = :categoryId and status in ('FREE', 'WAITING')")
     int cancelExpiredTokens(@Bind("categoryId") int categoryId);
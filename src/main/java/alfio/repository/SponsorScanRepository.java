@@ -21,6 +21,8 @@ import alfio.model.SponsorScan;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.Instant;
 import java.time.ZoneOffset;
@@ -51,6 +53,25 @@ public interface SponsorScanRepository {
                                  @Bind("notes") String notes,
                                  @Bind("leadStatus") SponsorScan.LeadStatus leadStatus);
 
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    /**
+     * Inserts the given scans. If a scan for the same user, event and ticket already exists, its notes and lead status
+     * are updated instead.
+     */
+    default void bulkUpsert(List<SponsorScan> scans) {
+        var params = scans.stream()
+            .map(scan -> new MapSqlParameterSource("userId", scan.getUserId())
+                .addValue("creation", scan.getTimestamp().toOffsetDateTime())
+                .addValue("eventId", scan.getEventId())
+                .addValue("ticketId", scan.getTicketId())
+                .addValue("notes", scan.getNotes())
+                .addValue("leadStatus", scan.getLeadStatus().name()))
+            .toArray(MapSqlParameterSource[]::new);
+        getNamedParameterJdbcTemplate().batchUpdate("insert into sponsor_scan (user_id, creation, event_id, ticket_id, notes, lead_status) values(:userId, :creation, :eventId, :ticketId, :notes, :leadStatus)" +
+            " on conflict (event_id, ticket_id, user_id) do update set notes = excluded.notes, lead_status = excluded.lead_status", params);
+    }
+
     @Query("select t.id t_id, t.uuid t_uuid, t.creation t_creation, t.category_id t_category_id, t.status t_status, t.event_id t_event_id," +
         " t.src_price_cts t_src_price_cts, t.final_price_cts t_final_price_cts, t.vat_cts t_vat_cts, t.discount_cts t_discount_cts, t.tickets_reservation_id t_tickets_reservation_id," +
         " t.full_name t_full_name, t.first_name t_first_name, t.last_name t_last_name, t.email_address t_email_address, t.locked_assignment t_locked_assignment," +
@@ -34,6 +34,7 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntFunction;
+import java.util.stream.Stream;
 
 @QueryRepository
 public interface TicketRepository {
@@ -49,10 +50,28 @@ public interface TicketRepository {
     String RELEASE_TICKET_QUERY = "update ticket set status = 'RELEASED', uuid = :newUuid, " + RESET_TICKET + " where id = :ticketId and status in('ACQUIRED', 'PENDING', 'TO_BE_PAID') and tickets_reservation_id = :reservationId and event_id = :eventId";
 
 
-    //TODO: refactor, try to move the MapSqlParameterSource inside the default method!
-    default void bulkTicketInitialization(MapSqlParameterSource[] args) {
-        getNamedParameterJdbcTemplate().batchUpdate("insert into ticket (uuid, creation, category_id, event_id, status, original_price_cts, paid_price_cts, src_price_cts)"
-            + "values(:uuid, :creation, :categoryId, :eventId, :status, 0, 0, :srcPriceCts)", args);
+    int BULK_INSERT_SIZE = 10_000;
+
+    @Query("insert into ticket (uuid, creation, category_id, event_id, status, original_price_cts, paid_price_cts, src_price_cts)" +
+        " select uuid, :creation, :categoryId::integer, :eventId, :status, 0, 0, :srcPriceCts from unnest(:uuids) as uuid")
+    int insertTickets(@Bind("uuids") @Array List<String> uuids,
+                      @Bind("creation") Date creation,
+                      @Bind("categoryId") Integer categoryId,
+                      @Bind("eventId") int eventId,
+                      @Bind("status") String status,
+                      @Bind("srcPriceCts") int srcPriceCts);
+
+    /**
+     * Creates the given number of tickets. Tickets are inserted {@value #BULK_INSERT_SIZE} at a time, each batch
+     * with a single statement.
+     */
+    default void bulkTicketInitialization(int eventId, Integer categoryId, int srcPriceCts, Date creation, Ticket.TicketStatus status, int count) {
+        for (int remaining = count; remaining > 0; remaining -= BULK_INSERT_SIZE) {
+            var uuids = Stream.generate(() -> UUID.randomUUID().toString())
+                .limit(Math.min(remaining, BULK_INSERT_SIZE))
+                .toList();
+            insertTickets(uuids, creation, categoryId, eventId, status.name(), srcPriceCts);
+        }
     }
 
     default void bulkTicketUpdate(List<Integer> ids, TicketCategory ticketCategory) {
@@ -69,12 +88,29 @@ public interface TicketRepository {
     @Query("select id from ticket where status in (:requiredStatuses) and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null order by id limit :amount for update skip locked")
     List<Integer> selectTicketInCategoryForUpdateSkipLocked(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("amount") int amount, @Bind("requiredStatuses") List<String> requiredStatus);
 
+    @Query("select id from ticket where status in (:requiredStatuses) and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null" +
+        " and mod(id, :shards) = :shard order by id limit :amount for update skip locked")
+    List<Integer> selectTicketInCategoryShardForUpdateSkipLocked(@Bind("eventId") int eventId,
+                                                                 @Bind("categoryId") int categoryId,
+                                                                 @Bind("amount") int amount,
+                                                                 @Bind("requiredStatuses") List<String> requiredStatus,
+                                                                 @Bind("shards") int shards,
+                                                                 @Bind("shard") int shard);
+
     @Query("select id from ticket where status in(:requiredStatuses) and category_id is null and event_id = :eventId and tickets_reservation_id is null order by id limit :amount for update")
     List<Integer> selectNotAllocatedTicketsForUpdate(@Bind("eventId") int eventId, @Bind("amount") int amount, @Bind("requiredStatuses") List<String> requiredStatuses);
 
     @Query("select id from ticket where status in(:requiredStatuses) and category_id is null and event_id = :eventId and tickets_reservation_id is null order by id limit :amount for update skip locked")
     List<Integer> selectNotAllocatedTicketsForUpdateSkipLocked(@Bind("eventId") int eventId, @Bind("amount") int amount, @Bind("requiredStatuses") List<String> requiredStatuses);
 
+    @Query("select id from ticket where status in(:requiredStatuses) and category_id is null and event_id = :eventId and tickets_reservation_id is null" +
+        " and mod(id, :shards) = :shard order by id limit :amount for update skip locked")
+    List<Integer> selectNotAllocatedTicketsShardForUpdateSkipLocked(@Bind("eventId") int eventId,
+                                                                    @Bind("amount") int amount,
+                                                                    @Bind("requiredStatuses") List<String> requiredStatuses,
+                                                                    @Bind("shards") int shards,
+                                                                    @Bind("shard") int shard);
+
     @Query("select id from ticket where status = 'FREE' and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null order by id desc limit :amount for update")
     List<Integer> lockTicketsToInvalidate(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("amount") int amount);
 
@@ -97,6 +133,45 @@ public interface TicketRepository {
     @Query("select count(*) from ticket where status = 'FREE' and category_id is null and event_id = :eventId")
     Integer countFreeTicketsForUnbounded(@Bind("eventId") int eventId);
 
+    /**
+     * Counts the FREE tickets of all the categories of the given event with a single query.
+     * The count for tickets not (yet) assigned to a category (unbounded) is mapped to the {@code null} key.
+     *
+     * @param eventId the event ID
+     * @return free tickets by category ID
+     */
+    default Map<Integer, Integer> countFreeTicketsByCategory(int eventId) {
+        Map<Integer, Integer> res = new HashMap<>();
+        getNamedParameterJdbcTemplate().query("select category_id, count(*) filter (where status = 'FREE') as free_tickets from ticket where event_id = :eventId group by category_id",
+            Collections.singletonMap("eventId", eventId),
+            rs -> {
+                res.put(rs.getObject("category_id", Integer.class), rs.getInt("free_tickets"));
+            }
+        );
+        return res;
+    }
+
+    @Query("with moved as (delete from ticket_count_delta returning event_id, category_id, status, delta)" +
+        " insert into ticket_count(event_id, category_id, status, cnt)" +
+        " select event_id, category_id, status, sum(delta) from moved group by event_id, category_id, status" +
+        " on conflict (event_id, (coalesce(category_id, -1)), status) do update set cnt = ticket_count.cnt + excluded.cnt")
+    int foldTicketCountDeltas();
+
+    @Query("delete from ticket_count where cnt = 0")
+    int deleteEmptyTicketCount();
+
+    /**
+     * Moves the deltas collected by the triggers on the ticket table into ticket_count.
+     * Safe to be executed concurrently, since each delta row can be deleted only once.
+     *
+     * @return the number of updated counters
+     */
+    default int compactTicketCount() {
+        int result = foldTicketCountDeltas();
+        deleteEmptyTicketCount();
+        return result;
+    }
+
     @Query("select case(show_public_statistics) when true then dynamic_allocation else 0 end from events_statistics where id = :eventId")
     Integer countFreeTicketsForPublicStatistics(@Bind("eventId") int eventId);
 
@@ -236,6 +311,12 @@ public interface TicketRepository {
     @Query("select * from ticket where uuid = :uuid for update")
     Optional<Ticket> findByUUIDForUpdate(@Bind("uuid") String uuid);
 
+    @Query("select * from ticket where uuid in (:uuids)")
+    List<Ticket> findByUUIDs(@Bind("uuids") Collection<String> uuids);
+
+    @Query("select * from ticket where uuid in (:uuids) order by id for update")
+    List<Ticket> findByUUIDsForUpdate(@Bind("uuids") Collection<String> uuids);
+
     @Query("select * from ticket where event_id = :eventId and status = :status and uuid like :uuid for update")
     List<Ticket> findByEventIdAndPartialUUIDForUpdate(@Bind("eventId") int eventId, @Bind("uuid") String partialUUID, @Bind("status") Ticket.TicketStatus status);
 
@@ -308,8 +389,11 @@ public interface TicketRepository {
             " and t.full_name is not null and t.email_address is not null and (coalesce(ltu.last_update, t.creation) > :changedSince)  order by t.id asc")
     List<Integer> findAllAssignedByEventIdForCheckIn(@Bind("eventId") int eventId, @Bind("changedSince") Date changedSince);
 
-    @Query("select * from reservation_and_ticket_and_tx where t_id is not null and t_status in (" + CONFIRMED + ") and t_event_id = :eventId order by tr_confirmation_ts, t_id")
-    List<TicketWithReservationAndTransaction> findAllConfirmedForCSV(@Bind("eventId") int eventId);
+    @Query("select t_id from reservation_and_ticket_and_tx where t_id is not null and t_status in (" + CONFIRMED + ") and t_event_id = :eventId order by tr_confirmation_ts, t_id")
+    List<Integer> findAllConfirmedIdsForCSV(@Bind("eventId") int eventId);
+
+    @Query("select * from reservation_and_ticket_and_tx where t_id in (:ids) and t_status in (" + CONFIRMED + ") and t_event_id = :eventId order by tr_confirmation_ts, t_id")
+    List<TicketWithReservationAndTransaction> findConfirmedForCSV(@Bind("eventId") int eventId, @Bind("ids") List<Integer> ids);
 
     @Query("select a.*, b.confirmation_ts from ticket a, tickets_reservation b where a.event_id = :eventId and a.status in(" + CONFIRMED + ") and a.tickets_reservation_id = b.id order by b.confirmation_ts")
     List<Ticket> findAllConfirmed(@Bind("eventId") int eventId);
@@ -411,6 +495,9 @@ public interface TicketRepository {
     @Query("update ticket set status = 'CHECKED_IN', locked_assignment = true where uuid = :uuid and event_id = :eventId and status = 'ACQUIRED'")
     int performCheckIn(@Bind("uuid") String ticketUUID, @Bind("eventId") int eventId);
 
+    @Query("update ticket set status = 'CHECKED_IN', locked_assignment = true where id in (:ids) and status = 'ACQUIRED'")
+    int bulkPerformCheckIn(@Bind("ids") Collection<Integer> ticketIds);
+
     @Query("select t.id as t_id, t.first_name as t_first_name, t.last_name as t_last_name, t.email_address as t_email_address, tc.name as tc_name from ticket t " +
         " join ticket_category tc on t.category_id = tc.id where t.event_id = :eventId and t.status in ('ACQUIRED', 'TO_BE_PAID', 'CHECKED_IN') and t.tags @> ARRAY[ :tags ]::text[]")
     List<PollParticipant> getTicketsForEventByTags(@Bind("eventId") int eventId, @Bind("tags") List<String> tags);
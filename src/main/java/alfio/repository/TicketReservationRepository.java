@@ -123,8 +123,11 @@ public interface TicketReservationRepository {
     @Query("select status, validated_for_overview from tickets_reservation where id = :id")
     Optional<TicketReservationStatusAndValidation> findOptionalStatusAndValidationById(@Bind("id") String id);
 
-    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING' for update skip locked")
-    List<String> findExpiredReservationForUpdate(@Bind("date") Date date);
+    @Query("select id from tickets_reservation where validity < :date and status = 'PENDING' and id > :lastId order by id limit :limit")
+    List<String> findExpiredReservationIds(@Bind("date") Date date, @Bind("lastId") String lastId, @Bind("limit") int limit);
+
+    @Query("select id from tickets_reservation where id in (:reservationIds) and validity < :date and status = 'PENDING' for update skip locked")
+    List<String> lockExpiredReservations(@Bind("reservationIds") Collection<String> reservationIds, @Bind("date") Date date);
 
     @Query("select distinct tr.* from tickets_reservation tr join b_transaction tx on tx.reservation_id = tr.id where tr.id in (:reservationIds) and tr.status = 'PENDING'")
     List<TicketReservation> findReservationsWithPendingTransaction(@Bind("reservationIds") Collection<String> reservationIds);
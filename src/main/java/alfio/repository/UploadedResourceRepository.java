@@ -36,6 +36,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 @QueryRepository
@@ -64,6 +65,15 @@ public interface UploadedResourceRepository {
 
 
 
+    @Query("select name, content_size, content_type, creation_time, attributes, organization_id_fk, event_id_fk from (" +
+        "    select 3 as lvl, name, content_size, content_type, creation_time, attributes, organization_id_fk, event_id_fk from resource_event where organization_id_fk = :organizationId and event_id_fk = :eventId and name = :name" +
+        "    union all" +
+        "    select 2 as lvl, name, content_size, content_type, creation_time, attributes, organization_id_fk, null as event_id_fk from resource_organizer where organization_id_fk = :organizationId and name = :name" +
+        "    union all" +
+        "    select 1 as lvl, name, content_size, content_type, creation_time, attributes, null as organization_id_fk, null as event_id_fk from resource_global where name = :name" +
+        ") r order by lvl desc limit 1")
+    Optional<UploadedResource> findCascading(@Bind("organizationId") int organizationId, @Bind("eventId") Integer eventId, @Bind("name") String name);
+
     @Query("select name, content_size, content_type, creation_time, attributes, null as organization_id_fk, null as event_id_fk  from resource_global order by name asc")
     List<UploadedResource> findAll();
 
@@ -0,0 +1,81 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.model.support.JSONData;
+import alfio.model.transaction.WebhookInboxEntry;
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+@QueryRepository
+public interface WebhookInboxRepository {
+
+    String INSERT = "insert into webhook_inbox(payment_proxy, event_key, reservation_id, body, additional_info, status)" +
+        " values(:paymentProxy, :eventKey, :reservationId, :body, to_json(:additionalInfo::json), 'PENDING')" +
+        " on conflict (payment_proxy, event_key) do ";
+
+    /**
+     * Stores a notification. Notifications that have already been received are discarded, unless their processing
+     * has failed: in that case the redelivery is scheduled again.
+     *
+     * @return 1 if the notification has been stored, 0 otherwise
+     */
+    @Query(INSERT + "update set body = excluded.body, additional_info = excluded.additional_info, status = 'PENDING'," +
+        " attempts = 0, next_attempt = now(), last_modified = now(), last_error = null" +
+        " where webhook_inbox.status = 'FAILED'")
+    int insert(@Bind("paymentProxy") String paymentProxy,
+               @Bind("eventKey") String eventKey,
+               @Bind("reservationId") String reservationId,
+               @Bind("body") String body,
+               @Bind("additionalInfo") @JSONData Map<String, String> additionalInfo);
+
+    /**
+     * Stores a notification. If a notification with the same key already exists, it is replaced by the new one
+     * and scheduled for immediate processing, as the new one might refer to a different payment.
+     * The attempts are kept only if a pending notification is received again unchanged.
+     *
+     * @return 1 if the notification has been stored, 0 otherwise
+     */
+    @Query(INSERT + "update set body = excluded.body, additional_info = excluded.additional_info, status = 'PENDING'," +
+        " attempts = case when webhook_inbox.status = 'PENDING' and webhook_inbox.body = excluded.body then webhook_inbox.attempts else 0 end," +
+        " next_attempt = now(), last_modified = now(), last_error = null")
+    int insertOrReschedule(@Bind("paymentProxy") String paymentProxy,
+                           @Bind("eventKey") String eventKey,
+                           @Bind("reservationId") String reservationId,
+                           @Bind("body") String body,
+                           @Bind("additionalInfo") @JSONData Map<String, String> additionalInfo);
+
+    @Query("select * from webhook_inbox where status = 'PENDING' and next_attempt <= now() order by id limit :limit for update skip locked")
+    List<WebhookInboxEntry> lockPending(@Bind("limit") int limit);
+
+    @Query("update webhook_inbox set status = 'PROCESSED', last_modified = now(), last_error = null where id = :id")
+    int markAsProcessed(@Bind("id") long id);
+
+    @Query("update webhook_inbox set attempts = attempts + 1," +
+        " status = case when attempts + 1 >= :maxAttempts then 'FAILED' else 'PENDING' end," +
+        " next_attempt = now() + (attempts + 1) * interval '1 minute', last_modified = now(), last_error = :error" +
+        " where id = :id")
+    int registerFailure(@Bind("id") long id, @Bind("error") String error, @Bind("maxAttempts") int maxAttempts);
+
+    @Query("delete from webhook_inbox where status = 'PROCESSED' and last_modified < :date")
+    int deleteProcessedBefore(@Bind("date") ZonedDateTime date);
+}
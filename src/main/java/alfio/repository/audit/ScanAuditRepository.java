@@ -21,8 +21,11 @@ import alfio.model.audit.ScanAudit;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @QueryRepository
@@ -35,6 +38,20 @@ public interface ScanAuditRepository {
                    @Bind("status") CheckInStatus checkInStatus,
                    @Bind("operation") ScanAudit.Operation operation);
 
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default void bulkInsert(Collection<String> ticketUuids, int eventId, ZonedDateTime timestamp, String username, CheckInStatus checkInStatus, ScanAudit.Operation operation) {
+        var params = ticketUuids.stream()
+            .map(uuid -> new MapSqlParameterSource("ticketUuid", uuid)
+                .addValue("eventId", eventId)
+                .addValue("scanTs", timestamp.toOffsetDateTime())
+                .addValue("username", username)
+                .addValue("status", checkInStatus.name())
+                .addValue("operation", operation.name()))
+            .toArray(MapSqlParameterSource[]::new);
+        getNamedParameterJdbcTemplate().batchUpdate("insert into scan_audit(ticket_uuid, event_id_fk, scan_ts, username, check_in_status, operation) values(:ticketUuid, :eventId, :scanTs, :username, :status, :operation)", params);
+    }
+
     @Query("select * from scan_audit where event_id_fk = :eventId")
     List<ScanAudit> findAllForEvent(@Bind("eventId") int eventId);
 
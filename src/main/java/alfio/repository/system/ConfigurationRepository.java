@@ -126,6 +126,18 @@ public interface ConfigurationRepository {
 
     @Query(SELECT_FROM_SYSTEM+" where c_key in (:keys)")
     List<ConfigurationKeyValuePathLevel> findByKeysAtSystemLevel(@Bind("keys") Collection<String> keys);
+
+    @Query(SELECT_FROM_SYSTEM)
+    List<ConfigurationKeyValuePathLevel> findAllAtSystemLevel();
+
+    @Query(SELECT_FROM_ORGANIZATION)
+    List<ConfigurationKeyValuePathLevel> findAllAtOrganizationLevel(@Bind("organizationId") int organizationId);
+
+    @Query(SELECT_FROM_EVENT)
+    List<ConfigurationKeyValuePathLevel> findAllAtEventLevel(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId);
+
+    @Query(SELECT_FROM_TICKET_CATEGORY)
+    List<ConfigurationKeyValuePathLevel> findAllAtTicketCategoryLevel(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId, @Bind("ticketCategoryId") int ticketCategoryId);
     
     @Query("DELETE FROM configuration where c_key = :key")
     void deleteByKey(@Bind("key") String key);
@@ -0,0 +1,62 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Application meters. They're registered in the Micrometer global registry, to which Spring Boot binds the
+ * Prometheus registry (see management.* in application.properties). The endpoint is served on a separate port,
+ * bound to the loopback interface. Without a bound registry, e.g. in tests, recording is a no-op.
+ */
+public final class MetricsUtil {
+
+    public static final String RESERVATION_CREATE = "alfio.reservation.create";
+    public static final String PAYMENT_PERFORM = "alfio.payment.perform";
+    public static final String PAYMENT_WEBHOOK_PROCESS = "alfio.payment.webhook.process";
+    public static final String EMAIL_QUEUE_DEPTH = "alfio.email.queue.depth";
+    public static final String EMAIL_DISPATCHED = "alfio.email.dispatched";
+    public static final String JOB_DURATION = "alfio.job.duration";
+    public static final String JOB_OVERRUN = "alfio.job.overrun";
+    public static final String EXTENSION_EXECUTION = "alfio.extension.execution";
+
+    // values of the outcome tag, shared by all the meters
+    public static final String OUTCOME = "outcome";
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+    public static final String PENDING = "pending";
+    public static final String IGNORED = "ignored";
+
+    private MetricsUtil() {}
+
+    public static Timer.Sample startTimer() {
+        return Timer.start(Metrics.globalRegistry);
+    }
+
+    public static void stopTimer(Timer.Sample sample, String name, String... tags) {
+        sample.stop(Timer.builder(name)
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry));
+    }
+
+    public static Counter counter(String name, String... tags) {
+        return Metrics.globalRegistry.counter(name, tags);
+    }
+}
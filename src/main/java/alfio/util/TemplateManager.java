@@ -22,9 +22,12 @@ import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.PurchaseContext;
 import alfio.model.system.ConfigurationKeys;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Mustache.Compiler;
 import com.samskivert.mustache.Template;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +71,12 @@ public class TemplateManager {
 
     private final Map<TemplateOutput, Compiler> compilers;
 
+    // compiled templates are thread safe and can therefore be shared.
+    // Uploaded templates and strings are identified by the hash of their content, so there's no need for explicit invalidation
+    private final Cache<CompiledTemplateKey, Template> compiledTemplates = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .build();
+
     private final UploadedResourceManager uploadedResourceManager;
     
     private final ConfigurationManager configurationManager;
@@ -175,6 +184,18 @@ public class TemplateManager {
     }
 
     private Template compile(Resource resource, TemplateOutput templateOutput) {
+        String source;
+        if(resource instanceof ClassPathResource classPathResource) {
+            source = "classpath:" + classPathResource.getPath();
+        } else if(resource instanceof ByteArrayResource byteArrayResource) {
+            source = DigestUtils.sha256Hex(byteArrayResource.getByteArray());
+        } else {
+            return doCompile(resource, templateOutput);
+        }
+        return compiledTemplates.get(new CompiledTemplateKey(source, templateOutput), k -> doCompile(resource, templateOutput));
+    }
+
+    private Template doCompile(Resource resource, TemplateOutput templateOutput) {
         try (InputStreamReader tmpl = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
             return compilers.get(templateOutput).compile(tmpl);
         } catch (IOException ioe) {
@@ -182,6 +203,9 @@ public class TemplateManager {
         }
     }
 
+    private record CompiledTemplateKey(String source, TemplateOutput templateOutput) {
+    }
+
     private static final Pattern KEY_PATTERN = Pattern.compile("^([^\\[]+)[\\s\\[]");
     private static final Pattern ARGS_PATTERN = Pattern.compile("\\[(.*?)]");
 
@@ -0,0 +1,62 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notifies the application nodes that a configuration entry has been modified,
+-- so that they can evict the corresponding entry from their local cache.
+-- Notifications are delivered only if and when the transaction commits.
+create or replace function notify_configuration_change() returns trigger
+as $$
+DECLARE
+    changed record;
+    payload text;
+BEGIN
+    if TG_OP = 'DELETE' then
+        changed := old;
+    else
+        changed := new;
+    end if;
+
+    if TG_TABLE_NAME = 'configuration_organization' then
+        payload := 'ORGANIZATION:' || changed.organization_id_fk;
+    elsif TG_TABLE_NAME = 'configuration_event' then
+        payload := 'EVENT:' || changed.event_id_fk;
+    elsif TG_TABLE_NAME = 'configuration_ticket_category' then
+        payload := 'TICKET_CATEGORY:' || changed.ticket_category_id_fk;
+    else
+        payload := 'SYSTEM';
+    end if;
+
+    perform pg_notify('alfio_configuration_change', payload);
+    return null;
+END;
+$$ language plpgsql;
+
+create trigger configuration_change_trigger
+    after insert or update or delete on configuration
+    for each row execute procedure notify_configuration_change();
+
+create trigger configuration_organization_change_trigger
+    after insert or update or delete on configuration_organization
+    for each row execute procedure notify_configuration_change();
+
+create trigger configuration_event_change_trigger
+    after insert or update or delete on configuration_event
+    for each row execute procedure notify_configuration_change();
+
+create trigger configuration_ticket_category_change_trigger
+    after insert or update or delete on configuration_ticket_category
+    for each row execute procedure notify_configuration_change();
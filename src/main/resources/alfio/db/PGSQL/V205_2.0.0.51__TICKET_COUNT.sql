@@ -0,0 +1,82 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- incrementally maintained number of tickets by event, category and status.
+-- The triggers on "ticket" only append rows to ticket_count_delta, so that concurrent
+-- transactions never compete for the same counter row.
+-- The deltas are periodically folded into ticket_count (see TicketRepository#compactTicketCount),
+-- the view ticket_status_count returns the sum of both.
+
+create table ticket_count (
+    event_id integer not null,
+    category_id integer,
+    status varchar(255) not null,
+    cnt integer not null
+);
+create unique index ticket_count_event_category_status_uq on ticket_count(event_id, coalesce(category_id, -1), status);
+create index ticket_count_category_id_idx on ticket_count(category_id);
+
+create table ticket_count_delta (
+    event_id integer not null,
+    category_id integer,
+    status varchar(255) not null,
+    delta integer not null
+);
+create index ticket_count_delta_event_id_idx on ticket_count_delta(event_id);
+create index ticket_count_delta_category_id_idx on ticket_count_delta(category_id);
+
+create or replace function ticket_count_track_changes() returns trigger as $$
+begin
+    if TG_OP = 'INSERT' then
+        insert into ticket_count_delta(event_id, category_id, status, delta)
+            select event_id, category_id, status, count(*) from new_rows group by event_id, category_id, status;
+    elsif TG_OP = 'DELETE' then
+        insert into ticket_count_delta(event_id, category_id, status, delta)
+            select event_id, category_id, status, -count(*) from old_rows group by event_id, category_id, status;
+    else
+        insert into ticket_count_delta(event_id, category_id, status, delta)
+            select event_id, category_id, status, sum(delta) from (
+                select event_id, category_id, status, -1 as delta from old_rows
+                union all
+                select event_id, category_id, status, 1 as delta from new_rows
+            ) changes
+            group by event_id, category_id, status
+            having sum(delta) <> 0;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+lock table ticket in share row exclusive mode;
+
+insert into ticket_count(event_id, category_id, status, cnt)
+    select event_id, category_id, status, count(*) from ticket group by event_id, category_id, status;
+
+create trigger ticket_count_insert_trigger
+    after insert on ticket
+    referencing new table as new_rows
+    for each statement execute procedure ticket_count_track_changes();
+
+create trigger ticket_count_update_trigger
+    after update on ticket
+    referencing old table as old_rows new table as new_rows
+    for each statement execute procedure ticket_count_track_changes();
+
+create trigger ticket_count_delete_trigger
+    after delete on ticket
+    referencing old table as old_rows
+    for each statement execute procedure ticket_count_track_changes();
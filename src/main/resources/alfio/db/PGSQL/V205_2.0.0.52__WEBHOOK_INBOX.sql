@@ -0,0 +1,37 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- payment notifications received from the providers, processed asynchronously by PaymentWebhookInboxManager.
+-- event_key is the ID assigned by the provider to the notification, or the reservation ID for those providers
+-- whose notifications don't have one. In both cases it is used to discard duplicate notifications.
+
+create table webhook_inbox (
+    id bigserial primary key,
+    payment_proxy varchar(255) not null,
+    event_key varchar(255) not null,
+    reservation_id varchar(255) not null,
+    body text not null,
+    additional_info jsonb not null default '{}',
+    status varchar(255) not null,
+    attempts integer not null default 0,
+    next_attempt timestamp with time zone not null default now(),
+    creation timestamp with time zone not null default now(),
+    last_modified timestamp with time zone not null default now(),
+    last_error text
+);
+create unique index webhook_inbox_proxy_event_key_uq on webhook_inbox(payment_proxy, event_key);
+create index webhook_inbox_pending_idx on webhook_inbox(next_attempt) where status = 'PENDING';
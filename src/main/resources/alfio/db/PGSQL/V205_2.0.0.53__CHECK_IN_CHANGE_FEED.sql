@@ -0,0 +1,136 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- change feed for the offline check-in (see CheckInManager#getOfflineCheckInChanges).
+-- Every modification that affects the offline payload of an assigned ticket stores the id of the
+-- writing transaction in ticket.check_in_txid. Clients receive txid_snapshot_xmin(txid_current_snapshot())
+-- as cursor: every transaction with a lower id is already visible, so nothing can be missed.
+-- Removed tickets are tracked in check_in_deleted_ticket, while check_in_published_key keeps
+-- the keys sent to the clients, in order to build the tombstones once a ticket changes.
+
+alter table ticket add column check_in_txid bigint;
+create index ticket_event_id_check_in_txid_idx on ticket(event_id, check_in_txid) where check_in_txid is not null;
+
+create table check_in_deleted_ticket (
+    event_id integer not null,
+    ticket_id integer not null,
+    txid bigint not null default txid_current()
+);
+create index check_in_deleted_ticket_event_id_txid_idx on check_in_deleted_ticket(event_id, txid);
+
+create table check_in_published_key (
+    event_id integer not null,
+    ticket_id integer not null,
+    entry_key varchar(64) not null
+);
+create unique index check_in_published_key_event_id_entry_key_uq on check_in_published_key(event_id, entry_key);
+create index check_in_published_key_event_id_ticket_id_idx on check_in_published_key(event_id, ticket_id);
+
+create or replace function ticket_check_in_track_update() returns trigger as $$
+begin
+    if (old.email_address is not null or new.email_address is not null)
+        and (new.uuid, new.status, new.full_name, new.first_name, new.last_name, new.email_address,
+             new.category_id, new.tickets_reservation_id, new.event_id, new.tags)
+            is distinct from
+            (old.uuid, old.status, old.full_name, old.first_name, old.last_name, old.email_address,
+             old.category_id, old.tickets_reservation_id, old.event_id, old.tags) then
+        new.check_in_txid := txid_current();
+        if new.event_id <> old.event_id and old.email_address is not null then
+            insert into check_in_deleted_ticket(event_id, ticket_id) values (old.event_id, old.id);
+        end if;
+    end if;
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger ticket_check_in_update_trigger
+    before update on ticket
+    for each row execute procedure ticket_check_in_track_update();
+
+create or replace function ticket_check_in_track_delete() returns trigger as $$
+begin
+    insert into check_in_deleted_ticket(event_id, ticket_id)
+        select event_id, id from old_rows where email_address is not null;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger ticket_check_in_delete_trigger
+    after delete on ticket
+    referencing old table as old_rows
+    for each statement execute procedure ticket_check_in_track_delete();
+
+-- additional fields are part of the payload
+create or replace function ticket_field_value_check_in_track_changes() returns trigger as $$
+begin
+    if TG_OP = 'DELETE' then
+        update ticket set check_in_txid = txid_current()
+            where id in (select ticket_id_fk from old_rows) and email_address is not null;
+    else
+        update ticket set check_in_txid = txid_current()
+            where id in (select ticket_id_fk from new_rows) and email_address is not null;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger ticket_field_value_check_in_insert_trigger
+    after insert on ticket_field_value
+    referencing new table as new_rows
+    for each statement execute procedure ticket_field_value_check_in_track_changes();
+
+create trigger ticket_field_value_check_in_update_trigger
+    after update on ticket_field_value
+    referencing new table as new_rows
+    for each statement execute procedure ticket_field_value_check_in_track_changes();
+
+create trigger ticket_field_value_check_in_delete_trigger
+    after delete on ticket_field_value
+    referencing old table as old_rows
+    for each statement execute procedure ticket_field_value_check_in_track_changes();
+
+-- category name and check-in validity are part of the payload
+create or replace function ticket_category_check_in_track_changes() returns trigger as $$
+begin
+    if (new.name, new.valid_checkin_from, new.valid_checkin_to, new.ticket_validity_start, new.ticket_validity_end,
+        new.ticket_checkin_strategy, new.ticket_access_type)
+        is distinct from
+       (old.name, old.valid_checkin_from, old.valid_checkin_to, old.ticket_validity_start, old.ticket_validity_end,
+        old.ticket_checkin_strategy, old.ticket_access_type) then
+        update ticket set check_in_txid = txid_current() where category_id = new.id and email_address is not null;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger ticket_category_check_in_update_trigger
+    after update on ticket_category
+    for each row execute procedure ticket_category_check_in_track_changes();
+
+-- the company name is part of the payload
+create or replace function tickets_reservation_check_in_track_changes() returns trigger as $$
+begin
+    if new.billing_address_company is distinct from old.billing_address_company then
+        update ticket set check_in_txid = txid_current() where tickets_reservation_id = new.id and email_address is not null;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger tickets_reservation_check_in_update_trigger
+    after update on tickets_reservation
+    for each row execute procedure tickets_reservation_check_in_track_changes();
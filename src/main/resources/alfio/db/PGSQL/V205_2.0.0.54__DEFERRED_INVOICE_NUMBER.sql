@@ -0,0 +1,27 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- reservations confirmed with DEFER_INVOICE_NUMBER_ALLOCATION, waiting for their invoice number (ALLOCATION_PENDING)
+-- or for the confirmation e-mails (CONFIRMATION_PENDING). Rows are processed right after the confirmation has been
+-- committed; the ones left behind by a failure are picked up by a scheduled job.
+
+create table deferred_invoice_number (
+    reservation_id_fk varchar(255) primary key references tickets_reservation(id) on delete cascade,
+    payment_proxy varchar(255) not null,
+    status varchar(255) not null default 'ALLOCATION_PENDING',
+    creation timestamp with time zone not null default now()
+);
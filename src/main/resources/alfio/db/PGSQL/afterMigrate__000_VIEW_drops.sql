@@ -19,6 +19,7 @@ drop view if exists admin_reservation_request_stats;
 drop view if exists auditing_user;
 drop view if exists events_statistics;
 drop view if exists ticket_category_statistics;
+drop view if exists ticket_status_count;
 drop view if exists ticket_and_reservation_and_tx;
 drop view if exists latest_ticket_update;
 drop view if exists reservation_and_ticket_and_tx;
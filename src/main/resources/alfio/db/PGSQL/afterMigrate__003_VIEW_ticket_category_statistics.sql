@@ -41,14 +41,13 @@ from
 left join
 
 (select
-  sum(case(status = 'PENDING') when true then 1 else 0 end) as pending_count,
-  sum(case(status = 'RELEASED') when true then 1 else 0 end) as released_count,
-  sum(case(status = 'CHECKED_IN') when true then 1 else 0 end) checked_in_count,
-  sum(case(status in ('TO_BE_PAID', 'ACQUIRED')) when true then 1 else 0 end) as sold_tickets_count,
+  sum(case(status = 'PENDING') when true then cnt else 0 end) as pending_count,
+  sum(case(status = 'RELEASED') when true then cnt else 0 end) as released_count,
+  sum(case(status = 'CHECKED_IN') when true then cnt else 0 end) checked_in_count,
+  sum(case(status in ('TO_BE_PAID', 'ACQUIRED')) when true then cnt else 0 end) as sold_tickets_count,
   category_id
-from ticket
-inner join ticket_category tc
-on category_id = tc.id
+from ticket_status_count
+where category_id is not null
 group by category_id
 ) tickets_stats on ticket_cat.id = tickets_stats.category_id
 
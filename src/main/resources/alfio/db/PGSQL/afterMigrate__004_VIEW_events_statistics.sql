@@ -17,20 +17,20 @@
 
 create view events_statistics as (select
       event.id,
-      (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) as available_seats,
-      case(contains_unbounded_categories) when true then 0 else (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) - allocated_count end as not_allocated_tickets,
+      (select coalesce(sum(cnt), 0) from ticket_status_count where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) as available_seats,
+      case(contains_unbounded_categories) when true then 0 else (select coalesce(sum(cnt), 0) from ticket_status_count where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED')) - allocated_count end as not_allocated_tickets,
       pending_count as pending_tickets,
       sold_tickets_count as sold_tickets,
-      (select released_count + count(id) from ticket where event_id = event.id and status = 'RELEASED' and category_id is null) as released_tickets,
+      (select released_count + coalesce(sum(cnt), 0) from ticket_status_count where event_id = event.id and status = 'RELEASED' and category_id is null) as released_tickets,
       stats.checked_in_count as checked_in_tickets,
       case(contains_unbounded_categories) when true then
-        (select count(id) from ticket where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED'))
+        (select coalesce(sum(cnt), 0) from ticket_status_count where event_id = event.id and status not in ('INVALIDATED', 'EXPIRED'))
           - allocated_count
           - released_count
           - sold_tickets_count_unbounded
           - checked_in_count_unbounded
           - pending_count_unbounded
-          - (select count(*) from ticket where status = 'RELEASED' and category_id is null and event_id = event.id)
+          - (select coalesce(sum(cnt), 0) from ticket_status_count where status = 'RELEASED' and category_id is null and event_id = event.id)
           else 0 end as dynamic_allocation,
       case (contains_unbounded_categories) when true then
         allocated_count - sold_tickets_count_bounded - checked_in_count_bounded - pending_count_bounded
@@ -162,6 +162,7 @@
                         settings: _.filter(original['MAIL'], function(e) {return e.key !== 'MAILER_TYPE';}),
                         type: _.find(original['MAIL'], function(e) {return e.configurationKey === 'MAILER_TYPE';}),
                         maxEmailPerCycle: _.find(original['MAIL'], function(e) {return e.configurationKey === 'MAX_EMAIL_PER_CYCLE';}),
+                        dispatchWorkers: _.find(original['MAIL'], function(e) {return e.configurationKey === 'MAIL_DISPATCH_WORKERS';}),
                         cc: _.find(original['MAIL'], function(e) {return e.configurationKey === 'MAIL_SYSTEM_NOTIFICATION_CC';}),
                         mailReplyTo: _.find(original['MAIL'], function(e) {return e.configurationKey === 'MAIL_REPLY_TO';}),
                         mailAttemptsCount: _.find(original['MAIL'], function(e) {return e.configurationKey === 'MAIL_ATTEMPTS_COUNT';}),
@@ -17,9 +17,12 @@
 package alfio;
 
 import alfio.config.BaseConfiguration;
+import alfio.controller.api.v2.user.support.PublicEventCache;
+import alfio.manager.PaymentMethodMatrix;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.ExternalConfiguration;
 import alfio.manager.user.UserManager;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.system.ConfigurationKeys;
 import alfio.repository.EventRepository;
 import alfio.repository.system.ConfigurationRepository;
@@ -34,6 +37,7 @@ import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 import org.springframework.security.web.csrf.CsrfTokenRepository;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -51,12 +55,26 @@ public class TestConfiguration {
         Cache<Set<ConfigurationKeys>, Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration>> cache = Caffeine.newBuilder()
             .expireAfterWrite(Duration.ZERO)
             .build();
+        Cache<ConfigurationManager.ConfigurationCacheKey, List<ConfigurationKeyValuePathLevel>> levelCache = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ZERO)
+            .build();
         return new ConfigurationManager(configurationRepository,
             userManager,
             eventRepository,
             externalConfiguration,
             environment,
-            cache);
+            cache,
+            levelCache);
+    }
+
+    @Bean
+    PublicEventCache publicEventCache() {
+        return new PublicEventCache(Duration.ZERO);
+    }
+
+    @Bean
+    PaymentMethodMatrix paymentMethodMatrix() {
+        return new PaymentMethodMatrix(Duration.ZERO);
     }
 
     @Bean
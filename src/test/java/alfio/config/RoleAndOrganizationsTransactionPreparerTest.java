@@ -0,0 +1,99 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+class RoleAndOrganizationsTransactionPreparerTest {
+
+    private static final String USERNAME = "operator";
+
+    private Connection connection;
+    private PreparedStatement orgQuery;
+    private PreparedStatement setRowAccess;
+    private RoleAndOrganizationsTransactionPreparer preparer;
+
+    @BeforeEach
+    void init() throws Exception {
+        var request = new MockHttpServletRequest("GET", "/admin/api/events");
+        request.setServletPath("/admin/api/events");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(USERNAME, "", List.of(new SimpleGrantedAuthority("ROLE_OPERATOR"))));
+
+        connection = mock(Connection.class);
+        orgQuery = mock(PreparedStatement.class);
+        setRowAccess = mock(PreparedStatement.class);
+        var resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, false, true, false);
+        when(resultSet.getInt(1)).thenReturn(2);
+        when(orgQuery.executeQuery()).thenReturn(resultSet);
+        when(connection.prepareStatement(contains("j_user_organization"))).thenReturn(orgQuery);
+        when(connection.prepareStatement(contains("set_config"))).thenReturn(setRowAccess);
+        preparer = new RoleAndOrganizationsTransactionPreparer(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void organizationsAreLoadedOnlyOnce() throws Exception {
+        preparer.prepareTransactionalConnection(connection);
+        preparer.prepareTransactionalConnection(connection);
+        verify(orgQuery, times(1)).executeQuery();
+        verify(setRowAccess, times(2)).execute();
+        verify(setRowAccess, times(2)).setString(1, "true");
+        verify(setRowAccess, times(2)).setString(2, "2");
+        verify(connection, never()).createStatement();
+    }
+
+    @Test
+    void organizationsAreReloadedAfterEviction() throws Exception {
+        preparer.prepareTransactionalConnection(connection);
+        preparer.evictUserOrganizations(USERNAME);
+        preparer.prepareTransactionalConnection(connection);
+        verify(orgQuery, times(2)).executeQuery();
+        verify(orgQuery, times(2)).setString(1, USERNAME);
+    }
+
+    @Test
+    void nothingToDoForAdmins() throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("admin", "", List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+        preparer.prepareTransactionalConnection(connection);
+        verify(connection, never()).prepareStatement(anyString());
+    }
+}
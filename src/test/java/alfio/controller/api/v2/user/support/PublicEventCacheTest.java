@@ -0,0 +1,82 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.v2.user.support;
+
+import alfio.controller.api.v2.model.EventWithAdditionalInfo;
+import alfio.controller.form.SearchOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PublicEventCacheTest {
+
+    private PublicEventCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void init() {
+        cache = new PublicEventCache(Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void snapshotIsBuiltOnlyOnce() {
+        var first = cache.getEvent("event", this::load);
+        var second = cache.getEvent("event", this::load);
+        assertTrue(first.isPresent());
+        assertSame(first.get(), second.orElseThrow());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void notFoundIsNotCached() {
+        assertTrue(cache.getEvent("not-found", name -> { loads.incrementAndGet(); return Optional.empty(); }).isEmpty());
+        assertTrue(cache.getEvent("not-found", this::load).isPresent());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void adminModificationsEvictSnapshots() {
+        var interceptor = new PublicEventCacheEvictionInterceptor(cache);
+        var listing = cache.getListing(SearchOptions.empty(), options -> List.of());
+        cache.getEvent("event", this::load);
+
+        interceptor.afterCompletion(new MockHttpServletRequest("GET", "/admin/api/events"), new MockHttpServletResponse(), null, null);
+        cache.getEvent("event", this::load);
+        assertEquals(1, loads.get());
+        assertEquals(listing.eTag(), cache.getListing(SearchOptions.empty(), options -> List.of()).eTag());
+
+        interceptor.afterCompletion(new MockHttpServletRequest("POST", "/admin/api/events/update"), new MockHttpServletResponse(), null, null);
+        cache.getEvent("event", this::load);
+        assertEquals(2, loads.get());
+        assertNotEquals(listing.eTag(), cache.getListing(SearchOptions.empty(), options -> List.of()).eTag());
+    }
+
+    private Optional<PublicEventCache.EventSnapshot> load(String eventName) {
+        loads.incrementAndGet();
+        return Optional.of(new PublicEventCache.EventSnapshot(1, mock(EventWithAdditionalInfo.class), false, "version-" + loads.get()));
+    }
+}
@@ -16,19 +16,30 @@
  */
 package alfio.controller.support;
 
+import alfio.manager.ExtensionManager;
 import alfio.manager.FileUploadManager;
 import alfio.model.Event;
 import alfio.model.FileBlobMetadata;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -64,4 +75,31 @@ public class TemplateProcessorTest {
             Assertions.assertTrue(imageData.getImageHeight() <= 150);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void renderAllToPdfPreservesOrder() throws IOException {
+        ExtensionManager extensionManager = mock(ExtensionManager.class);
+        Event event = mock(Event.class);
+        byte[] fromExtension = "handled by extension".getBytes(StandardCharsets.UTF_8);
+        List<String> pages = IntStream.range(0, 20)
+            .mapToObj(i -> "<html><body><p style=\"font-family:'DejaVu Sans Mono'\">page-" + i + "</p></body></html>")
+            .collect(Collectors.toList());
+        when(extensionManager.handlePdfTransformation(eq(pages.get(3)), eq(event), any())).thenAnswer(invocation -> {
+            invocation.getArgument(2, OutputStream.class).write(fromExtension);
+            return true;
+        });
+
+        List<byte[]> result = TemplateProcessor.renderAllToPdf(pages, extensionManager, event);
+
+        Assertions.assertEquals(pages.size(), result.size());
+        Assertions.assertArrayEquals(fromExtension, result.get(3));
+        for (int i = 0; i < result.size(); i++) {
+            if(i == 3) {
+                continue;
+            }
+            try (PDDocument document = PDDocument.load(result.get(i))) {
+                Assertions.assertEquals("page-" + i, new PDFTextStripper().getText(document).trim());
+            }
+        }
+    }
+}
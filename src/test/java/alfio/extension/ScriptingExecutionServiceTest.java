@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -73,6 +74,24 @@ public class ScriptingExecutionServiceTest {
         verify(extensionLogger).logInfo("test");
     }
 
+    @Test
+    void compiledScriptIsReused() throws IOException {
+        String concatenation = getScriptContent("base.js");
+        var fetchCount = new AtomicInteger();
+        Supplier<String> scriptFetcher = () -> {
+            fetchCount.incrementAndGet();
+            return concatenation;
+        };
+        scriptingExecutionService.executeScript("-", "cached", "hash", scriptFetcher, Map.of("extensionEvent", "test"), Void.class, extensionLogger);
+        scriptingExecutionService.executeScript("-", "cached", "hash", scriptFetcher, Map.of("extensionEvent", "test"), Void.class, extensionLogger);
+        assertEquals(1, fetchCount.get());
+        verify(extensionLogger, times(2)).logInfo("test");
+
+        scriptingExecutionService.invalidateCompiledScript("-", "cached");
+        scriptingExecutionService.executeScript("-", "cached", "hash", scriptFetcher, Map.of("extensionEvent", "test"), Void.class, extensionLogger);
+        assertEquals(2, fetchCount.get());
+    }
+
     @Test
     void testExecutionTimeout() {
         assertTimeoutPreemptively(Duration.ofSeconds(16L), () -> {
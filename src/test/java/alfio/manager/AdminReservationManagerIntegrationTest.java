@@ -84,6 +84,8 @@ class AdminReservationManagerIntegrationTest extends BaseIntegrationTest {
     private EventRepository eventRepository;
     @Autowired
     private ConfigurationRepository configurationRepository;
+    @Autowired
+    private AdminReservationRequestManager adminReservationRequestManager;
 
     @BeforeEach
     void init() {
@@ -287,6 +289,79 @@ class AdminReservationManagerIntegrationTest extends BaseIntegrationTest {
         assertFalse(ticketRepository.findAllReservationsConfirmedButNotAssignedForUpdate(eventId).contains(triple.getLeft().getId()));
     }
 
+    @Test
+    void testBulkImportInExistingCategory() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 1,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Pair<Event, String> eventWithUsername = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        Event event = eventWithUsername.getKey();
+        String username = eventWithUsername.getValue();
+        TicketCategory existingCategory = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        int attendees = AVAILABLE_SEATS + 10;
+        DateTimeModification expiration = DateTimeModification.fromZonedDateTime(ZonedDateTime.now(ClockProvider.clock()).plusDays(1));
+        CustomerData customerData = new CustomerData("Integration", "Test", "integration-test@test.ch", "Billing Address", "reference", "en", "1234", "CH", null);
+        Category category = new Category(existingCategory.getId(), existingCategory.getName(), existingCategory.getPrice(), null);
+        List<TicketsInfo> ticketsInfoList = Collections.singletonList(new TicketsInfo(category, generateAttendees(attendees), true, false));
+        AdminReservationModification modification = new AdminReservationModification(expiration, customerData, ticketsInfoList, "en", false, false, null, null, null, null);
+
+        Result<String> requestId = adminReservationRequestManager.scheduleReservations(event.getShortName(), modification, false, username);
+        assertTrue(requestId.isSuccess());
+
+        Pair<Integer, Integer> result = adminReservationRequestManager.processPendingReservations();
+        assertEquals(attendees, result.getLeft().intValue());
+        assertEquals(0, result.getRight().intValue());
+
+        Result<AdminReservationRequestStats> stats = adminReservationRequestManager.getRequestStatus(requestId.getData(), event.getShortName(), username);
+        assertTrue(stats.isSuccess());
+        assertEquals(attendees, stats.getData().getCountSuccess());
+        assertEquals(0, stats.getData().getCountPending());
+        assertEquals(0, stats.getData().getCountError());
+        // the category and the event have been extended in a single step
+        assertEquals(attendees, ticketCategoryRepository.getByIdAndActive(existingCategory.getId(), event.getId()).getMaxTickets());
+        assertEquals(attendees, eventRepository.countExistingTickets(event.getId()).intValue());
+    }
+
+    @Test
+    void testBulkImportInExistingCategoryWithFailedRequest() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 1,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Pair<Event, String> eventWithUsername = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        Event event = eventWithUsername.getKey();
+        String username = eventWithUsername.getValue();
+        TicketCategory existingCategory = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        DateTimeModification expiration = DateTimeModification.fromZonedDateTime(ZonedDateTime.now(ClockProvider.clock()).plusDays(1));
+        CustomerData customerData = new CustomerData("Integration", "Test", "integration-test@test.ch", "Billing Address", "reference", "en", "1234", "CH", null);
+        Category category = new Category(existingCategory.getId(), existingCategory.getName(), existingCategory.getPrice(), null);
+
+        int attendees = AVAILABLE_SEATS + 2;
+        List<Attendee> attendeeList = new ArrayList<>(generateAttendees(attendees - 1));
+        attendeeList.add(new Attendee(null, "Referenced", "Attendee", "referenced@test.ch", "en", false, "duplicate-reference", null, Collections.emptyMap()));
+        AdminReservationModification modification = new AdminReservationModification(expiration, customerData,
+            Collections.singletonList(new TicketsInfo(category, attendeeList, true, false)), "en", false, false, null, null, null, null);
+        assertTrue(adminReservationRequestManager.scheduleReservations(event.getShortName(), modification, false, username).isSuccess());
+
+        // this request will be processed in the same chunk, and will fail because of the duplicate reference
+        Attendee duplicate = new Attendee(null, "Duplicate", "Attendee", "duplicate@test.ch", "en", false, "duplicate-reference", null, Collections.emptyMap());
+        AdminReservationModification failing = new AdminReservationModification(expiration, customerData,
+            Collections.singletonList(new TicketsInfo(category, Collections.singletonList(duplicate), true, false)), "en", false, false, null, null, null, null);
+        assertTrue(adminReservationRequestManager.scheduleReservations(event.getShortName(), failing, false, username).isSuccess());
+
+        Pair<Integer, Integer> result = adminReservationRequestManager.processPendingReservations();
+        assertEquals(attendees, result.getLeft().intValue());
+        assertEquals(1, result.getRight().intValue());
+
+        // the capacity pre-allocated for the failed request has been given back
+        assertEquals(attendees, ticketCategoryRepository.getByIdAndActive(existingCategory.getId(), event.getId()).getMaxTickets());
+        assertEquals(attendees, eventRepository.countExistingTickets(event.getId()).intValue());
+        assertEquals(0, ticketRepository.countFreeTickets(event.getId(), existingCategory.getId()).intValue());
+    }
+
     private Triple<Event, String, TicketReservation> performExistingCategoryTest(List<TicketCategoryModification> categories, boolean bounded,
                                                                                  List<Integer> attendeesNr, boolean addSeatsIfNotAvailable, boolean expectSuccess,
                                                                                  int reservedTickets, int expectedEventSeats) {
@@ -0,0 +1,87 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.AdminReservationRequest;
+import alfio.model.modification.AdminReservationModification;
+import alfio.repository.AdminReservationRequestRepository;
+import alfio.repository.EventRepository;
+import alfio.repository.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class AdminReservationRequestManagerTest {
+
+    private AdminReservationRequestRepository adminReservationRequestRepository;
+    private EventRepository eventRepository;
+    private AdminReservationRequestManager manager;
+
+    @BeforeEach
+    void init() {
+        adminReservationRequestRepository = mock(AdminReservationRequestRepository.class);
+        eventRepository = mock(EventRepository.class);
+        manager = new AdminReservationRequestManager(mock(AdminReservationManager.class), mock(EventManager.class), mock(UserRepository.class),
+            adminReservationRequestRepository, eventRepository, mock(PlatformTransactionManager.class), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void requestsAreMarkedAsFailedIfTheChunkCannotBeProcessed() {
+        var requests = List.of(request(1L), request(2L));
+        when(adminReservationRequestRepository.findPending(anyInt())).thenReturn(requests);
+        when(adminReservationRequestRepository.lockPendingByIds(anyList())).thenReturn(List.of(1L, 2L));
+        when(eventRepository.findOptionalById(anyInt())).thenThrow(new IllegalStateException("failure"));
+
+        var result = manager.processPendingReservations();
+
+        assertEquals(0, result.getLeft());
+        assertEquals(2, result.getRight());
+        // first attempt with pre-allocation, then without
+        verify(eventRepository, times(2)).findOptionalById(1);
+        ArgumentCaptor<List<MapSqlParameterSource>> captor = ArgumentCaptor.forClass(List.class);
+        verify(adminReservationRequestRepository).updateStatus(captor.capture());
+        var params = captor.getValue();
+        assertEquals(2, params.size());
+        params.forEach(p -> assertEquals(AdminReservationRequest.Status.ERROR.name(), p.getValue("status")));
+    }
+
+    private static AdminReservationRequest request(long id) {
+        var request = mock(AdminReservationRequest.class);
+        var body = mock(AdminReservationModification.class);
+        when(body.getTicketsInfo()).thenReturn(List.of());
+        when(request.getId()).thenReturn(id);
+        when(request.getEventId()).thenReturn(1L);
+        when(request.getBody()).thenReturn(body);
+        return request;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.payment.PaymentSpecification;
+import alfio.manager.support.CheckInStatus;
+import alfio.manager.support.PaymentResult;
+import alfio.manager.support.SponsorScanRequest;
+import alfio.manager.support.TicketAndCheckInResult;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.model.transaction.PaymentMethod;
+import alfio.model.transaction.PaymentProxy;
+import alfio.repository.EventRepository;
+import alfio.repository.SponsorScanRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.repository.user.UserRepository;
+import alfio.test.util.IntegrationTestUtil;
+import alfio.util.ClockProvider;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Transactional
+class AttendeeManagerIntegrationTest {
+
+    @Autowired
+    private AttendeeManager attendeeManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private SponsorScanRepository sponsorScanRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void testRegisterSponsorScans() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false,
+                "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty())
+        );
+        Pair<Event, String> eventAndUser = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        var event = eventAndUser.getLeft();
+        var username = eventAndUser.getRight();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setQuantity(3);
+        tr.setTicketCategoryId(category.getId());
+        var tickets = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+        String reservationId = ticketReservationManager.createTicketReservation(event, List.of(tickets), List.of(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+        TotalPrice reservationCost = ticketReservationManager.totalReservationCostWithVAT(reservationId).getLeft();
+        PaymentSpecification specification = new PaymentSpecification(reservationId, null, reservationCost.getPriceWithVAT(),
+            event, "email@example.com", new CustomerName("full name", "full", "name", event.mustUseFirstAndLastName()),
+            "billing address", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        PaymentResult result = ticketReservationManager.performPayment(specification, reservationCost, PaymentProxy.OFFLINE, PaymentMethod.BANK_TRANSFER, null);
+        assertTrue(result.isSuccessful());
+        ticketReservationManager.confirmOfflinePayment(event, reservationId, username);
+
+        var confirmedTickets = ticketReservationManager.findTicketsInReservation(reservationId);
+        assertEquals(3, confirmedTickets.size());
+        var first = confirmedTickets.get(0);
+        var second = confirmedTickets.get(1);
+        var notCheckedIn = confirmedTickets.get(2);
+        ticketRepository.updateTicketStatusWithUUID(first.getUuid(), Ticket.TicketStatus.CHECKED_IN.name());
+        ticketRepository.updateTicketStatusWithUUID(second.getUuid(), Ticket.TicketStatus.CHECKED_IN.name());
+
+        var firstUpload = List.of(
+            new SponsorScanRequest(event.getShortName(), first.getUuid(), "first", "COLD"),
+            new SponsorScanRequest(event.getShortName(), "not-existing", null, null),
+            new SponsorScanRequest("not-existing-event", first.getUuid(), null, null),
+            new SponsorScanRequest(event.getShortName(), notCheckedIn.getUuid(), null, null),
+            new SponsorScanRequest(event.getShortName(), second.getUuid(), "second", "WARM"),
+            // duplicate in the same upload: the last one wins
+            new SponsorScanRequest(event.getShortName(), second.getUuid(), "second, updated", "HOT")
+        );
+        var results = attendeeManager.registerSponsorScans(firstUpload, username);
+        assertEquals(List.of(CheckInStatus.SUCCESS, CheckInStatus.TICKET_NOT_FOUND, CheckInStatus.EVENT_NOT_FOUND, CheckInStatus.INVALID_TICKET_STATE, CheckInStatus.SUCCESS, CheckInStatus.SUCCESS),
+            results.stream().map(r -> r.getResult().getStatus()).collect(Collectors.toList()));
+        assertEquals(first.getUuid(), results.get(0).getTicket().getUuid());
+        assertEquals(notCheckedIn.getUuid(), results.get(3).getTicket().getUuid());
+        assertEquals(second.getUuid(), results.get(4).getTicket().getUuid());
+
+        int userId = userRepository.getByUsername(username).getId();
+        var scans = loadScans(event, userId);
+        assertEquals(2, scans.size());
+        assertEquals("first", scans.get(first.getId()).getNotes());
+        assertEquals(SponsorScan.LeadStatus.COLD, scans.get(first.getId()).getLeadStatus());
+        assertEquals("second, updated", scans.get(second.getId()).getNotes());
+        assertEquals(SponsorScan.LeadStatus.HOT, scans.get(second.getId()).getLeadStatus());
+
+        // uploading the same scans again must update notes and lead status without creating new rows
+        var secondUpload = List.of(
+            new SponsorScanRequest(event.getShortName(), first.getUuid(), "first, re-uploaded", "HOT"),
+            new SponsorScanRequest(event.getShortName(), second.getUuid(), "second, re-uploaded", "COLD")
+        );
+        assertTrue(attendeeManager.registerSponsorScans(secondUpload, username).stream()
+            .map(TicketAndCheckInResult::getResult)
+            .allMatch(r -> r.getStatus() == CheckInStatus.SUCCESS));
+        scans = loadScans(event, userId);
+        assertEquals(2, scans.size());
+        assertEquals("first, re-uploaded", scans.get(first.getId()).getNotes());
+        assertEquals(SponsorScan.LeadStatus.HOT, scans.get(first.getId()).getLeadStatus());
+        assertEquals("second, re-uploaded", scans.get(second.getId()).getNotes());
+        assertEquals(SponsorScan.LeadStatus.COLD, scans.get(second.getId()).getLeadStatus());
+    }
+
+    private Map<Integer, SponsorScan> loadScans(Event event, int userId) {
+        var scans = sponsorScanRepository.loadSponsorData(event.getId(), userId, SponsorScanRepository.DEFAULT_TIMESTAMP);
+        return scans.stream()
+            .map(DetailedScanData::getSponsorScan)
+            .collect(Collectors.toMap(SponsorScan::getTicketId, Function.identity()));
+    }
+}
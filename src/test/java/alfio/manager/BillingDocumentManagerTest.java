@@ -38,6 +38,7 @@ import org.junit.jupiter.params.provider.CsvSource;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static alfio.manager.BillingDocumentManager.CREDIT_NOTE_NUMBER;
 import static alfio.model.Audit.EntityType.RESERVATION;
@@ -226,5 +227,20 @@ class BillingDocumentManagerTest {
         verify(auditingRepository, never()).insert(eq(RESERVATION_ID), any(), eq(purchaseContext), eq(EXTERNAL_INVOICE_NUMBER), any(), eq(RESERVATION), eq(RESERVATION_ID), any());
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "true,false,true",
+        "true,true,false",
+        "false,false,false"
+    })
+    void deferInvoiceNumberAllocation(String defer, String useInvoiceNumberAsId, boolean expected) {
+        when(configurationManager.getFor(eq(Set.of(ConfigurationKeys.DEFER_INVOICE_NUMBER_ALLOCATION, ConfigurationKeys.USE_INVOICE_NUMBER_AS_ID)), eq(configurationLevel)))
+            .thenReturn(Map.of(
+                ConfigurationKeys.DEFER_INVOICE_NUMBER_ALLOCATION, MaybeConfigurationBuilder.existing(ConfigurationKeys.DEFER_INVOICE_NUMBER_ALLOCATION, defer),
+                ConfigurationKeys.USE_INVOICE_NUMBER_AS_ID, MaybeConfigurationBuilder.existing(ConfigurationKeys.USE_INVOICE_NUMBER_AS_ID, useInvoiceNumberAsId)
+            ));
+        assertEquals(expected, billingDocumentManager.isInvoiceNumberAllocationDeferred(purchaseContext));
+    }
+
 
 }
\ No newline at end of file
@@ -20,20 +20,26 @@ import alfio.TestConfiguration;
 import alfio.config.DataSourceConfiguration;
 import alfio.config.Initializer;
 import alfio.manager.payment.PaymentSpecification;
+import alfio.manager.support.CheckInStatus;
 import alfio.manager.support.PaymentResult;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
+import alfio.model.audit.ScanAudit;
 import alfio.model.metadata.AlfioMetadata;
 import alfio.model.modification.*;
 import alfio.model.transaction.PaymentMethod;
 import alfio.model.transaction.PaymentProxy;
+import alfio.repository.AuditingRepository;
+import alfio.repository.CheckInFeedRepository;
 import alfio.repository.EventRepository;
 import alfio.repository.TicketCategoryRepository;
 import alfio.repository.TicketRepository;
+import alfio.repository.audit.ScanAuditRepository;
 import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.test.util.IntegrationTestUtil;
 import alfio.util.ClockProvider;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
@@ -48,12 +54,17 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static alfio.test.util.IntegrationTestUtil.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
@@ -80,6 +91,12 @@ class CheckInManagerIntegrationTest {
     private TicketReservationManager ticketReservationManager;
     @Autowired
     private TicketRepository ticketRepository;
+    @Autowired
+    private CheckInFeedRepository checkInFeedRepository;
+    @Autowired
+    private ScanAuditRepository scanAuditRepository;
+    @Autowired
+    private AuditingRepository auditingRepository;
 
     @Test
     void testReturnOnlyOnce() {
@@ -141,4 +158,130 @@ class CheckInManagerIntegrationTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void testBulkCheckIn() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false,
+                "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty())
+        );
+        Pair<Event, String> eventAndUser = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        var event = eventAndUser.getLeft();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setQuantity(2);
+        tr.setTicketCategoryId(category.getId());
+        var tickets = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+        String reservationId = ticketReservationManager.createTicketReservation(event, List.of(tickets), List.of(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+        TotalPrice reservationCost = ticketReservationManager.totalReservationCostWithVAT(reservationId).getLeft();
+        PaymentSpecification specification = new PaymentSpecification(reservationId, null, reservationCost.getPriceWithVAT(),
+            event, "email@example.com", new CustomerName("full name", "full", "name", event.mustUseFirstAndLastName()),
+            "billing address", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        PaymentResult result = ticketReservationManager.performPayment(specification, reservationCost, PaymentProxy.OFFLINE, PaymentMethod.BANK_TRANSFER, null);
+        assertTrue(result.isSuccessful());
+        ticketReservationManager.confirmOfflinePayment(event, reservationId, eventAndUser.getRight());
+
+        var confirmedTickets = ticketReservationManager.findTicketsInReservation(reservationId);
+        assertEquals(2, confirmedTickets.size());
+        var first = confirmedTickets.get(0);
+        var second = confirmedTickets.get(1);
+        var codesByIdentifier = new LinkedHashMap<String, String>();
+        codesByIdentifier.put(first.getUuid(), first.ticketCode(event.getPrivateKey()));
+        codesByIdentifier.put(second.getUuid(), "wrong-code");
+        codesByIdentifier.put("not-existing", "code");
+
+        var results = checkInManager.bulkCheckIn(event.getShortName(), codesByIdentifier, eventAndUser.getRight(), eventAndUser.getRight(), false);
+        assertEquals(3, results.size());
+        assertEquals(CheckInStatus.SUCCESS, results.get(first.getUuid()).getResult().getStatus());
+        assertEquals(CheckInStatus.INVALID_TICKET_CODE, results.get(second.getUuid()).getResult().getStatus());
+        assertEquals(CheckInStatus.TICKET_NOT_FOUND, results.get("not-existing").getResult().getStatus());
+        assertEquals(Ticket.TicketStatus.CHECKED_IN, ticketRepository.findByUUID(first.getUuid()).getStatus());
+        assertEquals(Ticket.TicketStatus.ACQUIRED, ticketRepository.findByUUID(second.getUuid()).getStatus());
+
+        // a second scan of the same ticket must be rejected
+        var secondScan = checkInManager.bulkCheckIn(event.getShortName(), Map.of(first.getUuid(), first.ticketCode(event.getPrivateKey())), eventAndUser.getRight(), eventAndUser.getRight(), false);
+        assertEquals(CheckInStatus.ALREADY_CHECK_IN, secondScan.get(first.getUuid()).getResult().getStatus());
+
+        // the single check-in must leave the same audit records as the bulk one
+        var singleCheckIn = checkInManager.checkIn(event.getShortName(), second.getUuid(), Optional.of(second.ticketCode(event.getPrivateKey())), eventAndUser.getRight(), eventAndUser.getRight());
+        assertEquals(CheckInStatus.SUCCESS, singleCheckIn.getResult().getStatus());
+        var scanAudits = scanAuditRepository.findAllForEvent(event.getId());
+        var audits = auditingRepository.findAllForReservation(reservationId);
+        for (var ticket : List.of(first, second)) {
+            var ticketScans = scanAudits.stream().filter(sa -> sa.getTicketUuid().equals(ticket.getUuid())).collect(Collectors.toList());
+            assertEquals(1, ticketScans.size());
+            assertEquals(CheckInStatus.SUCCESS, ticketScans.get(0).getCheckInStatus());
+            assertEquals(ScanAudit.Operation.SCAN, ticketScans.get(0).getOperation());
+            assertEquals(eventAndUser.getRight(), ticketScans.get(0).getUsername());
+            assertEquals(1, audits.stream().filter(a -> a.getEventType() == Audit.EventType.CHECK_IN && a.getEntityId().equals(Integer.toString(ticket.getId()))).count());
+        }
+    }
+
+    @Test
+    void testOfflineCheckInChanges() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = List.of(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).minusDays(1), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false,
+                "", false, null, null, null, null, null, 0, null, null, AlfioMetadata.empty())
+        );
+        Pair<Event, String> eventAndUser = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        var event = eventAndUser.getLeft();
+        var category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setQuantity(2);
+        tr.setTicketCategoryId(category.getId());
+        var tickets = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+        String reservationId = ticketReservationManager.createTicketReservation(event, List.of(tickets), List.of(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null);
+        TotalPrice reservationCost = ticketReservationManager.totalReservationCostWithVAT(reservationId).getLeft();
+        PaymentSpecification specification = new PaymentSpecification(reservationId, null, reservationCost.getPriceWithVAT(),
+            event, "email@example.com", new CustomerName("full name", "full", "name", event.mustUseFirstAndLastName()),
+            "billing address", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        PaymentResult result = ticketReservationManager.performPayment(specification, reservationCost, PaymentProxy.OFFLINE, PaymentMethod.BANK_TRANSFER, null);
+        assertTrue(result.isSuccessful());
+        ticketReservationManager.confirmOfflinePayment(event, reservationId, eventAndUser.getRight());
+
+        var confirmedTickets = ticketReservationManager.findTicketsInReservation(reservationId);
+        assertEquals(2, confirmedTickets.size());
+        var first = confirmedTickets.get(0);
+        var second = confirmedTickets.get(1);
+        String firstKey = DigestUtils.sha256Hex(first.hmacTicketInfo(event.getPrivateKey()));
+        String secondKey = DigestUtils.sha256Hex(second.hmacTicketInfo(event.getPrivateKey()));
+
+        var initial = checkInManager.getOfflineCheckInChanges(event, Set.of(), null).orElseThrow();
+        assertTrue(initial.isFull());
+        assertEquals(Set.of(firstKey, secondKey), initial.getEntries().keySet());
+        assertTrue(initial.getTombstones().isEmpty());
+
+        ticketRepository.updateTicketOwnerById(first.getId(), "new-email@example.com", "New Owner", "New", "Owner");
+        String newFirstKey = DigestUtils.sha256Hex(ticketRepository.findByUUID(first.getUuid()).hmacTicketInfo(event.getPrivateKey()));
+
+        // the whole test runs in a single transaction, therefore every ticket is reported as changed
+        var changes = checkInManager.getOfflineCheckInChanges(event, Set.of(), initial.getCursor()).orElseThrow();
+        assertFalse(changes.isFull());
+        assertTrue(changes.getEntries().containsKey(newFirstKey));
+        assertFalse(changes.getEntries().containsKey(firstKey));
+        assertEquals(List.of(firstKey), changes.getTombstones());
+        var publishedKeys = checkInFeedRepository.findAllPublishedKeys(event.getId()).stream()
+            .map(CheckInPublishedKey::getEntryKey)
+            .collect(Collectors.toSet());
+        assertEquals(Set.of(firstKey, secondKey, newFirstKey), publishedKeys);
+
+        // a full sync must not publish the same keys twice
+        var fullSync = checkInManager.getOfflineCheckInChanges(event, Set.of(), null).orElseThrow();
+        assertEquals(Set.of(newFirstKey, secondKey), fullSync.getEntries().keySet());
+        assertEquals(3, checkInFeedRepository.findAllPublishedKeys(event.getId()).size());
+
+        // the feed of ended events is removed
+        checkInManager.cleanupOfflineCheckInChanges(event.getEnd().minusDays(1));
+        assertEquals(3, checkInFeedRepository.findAllPublishedKeys(event.getId()).size());
+        checkInManager.cleanupOfflineCheckInChanges(event.getEnd().plusDays(1));
+        assertTrue(checkInFeedRepository.findAllPublishedKeys(event.getId()).isEmpty());
+    }
+
+}
@@ -25,15 +25,17 @@ import alfio.model.user.Organization;
 import alfio.repository.EventRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.test.util.TestUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.util.Date;
 import java.util.Optional;
 
 import static alfio.model.system.ConfigurationKeys.CHECK_IN_STATS;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class CheckInManagerTest {
@@ -64,7 +66,7 @@ class CheckInManagerTest {
         when(organization.getId()).thenReturn(ORG_ID);
         when(eventRepository.retrieveCheckInStatisticsForEvent(EVENT_ID)).thenReturn(new CheckInStatistics(0, 0, new Date()));
         checkInManager = new CheckInManager(null, eventRepository, null, null, null, null,
-            null, configurationManager, organizationRepository, null, null, null, null, null, TestUtil.clockProvider());
+            null, configurationManager, organizationRepository, null, null, null, null, null, null, TestUtil.clockProvider());
     }
 
     @Test
@@ -85,5 +87,33 @@ class CheckInManagerTest {
         verify(eventRepository, never()).retrieveCheckInStatisticsForEvent(EVENT_ID);
     }
 
+    @Test
+    void derivedKeyIsCachedOnEncryption() {
+        String ticketCode = "ticket-uuid/ticket-code";
+        assertNull(checkInManager.derivedKeysCache.getIfPresent(DigestUtils.sha256Hex(ticketCode)));
+        // cache miss: the key is derived and stored under the digest of the code
+        String first = checkInManager.encryptWithCachedKey(ticketCode, "payload");
+        SecretKeySpec cached = checkInManager.derivedKeysCache.getIfPresent(DigestUtils.sha256Hex(ticketCode));
+        assertNotNull(cached);
+        assertNull(checkInManager.derivedKeysCache.getIfPresent(ticketCode));
+        // cache hit: the same key is reused
+        String second = checkInManager.encryptWithCachedKey(ticketCode, "payload");
+        assertSame(cached, checkInManager.derivedKeysCache.getIfPresent(DigestUtils.sha256Hex(ticketCode)));
+        assertEquals(1L, checkInManager.derivedKeysCache.estimatedSize());
+        assertEquals("payload", CheckInManagerInvoker.decrypt(ticketCode, first));
+        assertEquals("payload", CheckInManagerInvoker.decrypt(ticketCode, second));
+    }
+
+    @Test
+    void derivedKeyIsNotCachedOnDecryption() {
+        String ticketCode = "ticket-uuid/ticket-code";
+        String encrypted = CheckInManager.encrypt(ticketCode, "payload");
+        assertEquals("payload", CheckInManagerInvoker.decrypt(ticketCode, encrypted));
+        assertEquals(0L, checkInManager.derivedKeysCache.estimatedSize());
+    }
 
-}
\ No newline at end of file
+    @AfterEach
+    void tearDown() {
+        checkInManager.destroy();
+    }
+}
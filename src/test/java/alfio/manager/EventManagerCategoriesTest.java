@@ -26,11 +26,8 @@ import alfio.repository.TicketCategoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -69,10 +66,10 @@ public class EventManagerCategoriesTest {
     void createTicketsForUnboundedCategory() {
         List<TicketCategory> categories = generateCategoryStream().limit(3).collect(Collectors.toList());
         when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
-        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE);
-        assertNotNull(parameterSources);
-        assertEquals(availableSeats, parameterSources.length);
-        assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
+        List<EventManager.TicketsToCreate> ticketsToCreate = eventManager.prepareTicketsBulkInsert(event, availableSeats, Ticket.TicketStatus.FREE);
+        assertNotNull(ticketsToCreate);
+        assertEquals(availableSeats, ticketsToCreate.stream().mapToInt(EventManager.TicketsToCreate::count).sum());
+        assertTrue(ticketsToCreate.stream().allMatch(t -> t.status() == Ticket.TicketStatus.FREE));
     }
 
     @Test
@@ -80,10 +77,10 @@ public class EventManagerCategoriesTest {
     void createTicketsForUnboundedCategories() {
         List<TicketCategory> categories = generateCategoryStream().limit(6).collect(Collectors.toList());
         when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
-        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE);
-        assertNotNull(parameterSources);
-        assertEquals(availableSeats, parameterSources.length);
-        assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
+        List<EventManager.TicketsToCreate> ticketsToCreate = eventManager.prepareTicketsBulkInsert(event, availableSeats, Ticket.TicketStatus.FREE);
+        assertNotNull(ticketsToCreate);
+        assertEquals(availableSeats, ticketsToCreate.stream().mapToInt(EventManager.TicketsToCreate::count).sum());
+        assertTrue(ticketsToCreate.stream().allMatch(t -> t.status() == Ticket.TicketStatus.FREE));
     }
 
     @Test
@@ -91,11 +88,11 @@ public class EventManagerCategoriesTest {
     void createTicketsOnlyForBounded() {
         List<TicketCategory> categories = generateCategoryStream().limit(2).collect(Collectors.toList());
         when(ticketCategoryRepository.findAllTicketCategories(eq(eventId))).thenReturn(categories);
-        MapSqlParameterSource[] parameterSources = eventManager.prepareTicketsBulkInsertParameters(ZonedDateTime.now(clockProvider().getClock()), event, availableSeats, Ticket.TicketStatus.FREE);
-        assertNotNull(parameterSources);
-        assertEquals(availableSeats, parameterSources.length);
-        assertEquals(4L, Arrays.stream(parameterSources).filter(p -> p.getValue("categoryId") != null).count());
-        assertTrue(Arrays.stream(parameterSources).allMatch(ps -> Ticket.TicketStatus.FREE.name().equals(ps.getValue("status"))));
+        List<EventManager.TicketsToCreate> ticketsToCreate = eventManager.prepareTicketsBulkInsert(event, availableSeats, Ticket.TicketStatus.FREE);
+        assertNotNull(ticketsToCreate);
+        assertEquals(availableSeats, ticketsToCreate.stream().mapToInt(EventManager.TicketsToCreate::count).sum());
+        assertEquals(4, ticketsToCreate.stream().filter(t -> t.categoryId() != null).mapToInt(EventManager.TicketsToCreate::count).sum());
+        assertTrue(ticketsToCreate.stream().allMatch(t -> t.status() == Ticket.TicketStatus.FREE));
     }
 
 }
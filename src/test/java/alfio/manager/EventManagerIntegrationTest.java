@@ -21,6 +21,7 @@ import alfio.config.DataSourceConfiguration;
 import alfio.config.Initializer;
 import alfio.manager.user.UserManager;
 import alfio.model.Event;
+import alfio.model.SpecialPrice;
 import alfio.model.Ticket;
 import alfio.model.TicketCategory;
 import alfio.model.metadata.AlfioMetadata;
@@ -87,6 +88,8 @@ class EventManagerIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private SpecialPriceTokenGenerator specialPriceTokenGenerator;
     @Autowired
+    private SpecialPriceRepository specialPriceRepository;
+    @Autowired
     private TicketReservationManager ticketReservationManager;
     @Autowired
     private ClockProvider clockProvider;
@@ -600,6 +603,30 @@ class EventManagerIntegrationTest extends BaseIntegrationTest {
         assertEquals(1, ticketRepository.countReleasedUnboundedTickets(event.getId()).intValue());
     }
 
+    @Test
+    void testBulkCodeGeneration() {
+
+        ensureMinimalConfiguration(configurationRepository);
+
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 4,
+                new DateTimeModification(LocalDate.now(clockProvider.getClock()), LocalTime.now(clockProvider.getClock())),
+                new DateTimeModification(LocalDate.now(clockProvider.getClock()), LocalTime.now(clockProvider.getClock())),
+
+                DESCRIPTION, BigDecimal.TEN, true, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getLeft();
+        TicketCategory category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        // more than one batch
+        specialPriceRepository.bulkInsert(category, 1200);
+
+        specialPriceTokenGenerator.generatePendingCodesForCategory(category.getId());
+
+        List<SpecialPrice> specialPrices = specialPriceRepository.findAllByCategoryId(category.getId());
+        assertEquals(1204, specialPrices.size());
+        assertTrue(specialPrices.stream().allMatch(sp -> sp.getStatus() == SpecialPrice.Status.FREE && sp.getCode().length() == 6));
+        assertEquals(1204, specialPrices.stream().map(SpecialPrice::getCode).distinct().count());
+    }
+
     //https://github.com/alfio-event/alf.io/issues/335
     @Test
     void testDecreaseRestrictedCategoryWithAlreadySentToken() {
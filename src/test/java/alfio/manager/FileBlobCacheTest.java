@@ -0,0 +1,134 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileBlobCacheTest {
+
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final BiPredicate<String, OutputStream> loader = (id, os) -> {
+        loads.incrementAndGet();
+        var content = blobs.get(id);
+        if(content == null) {
+            return false;
+        }
+        try {
+            os.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    };
+
+    @Test
+    void smallBlobsAreLoadedOnlyOnce() throws IOException {
+        var digest = addBlob(100);
+        var cache = new FileBlobCache(directory, MAX_SIZE, MAX_SIZE);
+        assertArrayEquals(blobs.get(digest), output(cache, digest));
+        assertArrayEquals(blobs.get(digest), output(cache, digest));
+        assertEquals(1, loads.get());
+        assertTrue(Files.exists(directory.resolve(digest)));
+    }
+
+    @Test
+    void bigBlobsAreServedFromDisk() throws IOException {
+        var digest = addBlob(FileBlobCache.MAX_IN_MEMORY_BLOB_SIZE + 1);
+        var cache = new FileBlobCache(directory, MAX_SIZE, MAX_SIZE);
+        assertArrayEquals(blobs.get(digest), output(cache, digest));
+        assertArrayEquals(blobs.get(digest), output(cache, digest));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void filesAreReusedAfterRestart() throws IOException {
+        var digest = addBlob(200);
+        assertArrayEquals(blobs.get(digest), output(new FileBlobCache(directory, MAX_SIZE, MAX_SIZE), digest));
+        Files.writeString(directory.resolve(digest + ".interrupted.tmp"), "partial");
+        var restarted = new FileBlobCache(directory, MAX_SIZE, MAX_SIZE);
+        assertArrayEquals(blobs.get(digest), output(restarted, digest));
+        assertEquals(1, loads.get());
+        assertFalse(Files.exists(directory.resolve(digest + ".interrupted.tmp")));
+    }
+
+    @Test
+    void missingFilesAreReloaded() throws IOException {
+        var digest = addBlob(FileBlobCache.MAX_IN_MEMORY_BLOB_SIZE + 1);
+        var cache = new FileBlobCache(directory, MAX_SIZE, MAX_SIZE);
+        output(cache, digest);
+        Files.delete(directory.resolve(digest));
+        assertArrayEquals(blobs.get(digest), output(cache, digest));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void notFoundIsNotCached() throws IOException {
+        var cache = new FileBlobCache(directory, MAX_SIZE, MAX_SIZE);
+        var digest = DigestUtils.sha256Hex("not-existing");
+        assertEquals(0, output(cache, digest).length);
+        assertFalse(Files.exists(directory.resolve(digest)));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void onlyDigestsAreStoredOnDisk() throws IOException {
+        var cache = new FileBlobCache(directory, MAX_SIZE, MAX_SIZE);
+        blobs.put("../file", new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, output(cache, "../file"));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private String addBlob(int size) {
+        var content = new byte[size];
+        Arrays.fill(content, (byte) (size % 127));
+        var digest = DigestUtils.sha256Hex(content);
+        blobs.put(digest, content);
+        return digest;
+    }
+
+    private byte[] output(FileBlobCache cache, String digest) throws IOException {
+        var baos = new ByteArrayOutputStream();
+        cache.output(digest, loader, baos);
+        return baos.toByteArray();
+    }
+}
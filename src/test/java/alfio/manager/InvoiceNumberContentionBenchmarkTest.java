@@ -0,0 +1,190 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.payment.PaymentSpecification;
+import alfio.manager.support.PaymentResult;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.Ticket.TicketStatus;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.transaction.PaymentMethod;
+import alfio.model.transaction.PaymentProxy;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.TicketReservationRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static alfio.manager.TicketReservationManagerIntegrationTest.DESCRIPTION;
+import static alfio.test.util.IntegrationTestUtil.AVAILABLE_SEATS;
+import static alfio.test.util.IntegrationTestUtil.initEvent;
+import static alfio.test.util.TestUtil.clockProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the throughput of reservation confirmations when all of them need an invoice number
+ * from the same organization sequence.
+ * Disabled by default, run it with -Dalfio.benchmark=true
+ */
+@SpringBootTest()
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@EnabledIfSystemProperty(named = "alfio.benchmark", matches = "true")
+class InvoiceNumberContentionBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvoiceNumberContentionBenchmarkTest.class);
+    private static final int CONFIRMATIONS = 200;
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private PlatformTransactionManager platformTransactionManager;
+
+    private Event event;
+    private String username;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void confirmReservationsConcurrently(boolean deferAllocation) throws Exception {
+        var transactionTemplate = new TransactionTemplate(platformTransactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        List<String> reservationIds = transactionTemplate.execute(tx -> initEventWithReservations(deferAllocation));
+
+        var pool = Executors.newFixedThreadPool(CONFIRMATIONS);
+        var confirmations = new ArrayList<Callable<Boolean>>(CONFIRMATIONS);
+        for (String reservationId : reservationIds) {
+            confirmations.add(() -> {
+                var totalPrice = ticketReservationManager.totalReservationCostWithVAT(reservationId).getLeft();
+                var specification = new PaymentSpecification(reservationId, null, totalPrice.getPriceWithVAT(),
+                    event, "email@example.com", new CustomerName("full name", "full", "name", event.mustUseFirstAndLastName()),
+                    "billing address", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+                PaymentResult result = ticketReservationManager.performPayment(specification, totalPrice, PaymentProxy.ON_SITE, PaymentMethod.ON_SITE, null);
+                return result.isSuccessful();
+            });
+        }
+
+        long start = System.nanoTime();
+        int confirmed = 0;
+        try {
+            for (Future<Boolean> future : pool.invokeAll(confirmations)) {
+                confirmed += Boolean.TRUE.equals(future.get()) ? 1 : 0;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        LOGGER.info("deferred allocation: {}, confirmations: {}, elapsed: {}s, throughput: {} confirmations/s",
+            deferAllocation, confirmed, String.format("%.2f", elapsedSeconds), String.format("%.1f", confirmed / elapsedSeconds));
+
+        assertEquals(CONFIRMATIONS, confirmed);
+        // numbering must be gap-free regardless of the allocation mode
+        var invoiceNumbers = new TreeSet<Integer>();
+        reservationIds.forEach(id -> invoiceNumbers.add(Integer.parseInt(ticketReservationRepository.findReservationById(id).getInvoiceNumber())));
+        assertEquals(CONFIRMATIONS, invoiceNumbers.size());
+        assertEquals(CONFIRMATIONS - 1, invoiceNumbers.last() - invoiceNumbers.first());
+        assertTrue(invoiceNumbers.first() > 0);
+    }
+
+    private List<String> initEventWithReservations(boolean deferAllocation) {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(clockProvider().getClock()), LocalTime.now(clockProvider().getClock())),
+                new DateTimeModification(LocalDate.now(clockProvider().getClock()).plusDays(1), LocalTime.now(clockProvider().getClock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null,
+                null, null, null, null, null, TicketCategory.TicketCheckInStrategy.ONCE_PER_EVENT, null, AlfioMetadata.empty()));
+        Pair<Event, String> eventAndUser = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        event = eventAndUser.getLeft();
+        username = eventAndUser.getRight();
+        int organizationId = event.getOrganizationId();
+        configurationRepository.insertOrganizationLevel(organizationId, ConfigurationKeys.ON_SITE_ENABLED.getValue(), "true", "");
+        configurationRepository.insertOrganizationLevel(organizationId, ConfigurationKeys.DEFER_INVOICE_NUMBER_ALLOCATION.getValue(), String.valueOf(deferAllocation), "");
+        int categoryId = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0).getId();
+        ticketRepository.bulkTicketInitialization(event.getId(), categoryId, 1000, new Date(), TicketStatus.FREE, CONFIRMATIONS - AVAILABLE_SEATS);
+
+        var reservationIds = new ArrayList<String>(CONFIRMATIONS);
+        for (int i = 0; i < CONFIRMATIONS; i++) {
+            var tr = new TicketReservationModification();
+            tr.setQuantity(1);
+            tr.setTicketCategoryId(categoryId);
+            var mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+            reservationIds.add(ticketReservationManager.createTicketReservation(event, List.of(mod), Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false, null));
+        }
+        return reservationIds;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(event != null) {
+            new TransactionTemplate(platformTransactionManager).execute(tx -> {
+                eventManager.deleteEvent(event.getId(), username);
+                return null;
+            });
+        }
+    }
+}
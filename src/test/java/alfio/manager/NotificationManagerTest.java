@@ -0,0 +1,103 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.i18n.MessageSourceManager;
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.manager.system.Mailer;
+import alfio.model.EmailMessage;
+import alfio.model.Event;
+import alfio.model.PurchaseContext.PurchaseContextType;
+import alfio.repository.*;
+import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static alfio.model.system.ConfigurationKeys.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class NotificationManagerTest {
+
+    private static final int EVENT_ID = 1;
+
+    private Mailer mailer;
+    private EmailMessageRepository emailMessageRepository;
+    private Event event;
+    private NotificationManager notificationManager;
+
+    @BeforeEach
+    void setUp() {
+        mailer = mock(Mailer.class);
+        emailMessageRepository = mock(EmailMessageRepository.class);
+        event = mock(Event.class);
+        when(event.getDisplayName()).thenReturn("event");
+        var configurationManager = mock(ConfigurationManager.class);
+        when(configurationManager.getFor(anyCollection(), any(ConfigurationLevel.class))).thenReturn(Map.of(
+            MAX_EMAIL_PER_CYCLE, new MaybeConfiguration(MAX_EMAIL_PER_CYCLE),
+            MAIL_DISPATCH_WORKERS, new MaybeConfiguration(MAIL_DISPATCH_WORKERS)
+        ));
+        when(configurationManager.getFor(eq(MAIL_ATTEMPTS_COUNT), any())).thenReturn(new MaybeConfiguration(MAIL_ATTEMPTS_COUNT));
+        var purchaseContextManager = mock(PurchaseContextManager.class);
+        doReturn(Optional.of(event)).when(purchaseContextManager).findById(PurchaseContextType.event, String.valueOf(EVENT_ID));
+        notificationManager = new NotificationManager(mailer, mock(MessageSourceManager.class), mock(PlatformTransactionManager.class),
+            emailMessageRepository, mock(EventRepository.class), mock(EventDescriptionRepository.class), mock(OrganizationRepository.class),
+            configurationManager, mock(FileUploadManager.class), mock(TemplateManager.class), mock(TicketReservationRepository.class),
+            mock(TicketCategoryRepository.class), mock(PassKitManager.class), mock(TicketRepository.class), mock(TicketFieldRepository.class),
+            mock(AdditionalServiceItemRepository.class), mock(ExtensionManager.class), TestUtil.clockProvider(), purchaseContextManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        notificationManager.destroy();
+    }
+
+    @Test
+    void sendWaitingMessagesPartiallyRejected() {
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1), message(2), message(3)));
+        // message 2 has been rejected by the provider
+        when(mailer.sendBatch(eq(event), anyString(), anyList())).thenReturn(Set.of("1", "3"));
+        assertEquals(2, notificationManager.sendWaitingMessages());
+        verify(emailMessageRepository).bulkUpdateStatusToSent(eq(Set.of(1, 3)), any(ZonedDateTime.class));
+        verify(emailMessageRepository).bulkUpdateStatusToRetry(eq(Set.of(2)), any(ZonedDateTime.class));
+    }
+
+    @Test
+    void sendWaitingMessagesBatchFailure() {
+        when(emailMessageRepository.loadAllWaitingForProcessing(anyInt())).thenReturn(List.of(message(1), message(2)));
+        when(mailer.sendBatch(eq(event), anyString(), anyList())).thenThrow(new IllegalStateException("provider unavailable"));
+        assertEquals(0, notificationManager.sendWaitingMessages());
+        verify(emailMessageRepository, never()).bulkUpdateStatusToSent(anyCollection(), any());
+        verify(emailMessageRepository).bulkUpdateStatusToRetry(eq(Set.of(1, 2)), any(ZonedDateTime.class));
+    }
+
+    private static EmailMessage message(int id) {
+        return new EmailMessage(id, EVENT_ID, null, EmailMessage.Status.WAITING.name(), "recipient" + id + "@example.org", "subject",
+            "message", null, null, "checksum" + id, ZonedDateTime.now(), null, 0, null, 1);
+    }
+}
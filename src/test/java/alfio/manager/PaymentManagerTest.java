@@ -18,28 +18,36 @@ package alfio.manager;
 
 import alfio.manager.payment.MollieWebhookPaymentManager;
 import alfio.manager.payment.StripeWebhookPaymentManager;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.PurchaseContext;
+import alfio.model.TotalPrice;
 import alfio.model.transaction.PaymentMethod;
 import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.TransactionRequest;
 import alfio.model.transaction.webhook.MollieWebhookPayload;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.time.Duration;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static alfio.model.system.ConfigurationKeys.PAYMENT_METHODS_BLACKLIST;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 
 class PaymentManagerTest {
 
     private PaymentManager paymentManager;
     private StripeWebhookPaymentManager stripe;
     private MollieWebhookPaymentManager mollie;
+    private ConfigurationManager configurationManager;
 
     @BeforeEach
     void init() {
@@ -49,7 +57,11 @@ class PaymentManagerTest {
         mollie = mock(MollieWebhookPaymentManager.class);
         when(mollie.isActive(any())).thenReturn(true);
         when(mollie.getPaymentProxy()).thenCallRealMethod();
-        paymentManager = new PaymentManager(null, null, null, null, null,
+        when(mollie.dependsOnTransactionRequest()).thenReturn(true);
+        configurationManager = mock(ConfigurationManager.class);
+        when(configurationManager.getFor(eq(PAYMENT_METHODS_BLACKLIST), any())).thenReturn(new ConfigurationManager.MaybeConfiguration(PAYMENT_METHODS_BLACKLIST));
+        paymentManager = new PaymentManager(null, configurationManager, null, null, null,
+            new PaymentMethodMatrix(Duration.ofMinutes(1)),
             List.of(stripe, mollie));
     }
 
@@ -70,4 +82,51 @@ class PaymentManagerTest {
         assertSame(entries.get(0).getKey(), PaymentMethod.CREDIT_CARD);
         assertEquals(entries.get(0).getValue(), EnumSet.of(PaymentProxy.STRIPE, PaymentProxy.MOLLIE));
     }
-}
\ No newline at end of file
+
+    @Test
+    void paymentMethodsAreResolvedOncePerPurchaseContext() {
+        when(stripe.getSupportedPaymentMethods(any(), any())).thenReturn(EnumSet.of(PaymentMethod.CREDIT_CARD));
+        var event = purchaseContext(List.of(PaymentProxy.STRIPE));
+        var first = paymentManager.getPaymentMethods(event, new TransactionRequest(price(1000), null));
+        var second = paymentManager.getPaymentMethods(event, new TransactionRequest(price(2000), null));
+        assertEquals(List.of(new PaymentManager.PaymentMethodDTO(PaymentProxy.STRIPE, PaymentMethod.CREDIT_CARD, PaymentManager.PaymentMethodDTO.PaymentMethodStatus.ACTIVE)), first);
+        assertEquals(first, second);
+        verify(stripe, times(1)).getSupportedPaymentMethods(any(), any());
+        verify(configurationManager, times(1)).getFor(eq(PAYMENT_METHODS_BLACKLIST), any());
+    }
+
+    @Test
+    void amountIsPartOfTheKeyForRequestDependentProviders() {
+        when(mollie.getSupportedPaymentMethods(any(), any())).thenReturn(EnumSet.of(PaymentMethod.IDEAL));
+        var event = purchaseContext(List.of(PaymentProxy.MOLLIE));
+        paymentManager.getPaymentMethods(event, new TransactionRequest(price(1000), null));
+        paymentManager.getPaymentMethods(event, new TransactionRequest(price(1000), null));
+        paymentManager.getPaymentMethods(event, new TransactionRequest(price(2000), null));
+        verify(mollie, times(2)).getSupportedPaymentMethods(any(), any());
+    }
+
+    @Test
+    void matrixIsRebuiltAfterEviction() {
+        var matrix = new PaymentMethodMatrix(Duration.ofMinutes(1));
+        paymentManager = new PaymentManager(null, configurationManager, null, null, null, matrix, List.of(stripe, mollie));
+        when(stripe.getSupportedPaymentMethods(any(), any())).thenReturn(EnumSet.of(PaymentMethod.CREDIT_CARD));
+        var event = purchaseContext(List.of(PaymentProxy.STRIPE));
+        paymentManager.getPaymentMethods(event, TransactionRequest.empty());
+        matrix.evictAll();
+        paymentManager.getPaymentMethods(event, TransactionRequest.empty());
+        verify(stripe, times(2)).getSupportedPaymentMethods(any(), any());
+    }
+
+    private static PurchaseContext purchaseContext(List<PaymentProxy> allowedProxies) {
+        var event = mock(Event.class);
+        when(event.getType()).thenReturn(PurchaseContext.PurchaseContextType.event);
+        when(event.getPublicIdentifier()).thenReturn("event");
+        when(event.getCurrency()).thenReturn("CHF");
+        when(event.getAllowedPaymentProxies()).thenReturn(allowedProxies);
+        return event;
+    }
+
+    private static TotalPrice price(int amount) {
+        return new TotalPrice(amount, 0, 0, 0, "CHF");
+    }
+}
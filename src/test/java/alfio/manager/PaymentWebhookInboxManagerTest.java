@@ -0,0 +1,105 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.payment.StripeWebhookPaymentManager;
+import alfio.manager.support.PaymentWebhookResult;
+import alfio.model.transaction.PaymentProxy;
+import alfio.model.transaction.TransactionWebhookPayload;
+import alfio.model.transaction.WebhookInboxEntry;
+import alfio.repository.WebhookInboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PaymentWebhookInboxManagerTest {
+
+    private static final String BODY = "{\"id\": \"evt_1\"}";
+
+    private PaymentManager paymentManager;
+    private TicketReservationManager ticketReservationManager;
+    private WebhookInboxRepository webhookInboxRepository;
+    private StripeWebhookPaymentManager stripe;
+    private PaymentWebhookInboxManager inboxManager;
+
+    @BeforeEach
+    void init() {
+        paymentManager = mock(PaymentManager.class);
+        ticketReservationManager = mock(TicketReservationManager.class);
+        webhookInboxRepository = mock(WebhookInboxRepository.class);
+        stripe = mock(StripeWebhookPaymentManager.class);
+        when(paymentManager.streamActiveProvidersByProxyAndCapabilities(eq(PaymentProxy.STRIPE), any(), any())).thenAnswer(invocation -> Stream.of(stripe));
+        when(stripe.requiresSignedBody()).thenReturn(true);
+        inboxManager = new PaymentWebhookInboxManager(paymentManager, ticketReservationManager, webhookInboxRepository, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void duplicateNotificationsAreDiscarded() {
+        var payload = mock(TransactionWebhookPayload.class);
+        when(payload.getReservationId()).thenReturn("reservation");
+        when(stripe.parseTransactionPayload(eq(BODY), eq("signature"), any(), any())).thenReturn(Optional.of(payload));
+        when(stripe.getWebhookEventId(BODY)).thenReturn(Optional.of("evt_1"));
+        when(webhookInboxRepository.insert(PaymentProxy.STRIPE.name(), "evt_1", "reservation", BODY, Map.of())).thenReturn(1, 0);
+        when(webhookInboxRepository.lockPending(anyInt())).thenReturn(List.of());
+
+        var first = inboxManager.receiveTransactionWebhook(BODY, "signature", PaymentProxy.STRIPE, Map.of());
+        var second = inboxManager.receiveTransactionWebhook(BODY, "signature", PaymentProxy.STRIPE, Map.of());
+        assertEquals(PaymentWebhookResult.Type.NOT_RELEVANT, first.getType());
+        assertEquals("queued", first.getReason());
+        assertEquals("duplicate", second.getReason());
+        verify(webhookInboxRepository, never()).insertOrReschedule(any(), any(), any(), any(), any());
+        verifyNoInteractions(ticketReservationManager);
+    }
+
+    @Test
+    void invalidNotificationsAreNotStored() {
+        when(stripe.parseTransactionPayload(any(), any(), any(), any())).thenReturn(Optional.empty());
+        assertTrue(inboxManager.receiveTransactionWebhook(BODY, "signature", PaymentProxy.STRIPE, Map.of()).isError());
+        assertTrue(inboxManager.receiveTransactionWebhook(BODY, null, PaymentProxy.STRIPE, Map.of()).isError());
+        verifyNoInteractions(webhookInboxRepository);
+    }
+
+    @Test
+    void failuresAreRecorded() {
+        var successful = entry(1L);
+        var failed = entry(2L);
+        var error = entry(3L);
+        when(webhookInboxRepository.lockPending(anyInt())).thenReturn(List.of(successful, failed, error));
+        when(ticketReservationManager.processTransactionWebhook(successful)).thenReturn(PaymentWebhookResult.notRelevant("reservation not found"));
+        when(ticketReservationManager.processTransactionWebhook(failed)).thenThrow(new IllegalStateException("failure"));
+        when(ticketReservationManager.processTransactionWebhook(error)).thenReturn(PaymentWebhookResult.error("payment provider not found"));
+
+        assertEquals(3, inboxManager.processPendingWebhooks());
+        verify(webhookInboxRepository).markAsProcessed(1L);
+        verify(webhookInboxRepository).registerFailure(eq(2L), eq("failure"), anyInt());
+        verify(webhookInboxRepository).registerFailure(eq(3L), eq("payment provider not found"), anyInt());
+        verify(webhookInboxRepository, times(1)).lockPending(anyInt());
+    }
+
+    private static WebhookInboxEntry entry(long id) {
+        return new WebhookInboxEntry(id, PaymentProxy.STRIPE, "evt_" + id, "reservation", BODY, Map.of(), WebhookInboxEntry.Status.PENDING, 0);
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.Ticket.TicketStatus;
+import alfio.model.TicketCategory;
+import alfio.model.metadata.AlfioMetadata;
+import alfio.model.modification.DateTimeModification;
+import alfio.model.modification.TicketCategoryModification;
+import alfio.model.system.ConfigurationKeys;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.OrganizationRepository;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static alfio.manager.TicketReservationManagerIntegrationTest.DESCRIPTION;
+import static alfio.test.util.IntegrationTestUtil.AVAILABLE_SEATS;
+import static alfio.test.util.IntegrationTestUtil.initEvent;
+import static alfio.test.util.TestUtil.clockProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the throughput of ticket allocation when many buyers compete for the same category.
+ * Disabled by default, run it with -Dalfio.benchmark=true
+ */
+@SpringBootTest()
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@EnabledIfSystemProperty(named = "alfio.benchmark", matches = "true")
+class TicketAllocationContentionBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TicketAllocationContentionBenchmarkTest.class);
+    private static final int RESERVERS = 500;
+    private static final int TICKETS = 5_000;
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager platformTransactionManager;
+
+    private Event event;
+    private String username;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 16})
+    void allocateTicketsConcurrently(int shards) throws Exception {
+        var transactionTemplate = new TransactionTemplate(platformTransactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        int categoryId = transactionTemplate.execute(tx -> initEventWithTickets(shards));
+
+        var allocated = ConcurrentHashMap.<Integer>newKeySet();
+        var pool = Executors.newFixedThreadPool(RESERVERS);
+        var reservers = new ArrayList<Callable<Integer>>(RESERVERS);
+        for(int i = 0; i < RESERVERS; i++) {
+            reservers.add(() -> {
+                int reservations = 0;
+                while(true) {
+                    List<Integer> ids = transactionTemplate.execute(tx -> {
+                        var locked = ticketReservationManager.reserveTickets(event, UUID.randomUUID().toString(), categoryId, 1, List.of(TicketStatus.FREE));
+                        if(!locked.isEmpty()) {
+                            jdbcTemplate.update("update ticket set status = 'PENDING' where id in (:ids)", new MapSqlParameterSource("ids", locked));
+                        }
+                        return locked;
+                    });
+                    if(ids == null || ids.isEmpty()) {
+                        return reservations;
+                    }
+                    allocated.addAll(ids);
+                    reservations++;
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        int reservations = 0;
+        try {
+            for (Future<Integer> future : pool.invokeAll(reservers)) {
+                reservations += future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        LOGGER.info("shards: {}, reservers: {}, reservations: {}, elapsed: {}s, throughput: {} reservations/s",
+            shards, RESERVERS, reservations, String.format("%.2f", elapsedSeconds), String.format("%.1f", reservations / elapsedSeconds));
+
+        assertEquals(TICKETS, reservations);
+        assertEquals(TICKETS, allocated.size());
+    }
+
+    private int initEventWithTickets(int shards) {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(clockProvider().getClock()), LocalTime.now(clockProvider().getClock())),
+                new DateTimeModification(LocalDate.now(clockProvider().getClock()).plusDays(1), LocalTime.now(clockProvider().getClock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null,
+                null, null, null, null, null, TicketCategory.TicketCheckInStrategy.ONCE_PER_EVENT, null, AlfioMetadata.empty()));
+        Pair<Event, String> eventAndUser = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        event = eventAndUser.getLeft();
+        username = eventAndUser.getRight();
+        int categoryId = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0).getId();
+        // the category is created with AVAILABLE_SEATS tickets, we add the missing ones directly
+        ticketRepository.bulkTicketInitialization(event.getId(), categoryId, 1000, new Date(), TicketStatus.FREE, TICKETS - AVAILABLE_SEATS);
+        configurationRepository.insertEventLevel(event.getOrganizationId(), event.getId(), ConfigurationKeys.TICKET_ALLOCATION_SHARDS.getValue(), String.valueOf(shards), "");
+        return categoryId;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(event != null) {
+            new TransactionTemplate(platformTransactionManager).execute(tx -> {
+                eventManager.deleteEvent(event.getId(), username);
+                return null;
+            });
+        }
+    }
+}
@@ -66,6 +66,7 @@ import org.springframework.transaction.PlatformTransactionManager;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -139,6 +140,8 @@ class TicketReservationManagerTest {
         BANK_ACCOUNT_OWNER,  new MaybeConfiguration(BANK_ACCOUNT_OWNER));
     private PromoCodeDiscountRepository promoCodeDiscountRepository;
     private BillingDocumentManager billingDocumentManager;
+    private DeferredInvoiceNumberRepository deferredInvoiceNumberRepository;
+    private ExtensionManager extensionManager;
 
     @BeforeEach
     void init() {
@@ -191,13 +194,14 @@ class TicketReservationManagerTest {
         TicketSearchRepository ticketSearchRepository = mock(TicketSearchRepository.class);
         GroupManager groupManager = mock(GroupManager.class);
         userRepository = mock(UserRepository.class);
-        ExtensionManager extensionManager = mock(ExtensionManager.class);
+        extensionManager = mock(ExtensionManager.class);
         billingDocumentRepository = mock(BillingDocumentRepository.class);
         when(ticketCategoryRepository.getByIdAndActive(anyInt(), eq(EVENT_ID))).thenReturn(ticketCategory);
         when(ticketCategoryRepository.getByIdsAndActive(anyCollection(), eq(EVENT_ID))).thenReturn(List.of(ticketCategory));
         when(ticketCategory.getName()).thenReturn("Category Name");
         when(ticketCategory.getCurrencyCode()).thenReturn(CATEGORY_CURRENCY);
         when(configurationManager.getFor(eq(VAT_NR), any())).thenReturn(new MaybeConfiguration(VAT_NR));
+        when(configurationManager.getFor(eq(TICKET_ALLOCATION_SHARDS), any())).thenReturn(new MaybeConfiguration(TICKET_ALLOCATION_SHARDS));
 
         when(messageSourceManager.getMessageSourceFor(any())).thenReturn(messageSource);
         when(messageSourceManager.getRootMessageSource()).thenReturn(messageSource);
@@ -210,6 +214,7 @@ class TicketReservationManagerTest {
         when(purchaseContextManager.findByReservationId(anyString())).thenReturn(Optional.of(event));
 
         billingDocumentManager = mock(BillingDocumentManager.class);
+        deferredInvoiceNumberRepository = mock(DeferredInvoiceNumberRepository.class);
         trm = new TicketReservationManager(eventRepository,
             organizationRepository,
             ticketRepository,
@@ -242,7 +247,8 @@ class TicketReservationManagerTest {
             TestUtil.clockProvider(),
             purchaseContextManager,
             mock(SubscriptionRepository.class),
-            mock(UserManager.class));
+            mock(UserManager.class),
+            deferredInvoiceNumberRepository);
 
         when(event.getId()).thenReturn(EVENT_ID);
         when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
@@ -648,14 +654,31 @@ class TicketReservationManagerTest {
         verify(ticketRepository).reserveTickets(eq("trid"), eq(ids), eq(ticketCategory), eq(Locale.ENGLISH.getLanguage()), any(), any());
     }
 
+    @Test
+    void reserveTicketsForBoundedCategoriesSharded() {
+        when(ticketCategory.isBounded()).thenReturn(true);
+        MaybeConfiguration shards = mock(MaybeConfiguration.class);
+        when(shards.getValueAsIntOrDefault(1)).thenReturn(4);
+        when(configurationManager.getFor(eq(TICKET_ALLOCATION_SHARDS), any())).thenReturn(shards);
+        List<String> statuses = singletonList(TicketStatus.FREE.name());
+        int firstShard = Math.floorMod("trid".hashCode(), 4);
+        int secondShard = (firstShard + 1) % 4;
+        when(ticketRepository.selectTicketInCategoryShardForUpdateSkipLocked(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(3), eq(statuses), eq(4), eq(firstShard))).thenReturn(List.of(1));
+        when(ticketRepository.selectTicketInCategoryShardForUpdateSkipLocked(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(2), eq(statuses), eq(4), eq(secondShard))).thenReturn(List.of(2, 3));
+        List<Integer> result = trm.reserveTickets(event, "trid", TICKET_CATEGORY_ID, 3, singletonList(TicketStatus.FREE));
+        Assertions.assertEquals(List.of(1, 2, 3), result);
+        verify(ticketRepository, times(2)).selectTicketInCategoryShardForUpdateSkipLocked(anyInt(), anyInt(), anyInt(), anyList(), anyInt(), anyInt());
+        verify(ticketRepository, never()).selectTicketInCategoryForUpdateSkipLocked(anyInt(), anyInt(), anyInt(), anyList());
+    }
+
     //cleanup expired reservations
 
     @Test
     void doNothingIfNoReservations() {
         Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
-        when(ticketReservationRepository.findExpiredReservationForUpdate(eq(now))).thenReturn(Collections.emptyList());
+        when(ticketReservationRepository.findExpiredReservationIds(eq(now), eq(""), anyInt())).thenReturn(Collections.emptyList());
         trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservationForUpdate(eq(now));
+        verify(ticketReservationRepository).findExpiredReservationIds(eq(now), eq(""), anyInt());
         verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository, waitingQueueManager);
     }
 
@@ -663,16 +686,19 @@ class TicketReservationManagerTest {
     void cancelExpiredReservations() {
         Date now = new Date(Instant.now(ClockProvider.clock()).getEpochSecond());
         List<String> reservationIds = singletonList("reservation-id");
-        when(ticketReservationRepository.findExpiredReservationForUpdate(now)).thenReturn(reservationIds);
-        trm.cleanupExpiredReservations(now);
-        verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+        when(ticketReservationRepository.findExpiredReservationIds(eq(now), eq(""), anyInt())).thenReturn(reservationIds);
+        when(ticketReservationRepository.lockExpiredReservations(reservationIds, now)).thenReturn(reservationIds);
+        Assertions.assertEquals(1, trm.cleanupExpiredReservations(now));
+        verify(ticketReservationRepository).findExpiredReservationIds(eq(now), eq(""), anyInt());
+        verify(ticketReservationRepository).lockExpiredReservations(reservationIds, now);
         verify(specialPriceRepository).resetToFreeAndCleanupForReservation(reservationIds);
         verify(ticketRepository).resetCategoryIdForUnboundedCategories(reservationIds);
         verify(ticketRepository).freeFromReservation(reservationIds);
         verify(ticketReservationRepository).remove(reservationIds);
         verify(waitingQueueManager).cleanExpiredReservations(reservationIds);
         verify(ticketReservationRepository).getReservationIdAndEventId(reservationIds);
-        verify(ticketReservationRepository).findReservationsWithPendingTransaction(reservationIds);
+        // before the remote check, and after having acquired the lock
+        verify(ticketReservationRepository, times(2)).findReservationsWithPendingTransaction(reservationIds);
         verifyNoMoreInteractions(ticketReservationRepository, specialPriceRepository, ticketRepository);
     }
 
@@ -688,6 +714,22 @@ class TicketReservationManagerTest {
         verify(ticketRepository).countFreeTicketsForUnbounded(eq(EVENT_ID));
     }
 
+    @Test
+    void availableTicketsSnapshot() {
+        var freeTickets = new HashMap<Integer, Integer>();
+        freeTickets.put(TICKET_CATEGORY_ID, 5);
+        freeTickets.put(null, 3);
+        when(ticketRepository.countFreeTicketsByCategory(EVENT_ID)).thenReturn(freeTickets);
+        when(ticketCategory.getId()).thenReturn(TICKET_CATEGORY_ID);
+        when(ticketCategory.isBounded()).thenReturn(true);
+        Assertions.assertEquals(5, trm.availableTicketsSnapshot(event).applyAsInt(ticketCategory));
+        when(ticketCategory.isBounded()).thenReturn(false);
+        Assertions.assertEquals(3, trm.availableTicketsSnapshot(event).applyAsInt(ticketCategory));
+        // the second call must be served by the snapshot
+        verify(ticketRepository, times(1)).countFreeTicketsByCategory(EVENT_ID);
+        verify(ticketRepository, never()).countFreeTickets(anyInt(), anyInt());
+    }
+
     private void initReleaseTicket() {
         when(ticket.getId()).thenReturn(TICKET_ID);
         when(ticketCategoryDescriptionRepository.findByTicketCategoryIdAndLocale(anyInt(), anyString())).thenReturn(Optional.of("desc"));
@@ -956,6 +998,89 @@ class TicketReservationManagerTest {
         verify(ticketRepository, atLeastOnce()).findTicketsInReservation(anyString());
     }
 
+    @Test
+    void deferInvoiceNumberAllocation() {
+        when(ticketReservationRepository.findOptionalStatusAndValidationById(eq(RESERVATION_ID))).thenReturn(Optional.of(new TicketReservationStatusAndValidation(PENDING, true)));
+        initConfirmReservation();
+        when(ticketRepository.updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.TO_BE_PAID.toString()))).thenReturn(1);
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), eq(COMPLETE.toString()), anyString(), anyString(), isNull(), isNull(), anyString(), anyString(), any(ZonedDateTime.class), eq(PaymentProxy.ON_SITE.toString()), isNull())).thenReturn(1);
+        when(ticketReservationRepository.findOptionalReservationById(eq(RESERVATION_ID))).thenReturn(Optional.of(ticketReservation));
+        when(configurationManager.getFor(eq(ENABLE_TICKET_TRANSFER), any())).thenReturn(
+            new MaybeConfiguration(ENABLE_TICKET_TRANSFER)
+        );
+        when(configurationManager.getFor(eq(BANKING_KEY), any())).thenReturn(BANKING_INFO);
+        OnSiteManager onSiteManager = mock(OnSiteManager.class);
+        when(onSiteManager.accept(eq(PaymentMethod.ON_SITE), any(), any())).thenReturn(true);
+        when(paymentManager.streamActiveProvidersByProxy(eq(PaymentProxy.ON_SITE), any())).thenReturn(Stream.of(onSiteManager));
+        when(ticketReservation.getPromoCodeDiscountId()).thenReturn(null);
+        when(onSiteManager.getTokenAndPay(any())).thenReturn(PaymentResult.successful(TicketReservationManager.NOT_YET_PAID_TRANSACTION_ID));
+        PaymentSpecification spec = new PaymentSpecification(RESERVATION_ID, new StripeCreditCardToken(GATEWAY_TOKEN), 100, event, "test@email",
+            new CustomerName("Full Name", null, null, event.mustUseFirstAndLastName()),
+            "", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), anyString(), anyString(), anyString(), isNull(), isNull(), eq(Locale.ENGLISH.getLanguage()), isNull(), any(), any(), isNull())).thenReturn(1);
+        when(billingDocumentManager.isInvoiceNumberAllocationDeferred(eq(event))).thenReturn(true);
+        when(billingDocumentManager.generateInvoiceNumber(eq(spec), any())).thenReturn(Optional.of("1234"));
+        // once the invoice number has been assigned, the reservation is loaded with it
+        TicketReservation invoicedReservation = mock(TicketReservation.class);
+        when(invoicedReservation.getId()).thenReturn(RESERVATION_ID);
+        when(invoicedReservation.getInvoiceNumber()).thenReturn("1234");
+        var invoiceNumberAssigned = new AtomicBoolean(false);
+        when(ticketReservationRepository.findReservationById(RESERVATION_ID)).thenAnswer(invocation -> invoiceNumberAssigned.get() ? invoicedReservation : ticketReservation);
+        when(ticketReservationRepository.setInvoiceNumber(RESERVATION_ID, "1234")).thenAnswer(invocation -> {
+            invoiceNumberAssigned.set(true);
+            return 1;
+        });
+        when(deferredInvoiceNumberRepository.lockForAllocation(RESERVATION_ID)).thenReturn(Optional.of(PaymentProxy.ON_SITE.name()));
+        when(deferredInvoiceNumberRepository.lockForConfirmation(RESERVATION_ID)).thenReturn(Optional.of(PaymentProxy.ON_SITE.name()));
+        PaymentResult result = trm.performPayment(spec, new TotalPrice(100, 0, 0, 0, "CHF"), PaymentProxy.ON_SITE, PaymentMethod.ON_SITE, null);
+        Assertions.assertTrue(result.isSuccessful());
+        var inOrder = inOrder(ticketRepository, waitingQueueManager, auditingRepository, billingDocumentManager, ticketReservationRepository, extensionManager, deferredInvoiceNumberRepository);
+        inOrder.verify(ticketRepository).updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.TO_BE_PAID.toString()));
+        inOrder.verify(waitingQueueManager).fireReservationConfirmed(eq(RESERVATION_ID));
+        inOrder.verify(auditingRepository).insert(eq(RESERVATION_ID), any(), any(PurchaseContext.class), eq(Audit.EventType.RESERVATION_COMPLETE), any(), eq(Audit.EntityType.RESERVATION), eq(RESERVATION_ID));
+        inOrder.verify(deferredInvoiceNumberRepository).insert(RESERVATION_ID, PaymentProxy.ON_SITE.name());
+        // the number is allocated in a transaction of its own, after the confirmation
+        inOrder.verify(deferredInvoiceNumberRepository).lockForAllocation(RESERVATION_ID);
+        inOrder.verify(billingDocumentManager).generateInvoiceNumber(eq(spec), any());
+        inOrder.verify(ticketReservationRepository).setInvoiceNumber(RESERVATION_ID, "1234");
+        inOrder.verify(deferredInvoiceNumberRepository).markAsAllocated(RESERVATION_ID);
+        // extensions must see the deferred invoice number
+        inOrder.verify(extensionManager).handleReservationConfirmation(eq(invoicedReservation), any(), eq(event));
+        inOrder.verify(deferredInvoiceNumberRepository).delete(RESERVATION_ID);
+    }
+
+    @Test
+    void deferredConfirmationAlreadyCompleted() {
+        when(ticketReservationRepository.findOptionalStatusAndValidationById(eq(RESERVATION_ID))).thenReturn(Optional.of(new TicketReservationStatusAndValidation(PENDING, true)));
+        initConfirmReservation();
+        when(ticketRepository.updateTicketsStatusWithReservationId(eq(RESERVATION_ID), eq(TicketStatus.TO_BE_PAID.toString()))).thenReturn(1);
+        when(ticketReservationRepository.findOptionalReservationById(eq(RESERVATION_ID))).thenReturn(Optional.of(ticketReservation));
+        when(configurationManager.getFor(eq(ENABLE_TICKET_TRANSFER), any())).thenReturn(
+            new MaybeConfiguration(ENABLE_TICKET_TRANSFER)
+        );
+        when(configurationManager.getFor(eq(BANKING_KEY), any())).thenReturn(BANKING_INFO);
+        OnSiteManager onSiteManager = mock(OnSiteManager.class);
+        when(onSiteManager.accept(eq(PaymentMethod.ON_SITE), any(), any())).thenReturn(true);
+        when(paymentManager.streamActiveProvidersByProxy(eq(PaymentProxy.ON_SITE), any())).thenReturn(Stream.of(onSiteManager));
+        when(ticketReservation.getPromoCodeDiscountId()).thenReturn(null);
+        when(onSiteManager.getTokenAndPay(any())).thenReturn(PaymentResult.successful(TicketReservationManager.NOT_YET_PAID_TRANSACTION_ID));
+        PaymentSpecification spec = new PaymentSpecification(RESERVATION_ID, new StripeCreditCardToken(GATEWAY_TOKEN), 100, event, "test@email",
+            new CustomerName("Full Name", null, null, event.mustUseFirstAndLastName()),
+            "", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        when(ticketReservationRepository.updateTicketReservation(eq(RESERVATION_ID), anyString(), anyString(), anyString(), isNull(), isNull(), eq(Locale.ENGLISH.getLanguage()), isNull(), any(), any(), isNull())).thenReturn(1);
+        when(billingDocumentManager.isInvoiceNumberAllocationDeferred(eq(event))).thenReturn(true);
+        // another node is completing the confirmation
+        when(deferredInvoiceNumberRepository.lockForAllocation(RESERVATION_ID)).thenReturn(Optional.empty());
+        when(deferredInvoiceNumberRepository.lockForConfirmation(RESERVATION_ID)).thenReturn(Optional.empty());
+        PaymentResult result = trm.performPayment(spec, new TotalPrice(100, 0, 0, 0, "CHF"), PaymentProxy.ON_SITE, PaymentMethod.ON_SITE, null);
+        Assertions.assertTrue(result.isSuccessful());
+        verify(deferredInvoiceNumberRepository).insert(RESERVATION_ID, PaymentProxy.ON_SITE.name());
+        verify(billingDocumentManager, never()).generateInvoiceNumber(any(), any());
+        verify(ticketReservationRepository, never()).setInvoiceNumber(anyString(), anyString());
+        verify(extensionManager, never()).handleReservationConfirmation(any(), any(), any());
+        verify(deferredInvoiceNumberRepository, never()).delete(anyString());
+    }
+
     @Test
     void handleOfflinePaymentMethod() {
         when(ticketReservationRepository.findOptionalStatusAndValidationById(eq(RESERVATION_ID))).thenReturn(Optional.of(new TicketReservationStatusAndValidation(PENDING, true)));
@@ -1352,7 +1477,8 @@ class TicketReservationManagerTest {
 
         @BeforeEach
         void setUp() {
-            when(ticketReservationRepository.findExpiredReservationForUpdate(now)).thenReturn(reservationIds);
+            when(ticketReservationRepository.findExpiredReservationIds(eq(now), eq(""), anyInt())).thenReturn(reservationIds);
+            when(ticketReservationRepository.lockExpiredReservations(reservationIds, now)).thenReturn(reservationIds);
             pendingReservationMock = mock(TicketReservation.class);
             when(pendingReservationMock.getId()).thenReturn(PENDING_RESERVATION_ID);
             when(pendingReservationMock.getSrcPriceCts()).thenReturn(100);
@@ -1381,7 +1507,9 @@ class TicketReservationManagerTest {
             when(stripeManager.forceTransactionCheck(eq(pendingReservationMock), eq(transactionMock), any()))
                 .thenReturn(PaymentWebhookResult.successful(new StripeCreditCardToken("")));
             trm.cleanupExpiredReservations(now);
-            verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+            verify(ticketReservationRepository).findExpiredReservationIds(eq(now), eq(""), anyInt());
+            verify(ticketReservationRepository).lockExpiredReservations(reservationIds, now);
+            verify(ticketReservationRepository).findReservationsWithPendingTransaction(expiredReservationIds);
             verify(specialPriceRepository).resetToFreeAndCleanupForReservation(expiredReservationIds);
             verify(ticketRepository).resetCategoryIdForUnboundedCategories(expiredReservationIds);
             verify(ticketRepository).freeFromReservation(expiredReservationIds);
@@ -1412,7 +1540,9 @@ class TicketReservationManagerTest {
             when(ticketReservationRepository.updateReservationStatus(PENDING_RESERVATION_ID, TicketReservationStatus.PENDING.toString()))
                 .thenReturn(1);
             trm.cleanupExpiredReservations(now);
-            verify(ticketReservationRepository).findExpiredReservationForUpdate(now);
+            verify(ticketReservationRepository).findExpiredReservationIds(eq(now), eq(""), anyInt());
+            verify(ticketReservationRepository).lockExpiredReservations(reservationIds, now);
+            verify(ticketReservationRepository).findReservationsWithPendingTransaction(expiredReservationIds);
             verify(specialPriceRepository).resetToFreeAndCleanupForReservation(reservationIds);
             verify(ticketRepository).resetCategoryIdForUnboundedCategories(reservationIds);
             verify(ticketRepository).freeFromReservation(reservationIds);
@@ -158,7 +158,8 @@ class TicketReservationManagerUnitTest {
             TestUtil.clockProvider(),
             purchaseContextManager,
             mock(SubscriptionRepository.class),
-            mock(UserManager.class));
+            mock(UserManager.class),
+            mock(DeferredInvoiceNumberRepository.class));
 
     }
 
@@ -194,5 +194,26 @@ public class UploadedResourceIntegrationTest extends BaseIntegrationTest {
         assertArrayEquals(ONE_PIXEL_BLACK_GIF, baos1.toByteArray());
     }
 
+    @Test
+    public void testFindCascading() {
+        int orgId = event.getOrganizationId();
+        int eventId = event.getId();
+        assertTrue(uploadedResourceManager.findCascading(orgId, eventId, "file_name.txt").isEmpty());
 
+        UploadBase64FileModification toSave = new UploadBase64FileModification();
+        toSave.setFile(FILE);
+        toSave.setName("file_name.txt");
+        toSave.setType("text/plain");
+        uploadedResourceManager.saveResource(toSave);
+        assertArrayEquals(FILE, uploadedResourceManager.findCascading(orgId, eventId, "file_name.txt").orElseThrow());
+        assertArrayEquals(FILE, uploadedResourceManager.findCascading(orgId, null, "file_name.txt").orElseThrow());
+
+        toSave.setFile(ONE_PIXEL_BLACK_GIF);
+        uploadedResourceManager.saveResource(orgId, eventId, toSave);
+        assertArrayEquals(ONE_PIXEL_BLACK_GIF, uploadedResourceManager.findCascading(orgId, eventId, "file_name.txt").orElseThrow());
+        assertArrayEquals(FILE, uploadedResourceManager.findCascading(orgId, null, "file_name.txt").orElseThrow());
+
+        uploadedResourceManager.deleteResource(orgId, eventId, "file_name.txt");
+        assertArrayEquals(FILE, uploadedResourceManager.findCascading(orgId, eventId, "file_name.txt").orElseThrow());
+    }
 }
@@ -16,11 +16,17 @@
  */
 package alfio.manager.i18n;
 
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.util.CustomResourceBundleMessageSource;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Locale;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
 
 class MessageSourceManagerTest {
 
@@ -38,4 +44,33 @@ class MessageSourceManagerTest {
         assertEquals("blabla{1}", MessageSourceManager.cleanArguments("blabla{1}", "{$1}"));
         assertEquals("blabla{1}", MessageSourceManager.cleanArguments("blabla{{{{{{1}}", "{$1}"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void overridesAreLoadedOnce() {
+        var configurationRepository = mock(ConfigurationRepository.class);
+        when(configurationRepository.getEventOverrideMessages(1, 2)).thenReturn(Map.of("en", Map.of("common.vat", "GST {0}")));
+        var manager = new MessageSourceManager(new CustomResourceBundleMessageSource(), configurationRepository, Duration.ofMinutes(1));
+
+        assertEquals("GST 42", manager.getMessageSourceFor(1, 2).getMessage("common.vat", new Object[] {"42"}, Locale.ENGLISH));
+        assertEquals("GST 42", manager.getMessageSourceFor(1, 2).getMessage("common.vat", new Object[] {"42"}, Locale.ENGLISH));
+        verify(configurationRepository, times(1)).getEventOverrideMessages(1, 2);
+
+        // modifications to other events / organizations must not evict the entry
+        manager.invalidateOverrides(ConfigurationPathLevel.EVENT, 3);
+        manager.invalidateOverrides(ConfigurationPathLevel.ORGANIZATION, 4);
+        manager.getMessageSourceFor(1, 2);
+        verify(configurationRepository, times(1)).getEventOverrideMessages(1, 2);
+
+        manager.invalidateOverrides(ConfigurationPathLevel.ORGANIZATION, 1);
+        manager.getMessageSourceFor(1, 2);
+        verify(configurationRepository, times(2)).getEventOverrideMessages(1, 2);
+
+        manager.invalidateOverrides(ConfigurationPathLevel.EVENT, 2);
+        manager.getMessageSourceFor(1, 2);
+        verify(configurationRepository, times(3)).getEventOverrideMessages(1, 2);
+
+        manager.invalidateOverrides(ConfigurationPathLevel.SYSTEM, 0);
+        manager.getMessageSourceFor(1, 2);
+        verify(configurationRepository, times(4)).getEventOverrideMessages(1, 2);
+    }
+}
@@ -16,15 +16,21 @@
  */
 package alfio.manager.system;
 
+import alfio.manager.user.UserManager;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeys;
+import alfio.repository.EventRepository;
+import alfio.repository.system.ConfigurationRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.env.Environment;
 
 import java.util.List;
 import java.util.Map;
 
 import static alfio.model.system.ConfigurationPathLevel.*;
+import static org.mockito.Mockito.*;
 
 public class ConfigurationManagerTest {
 
@@ -46,4 +52,24 @@ public class ConfigurationManagerTest {
         Assertions.assertTrue(values.stream().anyMatch(v -> v.getConfigurationKey() == ConfigurationKeys.VAT_NR && v.getConfigurationPathLevel() == ORGANIZATION));
     }
 
+    @Test
+    public void levelLoadedDuringInvalidationIsNotCached() {
+        ConfigurationRepository configurationRepository = mock(ConfigurationRepository.class);
+        ConfigurationManager configurationManager = new ConfigurationManager(configurationRepository, mock(UserManager.class),
+            mock(EventRepository.class), mock(ExternalConfiguration.class), mock(Environment.class),
+            Caffeine.newBuilder().build(), Caffeine.newBuilder().build());
+        // a modification is notified while the system level is being loaded for the first time
+        when(configurationRepository.findAllAtSystemLevel()).thenAnswer(invocation -> {
+            configurationManager.invalidateCache(SYSTEM, 0);
+            return List.of();
+        }).thenReturn(List.of());
+
+        configurationManager.getFor(List.of(ConfigurationKeys.BASE_URL), ConfigurationLevel.system());
+        configurationManager.getFor(List.of(ConfigurationKeys.BASE_URL), ConfigurationLevel.system());
+        configurationManager.getFor(List.of(ConfigurationKeys.BASE_URL), ConfigurationLevel.system());
+
+        // the first (stale) result has been discarded, the second one has been cached
+        verify(configurationRepository, times(2)).findAllAtSystemLevel();
+    }
+
 }
\ No newline at end of file
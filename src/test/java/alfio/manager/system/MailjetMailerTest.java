@@ -149,6 +149,48 @@ class MailjetMailerTest {
         assertTrue(semaphore.tryAcquire(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    void sendBatch() throws Exception {
+        mockBatchResponse(200, "{\"Messages\":[{\"Status\":\"success\"},{\"Status\":\"success\"}]}");
+        var messages = List.of(
+            new Mailer.Message("1", "to1", List.of(), "subject1", "text1", Optional.empty(), List.of()),
+            new Mailer.Message("2", "to2", List.of("cc"), "subject2", "text2", Optional.of("html"), List.of())
+        );
+        var sent = mailjetMailer.sendBatch(configurable, "from_name", messages);
+        assertEquals(Set.of("1", "2"), sent);
+        // both messages must be sent with a single call
+        verify(httpClient, times(1)).send(requestCaptor.capture(), any());
+        assertEquals(URI.create("https://api.mailjet.com/v3.1/send"), requestCaptor.getValue().uri());
+    }
+
+    @Test
+    void sendBatchPartialFailure() throws Exception {
+        // Mailjet replies with 400 if at least one message has been rejected, reporting the status of each message
+        mockBatchResponse(400, "{\"Messages\":[{\"Status\":\"success\"},{\"Status\":\"error\",\"Errors\":[{\"ErrorCode\":\"mj-0013\"}]},{\"Status\":\"success\"}]}");
+        var messages = List.of(
+            new Mailer.Message("1", "to1", List.of(), "subject1", "text1", Optional.empty(), List.of()),
+            new Mailer.Message("2", "invalid", List.of(), "subject2", "text2", Optional.empty(), List.of()),
+            new Mailer.Message("3", "to3", List.of(), "subject3", "text3", Optional.empty(), List.of())
+        );
+        // only the rejected message must be retried
+        assertEquals(Set.of("1", "3"), mailjetMailer.sendBatch(configurable, "from_name", messages));
+    }
+
+    @Test
+    void sendBatchFailure() throws Exception {
+        mockBatchResponse(500, "");
+        var messages = List.of(new Mailer.Message("1", "to1", List.of(), "subject1", "text1", Optional.empty(), List.of()));
+        assertTrue(mailjetMailer.sendBatch(configurable, "from_name", messages).isEmpty());
+    }
+
+    private void mockBatchResponse(int statusCode, String body) throws Exception {
+        @SuppressWarnings("unchecked")
+        var response = (HttpResponse<Object>) mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        when(response.body()).thenReturn(body);
+        when(httpClient.send(any(), any())).thenReturn(response);
+    }
+
     private String getValue(JsonNode node) {
         assertNotNull(node);
         return node.asText();
@@ -0,0 +1,80 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.util.MetricsUtil;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.config.IntervalTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScheduledJobsInstrumentationTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void init() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void recordDurationAndOverrun() throws Exception {
+        var registrar = new ScheduledTaskRegistrar();
+        registrar.addFixedRateTask(new IntervalTask(new ScheduledMethodRunnable(this, getClass().getDeclaredMethod("slowJob")), 1L, 0L));
+        registrar.addFixedDelayTask(new IntervalTask(new ScheduledMethodRunnable(this, getClass().getDeclaredMethod("failingJob")), 60_000L, 0L));
+
+        new ScheduledJobsInstrumentation().configureTasks(registrar);
+        registrar.getFixedRateTaskList().get(0).getRunnable().run();
+        var failing = registrar.getFixedDelayTaskList().get(0).getRunnable();
+        assertThrows(IllegalStateException.class, failing::run);
+
+        assertEquals(2, executions.get());
+        String slowJob = "ScheduledJobsInstrumentationTest.slowJob";
+        String failingJob = "ScheduledJobsInstrumentationTest.failingJob";
+        assertEquals(1, registry.get(MetricsUtil.JOB_DURATION).tags("job", slowJob, MetricsUtil.OUTCOME, MetricsUtil.SUCCESS).timer().count());
+        assertEquals(1, registry.get(MetricsUtil.JOB_DURATION).tags("job", failingJob, MetricsUtil.OUTCOME, MetricsUtil.FAILURE).timer().count());
+        assertEquals(1.0, registry.get(MetricsUtil.JOB_OVERRUN).tags("job", slowJob).counter().count());
+        assertEquals(0.0, registry.get(MetricsUtil.JOB_OVERRUN).tags("job", failingJob).counter().count());
+    }
+
+    @SuppressWarnings("unused")
+    void slowJob() throws InterruptedException {
+        executions.incrementAndGet();
+        Thread.sleep(10L);
+    }
+
+    @SuppressWarnings("unused")
+    void failingJob() {
+        executions.incrementAndGet();
+        throw new IllegalStateException("expected");
+    }
+}
@@ -30,6 +30,7 @@ import alfio.model.modification.DateTimeModification;
 import alfio.model.modification.TicketCategoryModification;
 import alfio.model.result.Result;
 import alfio.repository.user.OrganizationRepository;
+import alfio.test.util.IntegrationTestUtil;
 import alfio.util.BaseIntegrationTest;
 import alfio.util.ClockProvider;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
@@ -80,6 +81,8 @@ public class EventRepositoryIntegrationTest extends BaseIntegrationTest {
     private TicketRepository ticketRepository;
     @Autowired
     private TicketReservationRepository ticketReservationRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
 
     @BeforeEach
     public void setUp() {
@@ -154,4 +157,37 @@ public class EventRepositoryIntegrationTest extends BaseIntegrationTest {
         assertEquals(1, checkInStatistics.getCheckedIn());
         assertEquals(5, checkInStatistics.getTotalAttendees());
     }
+
+    @Test
+    public void testStatisticsAreConsistentAfterTicketCountCompaction() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", TicketCategory.TicketAccessType.INHERIT, 10,
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()), LocalTime.now(ClockProvider.clock())),
+                new DateTimeModification(LocalDate.now(ClockProvider.clock()).plusDays(1), LocalTime.now(ClockProvider.clock())),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0, null, null, AlfioMetadata.empty()));
+        Pair<Event, String> pair = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository);
+        Event event = pair.getKey();
+        int categoryId = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0).getId();
+
+        List<Integer> ids = ticketRepository.selectTicketInCategoryForUpdate(event.getId(), categoryId, 3, Collections.singletonList(TicketRepository.FREE));
+        String reservationId = "87654321";
+        ticketReservationRepository.createNewReservation(reservationId, ZonedDateTime.now(ClockProvider.clock()), DateUtils.addDays(new Date(), 1), null, "en", event.getId(), event.getVat(), event.isVatIncluded(), event.getCurrency(), event.getOrganizationId(), null);
+        ticketRepository.reserveTickets(reservationId, ids, ticketCategoryRepository.getByIdAndActive(categoryId, event.getId()), "it", event.getVatStatus(), i -> null);
+        ticketRepository.updateTicketsStatusWithReservationId(reservationId, Ticket.TicketStatus.ACQUIRED.name());
+
+        EventStatisticView before = eventRepository.findStatisticsFor(event.getId());
+        assertEquals(IntegrationTestUtil.AVAILABLE_SEATS, before.getAvailableSeats());
+        assertEquals(3, before.getSoldTickets());
+        assertEquals(7, before.getNotSoldTickets());
+        assertEquals(10, before.getNotAllocatedTickets());
+
+        eventStatisticsManager.compactTicketCount();
+
+        EventStatisticView after = eventRepository.findStatisticsFor(event.getId());
+        assertEquals(before.getAvailableSeats(), after.getAvailableSeats());
+        assertEquals(before.getSoldTickets(), after.getSoldTickets());
+        assertEquals(before.getNotSoldTickets(), after.getNotSoldTickets());
+        assertEquals(before.getNotAllocatedTickets(), after.getNotAllocatedTickets());
+        assertEquals(3, ticketCategoryRepository.findStatisticWithId(categoryId, event.getId()).getSoldTicketsCount());
+    }
 }
\ No newline at end of file
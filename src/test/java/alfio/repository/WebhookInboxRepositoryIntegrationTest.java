@@ -0,0 +1,81 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.model.transaction.PaymentProxy;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Transactional
+class WebhookInboxRepositoryIntegrationTest {
+
+    private static final String STRIPE = PaymentProxy.STRIPE.name();
+    private static final String MOLLIE = PaymentProxy.MOLLIE.name();
+
+    @Autowired
+    private WebhookInboxRepository webhookInboxRepository;
+
+    @Test
+    void failedNotificationsAreRescheduledOnRedelivery() {
+        assertEquals(1, webhookInboxRepository.insert(STRIPE, "evt_1", "reservation", "{}", Map.of()));
+        // duplicates of a pending notification are discarded
+        assertEquals(0, webhookInboxRepository.insert(STRIPE, "evt_1", "reservation", "{}", Map.of()));
+        var entry = webhookInboxRepository.lockPending(10).get(0);
+        webhookInboxRepository.registerFailure(entry.getId(), "failure", 1);
+        assertTrue(webhookInboxRepository.lockPending(10).isEmpty());
+
+        assertEquals(1, webhookInboxRepository.insert(STRIPE, "evt_1", "reservation", "{}", Map.of()));
+        var pending = webhookInboxRepository.lockPending(10);
+        assertEquals(1, pending.size());
+        assertEquals(0, pending.get(0).getAttempts());
+
+        // processed notifications are never rescheduled
+        webhookInboxRepository.markAsProcessed(entry.getId());
+        assertEquals(0, webhookInboxRepository.insert(STRIPE, "evt_1", "reservation", "{}", Map.of()));
+        assertTrue(webhookInboxRepository.lockPending(10).isEmpty());
+    }
+
+    @Test
+    void pendingNotificationIsReplacedByNewerOne() {
+        assertEquals(1, webhookInboxRepository.insertOrReschedule(MOLLIE, "reservation", "reservation", "id=tr_1", Map.of()));
+        var entry = webhookInboxRepository.lockPending(10).get(0);
+        // the notification is waiting for the next attempt
+        webhookInboxRepository.registerFailure(entry.getId(), "failure", 10);
+        assertTrue(webhookInboxRepository.lockPending(10).isEmpty());
+
+        assertEquals(1, webhookInboxRepository.insertOrReschedule(MOLLIE, "reservation", "reservation", "id=tr_2", Map.of()));
+        var pending = webhookInboxRepository.lockPending(10);
+        assertEquals(1, pending.size());
+        assertEquals(entry.getId(), pending.get(0).getId());
+        assertEquals("id=tr_2", pending.get(0).getBody());
+        assertEquals(0, pending.get(0).getAttempts());
+    }
+}